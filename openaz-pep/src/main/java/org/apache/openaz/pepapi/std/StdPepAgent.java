@@ -36,6 +36,7 @@ import org.apache.openaz.xacml.util.FactoryException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -155,9 +156,9 @@ final class StdPepAgent implements PepAgent {
     }
 
     private void logResponse(Response response) {
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            JSONResponse.convert(response, out);
-            logger.debug(out.toString("UTF-8"));
+        try (StringWriter out = new StringWriter()) {
+            JSONResponse.convert(response, out, false);
+            logger.debug(out.toString());
         } catch (IOException e) {
             logger.debug("Error printing XACML response in JSON", e);
         } catch (JSONStructureException e) {
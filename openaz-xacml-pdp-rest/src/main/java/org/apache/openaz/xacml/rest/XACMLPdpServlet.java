@@ -59,11 +59,11 @@ import org.apache.openaz.xacml.api.Response;
 import org.apache.openaz.xacml.api.pap.PDPStatus.Status;
 import org.apache.openaz.xacml.api.pdp.PDPEngine;
 import org.apache.openaz.xacml.api.pdp.PDPException;
-import org.apache.openaz.xacml.std.dom.DOMRequest;
-import org.apache.openaz.xacml.std.dom.DOMResponse;
 import org.apache.openaz.xacml.std.json.JSONRequest;
 import org.apache.openaz.xacml.std.json.JSONResponse;
 import org.apache.openaz.xacml.std.pap.StdPDPStatus;
+import org.apache.openaz.xacml.std.stax.StAXRequest;
+import org.apache.openaz.xacml.std.stax.StAXResponse;
 import org.apache.openaz.xacml.util.XACMLProperties;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -492,7 +492,7 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
                 } else if (contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_XML
                                                                           .getMimeType())
                            || contentType.getMimeType().equalsIgnoreCase("application/xacml+xml")) {
-                    pdpRequest = DOMRequest.load(incomingRequestString);
+                    pdpRequest = StAXRequest.load(incomingRequestString);
                 }
             } catch (Exception e) {
                 logger.error("Could not parse request", e);
@@ -581,48 +581,60 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
                 throw new Exception("Failed to get response from PDP engine.");
             }
             //
-            // Set our content-type
+            // Set our content-type. The response is written as UTF-8 whether it is streamed to the output
+            // stream or printed to the writer for auditing.
             //
             response.setContentType(contentType.getMimeType());
+            response.setCharacterEncoding("UTF-8");
             //
             // Convert the PDP response object to a String to
             // return to our caller as well as dump to our loggers.
             //
             String outgoingResponseString = "";
             if (contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_JSON.getMimeType())) {
-                //
-                // Get it as a String. This is not very efficient but we need to log our
-                // results for auditing.
-                //
-                outgoingResponseString = JSONResponse.toString(pdpResponse, logger.isDebugEnabled());
                 if (logger.isDebugEnabled()) {
-                    logger.debug(outgoingResponseString);
+                    logger.debug(JSONResponse.toString(pdpResponse, true));
+                }
+                if (requestLogger.isInfoEnabled()) {
                     //
-                    // Get rid of whitespace
+                    // Get it as a String. This is not very efficient but we need to log our
+                    // results for auditing.
                     //
                     outgoingResponseString = JSONResponse.toString(pdpResponse, false);
+                } else {
+                    //
+                    // Nothing to audit, so write the response straight to our caller
+                    //
+                    JSONResponse.convert(pdpResponse, response.getOutputStream());
+                    outgoingResponseString = null;
                 }
             } else if (contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_XML.getMimeType())
                        || contentType.getMimeType().equalsIgnoreCase("application/xacml+xml")) {
-                //
-                // Get it as a String. This is not very efficient but we need to log our
-                // results for auditing.
-                //
-                outgoingResponseString = DOMResponse.toString(pdpResponse, logger.isDebugEnabled());
                 if (logger.isDebugEnabled()) {
-                    logger.debug(outgoingResponseString);
+                    logger.debug(StAXResponse.toString(pdpResponse, true));
+                }
+                if (requestLogger.isInfoEnabled()) {
+                    //
+                    // Get it as a String. This is not very efficient but we need to log our
+                    // results for auditing.
                     //
-                    // Get rid of whitespace
+                    outgoingResponseString = StAXResponse.toString(pdpResponse, false);
+                } else {
+                    //
+                    // Nothing to audit, so write the response straight to our caller
                     //
-                    outgoingResponseString = DOMResponse.toString(pdpResponse, false);
+                    StAXResponse.convert(pdpResponse, response.getOutputStream());
+                    outgoingResponseString = null;
                 }
             }
             //
             // lTimeStart is used as an ID within the requestLogger to match up
             // request's with responses.
             //
-            requestLogger.info(lTimeStart + "=" + outgoingResponseString);
-            response.getWriter().print(outgoingResponseString);
+            if (outgoingResponseString != null) {
+                requestLogger.info(lTimeStart + "=" + outgoingResponseString);
+                response.getWriter().print(outgoingResponseString);
+            }
         } catch (Exception e) {
             String message = "Exception executing request: " + e;
             logger.error(message, e);
@@ -0,0 +1,318 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.pdp;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Decision;
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.RequestAttributes;
+import org.apache.openaz.xacml.api.Response;
+import org.apache.openaz.xacml.api.Result;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pdp.PDPEngine;
+import org.apache.openaz.xacml.api.pdp.PDPException;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.trace.Traceable;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContextFactory;
+import org.apache.openaz.xacml.pdp.std.StdEvaluationContextFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * CachingPDPEngine implements the {@link org.apache.openaz.xacml.api.pdp.PDPEngine} interface by keeping
+ * the {@link org.apache.openaz.xacml.api.Response}s of another <code>PDPEngine</code> in a Guava
+ * <code>Cache</code>. Entries are keyed on a hash of the categories, attribute ids, issuers and values in
+ * the <code>Request</code>, and two requests share a decision when the <code>Request</code>
+ * <code>equals</code> method says they are the same. Size, expiration and eviction are controlled by a
+ * Guava cache specification such as <code>maximumSize=10000,expireAfterWrite=60s</code>.
+ * <p>
+ * Requests with XML <code>Content</code> or with an environment current-time, current-date or
+ * current-dateTime attribute are always passed through, as are responses containing an
+ * <code>Indeterminate</code> result. When the wrapped engine is an {@link OpenAZPDPEngine} whose
+ * policies come from a {@link org.apache.openaz.xacml.pdp.std.StdPolicyFinder}, the attributes those
+ * policies may require are checked on the first decision and nothing is cached if they read the current
+ * time, since the PDP then supplies it from its own clock. Policies loaded later from a
+ * <code>PolicyIdReference</code> URI, or held by any other kind of engine, are not checked, and their
+ * decisions are only bounded by the expiration in the cache specification.
+ * <p>
+ * When the wrapped engine is {@link org.apache.openaz.xacml.api.trace.Traceable}, its trace id and cause are
+ * reported as those of this <code>CachingPDPEngine</code>.
+ */
+public class CachingPDPEngine implements PDPEngine, Traceable {
+    private Log logger = LogFactory.getLog(this.getClass());
+    private PDPEngine pdpEngine;
+    private Cache<RequestKey, Response> cache;
+    private volatile Boolean policiesReadCurrentTime;
+
+    /**
+     * RequestKey wraps a <code>Request</code> with a hash code computed from its contents, since the
+     * standard <code>Request</code> implementations hash their attribute collections by identity.
+     */
+    private static final class RequestKey {
+        private final Request request;
+        private final int hashCode;
+
+        RequestKey(Request requestIn) {
+            this.request = requestIn;
+            int result = (requestIn.getCombinedDecision() ? 1231 : 1237);
+            result = 31 * result + (requestIn.getReturnPolicyIdList() ? 1231 : 1237);
+            if (requestIn.getRequestAttributes() != null) {
+                for (RequestAttributes requestAttributes : requestIn.getRequestAttributes()) {
+                    result += hashRequestAttributes(requestAttributes);
+                }
+            }
+            this.hashCode = result;
+        }
+
+        private static int hashOf(Object object) {
+            return (object == null ? 0 : object.hashCode());
+        }
+
+        private static int hashRequestAttributes(RequestAttributes requestAttributes) {
+            int categoryHash = hashOf(requestAttributes.getCategory());
+            int result = 0;
+            if (requestAttributes.getAttributes() != null) {
+                for (Attribute attribute : requestAttributes.getAttributes()) {
+                    int attributeHash = 31 * categoryHash + hashOf(attribute.getAttributeId());
+                    attributeHash = 31 * attributeHash + hashOf(attribute.getIssuer());
+                    if (attribute.getValues() != null) {
+                        for (AttributeValue<?> attributeValue : attribute.getValues()) {
+                            attributeHash = 31 * attributeHash + hashOf(attributeValue);
+                        }
+                    }
+                    result += attributeHash;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (!(obj instanceof RequestKey)) {
+                return false;
+            } else {
+                RequestKey requestKey = (RequestKey)obj;
+                return this.hashCode == requestKey.hashCode && this.request.equals(requestKey.request);
+            }
+        }
+    }
+
+    /**
+     * Creates a new <code>CachingPDPEngine</code> in front of the given <code>PDPEngine</code>.
+     *
+     * @param pdpEngineIn the <code>PDPEngine</code> making the decisions
+     * @param cacheSpecIn the Guava cache specification for the decision cache
+     */
+    public CachingPDPEngine(PDPEngine pdpEngineIn, String cacheSpecIn) {
+        this.pdpEngine = pdpEngineIn;
+        this.cache = CacheBuilder.from(cacheSpecIn).recordStats().build();
+    }
+
+    public PDPEngine getPDPEngine() {
+        return this.pdpEngine;
+    }
+
+    /**
+     * Gets the hit, miss and eviction counters for the decision cache.
+     *
+     * @return the <code>CacheStats</code> for the decision cache
+     */
+    public CacheStats getStats() {
+        return this.cache.stats();
+    }
+
+    public long getHitCount() {
+        return this.getStats().hitCount();
+    }
+
+    public long getMissCount() {
+        return this.getStats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return this.getStats().evictionCount();
+    }
+
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * Discards all cached decisions, for instance because the policies behind them have changed.
+     */
+    public void invalidateAll() {
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Invalidating " + this.cache.size() + " cached decisions, " + this.getStats());
+        }
+        this.policiesReadCurrentTime = null;
+        this.cache.invalidateAll();
+    }
+
+    private static boolean isCurrentTime(Identifier attributeId) {
+        return XACML3.ID_ENVIRONMENT_CURRENT_TIME.equals(attributeId)
+               || XACML3.ID_ENVIRONMENT_CURRENT_DATE.equals(attributeId)
+               || XACML3.ID_ENVIRONMENT_CURRENT_DATETIME.equals(attributeId);
+    }
+
+    /**
+     * Determines if the policies of the wrapped <code>PDPEngine</code> may read an environment current-time,
+     * current-date or current-dateTime attribute. The answer is kept until {@link #invalidateAll()} once the
+     * policies could be analysed.
+     *
+     * @return true if the policies may read the current time, false if they do not or cannot be analysed
+     */
+    protected boolean isPolicyCurrentTime() {
+        Boolean result = this.policiesReadCurrentTime;
+        if (result != null) {
+            return result.booleanValue();
+        }
+        if (!(this.pdpEngine instanceof OpenAZPDPEngine)) {
+            return false;
+        }
+        EvaluationContextFactory evaluationContextFactory = ((OpenAZPDPEngine)this.pdpEngine)
+            .getEvaluationContextFactory();
+        if (!(evaluationContextFactory instanceof StdEvaluationContextFactory)) {
+            return false;
+        }
+        Set<PIPRequest> requiredAttributes = ((StdEvaluationContextFactory)evaluationContextFactory)
+            .getRequiredAttributes();
+        if (requiredAttributes == null) {
+            return false;
+        }
+        result = Boolean.FALSE;
+        for (PIPRequest pipRequest : requiredAttributes) {
+            if (XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT.equals(pipRequest.getCategory())
+                && isCurrentTime(pipRequest.getAttributeId())) {
+                result = Boolean.TRUE;
+                break;
+            }
+        }
+        if (result.booleanValue()) {
+            this.logger.warn("Policies read the current time, decisions will not be cached");
+        }
+        this.policiesReadCurrentTime = result;
+        return result.booleanValue();
+    }
+
+    /**
+     * Determines if the decision for the given <code>Request</code> may be taken from or stored in the cache.
+     *
+     * @param request the <code>Request</code> to check
+     * @return true if the <code>Request</code> can be cached, else false
+     */
+    protected boolean isCacheable(Request request) {
+        if (request == null || this.isPolicyCurrentTime()) {
+            return false;
+        }
+        Collection<RequestAttributes> listRequestAttributes = request.getRequestAttributes();
+        if (listRequestAttributes != null) {
+            for (RequestAttributes requestAttributes : listRequestAttributes) {
+                if (requestAttributes.getContentRoot() != null) {
+                    return false;
+                }
+                if (XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT.equals(requestAttributes.getCategory())
+                    && requestAttributes.getAttributes() != null) {
+                    for (Attribute attribute : requestAttributes.getAttributes()) {
+                        if (isCurrentTime(attribute.getAttributeId())) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if the given <code>Response</code> may be stored in the cache.
+     *
+     * @param response the <code>Response</code> to check
+     * @return true if the <code>Response</code> has no <code>Indeterminate</code> results, else false
+     */
+    protected boolean isCacheable(Response response) {
+        if (response == null || response.getResults() == null) {
+            return false;
+        }
+        for (Result result : response.getResults()) {
+            Decision decision = result.getDecision();
+            if (decision == null || decision == Decision.INDETERMINATE
+                || decision == Decision.INDETERMINATE_DENY || decision == Decision.INDETERMINATE_PERMIT
+                || decision == Decision.INDETERMINATE_DENYPERMIT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Response decide(Request pepRequest) throws PDPException {
+        if (!this.isCacheable(pepRequest)) {
+            return this.pdpEngine.decide(pepRequest);
+        }
+        RequestKey requestKey = new RequestKey(pepRequest);
+        Response response = this.cache.getIfPresent(requestKey);
+        if (response == null) {
+            response = this.pdpEngine.decide(pepRequest);
+            if (this.isCacheable(response)) {
+                this.cache.put(requestKey, response);
+            }
+        }
+        return response;
+    }
+
+    @Override
+    public Collection<URI> getProfiles() {
+        return this.pdpEngine.getProfiles();
+    }
+
+    @Override
+    public boolean hasProfile(URI uriProfile) {
+        return this.pdpEngine.hasProfile(uriProfile);
+    }
+
+    @Override
+    public String getTraceId() {
+        return (this.pdpEngine instanceof Traceable ? ((Traceable)this.pdpEngine).getTraceId() : this
+            .getClass().getCanonicalName());
+    }
+
+    @Override
+    public Traceable getCause() {
+        return (this.pdpEngine instanceof Traceable ? ((Traceable)this.pdpEngine).getCause() : null);
+    }
+
+}
@@ -31,11 +31,19 @@
 package org.apache.openaz.xacml.pdp;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -100,8 +108,43 @@ public class OpenAZPDPEngine implements PDPEngine, Traceable {
     private Decision defaultDecision = Decision.INDETERMINATE;
     private ScopeResolver scopeResolver;
     private TraceEngine traceEngine;
+    private ExecutorService executorService;
+    private int parallelThreshold = 2;
     private Log logger = LogFactory.getLog(this.getClass());
 
+    /**
+     * CompletedResult returns a <code>Result</code> that was already decided without evaluating anything.
+     */
+    private static class CompletedResult implements Callable<Result> {
+        private Result result;
+
+        public CompletedResult(Result resultIn) {
+            this.result = resultIn;
+        }
+
+        @Override
+        public Result call() {
+            return this.result;
+        }
+    }
+
+    /**
+     * IndividualDecisionTask evaluates a single individual decision request against its
+     * <code>EvaluationContext</code> so that it can be run on the engine's <code>ExecutorService</code>.
+     */
+    private class IndividualDecisionTask implements Callable<Result> {
+        private EvaluationContext evaluationContext;
+
+        public IndividualDecisionTask(EvaluationContext evaluationContextIn) {
+            this.evaluationContext = evaluationContextIn;
+        }
+
+        @Override
+        public Result call() {
+            return processRequest(this.evaluationContext);
+        }
+    }
+
     protected TraceEngine getTraceEngine() {
         if (this.traceEngine == null) {
             synchronized (this) {
@@ -130,6 +173,55 @@ public class OpenAZPDPEngine implements PDPEngine, Traceable {
         this.defaultDecision = defaultDecisionIn;
     }
 
+    public OpenAZPDPEngine(EvaluationContextFactory evaluationContextFactoryIn, Decision defaultDecisionIn,
+                        ScopeResolver scopeResolverIn, ExecutorService executorServiceIn) {
+        this(evaluationContextFactoryIn, defaultDecisionIn, scopeResolverIn);
+        this.executorService = executorServiceIn;
+    }
+
+    public EvaluationContextFactory getEvaluationContextFactory() {
+        return this.evaluationContextFactory;
+    }
+
+    /**
+     * Gets the <code>ExecutorService</code> used to evaluate individual decision requests in parallel.
+     *
+     * @return the <code>ExecutorService</code> or null if individual decisions are evaluated sequentially
+     */
+    public ExecutorService getExecutorService() {
+        return this.executorService;
+    }
+
+    /**
+     * Sets the <code>ExecutorService</code> used to evaluate individual decision requests in parallel. A null
+     * value restores sequential evaluation.
+     *
+     * @param executorServiceIn the <code>ExecutorService</code> to use
+     */
+    public void setExecutorService(ExecutorService executorServiceIn) {
+        this.executorService = executorServiceIn;
+    }
+
+    /**
+     * Gets the minimum number of individual decision requests a <code>Request</code> must expand into before
+     * they are evaluated in parallel.
+     *
+     * @return the minimum number of individual decision requests for parallel evaluation
+     */
+    public int getParallelThreshold() {
+        return this.parallelThreshold;
+    }
+
+    /**
+     * Sets the minimum number of individual decision requests a <code>Request</code> must expand into before
+     * they are evaluated in parallel. Smaller Requests are evaluated sequentially on the calling thread.
+     *
+     * @param parallelThresholdIn the minimum number of individual decision requests for parallel evaluation
+     */
+    public void setParallelThreshold(int parallelThresholdIn) {
+        this.parallelThreshold = parallelThresholdIn;
+    }
+
     protected Result processRequest(EvaluationContext evaluationContext) {
         try {
             PolicyFinderResult<PolicyDef> policyFinderResult = evaluationContext.getRootPolicyDef();
@@ -210,23 +302,46 @@ public class OpenAZPDPEngine implements PDPEngine, Traceable {
                                                         "No individual decision requests"));
         }
 
+        /*
+         * If we have an ExecutorService and enough individual decisions, evaluate them in parallel. The
+         * results are still collected in request order so combining below is unchanged. Either way the
+         * EvaluationContexts are created together so their attributes can be retrieved in batches.
+         */
+        List<Request> listRequestsIndividualDecision = new ArrayList<Request>();
         while (iterRequestsIndividualDecision.hasNext()) {
-            Request requestIndividualDecision = iterRequestsIndividualDecision.next();
-            if (traceEngineThis.isTracing()) {
-                traceEngineThis.trace(new StdTraceEvent<Request>("Individual Request", this,
-                                                                 requestIndividualDecision));
-            }
+            listRequestsIndividualDecision.add(iterRequestsIndividualDecision.next());
+        }
+        Iterator<Future<Result>> iterFuturesIndividualDecision = null;
+        Iterator<EvaluationContext> iterEvaluationContexts = null;
+        if (this.executorService != null && listRequestsIndividualDecision.size() >= this.parallelThreshold) {
+            iterFuturesIndividualDecision = this.submitIndividualDecisions(listRequestsIndividualDecision,
+                                                                           traceEngineThis).iterator();
+        } else {
+            iterEvaluationContexts = this.getEvaluationContexts(listRequestsIndividualDecision).iterator();
+        }
+        iterRequestsIndividualDecision = listRequestsIndividualDecision.iterator();
+
+        while (iterFuturesIndividualDecision != null
+            ? iterFuturesIndividualDecision.hasNext() : iterRequestsIndividualDecision.hasNext()) {
             Result resultIndividualDecision = null;
-            if (requestIndividualDecision.getStatus() != null
-                && !requestIndividualDecision.getStatus().isOk()) {
-                resultIndividualDecision = new StdMutableResult(requestIndividualDecision.getStatus());
+            if (iterFuturesIndividualDecision != null) {
+                resultIndividualDecision = this.getIndividualResult(iterFuturesIndividualDecision.next());
             } else {
-                EvaluationContext evaluationContext = this.evaluationContextFactory
-                    .getEvaluationContext(requestIndividualDecision);
-                if (evaluationContext == null) {
-                    resultIndividualDecision = RESULT_ECTX_NULL;
+                Request requestIndividualDecision = iterRequestsIndividualDecision.next();
+                EvaluationContext evaluationContext = iterEvaluationContexts.next();
+                if (traceEngineThis.isTracing()) {
+                    traceEngineThis.trace(new StdTraceEvent<Request>("Individual Request", this,
+                                                                     requestIndividualDecision));
+                }
+                if (requestIndividualDecision.getStatus() != null
+                    && !requestIndividualDecision.getStatus().isOk()) {
+                    resultIndividualDecision = new StdMutableResult(requestIndividualDecision.getStatus());
                 } else {
-                    resultIndividualDecision = this.processRequest(evaluationContext);
+                    if (evaluationContext == null) {
+                        resultIndividualDecision = RESULT_ECTX_NULL;
+                    } else {
+                        resultIndividualDecision = this.processRequest(evaluationContext);
+                    }
                 }
             }
 
@@ -272,6 +387,112 @@ public class OpenAZPDPEngine implements PDPEngine, Traceable {
         return stdResponse;
     }
 
+    /**
+     * Creates the <code>EvaluationContext</code>s for the given individual decision requests with a single
+     * call to the <code>EvaluationContextFactory</code>, so it can retrieve their attributes together.
+     * Requests with an error status are skipped and get a null entry.
+     *
+     * @param listRequestsIndividualDecision the <code>List</code> of individual decision
+     *            <code>Request</code>s
+     * @return a <code>List</code> of <code>EvaluationContext</code>s in the same order as the requests
+     */
+    protected List<EvaluationContext> getEvaluationContexts(List<Request> listRequestsIndividualDecision) {
+        List<Request> listRequestsOk = new ArrayList<Request>(listRequestsIndividualDecision.size());
+        for (Request requestIndividualDecision : listRequestsIndividualDecision) {
+            if (requestIndividualDecision.getStatus() == null || requestIndividualDecision.getStatus().isOk()) {
+                listRequestsOk.add(requestIndividualDecision);
+            }
+        }
+        Iterator<EvaluationContext> iterEvaluationContextsOk = null;
+        if (listRequestsOk.size() > 0) {
+            iterEvaluationContextsOk = this.evaluationContextFactory.getEvaluationContexts(listRequestsOk)
+                .iterator();
+        }
+        List<EvaluationContext> listEvaluationContexts = new ArrayList<EvaluationContext>();
+        for (Request requestIndividualDecision : listRequestsIndividualDecision) {
+            if (requestIndividualDecision.getStatus() == null || requestIndividualDecision.getStatus().isOk()) {
+                listEvaluationContexts.add(iterEvaluationContextsOk.next());
+            } else {
+                listEvaluationContexts.add(null);
+            }
+        }
+        return listEvaluationContexts;
+    }
+
+    /**
+     * Creates the <code>EvaluationContext</code> for each of the given individual decision requests on the
+     * calling thread and submits their evaluation to the <code>ExecutorService</code>.
+     *
+     * @param listRequestsIndividualDecision the <code>List</code> of individual decision
+     *            <code>Request</code>s
+     * @param traceEngineThis the <code>TraceEngine</code> for this decision
+     * @return a <code>List</code> of <code>Future</code> <code>Result</code>s in the same order as the
+     *         requests
+     */
+    protected List<Future<Result>> submitIndividualDecisions(List<Request> listRequestsIndividualDecision,
+                                                             TraceEngine traceEngineThis) {
+        List<Future<Result>> listFutures = new ArrayList<Future<Result>>(listRequestsIndividualDecision
+            .size());
+        Iterator<EvaluationContext> iterEvaluationContexts = this
+            .getEvaluationContexts(listRequestsIndividualDecision).iterator();
+        for (Request requestIndividualDecision : listRequestsIndividualDecision) {
+            EvaluationContext evaluationContext = iterEvaluationContexts.next();
+            if (traceEngineThis.isTracing()) {
+                traceEngineThis.trace(new StdTraceEvent<Request>("Individual Request", this,
+                                                                 requestIndividualDecision));
+            }
+            Callable<Result> callable = null;
+            if (requestIndividualDecision.getStatus() != null
+                && !requestIndividualDecision.getStatus().isOk()) {
+                callable = new CompletedResult(new StdMutableResult(requestIndividualDecision.getStatus()));
+            } else {
+                if (evaluationContext == null) {
+                    callable = new CompletedResult(RESULT_ECTX_NULL);
+                } else {
+                    callable = new IndividualDecisionTask(evaluationContext);
+                }
+            }
+
+            Future<Result> future = null;
+            if (callable instanceof IndividualDecisionTask) {
+                try {
+                    future = this.executorService.submit(callable);
+                } catch (RejectedExecutionException ex) {
+                    this.logger.warn("Individual decision rejected by executor, evaluating on caller thread");
+                }
+            }
+            if (future == null) {
+                FutureTask<Result> futureTask = new FutureTask<Result>(callable);
+                futureTask.run();
+                future = futureTask;
+            }
+            listFutures.add(future);
+        }
+        return listFutures;
+    }
+
+    /**
+     * Waits for the given <code>Future</code> individual decision <code>Result</code>, converting any
+     * failure into a processing error <code>Result</code>.
+     *
+     * @param futureResult the <code>Future</code> <code>Result</code> to wait for
+     * @return the <code>Result</code> of the individual decision
+     * @throws PDPException if the calling thread is interrupted while waiting
+     */
+    protected Result getIndividualResult(Future<Result> futureResult) throws PDPException {
+        try {
+            return futureResult.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new PDPException("Interrupted waiting for individual decision", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = (ex.getCause() == null ? ex : ex.getCause());
+            this.logger.error("Exception evaluating individual decision: " + cause.toString(), cause);
+            return new StdMutableResult(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR,
+                                                      cause.getMessage()));
+        }
+    }
+
     @Override
     public Collection<URI> getProfiles() {
         return Collections.unmodifiableCollection(PROFILES);
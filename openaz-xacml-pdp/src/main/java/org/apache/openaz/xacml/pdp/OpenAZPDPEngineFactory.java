@@ -30,14 +30,20 @@
  */
 package org.apache.openaz.xacml.pdp;
 
+import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.openaz.xacml.api.pdp.PDPEngine;
 import org.apache.openaz.xacml.api.pdp.PDPEngineFactory;
 import org.apache.openaz.xacml.pdp.eval.EvaluationContextFactory;
+import org.apache.openaz.xacml.pdp.util.OpenAZPDPProperties;
 import org.apache.openaz.xacml.util.FactoryException;
+import org.apache.openaz.xacml.util.XACMLProperties;
 
 /**
  * OpenAZPDPEngineFactory extends {@link org.apache.openaz.xacml.api.pdp.PDPEngineFactory} by implementing the
@@ -47,9 +53,99 @@ import org.apache.openaz.xacml.util.FactoryException;
 public class OpenAZPDPEngineFactory extends PDPEngineFactory {
     private Log logger = LogFactory.getLog(this.getClass());
 
+    /*
+     * Engines are built again every time the policies are reloaded, so they share one ForkJoinPool for each
+     * parallelism rather than each leaving a pool of its own behind.
+     */
+    private static final ConcurrentMap<Integer, ForkJoinPool> forkJoinPools =
+        new ConcurrentHashMap<Integer, ForkJoinPool>();
+
     public OpenAZPDPEngineFactory() {
     }
 
+    /**
+     * Reads an integer property, logging and returning the given default if the value is missing or
+     * invalid.
+     */
+    private int getIntProperty(Properties properties, String propertyName, int defaultValue) {
+        String value = properties.getProperty(propertyName);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            this.logger.error("Invalid value for " + propertyName + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Configures parallel evaluation of individual decision requests on the given
+     * <code>OpenAZPDPEngine</code> if the {@link OpenAZPDPProperties#PROP_PDPENGINE_PARALLELISM} property
+     * is greater than one.
+     *
+     * @param engine the <code>OpenAZPDPEngine</code> to configure
+     * @param properties the <code>Properties</code> to read the configuration from
+     * @return the configured <code>OpenAZPDPEngine</code>
+     */
+    protected OpenAZPDPEngine configureParallelism(OpenAZPDPEngine engine, Properties properties) {
+        int parallelism = this.getIntProperty(properties, OpenAZPDPProperties.PROP_PDPENGINE_PARALLELISM, 1);
+        if (parallelism > 1) {
+            this.logger.info("Evaluating individual decisions with parallelism " + parallelism);
+            engine.setExecutorService(getForkJoinPool(parallelism));
+            engine.setParallelThreshold(this.getIntProperty(properties,
+                                                            OpenAZPDPProperties.PROP_PDPENGINE_PARALLELTHRESHOLD,
+                                                            engine.getParallelThreshold()));
+        }
+        return engine;
+    }
+
+    /**
+     * Gets the <code>ForkJoinPool</code> shared by all engines with the given parallelism, creating it the
+     * first time it is needed.
+     *
+     * @param parallelism the parallelism of the pool
+     * @return the shared <code>ForkJoinPool</code>
+     */
+    protected static ForkJoinPool getForkJoinPool(int parallelism) {
+        ForkJoinPool forkJoinPool = forkJoinPools.get(parallelism);
+        if (forkJoinPool == null) {
+            ForkJoinPool newForkJoinPool = new ForkJoinPool(parallelism);
+            forkJoinPool = forkJoinPools.putIfAbsent(parallelism, newForkJoinPool);
+            if (forkJoinPool == null) {
+                forkJoinPool = newForkJoinPool;
+            } else {
+                newForkJoinPool.shutdown();
+            }
+        }
+        return forkJoinPool;
+    }
+
+    /**
+     * Puts a {@link CachingPDPEngine} in front of the given <code>PDPEngine</code> if the
+     * {@link OpenAZPDPProperties#PROP_PDPENGINE_DECISIONCACHESPEC} property is set.
+     *
+     * @param engine the <code>PDPEngine</code> to cache decisions for
+     * @param properties the <code>Properties</code> to read the configuration from
+     * @return the <code>CachingPDPEngine</code> or the given <code>PDPEngine</code>
+     */
+    protected PDPEngine configureDecisionCache(PDPEngine engine, Properties properties) {
+        String cacheSpec = properties.getProperty(OpenAZPDPProperties.PROP_PDPENGINE_DECISIONCACHESPEC);
+        if (cacheSpec == null || cacheSpec.trim().length() == 0) {
+            return engine;
+        }
+        try {
+            PDPEngine cachingEngine = new CachingPDPEngine(engine, cacheSpec.trim());
+            this.logger.info("Caching decisions with " + cacheSpec);
+            return cachingEngine;
+        } catch (IllegalArgumentException ex) {
+            this.logger.error("Invalid value for " + OpenAZPDPProperties.PROP_PDPENGINE_DECISIONCACHESPEC
+                              + ": " + cacheSpec, ex);
+            return engine;
+        }
+    }
+
     @Override
     public PDPEngine newEngine() throws FactoryException {
         EvaluationContextFactory evaluationContextFactory = EvaluationContextFactory.newInstance();
@@ -57,7 +153,15 @@ public class OpenAZPDPEngineFactory extends PDPEngineFactory {
             this.logger.error("Null EvaluationContextFactory");
             throw new FactoryException("Null EvaluationContextFactory");
         }
-        return new OpenAZPDPEngine(evaluationContextFactory, this.getDefaultBehavior(), this.getScopeResolver());
+        OpenAZPDPEngine engine = new OpenAZPDPEngine(evaluationContextFactory, this.getDefaultBehavior(),
+                                                     this.getScopeResolver());
+        try {
+            Properties properties = XACMLProperties.getProperties();
+            return this.configureDecisionCache(this.configureParallelism(engine, properties), properties);
+        } catch (IOException ex) {
+            this.logger.error("IOException reading XACML properties: " + ex.getMessage(), ex);
+            return engine;
+        }
     }
 
     @Override
@@ -67,6 +171,8 @@ public class OpenAZPDPEngineFactory extends PDPEngineFactory {
             this.logger.error("Null EvaluationContextFactory");
             throw new FactoryException("Null EvaluationContextFactory");
         }
-        return new OpenAZPDPEngine(evaluationContextFactory, this.getDefaultBehavior(), this.getScopeResolver());
+        OpenAZPDPEngine engine = new OpenAZPDPEngine(evaluationContextFactory, this.getDefaultBehavior(),
+                                                     this.getScopeResolver());
+        return this.configureDecisionCache(this.configureParallelism(engine, properties), properties);
     }
 }
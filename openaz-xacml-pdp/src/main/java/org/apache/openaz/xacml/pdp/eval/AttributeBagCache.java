@@ -0,0 +1,50 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.eval;
+
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.pdp.policy.Bag;
+
+/**
+ * AttributeBagCache is the optional interface an {@link org.apache.openaz.xacml.pdp.eval.EvaluationContext}
+ * implements to keep the {@link org.apache.openaz.xacml.pdp.policy.Bag}s built from its attributes, so that
+ * attribute designators asking for the same attributes again do not filter the same
+ * <code>PIPResponse</code> into a new <code>Bag</code>.
+ */
+public interface AttributeBagCache {
+    /**
+     * Gets the <code>Bag</code> previously stored for the given
+     * {@link org.apache.openaz.xacml.api.pip.PIPRequest}.
+     *
+     * @param pipRequest the <code>PIPRequest</code> to look up
+     * @return the stored <code>Bag</code> or null if there is none
+     */
+    Bag getAttributeBag(PIPRequest pipRequest);
+
+    /**
+     * Stores the <code>Bag</code> of <code>AttributeValue</code>s matching the given <code>PIPRequest</code>.
+     * Callers must not modify the <code>Bag</code> afterwards.
+     *
+     * @param pipRequest the <code>PIPRequest</code> the <code>Bag</code> was built for
+     * @param bag the <code>Bag</code> of matching <code>AttributeValue</code>s
+     */
+    void putAttributeBag(PIPRequest pipRequest, Bag bag);
+}
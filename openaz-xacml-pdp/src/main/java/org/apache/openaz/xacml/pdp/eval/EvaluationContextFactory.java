@@ -30,6 +30,8 @@
  */
 package org.apache.openaz.xacml.pdp.eval;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.openaz.xacml.api.Request;
@@ -77,6 +79,24 @@ public abstract class EvaluationContextFactory {
      */
     public abstract EvaluationContext getEvaluationContext(Request request);
 
+    /**
+     * Gets a new {@link org.apache.openaz.xacml.pdp.eval.EvaluationContext} for each of the given
+     * <code>Request</code>s, such as the individual decision requests of a multiple decision request.
+     * Implementations may use the fact that all of the <code>Request</code>s are known up front to retrieve
+     * their attributes together. The default implementation calls <code>getEvaluationContext</code> for each.
+     *
+     * @param requests the <code>List</code> of <code>Request</code>s
+     * @return a <code>List</code> with a new <code>EvaluationContext</code> for each <code>Request</code>, in
+     *         the same order
+     */
+    public List<EvaluationContext> getEvaluationContexts(List<Request> requests) {
+        List<EvaluationContext> listEvaluationContexts = new ArrayList<EvaluationContext>(requests.size());
+        for (Request request : requests) {
+            listEvaluationContexts.add(this.getEvaluationContext(request));
+        }
+        return listEvaluationContexts;
+    }
+
     /**
      * Sets the {@link org.apache.openaz.xacml.pdp.policy.PolicyFinder} for this
      * <code>EvaluationContextFactory</code> to an explicit instance instead of the default or configured
@@ -0,0 +1,49 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.eval;
+
+import org.apache.openaz.xacml.pdp.policy.ExpressionResult;
+import org.apache.openaz.xacml.pdp.policy.VariableDefinition;
+
+/**
+ * VariableResultCache is the optional interface an {@link org.apache.openaz.xacml.pdp.eval.EvaluationContext}
+ * implements to keep the {@link org.apache.openaz.xacml.pdp.policy.ExpressionResult}s of the
+ * {@link org.apache.openaz.xacml.pdp.policy.VariableDefinition}s evaluated within it. Contexts that do not
+ * implement it evaluate a <code>VariableDefinition</code> on every reference.
+ */
+public interface VariableResultCache {
+    /**
+     * Gets the <code>ExpressionResult</code> previously stored for the given <code>VariableDefinition</code>.
+     *
+     * @param variableDefinition the <code>VariableDefinition</code> to look up
+     * @return the stored <code>ExpressionResult</code> or null if there is none
+     */
+    ExpressionResult getVariableResult(VariableDefinition variableDefinition);
+
+    /**
+     * Stores the <code>ExpressionResult</code> of the given <code>VariableDefinition</code> so that later
+     * references to it within the same <code>EvaluationContext</code> do not evaluate it again.
+     *
+     * @param variableDefinition the <code>VariableDefinition</code> that was evaluated
+     * @param expressionResult the <code>ExpressionResult</code> of its <code>Expression</code>
+     */
+    void putVariableResult(VariableDefinition variableDefinition, ExpressionResult expressionResult);
+}
@@ -97,6 +97,16 @@ public class AllOf extends PolicyComponent implements Matchable {
         matchList.addAll(matchesIn);
     }
 
+    /**
+     * Determines whether a {@link TargetIndex} may decide from the literal values of its <code>Match</code>es
+     * that it does not match. Subclasses that change how it is matched must return false.
+     *
+     * @return true if this <code>AllOf</code> can be indexed
+     */
+    public boolean isIndexable() {
+        return true;
+    }
+
     @Override
     public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
         if (!this.validate()) {
@@ -103,6 +103,16 @@ public class AnyOf extends PolicyComponent implements Matchable {
         listAllOfs.addAll(allOfs);
     }
 
+    /**
+     * Determines whether a {@link TargetIndex} may decide from the literal values of its <code>Match</code>es
+     * that it does not match. Subclasses that change how it is matched must return false.
+     *
+     * @return true if this <code>AnyOf</code> can be indexed
+     */
+    public boolean isIndexable() {
+        return true;
+    }
+
     @Override
     public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
         if (!this.validate()) {
@@ -31,18 +31,42 @@
 package org.apache.openaz.xacml.pdp.policy;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.openaz.xacml.api.AttributeValue;
 
 /**
- * Bag represents a collection of XACML attribute values for the same attribute.
+ * Bag represents a collection of XACML attribute values for the same attribute. Membership tests on bags
+ * larger than {@link #INDEX_THRESHOLD} use a hash index of the values that is built on the first call to
+ * {@link #contains(AttributeValue)} and discarded when a value is added.
  */
 public class Bag {
     public static final Bag EMPTY = new Bag();
 
+    /**
+     * The number of values above which <code>contains</code> builds a hash index instead of scanning.
+     */
+    public static final int INDEX_THRESHOLD = 8;
+
     private List<AttributeValue<?>> attributeValues = new ArrayList<AttributeValue<?>>();
+    private volatile Index attributeValueIndex;
+
+    /**
+     * Index holds the hash set of values together with the number of values it was built from, so that
+     * values added through {@link #getAttributeValueList()} are noticed.
+     */
+    private static final class Index {
+        private final Set<AttributeValue<?>> attributeValues;
+        private final int size;
+
+        Index(List<AttributeValue<?>> listAttributeValues) {
+            this.attributeValues = new HashSet<AttributeValue<?>>(listAttributeValues);
+            this.size = listAttributeValues.size();
+        }
+    }
 
     /**
      * Gets the <code>List</code> of <code>AttributeValue</code>s for this <code>Bag</code>.
@@ -78,6 +102,27 @@ public class Bag {
      */
     public void add(AttributeValue<?> attributeValue) {
         this.attributeValues.add(attributeValue);
+        this.attributeValueIndex = null;
+    }
+
+    /**
+     * Determines if this <code>Bag</code> contains an <code>AttributeValue</code> that is
+     * <code>equal</code> to the given <code>AttributeValue</code>.
+     *
+     * @param attributeValue the <code>AttributeValue</code> to look for
+     * @return true if the <code>AttributeValue</code> is in this <code>Bag</code>, else false
+     */
+    public boolean contains(AttributeValue<?> attributeValue) {
+        List<AttributeValue<?>> listAttributeValues = this.getAttributeValueList();
+        if (listAttributeValues.size() <= INDEX_THRESHOLD) {
+            return listAttributeValues.contains(attributeValue);
+        }
+        Index index = this.attributeValueIndex;
+        if (index == null || index.size != listAttributeValues.size()) {
+            index = new Index(listAttributeValues);
+            this.attributeValueIndex = index;
+        }
+        return index.attributeValues.contains(attributeValue);
     }
 
     /**
@@ -158,6 +158,16 @@ public class Match extends PolicyComponent implements Matchable {
 
     }
 
+    /**
+     * Determines whether a {@link TargetIndex} may decide from its literal value alone that it does not
+     * match. Subclasses that change how it is matched must return false.
+     *
+     * @return true if this <code>Match</code> can be indexed
+     */
+    public boolean isIndexable() {
+        return true;
+    }
+
     @Override
     public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
         if (!this.validate()) {
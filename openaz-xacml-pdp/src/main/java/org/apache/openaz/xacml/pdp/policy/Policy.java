@@ -57,6 +57,7 @@ public class Policy extends PolicyDef {
     private VariableMap variableMap = new VariableMap();
     private List<Rule> rules = new ArrayList<Rule>();
     private List<CombiningElement<Rule>> combiningRules;
+    private volatile TargetIndex<CombiningElement<Rule>> ruleIndex;
     private CombiningAlgorithm<Rule> ruleCombiningAlgorithm;
 
     @Override
@@ -91,6 +92,27 @@ public class Policy extends PolicyDef {
         return this.combiningRules;
     }
 
+    /**
+     * Performs lazy creation of the {@link TargetIndex} over the <code>Target</code>s of the
+     * <code>Rule</code>s in this <code>Policy</code>.
+     *
+     * @return the <code>TargetIndex</code> for the <code>CombiningElement</code>s of all of the
+     *         <code>Rule</code>s
+     */
+    protected TargetIndex<CombiningElement<Rule>> getRuleIndex() {
+        TargetIndex<CombiningElement<Rule>> thisRuleIndex = this.ruleIndex;
+        if (thisRuleIndex == null) {
+            List<CombiningElement<Rule>> listCombiningRules = this.getCombiningRules();
+            List<Target> listTargets = new ArrayList<Target>(listCombiningRules.size());
+            for (CombiningElement<Rule> combiningRule : listCombiningRules) {
+                listTargets.add(TargetIndex.getTarget(combiningRule.getEvaluatable()));
+            }
+            thisRuleIndex = new TargetIndex<CombiningElement<Rule>>(listCombiningRules, listTargets);
+            this.ruleIndex = thisRuleIndex;
+        }
+        return thisRuleIndex;
+    }
+
     public Policy(PolicySet policySetParent, StatusCode statusCodeIn, String statusMessageIn) {
         super(policySetParent, statusCodeIn, statusMessageIn);
     }
@@ -297,9 +319,11 @@ public class Policy extends PolicyDef {
         }
 
         /*
-         * Get the combining elements
+         * Get the combining elements whose targets may match. The Rules that are skipped would not match
+         * and so would be NotApplicable.
          */
-        List<CombiningElement<Rule>> ruleCombiningElements = this.getCombiningRules();
+        List<CombiningElement<Rule>> ruleCombiningElements = this.getRuleIndex()
+            .getCandidates(evaluationContext);
         assert ruleCombiningElements != null;
 
         /*
@@ -0,0 +1,346 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.pdp.policy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.policy.expressions.Apply;
+import org.apache.openaz.xacml.pdp.policy.expressions.AttributeValueExpression;
+import org.apache.openaz.xacml.pdp.policy.expressions.CompiledApply;
+import org.apache.openaz.xacml.pdp.policy.expressions.ConstantExpression;
+import org.apache.openaz.xacml.pdp.policy.expressions.Function;
+import org.apache.openaz.xacml.pdp.std.functions.FunctionDefinitionAccessPermitted;
+import org.apache.openaz.xacml.pdp.std.functions.FunctionDefinitionBase;
+import org.apache.openaz.xacml.pdp.std.functions.FunctionDefinitionXPath;
+import org.apache.openaz.xacml.std.datatypes.DataTypeBoolean;
+import org.apache.openaz.xacml.util.FactoryException;
+
+/**
+ * PolicyCompiler walks a loaded {@link PolicyDef} tree and replaces each interpreted
+ * {@link org.apache.openaz.xacml.pdp.policy.expressions.Apply} found in <code>Condition</code>s,
+ * <code>VariableDefinition</code>s and <code>AttributeAssignmentExpression</code>s with a
+ * {@link org.apache.openaz.xacml.pdp.policy.expressions.CompiledApply}. Any <code>Apply</code> that cannot
+ * be compiled, including sub-classes that override <code>evaluate</code>, is left in place and evaluated as
+ * before.
+ * <p>
+ * Before compiling, <code>Apply</code> expressions whose arguments are all constant and whose function comes
+ * from the standard function library are evaluated once and replaced with their result, and constant
+ * operands of <code>and</code> and <code>or</code> that cannot change the outcome are removed. Functions that
+ * read the <code>EvaluationContext</code>, and results that are not OK, are never folded.
+ * <p>
+ * Only expressions are compiled. <code>Policy</code>, <code>Rule</code> and <code>Condition</code> nodes keep
+ * their own classes: each already has a single <code>evaluate</code> implementation, and the
+ * <code>Target</code>s above them are narrowed by {@link TargetIndex} instead.
+ */
+public class PolicyCompiler {
+    private Log logger = LogFactory.getLog(this.getClass());
+    private int compiledCount;
+    private int foldedCount;
+
+    public PolicyCompiler() {
+    }
+
+    /**
+     * Gets the number of <code>Apply</code> expressions compiled by this <code>PolicyCompiler</code>.
+     *
+     * @return the number of <code>Apply</code> expressions compiled
+     */
+    public int getCompiledCount() {
+        return this.compiledCount;
+    }
+
+    /**
+     * Gets the number of expressions folded into constants or removed as constant operands by this
+     * <code>PolicyCompiler</code>.
+     *
+     * @return the number of expressions folded
+     */
+    public int getFoldedCount() {
+        return this.foldedCount;
+    }
+
+    /**
+     * Compiles the expressions in the given <code>PolicyDef</code> and all of its children in place.
+     *
+     * @param policyDef the <code>PolicyDef</code> to compile
+     * @return the given <code>PolicyDef</code>
+     */
+    public PolicyDef compile(PolicyDef policyDef) {
+        if (policyDef instanceof Policy) {
+            this.compilePolicy((Policy)policyDef);
+        } else if (policyDef instanceof PolicySet) {
+            this.compilePolicySet((PolicySet)policyDef);
+        }
+        if (this.logger.isDebugEnabled() && policyDef != null) {
+            this.logger.debug("Compiled " + this.compiledCount + " Apply expressions and folded "
+                              + this.foldedCount + " constant expressions in " + policyDef.getIdentifier());
+        }
+        return policyDef;
+    }
+
+    protected void compilePolicySet(PolicySet policySet) {
+        Iterator<PolicySetChild> iterChildren = policySet.getChildren();
+        if (iterChildren != null) {
+            while (iterChildren.hasNext()) {
+                PolicySetChild policySetChild = iterChildren.next();
+                if (policySetChild instanceof Policy) {
+                    this.compilePolicy((Policy)policySetChild);
+                } else if (policySetChild instanceof PolicySet) {
+                    this.compilePolicySet((PolicySet)policySetChild);
+                }
+            }
+        }
+        this.compileObligationExpressions(policySet.getObligationExpressions());
+        this.compileAdviceExpressions(policySet.getAdviceExpressions());
+    }
+
+    protected void compilePolicy(Policy policy) {
+        Iterator<VariableDefinition> iterVariableDefinitions = policy.getVariableDefinitions();
+        if (iterVariableDefinitions != null) {
+            while (iterVariableDefinitions.hasNext()) {
+                VariableDefinition variableDefinition = iterVariableDefinitions.next();
+                variableDefinition.setExpression(this.compile(variableDefinition.getExpression()));
+            }
+        }
+        Iterator<Rule> iterRules = policy.getRules();
+        if (iterRules != null) {
+            while (iterRules.hasNext()) {
+                Rule rule = iterRules.next();
+                Condition condition = rule.getCondition();
+                if (condition != null) {
+                    condition.setExpression(this.compile(condition.getExpression()));
+                }
+                this.compileObligationExpressions(rule.getObligationExpressions());
+                this.compileAdviceExpressions(rule.getAdviceExpressions());
+            }
+        }
+        this.compileObligationExpressions(policy.getObligationExpressions());
+        this.compileAdviceExpressions(policy.getAdviceExpressions());
+    }
+
+    protected void compileObligationExpressions(Iterator<ObligationExpression> iterObligationExpressions) {
+        if (iterObligationExpressions != null) {
+            while (iterObligationExpressions.hasNext()) {
+                this.compileAttributeAssignmentExpressions(iterObligationExpressions.next()
+                    .getAttributeAssignmentExpressions());
+            }
+        }
+    }
+
+    protected void compileAdviceExpressions(Iterator<AdviceExpression> iterAdviceExpressions) {
+        if (iterAdviceExpressions != null) {
+            while (iterAdviceExpressions.hasNext()) {
+                this.compileAttributeAssignmentExpressions(iterAdviceExpressions.next()
+                    .getAttributeAssignmentExpressions());
+            }
+        }
+    }
+
+    protected void compileAttributeAssignmentExpressions(Iterator<AttributeAssignmentExpression> iterAttributeAssignmentExpressions) {
+        if (iterAttributeAssignmentExpressions != null) {
+            while (iterAttributeAssignmentExpressions.hasNext()) {
+                AttributeAssignmentExpression attributeAssignmentExpression = iterAttributeAssignmentExpressions
+                    .next();
+                attributeAssignmentExpression.setExpression(this.compile(attributeAssignmentExpression
+                    .getExpression()));
+            }
+        }
+    }
+
+    /**
+     * Compiles the given <code>Expression</code>, returning either a compiled equivalent or the original
+     * <code>Expression</code>.
+     *
+     * @param expression the <code>Expression</code> to compile
+     * @return the compiled <code>Expression</code> or the given <code>Expression</code>
+     */
+    public Expression compile(Expression expression) {
+        if (!(expression instanceof Apply) || expression instanceof CompiledApply) {
+            return expression;
+        }
+        Apply apply = (Apply)expression;
+        if (!isInterpretedApply(apply)) {
+            return expression;
+        }
+
+        List<Expression> listArguments = new ArrayList<Expression>();
+        Iterator<Expression> iterArguments = apply.getArguments();
+        while (iterArguments.hasNext()) {
+            listArguments.add(this.compile(iterArguments.next()));
+        }
+        Expression expressionFolded = this.simplifyLogical(apply, listArguments);
+        if (expressionFolded == null) {
+            expressionFolded = this.fold(apply, listArguments);
+        }
+        if (expressionFolded != null) {
+            this.foldedCount++;
+            return expressionFolded;
+        }
+        CompiledApply compiledApply = CompiledApply.newInstance(apply, listArguments);
+        if (compiledApply == null) {
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug("Leaving Apply " + apply.getFunctionId() + " interpreted");
+            }
+            apply.setArguments(listArguments);
+            return apply;
+        }
+        this.compiledCount++;
+        return compiledApply;
+    }
+
+    /**
+     * Removes the constant operands of an <code>and</code> or <code>or</code> that cannot change its result.
+     * Arguments are evaluated in order, so operands equal to the identity of the function are dropped and
+     * any operands following a constant that decides the result are never reached and are dropped as well.
+     *
+     * @param apply the <code>Apply</code> being compiled
+     * @param listArguments the compiled arguments of the <code>Apply</code>, updated in place
+     * @return a constant <code>Expression</code> if the result is known, else null
+     */
+    protected Expression simplifyLogical(Apply apply, List<Expression> listArguments) {
+        boolean isAnd = XACML3.ID_FUNCTION_AND.equals(apply.getFunctionId());
+        if (!isAnd && !XACML3.ID_FUNCTION_OR.equals(apply.getFunctionId())) {
+            return null;
+        }
+        List<Expression> listSimplified = new ArrayList<Expression>();
+        for (Expression argument : listArguments) {
+            Boolean constant = getBooleanConstant(argument);
+            if (constant == null) {
+                listSimplified.add(argument);
+            } else if (constant.booleanValue() != isAnd) {
+                listSimplified.add(argument);
+                break;
+            }
+        }
+        this.foldedCount += listArguments.size() - listSimplified.size();
+        listArguments.clear();
+        listArguments.addAll(listSimplified);
+        if (listArguments.size() == 0) {
+            return newBooleanConstant(isAnd);
+        } else if (getBooleanConstant(listArguments.get(0)) != null) {
+            return newBooleanConstant(!isAnd);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates the given <code>Apply</code> if all of its arguments are constant.
+     *
+     * @param apply the <code>Apply</code> being compiled
+     * @param listArguments the compiled arguments of the <code>Apply</code>
+     * @return an <code>Expression</code> holding the result or null if the <code>Apply</code> cannot be
+     *         folded
+     */
+    protected Expression fold(Apply apply, List<Expression> listArguments) {
+        FunctionDefinition functionDefinition = apply.getFunctionDefinition();
+        if (!isFoldable(functionDefinition)) {
+            return null;
+        }
+        for (Expression argument : listArguments) {
+            if (!isConstant(argument)) {
+                return null;
+            }
+        }
+        ExpressionResult expressionResult = null;
+        try {
+            /*
+             * Constant expressions do not use the EvaluationContext, and neither do the foldable functions
+             */
+            List<FunctionArgument> listFunctionArguments = new ArrayList<FunctionArgument>();
+            for (Expression argument : listArguments) {
+                listFunctionArguments.add(argument.evaluate(null, null));
+            }
+            expressionResult = functionDefinition.evaluate(null, listFunctionArguments);
+        } catch (Exception ex) {
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug("Exception folding Apply " + apply.getFunctionId() + ": " + ex.getMessage());
+            }
+            return null;
+        }
+        if (expressionResult == null || !expressionResult.isOk()) {
+            return null;
+        } else if (expressionResult.isBag()) {
+            return new ConstantExpression(expressionResult);
+        } else if (expressionResult.getValue() != null) {
+            return new AttributeValueExpression(expressionResult.getValue());
+        } else {
+            return null;
+        }
+    }
+
+    private static boolean isConstant(Expression expression) {
+        if (expression instanceof AttributeValueExpression) {
+            return ((AttributeValueExpression)expression).getAttributeValue() != null;
+        } else if (expression instanceof ConstantExpression) {
+            return ((ConstantExpression)expression).getExpressionResult() != null;
+        } else if (expression instanceof Function) {
+            Identifier functionId = ((Function)expression).getFunctionId();
+            try {
+                return functionId != null
+                       && isFoldable(FunctionDefinitionFactory.newInstance().getFunctionDefinition(functionId));
+            } catch (FactoryException ex) {
+                return false;
+            }
+        } else {
+            return false;
+        }
+    }
+
+    private static boolean isFoldable(FunctionDefinition functionDefinition) {
+        return functionDefinition != null
+               && !(functionDefinition instanceof FunctionDefinitionAccessPermitted)
+               && !(functionDefinition instanceof FunctionDefinitionXPath)
+               && functionDefinition.getClass().getName()
+                   .startsWith(FunctionDefinitionBase.class.getPackage().getName() + ".");
+    }
+
+    private static Boolean getBooleanConstant(Expression expression) {
+        if (expression instanceof AttributeValueExpression) {
+            AttributeValue<?> attributeValue = ((AttributeValueExpression)expression).getAttributeValue();
+            if (attributeValue != null && XACML3.ID_DATATYPE_BOOLEAN.equals(attributeValue.getDataTypeId())
+                && attributeValue.getValue() instanceof Boolean) {
+                return (Boolean)attributeValue.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Expression newBooleanConstant(boolean value) {
+        return new AttributeValueExpression(value ? DataTypeBoolean.AV_TRUE : DataTypeBoolean.AV_FALSE);
+    }
+
+    private static boolean isInterpretedApply(Apply apply) {
+        try {
+            return apply.getClass().getMethod("evaluate", EvaluationContext.class, PolicyDefaults.class)
+                .getDeclaringClass() == Apply.class;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+}
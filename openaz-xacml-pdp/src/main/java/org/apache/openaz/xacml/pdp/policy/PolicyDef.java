@@ -504,6 +504,16 @@ public abstract class PolicyDef extends PolicySetChild {
         return stringBuilder.toString();
     }
 
+    /**
+     * Determines whether a {@link TargetIndex} may decide from the literal values in its <code>Target</code>
+     * that it does not apply. Subclasses that change how it is matched or evaluated must return false.
+     *
+     * @return true if this <code>PolicyDef</code> can be indexed
+     */
+    public boolean isIndexable() {
+        return true;
+    }
+
     @Override
     public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
         if (!this.validate()) {
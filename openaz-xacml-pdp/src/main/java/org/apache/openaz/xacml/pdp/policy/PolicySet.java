@@ -56,6 +56,7 @@ public class PolicySet extends PolicyDef {
     private TargetedCombinerParameterMap<Identifier, PolicySetChild> policyCombinerParameters = new TargetedCombinerParameterMap<Identifier, PolicySetChild>();
     private List<PolicySetChild> children;
     private List<CombiningElement<PolicySetChild>> combiningPolicies;
+    private volatile TargetIndex<CombiningElement<PolicySetChild>> policyIndex;
     private CombiningAlgorithm<PolicySetChild> combiningAlgorithm;
 
     private void ensureChildren() {
@@ -86,6 +87,27 @@ public class PolicySet extends PolicyDef {
         return this.combiningPolicies;
     }
 
+    /**
+     * Performs lazy creation of the {@link TargetIndex} over the <code>Target</code>s of the children of
+     * this <code>PolicySet</code>.
+     *
+     * @return the <code>TargetIndex</code> for the <code>CombiningElement</code>s of all of the children
+     */
+    protected TargetIndex<CombiningElement<PolicySetChild>> getPolicyIndex() {
+        TargetIndex<CombiningElement<PolicySetChild>> thisPolicyIndex = this.policyIndex;
+        if (thisPolicyIndex == null) {
+            List<CombiningElement<PolicySetChild>> listCombiningPolicies = this.getCombiningPolicies();
+            List<Target> listTargets = new ArrayList<Target>(listCombiningPolicies.size());
+            for (CombiningElement<PolicySetChild> combiningPolicy : listCombiningPolicies) {
+                listTargets.add(TargetIndex.getChildTarget(combiningPolicy.getEvaluatable()));
+            }
+            thisPolicyIndex = new TargetIndex<CombiningElement<PolicySetChild>>(listCombiningPolicies,
+                                                                                listTargets);
+            this.policyIndex = thisPolicyIndex;
+        }
+        return thisPolicyIndex;
+    }
+
     @Override
     protected boolean validateComponent() {
         if (super.validateComponent()) {
@@ -219,9 +241,11 @@ public class PolicySet extends PolicyDef {
         }
 
         /*
-         * Get the combining elements
+         * Get the combining elements whose targets may match. The children that are skipped would not match
+         * and so would be NotApplicable.
          */
-        List<CombiningElement<PolicySetChild>> listCombiningElements = this.getCombiningPolicies();
+        List<CombiningElement<PolicySetChild>> listCombiningElements = this.getPolicyIndex()
+            .getCandidates(evaluationContext);
         assert listCombiningElements != null;
 
         /*
@@ -0,0 +1,173 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.pdp.policy;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.pdp.policy.expressions.Apply;
+import org.apache.openaz.xacml.pdp.policy.expressions.AttributeDesignator;
+import org.apache.openaz.xacml.std.pip.StdPIPRequest;
+
+/**
+ * RequiredAttributeAnalyzer walks {@link PolicyDef} trees and collects a {@link PIPRequest} for every
+ * {@link org.apache.openaz.xacml.pdp.policy.expressions.AttributeDesignator} found in their
+ * <code>Target</code>s, <code>Condition</code>s, <code>VariableDefinition</code>s and
+ * <code>AttributeAssignmentExpression</code>s. The result is the set of attributes an evaluation of those
+ * policies may ask for. <code>AttributeSelector</code>s are not followed, and policies that are only
+ * referenced by id are followed when <code>getReferencedPolicyDef</code> can resolve them.
+ */
+public class RequiredAttributeAnalyzer {
+    private Set<PIPRequest> requiredAttributes = new LinkedHashSet<PIPRequest>();
+    private Set<PolicyDef> analyzedPolicyDefs = Collections
+        .newSetFromMap(new IdentityHashMap<PolicyDef, Boolean>());
+
+    public RequiredAttributeAnalyzer() {
+    }
+
+    /**
+     * Gets the <code>PIPRequest</code>s collected so far, in the order they were first found.
+     *
+     * @return an unmodifiable <code>Set</code> of <code>PIPRequest</code>s
+     */
+    public Set<PIPRequest> getRequiredAttributes() {
+        return Collections.unmodifiableSet(this.requiredAttributes);
+    }
+
+    /**
+     * Adds the attributes used by the given <code>PolicyDef</code> and all of its children. A
+     * <code>PolicyDef</code> that has already been analyzed is skipped.
+     *
+     * @param policyDef the <code>PolicyDef</code> to analyze
+     */
+    public void analyze(PolicyDef policyDef) {
+        if (policyDef == null || !this.analyzedPolicyDefs.add(policyDef)) {
+            return;
+        }
+        this.analyzeTarget(policyDef.getTarget());
+        if (policyDef instanceof Policy) {
+            this.analyzePolicy((Policy)policyDef);
+        } else if (policyDef instanceof PolicySet) {
+            Iterator<PolicySetChild> iterChildren = ((PolicySet)policyDef).getChildren();
+            if (iterChildren != null) {
+                while (iterChildren.hasNext()) {
+                    PolicySetChild policySetChild = iterChildren.next();
+                    if (policySetChild instanceof PolicyDef) {
+                        this.analyze((PolicyDef)policySetChild);
+                    } else if (policySetChild instanceof PolicyIdReferenceBase) {
+                        this.analyze(this.getReferencedPolicyDef((PolicyIdReferenceBase<?>)policySetChild));
+                    }
+                }
+            }
+        }
+        this.analyzeObligationExpressions(policyDef.getObligationExpressions());
+        this.analyzeAdviceExpressions(policyDef.getAdviceExpressions());
+    }
+
+    /**
+     * Gets the <code>PolicyDef</code> a <code>PolicyIdReference</code> or <code>PolicySetIdReference</code>
+     * refers to. This implementation only returns a referencee that has already been resolved.
+     *
+     * @param policyIdReference the reference
+     * @return the referenced <code>PolicyDef</code> or null if it is not known
+     */
+    protected PolicyDef getReferencedPolicyDef(PolicyIdReferenceBase<?> policyIdReference) {
+        return policyIdReference.getReferencee();
+    }
+
+    protected void analyzePolicy(Policy policy) {
+        Iterator<VariableDefinition> iterVariableDefinitions = policy.getVariableDefinitions();
+        if (iterVariableDefinitions != null) {
+            while (iterVariableDefinitions.hasNext()) {
+                this.analyzeExpression(iterVariableDefinitions.next().getExpression());
+            }
+        }
+        Iterator<Rule> iterRules = policy.getRules();
+        if (iterRules != null) {
+            while (iterRules.hasNext()) {
+                Rule rule = iterRules.next();
+                this.analyzeTarget(rule.getTarget());
+                if (rule.getCondition() != null) {
+                    this.analyzeExpression(rule.getCondition().getExpression());
+                }
+                this.analyzeObligationExpressions(rule.getObligationExpressions());
+                this.analyzeAdviceExpressions(rule.getAdviceExpressions());
+            }
+        }
+    }
+
+    protected void analyzeTarget(Target target) {
+        if (target == null) {
+            return;
+        }
+        Iterator<AnyOf> iterAnyOfs = target.getAnyOfs();
+        while (iterAnyOfs != null && iterAnyOfs.hasNext()) {
+            Iterator<AllOf> iterAllOfs = iterAnyOfs.next().getAllOfs();
+            while (iterAllOfs != null && iterAllOfs.hasNext()) {
+                Iterator<Match> iterMatches = iterAllOfs.next().getMatches();
+                while (iterMatches != null && iterMatches.hasNext()) {
+                    this.analyzeExpression(iterMatches.next().getAttributeRetrievalBase());
+                }
+            }
+        }
+    }
+
+    protected void analyzeObligationExpressions(Iterator<ObligationExpression> iterObligationExpressions) {
+        while (iterObligationExpressions != null && iterObligationExpressions.hasNext()) {
+            this.analyzeAttributeAssignmentExpressions(iterObligationExpressions.next()
+                .getAttributeAssignmentExpressions());
+        }
+    }
+
+    protected void analyzeAdviceExpressions(Iterator<AdviceExpression> iterAdviceExpressions) {
+        while (iterAdviceExpressions != null && iterAdviceExpressions.hasNext()) {
+            this.analyzeAttributeAssignmentExpressions(iterAdviceExpressions.next()
+                .getAttributeAssignmentExpressions());
+        }
+    }
+
+    protected void analyzeAttributeAssignmentExpressions(Iterator<AttributeAssignmentExpression> iterAttributeAssignmentExpressions) {
+        while (iterAttributeAssignmentExpressions != null && iterAttributeAssignmentExpressions.hasNext()) {
+            this.analyzeExpression(iterAttributeAssignmentExpressions.next().getExpression());
+        }
+    }
+
+    protected void analyzeExpression(Expression expression) {
+        if (expression instanceof AttributeDesignator) {
+            AttributeDesignator attributeDesignator = (AttributeDesignator)expression;
+            if (attributeDesignator.getCategory() != null && attributeDesignator.getAttributeId() != null
+                && attributeDesignator.getDataTypeId() != null) {
+                this.requiredAttributes.add(new StdPIPRequest(attributeDesignator.getCategory(),
+                                                              attributeDesignator.getAttributeId(),
+                                                              attributeDesignator.getDataTypeId(),
+                                                              attributeDesignator.getIssuer()));
+            }
+        } else if (expression instanceof Apply) {
+            Iterator<Expression> iterArguments = ((Apply)expression).getArguments();
+            while (iterArguments != null && iterArguments.hasNext()) {
+                this.analyzeExpression(iterArguments.next());
+            }
+        }
+    }
+}
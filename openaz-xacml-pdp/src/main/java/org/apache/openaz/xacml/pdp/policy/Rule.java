@@ -240,6 +240,16 @@ public class Rule extends PolicyComponent implements Matchable, Evaluatable, Tra
         return evaluationResult;
     }
 
+    /**
+     * Determines whether a {@link TargetIndex} may decide from the literal values in its <code>Target</code>
+     * that it does not apply. Subclasses that change how it is matched or evaluated must return false.
+     *
+     * @return true if this <code>Rule</code> can be indexed
+     */
+    public boolean isIndexable() {
+        return true;
+    }
+
     @Override
     public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
         if (!this.validate()) {
@@ -113,6 +113,16 @@ public class Target extends PolicyComponent implements Matchable {
         listAnyOfs.addAll(anyOfsIn);
     }
 
+    /**
+     * Determines whether a {@link TargetIndex} may decide from the literal values of its <code>Match</code>es
+     * that it does not match. Subclasses that change how it is matched must return false.
+     *
+     * @return true if this <code>Target</code> can be indexed
+     */
+    public boolean isIndexable() {
+        return true;
+    }
+
     @Override
     public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
         if (!this.validate()) {
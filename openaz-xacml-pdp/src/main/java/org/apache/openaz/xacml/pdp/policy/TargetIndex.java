@@ -0,0 +1,367 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.pdp.policy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.eval.EvaluationException;
+import org.apache.openaz.xacml.pdp.policy.expressions.AttributeDesignator;
+import org.apache.openaz.xacml.std.pip.StdPIPRequest;
+import org.apache.openaz.xacml.std.pip.engines.RequestEngine;
+import org.apache.openaz.xacml.util.ObjUtil;
+
+/**
+ * TargetIndex is an inverted index from the literal values of equality {@link Match}es in a list of
+ * {@link Target}s to the elements owning those <code>Target</code>s. It is used to avoid calling
+ * <code>match</code> or <code>evaluate</code> on elements whose <code>Target</code> cannot match a request.
+ * <p>
+ * An element is indexed by the first <code>AnyOf</code> of its <code>Target</code> if every
+ * <code>AllOf</code> in it contains a string, boolean, integer or anyURI equality <code>Match</code> against
+ * an <code>AttributeDesignator</code>. Such an element can only match if the designator returns one of the
+ * literal values, and otherwise its <code>Target</code> would return NotMatch. All other elements are always
+ * returned as candidates. Candidates are returned in the order the elements were given. Only classes whose
+ * <code>isIndexable</code> returns true are indexed, so subclasses that evaluate differently are left alone.
+ *
+ * @param <T> the type of the elements owning the <code>Target</code>s
+ */
+public class TargetIndex<T> {
+    private static final Map<Identifier, Identifier> INDEXABLE_FUNCTIONS =
+        new HashMap<Identifier, Identifier>();
+    static {
+        INDEXABLE_FUNCTIONS.put(XACML3.ID_FUNCTION_STRING_EQUAL, XACML3.ID_DATATYPE_STRING);
+        INDEXABLE_FUNCTIONS.put(XACML3.ID_FUNCTION_BOOLEAN_EQUAL, XACML3.ID_DATATYPE_BOOLEAN);
+        INDEXABLE_FUNCTIONS.put(XACML3.ID_FUNCTION_INTEGER_EQUAL, XACML3.ID_DATATYPE_INTEGER);
+        INDEXABLE_FUNCTIONS.put(XACML3.ID_FUNCTION_ANYURI_EQUAL, XACML3.ID_DATATYPE_ANYURI);
+    }
+
+    /*
+     * Identifies the attribute retrieved by an AttributeDesignator. Designators with equal keys return the
+     * same bag for a given request.
+     */
+    private static class DesignatorKey {
+        private PIPRequest pipRequest;
+        private Boolean mustBePresent;
+
+        public DesignatorKey(AttributeDesignator attributeDesignator) {
+            this.pipRequest = new StdPIPRequest(attributeDesignator.getCategory(),
+                                                attributeDesignator.getAttributeId(),
+                                                attributeDesignator.getDataTypeId(),
+                                                attributeDesignator.getIssuer());
+            this.mustBePresent = attributeDesignator.getMustBePresent();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.pipRequest.hashCode()
+                   + (this.mustBePresent == null ? 0 : this.mustBePresent.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (!(obj instanceof DesignatorKey)) {
+                return false;
+            } else {
+                DesignatorKey designatorKey = (DesignatorKey)obj;
+                return this.pipRequest.equals(designatorKey.pipRequest)
+                       && ObjUtil.equalsAllowNull(this.mustBePresent, designatorKey.mustBePresent);
+            }
+        }
+    }
+
+    /*
+     * All of the indexed elements that test the value of a single attribute
+     */
+    private static class DesignatorEntry {
+        private AttributeDesignator attributeDesignator;
+        private PolicyDefaults policyDefaults;
+        private PIPRequest pipRequest;
+        private BitSet elements = new BitSet();
+        private Map<Object, BitSet> mapValueElements = new HashMap<Object, BitSet>();
+
+        public DesignatorEntry(AttributeDesignator attributeDesignatorIn, PolicyDefaults policyDefaultsIn,
+                               PIPRequest pipRequestIn) {
+            this.attributeDesignator = attributeDesignatorIn;
+            this.policyDefaults = policyDefaultsIn;
+            this.pipRequest = pipRequestIn;
+        }
+
+        public void add(Object value, int element) {
+            this.elements.set(element);
+            BitSet valueElements = this.mapValueElements.get(value);
+            if (valueElements == null) {
+                valueElements = new BitSet();
+                this.mapValueElements.put(value, valueElements);
+            }
+            valueElements.set(element);
+        }
+
+        public void addCandidates(BitSet candidates, AttributeValue<?> attributeValue) {
+            if (attributeValue != null) {
+                BitSet valueElements = this.mapValueElements.get(attributeValue.getValue());
+                if (valueElements != null) {
+                    candidates.or(valueElements);
+                }
+            }
+        }
+
+        public void addCandidates(EvaluationContext evaluationContext, RequestEngine requestEngine,
+                                  BitSet candidates) {
+            if (!requestEngine.hasAttributes(this.pipRequest)) {
+                /*
+                 * Getting the attribute could mean asking a PIP, which the elements may never need to do, so
+                 * let the elements evaluate themselves
+                 */
+                candidates.or(this.elements);
+                return;
+            }
+            ExpressionResult expressionResult = null;
+            try {
+                expressionResult = this.attributeDesignator.evaluate(evaluationContext, this.policyDefaults);
+            } catch (EvaluationException ex) {
+                expressionResult = null;
+            }
+            if (expressionResult == null || !expressionResult.isOk()) {
+                /*
+                 * The Match would not be NoMatch, so let the elements evaluate themselves
+                 */
+                candidates.or(this.elements);
+            } else if (expressionResult.isBag()) {
+                Bag bag = expressionResult.getBag();
+                if (bag != null) {
+                    Iterator<AttributeValue<?>> iterAttributeValues = bag.getAttributeValues();
+                    while (iterAttributeValues.hasNext()) {
+                        this.addCandidates(candidates, iterAttributeValues.next());
+                    }
+                }
+            } else {
+                this.addCandidates(candidates, expressionResult.getValue());
+            }
+        }
+    }
+
+    private List<T> elements;
+    private BitSet unindexedElements = new BitSet();
+    private Map<DesignatorKey, DesignatorEntry> mapDesignatorEntries =
+        new LinkedHashMap<DesignatorKey, DesignatorEntry>();
+
+    /**
+     * Gets the <code>AttributeDesignator</code> for the given <code>Match</code>, if it is an equality
+     * test of a literal against an <code>AttributeDesignator</code>.
+     *
+     * @param match the <code>Match</code> to examine
+     * @return the <code>AttributeDesignator</code> of the <code>Match</code> or null if it cannot be indexed
+     */
+    private static AttributeDesignator getIndexableDesignator(Match match) {
+        if (!match.isIndexable() || !match.validate()) {
+            return null;
+        }
+        Identifier dataTypeId = INDEXABLE_FUNCTIONS.get(match.getMatchId());
+        if (dataTypeId == null) {
+            return null;
+        }
+        AttributeValue<?> attributeValue = match.getAttributeValue();
+        if (attributeValue == null || attributeValue.getValue() == null
+            || !dataTypeId.equals(attributeValue.getDataTypeId())) {
+            return null;
+        }
+        if (!(match.getAttributeRetrievalBase() instanceof AttributeDesignator)) {
+            return null;
+        }
+        AttributeDesignator attributeDesignator = (AttributeDesignator)match.getAttributeRetrievalBase();
+        if (!attributeDesignator.isIndexable() || !attributeDesignator.validate()
+            || !dataTypeId.equals(attributeDesignator.getDataTypeId())) {
+            return null;
+        }
+        return attributeDesignator;
+    }
+
+    /**
+     * Gets the indexable <code>Match</code>es for the given <code>Target</code>: one from each
+     * <code>AllOf</code> of its first <code>AnyOf</code>.
+     *
+     * @param target the <code>Target</code> to examine
+     * @return the <code>List</code> of indexable <code>Match</code>es or null if the <code>Target</code>
+     *         cannot be indexed
+     */
+    private static List<Match> getIndexableMatches(Target target) {
+        if (target == null || !target.isIndexable() || !target.validate()) {
+            return null;
+        }
+        Iterator<AnyOf> iterAnyOfs = target.getAnyOfs();
+        if (iterAnyOfs == null || !iterAnyOfs.hasNext()) {
+            return null;
+        }
+        AnyOf anyOf = iterAnyOfs.next();
+        if (!anyOf.isIndexable() || !anyOf.validate()) {
+            return null;
+        }
+
+        List<Match> listMatches = new ArrayList<Match>();
+        Iterator<AllOf> iterAllOfs = anyOf.getAllOfs();
+        while (iterAllOfs.hasNext()) {
+            AllOf allOf = iterAllOfs.next();
+            if (!allOf.isIndexable() || !allOf.validate()) {
+                return null;
+            }
+            Match matchIndexable = null;
+            Iterator<Match> iterMatches = allOf.getMatches();
+            while (matchIndexable == null && iterMatches.hasNext()) {
+                Match match = iterMatches.next();
+                if (getIndexableDesignator(match) != null) {
+                    matchIndexable = match;
+                }
+            }
+            if (matchIndexable == null) {
+                return null;
+            }
+            listMatches.add(matchIndexable);
+        }
+        return listMatches;
+    }
+
+    /**
+     * Gets the <code>Target</code> to index for the given root <code>PolicyDef</code>.
+     *
+     * @param policyDef the <code>PolicyDef</code>
+     * @return the <code>Target</code> of the <code>PolicyDef</code> or null if it must always be matched
+     */
+    public static Target getTarget(PolicyDef policyDef) {
+        if (!policyDef.isIndexable() || !policyDef.validate()) {
+            return null;
+        }
+        return policyDef.getTarget();
+    }
+
+    /**
+     * Gets the <code>Target</code> to index for the given child of a <code>PolicySet</code>. Children that
+     * are not <code>Policy</code> or <code>PolicySet</code> instances are always evaluated.
+     *
+     * @param policySetChild the <code>PolicySetChild</code>
+     * @return the <code>Target</code> of the <code>PolicySetChild</code> or null if it must always be
+     *         evaluated
+     */
+    public static Target getChildTarget(PolicySetChild policySetChild) {
+        if (!(policySetChild instanceof PolicyDef)) {
+            return null;
+        }
+        return getTarget((PolicyDef)policySetChild);
+    }
+
+    /**
+     * Gets the <code>Target</code> to index for the given <code>Rule</code>.
+     *
+     * @param rule the <code>Rule</code>
+     * @return the <code>Target</code> of the <code>Rule</code> or null if it must always be evaluated
+     */
+    public static Target getTarget(Rule rule) {
+        if (!rule.isIndexable() || !rule.validate()) {
+            return null;
+        }
+        return rule.getTarget();
+    }
+
+    /**
+     * Creates a new <code>TargetIndex</code> for the given elements and their <code>Target</code>s. A null
+     * <code>Target</code> marks an element that is always returned as a candidate.
+     *
+     * @param elementsIn the <code>List</code> of elements in their declared order
+     * @param targets the <code>List</code> of <code>Target</code>s for each of the elements
+     */
+    public TargetIndex(List<T> elementsIn, List<Target> targets) {
+        this.elements = Collections.unmodifiableList(new ArrayList<T>(elementsIn));
+        for (int i = 0; i < this.elements.size(); i++) {
+            List<Match> listMatches = getIndexableMatches(targets.get(i));
+            if (listMatches == null) {
+                this.unindexedElements.set(i);
+            } else {
+                for (Match match : listMatches) {
+                    AttributeDesignator attributeDesignator = getIndexableDesignator(match);
+                    DesignatorKey designatorKey = new DesignatorKey(attributeDesignator);
+                    DesignatorEntry designatorEntry = this.mapDesignatorEntries.get(designatorKey);
+                    if (designatorEntry == null) {
+                        designatorEntry = new DesignatorEntry(attributeDesignator, match.getPolicyDefaults(),
+                                                              designatorKey.pipRequest);
+                        this.mapDesignatorEntries.put(designatorKey, designatorEntry);
+                    }
+                    designatorEntry.add(match.getAttributeValue().getValue(), i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of elements in this <code>TargetIndex</code>.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return this.elements.size();
+    }
+
+    /**
+     * Gets the number of elements that are selected through the index rather than always being returned as
+     * candidates.
+     *
+     * @return the number of indexed elements
+     */
+    public int getIndexedCount() {
+        return this.elements.size() - this.unindexedElements.cardinality();
+    }
+
+    /**
+     * Gets the elements whose <code>Target</code>s may match the request in the given
+     * <code>EvaluationContext</code>, in their declared order. Elements that are not returned would not
+     * match. Only attributes that are in the <code>Request</code> itself are used to rule elements out, so
+     * that no PIP is asked for an attribute the elements would not have asked for.
+     *
+     * @param evaluationContext the <code>EvaluationContext</code> to get attribute values from
+     * @return the <code>List</code> of candidate elements
+     */
+    public List<T> getCandidates(EvaluationContext evaluationContext) {
+        if (this.mapDesignatorEntries.isEmpty() || this.elements.size() < 2) {
+            return this.elements;
+        }
+        BitSet candidates = (BitSet)this.unindexedElements.clone();
+        RequestEngine requestEngine = new RequestEngine(evaluationContext.getRequest());
+        for (DesignatorEntry designatorEntry : this.mapDesignatorEntries.values()) {
+            designatorEntry.addCandidates(evaluationContext, requestEngine, candidates);
+        }
+
+        List<T> listCandidates = new ArrayList<T>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            listCandidates.add(this.elements.get(i));
+        }
+        return listCandidates;
+    }
+}
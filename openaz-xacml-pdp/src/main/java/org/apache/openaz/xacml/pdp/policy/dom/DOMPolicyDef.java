@@ -34,6 +34,7 @@ import java.io.File;
 import java.io.InputStream;
 
 import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.pdp.policy.PolicyCompiler;
 import org.apache.openaz.xacml.pdp.policy.PolicyDef;
 import org.apache.openaz.xacml.pdp.policy.PolicySet;
 import org.apache.openaz.xacml.std.dom.DOMStructureException;
@@ -75,6 +76,12 @@ public abstract class DOMPolicyDef {
             } else {
                 throw DOMUtil.newUnexpectedElementException(rootNode);
             }
+
+            /*
+             * Fold constant expressions and resolve functions and literal arguments once, now that the
+             * tree is complete
+             */
+            new PolicyCompiler().compile(policyDef);
         } catch (Exception ex) {
             throw new DOMStructureException("Exception parsing Policy: " + ex.getMessage(), ex);
         }
@@ -42,6 +42,7 @@ import org.apache.openaz.xacml.api.StatusDetail;
 import org.apache.openaz.xacml.api.pip.PIPException;
 import org.apache.openaz.xacml.api.pip.PIPRequest;
 import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.pdp.eval.AttributeBagCache;
 import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
 import org.apache.openaz.xacml.pdp.eval.EvaluationException;
 import org.apache.openaz.xacml.pdp.policy.Bag;
@@ -162,6 +163,17 @@ public class AttributeDesignator extends AttributeRetrievalBase {
         }
     }
 
+    /**
+     * Determines whether a {@link org.apache.openaz.xacml.pdp.policy.TargetIndex} may decide from the values
+     * it returns which <code>Match</code>es against it can succeed. Subclasses that change how it is
+     * evaluated must return false.
+     *
+     * @return true if this <code>AttributeDesignator</code> can be indexed
+     */
+    public boolean isIndexable() {
+        return true;
+    }
+
     @Override
     public ExpressionResult evaluate(EvaluationContext evaluationContext, PolicyDefaults policyDefaults)
         throws EvaluationException {
@@ -175,6 +187,18 @@ public class AttributeDesignator extends AttributeRetrievalBase {
         PIPRequest pipRequest = this.getPIPRequest();
         assert pipRequest != null;
 
+        /*
+         * Reuse the Bag built for the same attributes earlier in this evaluation context
+         */
+        AttributeBagCache attributeBagCache = null;
+        if (evaluationContext instanceof AttributeBagCache) {
+            attributeBagCache = (AttributeBagCache)evaluationContext;
+            Bag bagAttributeValues = attributeBagCache.getAttributeBag(pipRequest);
+            if (bagAttributeValues != null) {
+                return this.getBagResult(bagAttributeValues);
+            }
+        }
+
         /*
          * Query the evaluation context for results
          */
@@ -208,6 +232,13 @@ public class AttributeDesignator extends AttributeRetrievalBase {
                 }
             }
         }
+        if (attributeBagCache != null) {
+            attributeBagCache.putAttributeBag(pipRequest, bagAttributeValues);
+        }
+        return this.getBagResult(bagAttributeValues);
+    }
+
+    private ExpressionResult getBagResult(Bag bagAttributeValues) {
         if (this.getMustBePresent() && bagAttributeValues.size() == 0) {
             return ExpressionResult.newError(new StdStatus(StdStatusCode.STATUS_CODE_MISSING_ATTRIBUTE,
                                                            "Missing required attribute",
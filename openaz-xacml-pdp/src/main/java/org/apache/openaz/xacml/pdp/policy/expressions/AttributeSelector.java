@@ -38,7 +38,6 @@ import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.openaz.xacml.api.Attribute;
 import org.apache.openaz.xacml.api.AttributeValue;
@@ -230,7 +229,7 @@ public class AttributeSelector extends AttributeRetrievalBase {
                     for (Node nodeToQuery : listNodesToQuery) {
                         NodeList nodeList = null;
                         try {
-                            XPath xPath = XPathFactory.newInstance().newXPath();
+                            XPath xPath = DOMUtil.getXPath();
                             xPath
                                 .setNamespaceContext(new NodeNamespaceContext(nodeToQuery.getOwnerDocument()));
                             XPathExpression xPathExpression = xPath.compile(this.getPath());
@@ -0,0 +1,212 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.pdp.policy.expressions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.eval.EvaluationException;
+import org.apache.openaz.xacml.pdp.policy.Expression;
+import org.apache.openaz.xacml.pdp.policy.ExpressionResult;
+import org.apache.openaz.xacml.pdp.policy.FunctionArgument;
+import org.apache.openaz.xacml.pdp.policy.FunctionArgumentAttributeValue;
+import org.apache.openaz.xacml.pdp.policy.FunctionArgumentExpression;
+import org.apache.openaz.xacml.pdp.policy.FunctionDefinition;
+import org.apache.openaz.xacml.pdp.policy.PolicyDefaults;
+import org.apache.openaz.xacml.pdp.std.functions.FunctionDefinitionHomogeneousSimple;
+
+/**
+ * CompiledApply extends {@link Apply} with a form of the XACML Apply Expression element whose
+ * {@link org.apache.openaz.xacml.pdp.policy.FunctionDefinition} and argument list are resolved once instead
+ * of on every call to <code>evaluate</code>. Literal {@link AttributeValueExpression} arguments are bound to a
+ * shared {@link org.apache.openaz.xacml.pdp.policy.FunctionArgumentAttributeValue}, so only the remaining
+ * arguments are wrapped per evaluation, and the argument list passed to the function is reused by each
+ * thread. The compiled form is built on first use and discarded whenever the function or arguments change.
+ * Instances are created through <code>newInstance</code>, which returns null for any <code>Apply</code> that
+ * should stay on the interpreted path.
+ */
+public class CompiledApply extends Apply {
+    private static final Compiled INTERPRETED = new Compiled(null, null, null);
+
+    private static final ThreadLocal<ArgumentStack> argumentStack = new ThreadLocal<ArgumentStack>() {
+        @Override
+        protected ArgumentStack initialValue() {
+            return new ArgumentStack();
+        }
+    };
+
+    private volatile Compiled compiled;
+
+    /*
+     * The resolved form of a CompiledApply. INTERPRETED marks one that has to be evaluated by Apply.
+     */
+    private static class Compiled {
+        private final FunctionDefinition functionDefinition;
+        private final Expression[] expressions;
+        private final FunctionArgument[] constants;
+
+        Compiled(FunctionDefinition functionDefinitionIn, Expression[] expressionsIn,
+                 FunctionArgument[] constantsIn) {
+            this.functionDefinition = functionDefinitionIn;
+            this.expressions = expressionsIn;
+            this.constants = constantsIn;
+        }
+    }
+
+    /*
+     * Argument lists for the CompiledApply evaluations in progress on one thread. Arguments are evaluated
+     * while the enclosing function runs, so each level of nesting gets its own list.
+     */
+    private static class ArgumentStack {
+        private final List<List<FunctionArgument>> listArgumentLists = new ArrayList<List<FunctionArgument>>();
+        private int depth;
+
+        List<FunctionArgument> push() {
+            if (this.depth == this.listArgumentLists.size()) {
+                this.listArgumentLists.add(new ArrayList<FunctionArgument>());
+            }
+            return this.listArgumentLists.get(this.depth++);
+        }
+
+        void pop(List<FunctionArgument> listFunctionArguments) {
+            listFunctionArguments.clear();
+            this.depth--;
+        }
+    }
+
+    protected CompiledApply(Identifier functionIdIn, String descriptionIn,
+                            Collection<Expression> argumentsIn) {
+        super(functionIdIn, descriptionIn, argumentsIn);
+    }
+
+    /**
+     * Creates a <code>CompiledApply</code> equivalent to the given <code>Apply</code> with the given
+     * arguments.
+     *
+     * @param apply the <code>Apply</code> to compile
+     * @param argumentsIn the (possibly already compiled) argument <code>Expression</code>s
+     * @return the new <code>CompiledApply</code> or null if the <code>Apply</code> is not valid, its function
+     *         is unknown, or it has the wrong number of arguments for a fixed arity function
+     */
+    public static CompiledApply newInstance(Apply apply, List<Expression> argumentsIn) {
+        if (!apply.validate()) {
+            return null;
+        }
+        CompiledApply compiledApply = new CompiledApply(apply.getFunctionId(), apply.getDescription(),
+                                                        argumentsIn);
+        return (compiledApply.getCompiled() != INTERPRETED ? compiledApply : null);
+    }
+
+    private Compiled getCompiled() {
+        Compiled thisCompiled = this.compiled;
+        if (thisCompiled == null) {
+            thisCompiled = this.compile();
+            this.compiled = thisCompiled;
+        }
+        return thisCompiled;
+    }
+
+    /**
+     * Resolves the <code>FunctionDefinition</code> and pre-binds the literal arguments.
+     *
+     * @return the compiled form of this <code>CompiledApply</code>, or <code>INTERPRETED</code> if it has to
+     *         be evaluated on the interpreted path
+     */
+    private Compiled compile() {
+        FunctionDefinition functionDefinition = this.getFunctionDefinition();
+        if (functionDefinition == null) {
+            return INTERPRETED;
+        }
+        List<Expression> listExpressions = this.getArgumentList();
+        if (functionDefinition instanceof FunctionDefinitionHomogeneousSimple) {
+            Integer numArgs = ((FunctionDefinitionHomogeneousSimple<?, ?>)functionDefinition).getNumArgs();
+            if (numArgs != null && numArgs.intValue() != listExpressions.size()) {
+                return INTERPRETED;
+            }
+        }
+
+        Expression[] expressions = new Expression[listExpressions.size()];
+        FunctionArgument[] constants = new FunctionArgument[listExpressions.size()];
+        for (int i = 0; i < expressions.length; i++) {
+            Expression expression = listExpressions.get(i);
+            if (expression == null) {
+                return INTERPRETED;
+            }
+            expressions[i] = expression;
+            if (expression.getClass() == AttributeValueExpression.class && expression.validate()) {
+                constants[i] = new FunctionArgumentAttributeValue(((AttributeValueExpression)expression)
+                    .getAttributeValue());
+            }
+        }
+        return new Compiled(functionDefinition, expressions, constants);
+    }
+
+    @Override
+    public void setFunctionId(Identifier identifier) {
+        super.setFunctionId(identifier);
+        this.compiled = null;
+    }
+
+    @Override
+    public void addArgument(Expression expression) {
+        super.addArgument(expression);
+        this.compiled = null;
+    }
+
+    @Override
+    public void addArguments(Collection<Expression> listExpressions) {
+        super.addArguments(listExpressions);
+        this.compiled = null;
+    }
+
+    @Override
+    protected void clearArgumentList() {
+        super.clearArgumentList();
+        this.compiled = null;
+    }
+
+    @Override
+    public ExpressionResult evaluate(EvaluationContext evaluationContext, PolicyDefaults policyDefaults)
+        throws EvaluationException {
+        Compiled thisCompiled = this.getCompiled();
+        if (thisCompiled == INTERPRETED) {
+            return super.evaluate(evaluationContext, policyDefaults);
+        }
+
+        Expression[] expressions = thisCompiled.expressions;
+        FunctionArgument[] constants = thisCompiled.constants;
+        ArgumentStack thisArgumentStack = argumentStack.get();
+        List<FunctionArgument> listFunctionArguments = thisArgumentStack.push();
+        try {
+            for (int i = 0; i < expressions.length; i++) {
+                listFunctionArguments.add(constants[i] != null
+                    ? constants[i] : new FunctionArgumentExpression(expressions[i], evaluationContext,
+                                                                    policyDefaults));
+            }
+            return thisCompiled.functionDefinition.evaluate(evaluationContext, listFunctionArguments);
+        } finally {
+            thisArgumentStack.pop(listFunctionArguments);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.pdp.policy.expressions;
+
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.eval.EvaluationException;
+import org.apache.openaz.xacml.pdp.policy.Expression;
+import org.apache.openaz.xacml.pdp.policy.ExpressionResult;
+import org.apache.openaz.xacml.pdp.policy.PolicyDefaults;
+import org.apache.openaz.xacml.std.StdStatusCode;
+
+/**
+ * ConstantExpression extends {@link org.apache.openaz.xacml.pdp.policy.Expression} to return an
+ * {@link org.apache.openaz.xacml.pdp.policy.ExpressionResult} computed when the policy was loaded. It is
+ * used by the {@link org.apache.openaz.xacml.pdp.policy.PolicyCompiler} in place of <code>Apply</code>
+ * expressions whose arguments are all constant and whose result is a bag.
+ */
+public class ConstantExpression extends Expression {
+    private ExpressionResult expressionResult;
+
+    public ConstantExpression(ExpressionResult expressionResultIn) {
+        this.expressionResult = expressionResultIn;
+    }
+
+    public ExpressionResult getExpressionResult() {
+        return this.expressionResult;
+    }
+
+    @Override
+    public ExpressionResult evaluate(EvaluationContext evaluationContext, PolicyDefaults policyDefaults)
+        throws EvaluationException {
+        return this.expressionResult;
+    }
+
+    @Override
+    protected boolean validateComponent() {
+        if (this.getExpressionResult() == null) {
+            this.setStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "Missing ExpressionResult");
+            return false;
+        } else {
+            this.setStatus(StdStatusCode.STATUS_CODE_OK, null);
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder("{");
+
+        Object objectToDump;
+        if ((objectToDump = this.getExpressionResult()) != null) {
+            stringBuilder.append("expressionResult=");
+            stringBuilder.append(objectToDump.toString());
+        }
+        stringBuilder.append('}');
+        return stringBuilder.toString();
+    }
+}
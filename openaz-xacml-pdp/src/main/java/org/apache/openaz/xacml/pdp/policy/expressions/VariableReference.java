@@ -30,18 +30,29 @@
  */
 package org.apache.openaz.xacml.pdp.policy.expressions;
 
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.openaz.xacml.api.Identifier;
 import org.apache.openaz.xacml.api.StatusCode;
+import org.apache.openaz.xacml.api.XACML3;
 import org.apache.openaz.xacml.api.trace.Traceable;
 import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
 import org.apache.openaz.xacml.pdp.eval.EvaluationException;
+import org.apache.openaz.xacml.pdp.eval.VariableResultCache;
 import org.apache.openaz.xacml.pdp.policy.Expression;
 import org.apache.openaz.xacml.pdp.policy.ExpressionResult;
+import org.apache.openaz.xacml.pdp.policy.FunctionDefinition;
+import org.apache.openaz.xacml.pdp.policy.FunctionDefinitionFactory;
 import org.apache.openaz.xacml.pdp.policy.Policy;
 import org.apache.openaz.xacml.pdp.policy.PolicyDefaults;
 import org.apache.openaz.xacml.pdp.policy.VariableDefinition;
+import org.apache.openaz.xacml.pdp.std.functions.FunctionDefinitionBase;
 import org.apache.openaz.xacml.std.StdStatus;
 import org.apache.openaz.xacml.std.StdStatusCode;
 import org.apache.openaz.xacml.std.trace.StdTraceEvent;
+import org.apache.openaz.xacml.util.FactoryException;
 
 /**
  * VariableReference extends {@link org.apache.openaz.xacml.pdp.policy.Expression} to implement the XACML
@@ -55,6 +66,7 @@ public class VariableReference extends Expression implements Traceable {
     private Policy policy;
     private String variableId;
     private VariableDefinition variableDefinition;
+    private Boolean memoizable;
 
     protected VariableDefinition getVariableDefinition() {
         if (this.variableDefinition == null) {
@@ -69,6 +81,85 @@ public class VariableReference extends Expression implements Traceable {
         return this.variableDefinition;
     }
 
+    /**
+     * Determines if the result of the referenced <code>VariableDefinition</code> may be kept in the
+     * <code>EvaluationContext</code> and reused by later references in the same decision. That is the case
+     * when its <code>Expression</code> only calls functions from the standard function library and does not
+     * read the current time, date or dateTime from the environment.
+     *
+     * @return true if the result of the <code>VariableDefinition</code> can be memoized, else false
+     */
+    protected boolean isMemoizable() {
+        if (this.memoizable == null) {
+            VariableDefinition thisVariableDefinition = this.getVariableDefinition();
+            Set<VariableDefinition> setVisiting = new HashSet<VariableDefinition>();
+            setVisiting.add(thisVariableDefinition);
+            this.memoizable = thisVariableDefinition != null
+                              && isMemoizable(thisVariableDefinition.getExpression(), setVisiting);
+        }
+        return this.memoizable;
+    }
+
+    private static boolean isMemoizable(Expression expression, Set<VariableDefinition> setVisiting) {
+        if (expression instanceof AttributeValueExpression || expression instanceof ConstantExpression
+            || expression instanceof AttributeSelector) {
+            return true;
+        } else if (expression instanceof AttributeDesignator) {
+            AttributeDesignator attributeDesignator = (AttributeDesignator)expression;
+            return !(XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT.equals(attributeDesignator.getCategory())
+                     && isCurrentTime(attributeDesignator.getAttributeId()));
+        } else if (expression instanceof Function) {
+            return isStandardFunction(((Function)expression).getFunctionId());
+        } else if (expression instanceof VariableReference) {
+            VariableDefinition variableDefinitionReferenced = ((VariableReference)expression)
+                .getVariableDefinition();
+            if (variableDefinitionReferenced == null || !setVisiting.add(variableDefinitionReferenced)) {
+                return false;
+            }
+            boolean result = isMemoizable(variableDefinitionReferenced.getExpression(), setVisiting);
+            setVisiting.remove(variableDefinitionReferenced);
+            return result;
+        } else if (expression instanceof Apply) {
+            Apply apply = (Apply)expression;
+            if (!isStandardFunction(apply.getFunctionDefinition())) {
+                return false;
+            }
+            Iterator<Expression> iterArguments = apply.getArguments();
+            while (iterArguments != null && iterArguments.hasNext()) {
+                if (!isMemoizable(iterArguments.next(), setVisiting)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private static boolean isCurrentTime(Identifier attributeId) {
+        return XACML3.ID_ENVIRONMENT_CURRENT_TIME.equals(attributeId)
+               || XACML3.ID_ENVIRONMENT_CURRENT_DATE.equals(attributeId)
+               || XACML3.ID_ENVIRONMENT_CURRENT_DATETIME.equals(attributeId);
+    }
+
+    private static boolean isStandardFunction(Identifier functionId) {
+        if (functionId == null) {
+            return false;
+        }
+        try {
+            return isStandardFunction(FunctionDefinitionFactory.newInstance()
+                .getFunctionDefinition(functionId));
+        } catch (FactoryException ex) {
+            return false;
+        }
+    }
+
+    private static boolean isStandardFunction(FunctionDefinition functionDefinition) {
+        return functionDefinition != null
+               && functionDefinition.getClass().getName()
+                   .startsWith(FunctionDefinitionBase.class.getPackage().getName() + ".");
+    }
+
     public VariableReference(StatusCode statusCodeIn, String statusMessageIn) {
         super(statusCodeIn, statusMessageIn);
     }
@@ -119,7 +210,21 @@ public class VariableReference extends Expression implements Traceable {
             return ER_SE_NO_EXPRESSION;
         }
 
-        ExpressionResult result = expression.evaluate(evaluationContext, policyDefaults);
+        /*
+         * Reuse the result of an earlier reference to the same VariableDefinition in this decision
+         */
+        VariableResultCache variableResultCache = null;
+        if (evaluationContext instanceof VariableResultCache && this.isMemoizable()) {
+            variableResultCache = (VariableResultCache)evaluationContext;
+        }
+        ExpressionResult result = (variableResultCache != null ? variableResultCache
+            .getVariableResult(variableDefinition) : null);
+        if (result == null) {
+            result = expression.evaluate(evaluationContext, policyDefaults);
+            if (variableResultCache != null && result != null) {
+                variableResultCache.putVariableResult(variableDefinition, result);
+            }
+        }
 
         if (evaluationContext.isTracing()) {
             evaluationContext.trace(new StdTraceEvent<ExpressionResult>("Variable", this, result));
@@ -30,7 +30,16 @@
  */
 package org.apache.openaz.xacml.pdp.std;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -44,12 +53,18 @@ import org.apache.openaz.xacml.api.pip.PIPResponse;
 import org.apache.openaz.xacml.api.trace.TraceEngine;
 import org.apache.openaz.xacml.api.trace.TraceEngineFactory;
 import org.apache.openaz.xacml.api.trace.TraceEvent;
+import org.apache.openaz.xacml.pdp.eval.AttributeBagCache;
 import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.eval.VariableResultCache;
+import org.apache.openaz.xacml.pdp.policy.Bag;
+import org.apache.openaz.xacml.pdp.policy.ExpressionResult;
 import org.apache.openaz.xacml.pdp.policy.Policy;
 import org.apache.openaz.xacml.pdp.policy.PolicyDef;
 import org.apache.openaz.xacml.pdp.policy.PolicyFinder;
 import org.apache.openaz.xacml.pdp.policy.PolicyFinderResult;
 import org.apache.openaz.xacml.pdp.policy.PolicySet;
+import org.apache.openaz.xacml.pdp.policy.VariableDefinition;
+import org.apache.openaz.xacml.std.pip.StdPIPResponse;
 import org.apache.openaz.xacml.std.pip.engines.RequestEngine;
 import org.apache.openaz.xacml.std.pip.finders.RequestFinder;
 import org.apache.openaz.xacml.util.FactoryException;
@@ -58,12 +73,16 @@ import org.apache.openaz.xacml.util.FactoryException;
  * StdEvaluationContext implements the {@link org.apache.openaz.xacml.pdp.eval.EvaluationContext} interface
  * using default factories to load the XACML policies, and get the PIP engines.
  */
-public class StdEvaluationContext implements EvaluationContext {
+public class StdEvaluationContext implements EvaluationContext, AttributeBagCache, VariableResultCache {
     private Log logger = LogFactory.getLog(this.getClass());
     private Request request;
+    private RequestEngine requestEngine;
     private RequestFinder requestFinder;
     private PolicyFinder policyFinder;
     private TraceEngine traceEngine;
+    private Map<VariableDefinition, ExpressionResult> variableResults =
+        new ConcurrentHashMap<VariableDefinition, ExpressionResult>();
+    private Map<PIPRequest, Bag> attributeBags = new ConcurrentHashMap<PIPRequest, Bag>();
 
     /**
      * Creates a new <code>StdEvaluationContext</code> with the given
@@ -75,6 +94,7 @@ public class StdEvaluationContext implements EvaluationContext {
     public StdEvaluationContext(Request requestIn, PolicyFinder policyFinderIn, PIPFinder pipFinder,
                                 TraceEngine traceEngineIn) {
         this.request = requestIn;
+        this.requestEngine = new RequestEngine(requestIn);
         this.policyFinder = policyFinderIn;
         if (traceEngineIn != null) {
             this.traceEngine = traceEngineIn;
@@ -87,12 +107,12 @@ public class StdEvaluationContext implements EvaluationContext {
         }
 
         if (pipFinder == null) {
-            this.requestFinder = new RequestFinder(null, new RequestEngine(requestIn));
+            this.requestFinder = new RequestFinder(null, this.requestEngine);
         } else {
             if (pipFinder instanceof RequestFinder) {
                 this.requestFinder = (RequestFinder)pipFinder;
             } else {
-                this.requestFinder = new RequestFinder(pipFinder, new RequestEngine(requestIn));
+                this.requestFinder = new RequestFinder(pipFinder, this.requestEngine);
             }
         }
     }
@@ -101,6 +121,98 @@ public class StdEvaluationContext implements EvaluationContext {
         this(requestIn, policyFinderIn, pipFinder, null);
     }
 
+    /**
+     * Determines if the <code>Request</code> being evaluated already has values for the given
+     * <code>PIPRequest</code>, matching its category, attribute id, data type and issuer.
+     */
+    boolean isInRequest(PIPRequest pipRequest) {
+        return this.request != null && this.requestEngine.hasAttributes(pipRequest);
+    }
+
+    /**
+     * Retrieves the given attributes that are not already in the <code>Request</code> in parallel on the
+     * given <code>ExecutorService</code> and waits for them, so later calls to <code>getAttributes</code>
+     * are answered from the <code>RequestFinder</code> cache. Failed lookups are not cached and are retried
+     * when evaluation asks for them.
+     *
+     * @param pipRequests the <code>PIPRequest</code>s for the attributes evaluation is expected to need
+     * @param executorService the <code>ExecutorService</code> to run the lookups on
+     */
+    public void prefetchAttributes(Collection<PIPRequest> pipRequests, ExecutorService executorService) {
+        List<PIPRequest> listPIPRequests = new ArrayList<PIPRequest>();
+        List<Future<PIPResponse>> listFutures = new ArrayList<Future<PIPResponse>>();
+        for (final PIPRequest pipRequest : pipRequests) {
+            if (this.isInRequest(pipRequest)) {
+                continue;
+            }
+            try {
+                listFutures.add(executorService.submit(new Callable<PIPResponse>() {
+                    @Override
+                    public PIPResponse call() throws PIPException {
+                        return StdEvaluationContext.this.requestFinder.getAttributes(pipRequest, null);
+                    }
+                }));
+                listPIPRequests.add(pipRequest);
+            } catch (RejectedExecutionException ex) {
+                this.logger.warn("Prefetch of " + pipRequest + " rejected: " + ex.getMessage());
+                break;
+            }
+        }
+
+        for (int i = 0; i < listFutures.size(); i++) {
+            try {
+                PIPResponse pipResponse = listFutures.get(i).get();
+                if (pipResponse != null && (pipResponse.getStatus() == null || pipResponse.getStatus().isOk())
+                    && pipResponse.getAttributes().isEmpty()) {
+                    this.requestFinder.putCachedResponse(listPIPRequests.get(i), pipResponse);
+                }
+            } catch (ExecutionException ex) {
+                if (this.logger.isDebugEnabled()) {
+                    this.logger.debug("Prefetch of " + listPIPRequests.get(i) + " failed: "
+                                      + ex.getCause(), ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                for (Future<PIPResponse> future : listFutures) {
+                    future.cancel(true);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stores a <code>PIPResponse</code> retrieved for this context ahead of evaluation, such as by a batch
+     * lookup for several contexts at once, in the <code>RequestFinder</code> cache the same way a response
+     * from a <code>PIPEngine</code> would have been. Error responses are not stored.
+     *
+     * @param pipRequest the <code>PIPRequest</code> the response answers
+     * @param pipResponse the <code>PIPResponse</code>
+     */
+    public void putPrefetchedResponse(PIPRequest pipRequest, PIPResponse pipResponse) {
+        if (pipResponse == null || pipResponse.getStatus() != null && !pipResponse.getStatus().isOk()) {
+            return;
+        }
+        Map<PIPRequest, PIPResponse> mapResponses = null;
+        if (pipResponse.getAttributes().size() > 0) {
+            try {
+                mapResponses = StdPIPResponse.splitResponse(pipResponse);
+            } catch (PIPException ex) {
+                this.logger.warn("Unable to split prefetched response for " + pipRequest + ": "
+                                 + ex.getMessage());
+                return;
+            }
+        }
+        if (mapResponses != null) {
+            for (Map.Entry<PIPRequest, PIPResponse> entry : mapResponses.entrySet()) {
+                this.requestFinder.putCachedResponse(entry.getKey(), entry.getValue());
+            }
+        }
+        if (mapResponses == null || !mapResponses.containsKey(pipRequest)) {
+            this.requestFinder.putCachedResponse(pipRequest, pipResponse);
+        }
+    }
+
     @Override
     public Request getRequest() {
         return this.request;
@@ -164,4 +276,24 @@ public class StdEvaluationContext implements EvaluationContext {
     public Collection<PIPEngine> getPIPEngines() {
         return this.requestFinder.getPIPEngines();
     }
+
+    @Override
+    public ExpressionResult getVariableResult(VariableDefinition variableDefinition) {
+        return this.variableResults.get(variableDefinition);
+    }
+
+    @Override
+    public void putVariableResult(VariableDefinition variableDefinition, ExpressionResult expressionResult) {
+        this.variableResults.put(variableDefinition, expressionResult);
+    }
+
+    @Override
+    public Bag getAttributeBag(PIPRequest pipRequest) {
+        return this.attributeBags.get(pipRequest);
+    }
+
+    @Override
+    public void putAttributeBag(PIPRequest pipRequest, Bag bag) {
+        this.attributeBags.put(pipRequest, bag);
+    }
 }
@@ -30,30 +30,52 @@
  */
 package org.apache.openaz.xacml.pdp.std;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.pip.PIPEngine;
+import org.apache.openaz.xacml.api.pip.PIPException;
 import org.apache.openaz.xacml.api.pip.PIPFinder;
 import org.apache.openaz.xacml.api.pip.PIPFinderFactory;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
 import org.apache.openaz.xacml.api.trace.TraceEngine;
 import org.apache.openaz.xacml.api.trace.TraceEngineFactory;
 import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
 import org.apache.openaz.xacml.pdp.eval.EvaluationContextFactory;
 import org.apache.openaz.xacml.pdp.policy.PolicyFinder;
 import org.apache.openaz.xacml.pdp.policy.PolicyFinderFactory;
+import org.apache.openaz.xacml.pdp.util.OpenAZPDPProperties;
+import org.apache.openaz.xacml.std.pip.engines.BatchEngine;
+import org.apache.openaz.xacml.util.XACMLProperties;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * StdEvaluationContextFactory extends {@link org.apache.openaz.xacml.pdp.eval.EvaluationContextFactory} to
  * implement the <code>getEvaluationContext</code> method with a standard
- * {@link org.apache.openaz.xacml.pdp.eval.EvaluationContext}.
+ * {@link org.apache.openaz.xacml.pdp.eval.EvaluationContext}. When the
+ * {@link OpenAZPDPProperties#PROP_EVALUATIONCONTEXTFACTORY_BATCHATTRIBUTES} property is true,
+ * <code>getEvaluationContexts</code> retrieves each attribute the policies may require that only a
+ * {@link org.apache.openaz.xacml.std.pip.engines.BatchEngine} provides for all of the contexts at once.
  */
 public class StdEvaluationContextFactory extends EvaluationContextFactory {
     private Log logger = LogFactory.getLog(this.getClass());
     private PolicyFinder policyFinder;
     private PIPFinder pipFinder;
     private TraceEngine traceEngine;
+    private ExecutorService prefetchExecutorService;
+    private volatile boolean prefetchConfigured;
+    private volatile Boolean batchAttributes;
 
     /**
      * Should this properties file be passed onward when instantiating the PolicyFinder and the PIPFinder? If
@@ -140,6 +162,186 @@ public class StdEvaluationContextFactory extends EvaluationContextFactory {
         return this.traceEngine;
     }
 
+    /**
+     * Gets the <code>ExecutorService</code> used to prefetch PIP attributes, creating it from the
+     * {@link OpenAZPDPProperties#PROP_EVALUATIONCONTEXTFACTORY_PREFETCHTHREADS} property on first use.
+     *
+     * @return the <code>ExecutorService</code> or null if prefetching is not enabled
+     */
+    protected ExecutorService getPrefetchExecutorService() {
+        if (!this.prefetchConfigured) {
+            synchronized (this) {
+                if (!this.prefetchConfigured) {
+                    String propertyName = OpenAZPDPProperties.PROP_EVALUATIONCONTEXTFACTORY_PREFETCHTHREADS;
+                    String threads = (this.properties == null
+                        ? XACMLProperties.getProperty(propertyName)
+                        : this.properties.getProperty(propertyName));
+                    try {
+                        int nThreads = (threads == null ? 0 : Integer.parseInt(threads.trim()));
+                        if (nThreads > 0) {
+                            this.prefetchExecutorService = Executors
+                                .newFixedThreadPool(nThreads, new ThreadFactoryBuilder().setDaemon(true)
+                                    .setNameFormat("openaz-pip-prefetch-%d").build());
+                        }
+                    } catch (NumberFormatException ex) {
+                        this.logger.error("Invalid value for " + propertyName + ": " + threads);
+                    }
+                    this.prefetchConfigured = true;
+                }
+            }
+        }
+        return this.prefetchExecutorService;
+    }
+
+    /**
+     * Gets the attributes the loaded policies may request during evaluation.
+     *
+     * @return the <code>Set</code> of <code>PIPRequest</code>s the policies may require, or null if the
+     *         policies do not come from a {@link StdPolicyFinder}
+     */
+    public Set<PIPRequest> getRequiredAttributes() {
+        PolicyFinder thisPolicyFinder = this.getPolicyFinder();
+        if (thisPolicyFinder instanceof StdPolicyFinder) {
+            return ((StdPolicyFinder)thisPolicyFinder).getRequiredAttributes();
+        }
+        return null;
+    }
+
+    /**
+     * Gets the attributes the root policies that may apply to the given <code>EvaluationContext</code> may
+     * request during evaluation.
+     *
+     * @param evaluationContext the <code>EvaluationContext</code> for the request
+     * @return the <code>Set</code> of <code>PIPRequest</code>s the candidate root policies may require, or
+     *         null if the policies do not come from a {@link StdPolicyFinder}
+     */
+    protected Set<PIPRequest> getRequiredAttributes(EvaluationContext evaluationContext) {
+        PolicyFinder thisPolicyFinder = this.getPolicyFinder();
+        if (thisPolicyFinder instanceof StdPolicyFinder) {
+            return ((StdPolicyFinder)thisPolicyFinder).getRequiredAttributes(evaluationContext);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the attributes the policies that may apply to the given <code>StdEvaluationContext</code>
+     * may need in parallel if prefetching is enabled and the policies come from a {@link StdPolicyFinder}.
+     *
+     * @param evaluationContext the <code>StdEvaluationContext</code> to prefetch attributes for
+     */
+    protected void prefetchAttributes(StdEvaluationContext evaluationContext) {
+        ExecutorService executorService = this.getPrefetchExecutorService();
+        if (executorService == null || this.getPIPFinder() == null) {
+            return;
+        }
+        Set<PIPRequest> requiredAttributes = this.getRequiredAttributes(evaluationContext);
+        if (requiredAttributes != null && requiredAttributes.size() > 0) {
+            evaluationContext.prefetchAttributes(requiredAttributes, executorService);
+        }
+    }
+
+    /**
+     * Determines if attributes should be retrieved in batches for the contexts created together, from the
+     * {@link OpenAZPDPProperties#PROP_EVALUATIONCONTEXTFACTORY_BATCHATTRIBUTES} property.
+     *
+     * @return true if batching is enabled, else false
+     */
+    protected boolean isBatchAttributes() {
+        if (this.batchAttributes == null) {
+            String propertyName = OpenAZPDPProperties.PROP_EVALUATIONCONTEXTFACTORY_BATCHATTRIBUTES;
+            String value = (this.properties == null
+                ? XACMLProperties.getProperty(propertyName)
+                : this.properties.getProperty(propertyName));
+            this.batchAttributes = Boolean.valueOf(value == null ? null : value.trim());
+        }
+        return this.batchAttributes;
+    }
+
+    /**
+     * Gets the {@link org.apache.openaz.xacml.std.pip.engines.BatchEngine} that answers the given
+     * <code>PIPRequest</code> if it is the only <code>PIPEngine</code> that provides it.
+     *
+     * @param pipRequest the <code>PIPRequest</code>
+     * @return the <code>BatchEngine</code> or null if the request is not provided by exactly one
+     *         <code>BatchEngine</code>
+     */
+    protected BatchEngine getBatchEngine(PIPRequest pipRequest) {
+        BatchEngine batchEngine = null;
+        for (PIPEngine pipEngine : this.getPIPFinder().getPIPEngines()) {
+            Collection<PIPRequest> attributesProvided = pipEngine.attributesProvided();
+            boolean isProvided = attributesProvided == null || attributesProvided.isEmpty();
+            if (!isProvided) {
+                for (PIPRequest pipRequestProvided : attributesProvided) {
+                    if (pipRequestProvided.getCategory().equals(pipRequest.getCategory())
+                        && pipRequestProvided.getAttributeId().equals(pipRequest.getAttributeId())
+                        && pipRequestProvided.getDataTypeId().equals(pipRequest.getDataTypeId())
+                        && (pipRequest.getIssuer() == null || pipRequest.getIssuer()
+                            .equals(pipRequestProvided.getIssuer()))) {
+                        isProvided = true;
+                        break;
+                    }
+                }
+            }
+            if (isProvided) {
+                if (batchEngine != null || !(pipEngine instanceof BatchEngine)) {
+                    return null;
+                }
+                batchEngine = (BatchEngine)pipEngine;
+            }
+        }
+        return batchEngine;
+    }
+
+    /**
+     * Retrieves the attributes the policies may need that are provided by a single <code>BatchEngine</code>
+     * for all of the given <code>StdEvaluationContext</code>s with one call per attribute, and stores the
+     * results in each context.
+     *
+     * @param listEvaluationContexts the <code>List</code> of <code>StdEvaluationContext</code>s
+     */
+    protected void batchAttributes(List<StdEvaluationContext> listEvaluationContexts) {
+        if (listEvaluationContexts.size() < 2 || !this.isBatchAttributes() || this.getPIPFinder() == null) {
+            return;
+        }
+        List<Set<PIPRequest>> listRequiredAttributes = new ArrayList<Set<PIPRequest>>();
+        Set<PIPRequest> requiredAttributes = new LinkedHashSet<PIPRequest>();
+        for (StdEvaluationContext evaluationContext : listEvaluationContexts) {
+            Set<PIPRequest> contextRequiredAttributes = this.getRequiredAttributes(evaluationContext);
+            if (contextRequiredAttributes == null) {
+                return;
+            }
+            listRequiredAttributes.add(contextRequiredAttributes);
+            requiredAttributes.addAll(contextRequiredAttributes);
+        }
+        for (PIPRequest pipRequest : requiredAttributes) {
+            BatchEngine batchEngine = this.getBatchEngine(pipRequest);
+            if (batchEngine == null) {
+                continue;
+            }
+            List<StdEvaluationContext> listPending = new ArrayList<StdEvaluationContext>();
+            List<PIPFinder> listPIPFinders = new ArrayList<PIPFinder>();
+            for (int i = 0; i < listEvaluationContexts.size(); i++) {
+                StdEvaluationContext evaluationContext = listEvaluationContexts.get(i);
+                if (listRequiredAttributes.get(i).contains(pipRequest)
+                    && !evaluationContext.isInRequest(pipRequest)) {
+                    listPending.add(evaluationContext);
+                    listPIPFinders.add(evaluationContext);
+                }
+            }
+            if (listPending.size() < 2) {
+                continue;
+            }
+            try {
+                List<PIPResponse> listPIPResponses = batchEngine.getAttributes(pipRequest, listPIPFinders);
+                for (int i = 0; i < listPending.size(); i++) {
+                    listPending.get(i).putPrefetchedResponse(pipRequest, listPIPResponses.get(i));
+                }
+            } catch (PIPException ex) {
+                this.logger.warn("Batch retrieval of " + pipRequest + " failed: " + ex.getMessage());
+            }
+        }
+    }
+
     public StdEvaluationContextFactory() {
     }
 
@@ -149,8 +351,25 @@ public class StdEvaluationContextFactory extends EvaluationContextFactory {
 
     @Override
     public EvaluationContext getEvaluationContext(Request request) {
-        return new StdEvaluationContext(request, this.getPolicyFinder(), this.getPIPFinder(),
-                                        this.getTraceEngine());
+        StdEvaluationContext evaluationContext = new StdEvaluationContext(request, this.getPolicyFinder(),
+                                                                          this.getPIPFinder(),
+                                                                          this.getTraceEngine());
+        this.prefetchAttributes(evaluationContext);
+        return evaluationContext;
+    }
+
+    @Override
+    public List<EvaluationContext> getEvaluationContexts(List<Request> requests) {
+        List<StdEvaluationContext> listEvaluationContexts = new ArrayList<StdEvaluationContext>();
+        for (Request request : requests) {
+            listEvaluationContexts.add(new StdEvaluationContext(request, this.getPolicyFinder(),
+                                                                this.getPIPFinder(), this.getTraceEngine()));
+        }
+        this.batchAttributes(listEvaluationContexts);
+        for (StdEvaluationContext evaluationContext : listEvaluationContexts) {
+            this.prefetchAttributes(evaluationContext);
+        }
+        return new ArrayList<EvaluationContext>(listEvaluationContexts);
     }
 
     @Override
@@ -37,15 +37,19 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.openaz.xacml.api.IdReferenceMatch;
 import org.apache.openaz.xacml.api.Identifier;
 import org.apache.openaz.xacml.api.Version;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
 import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
 import org.apache.openaz.xacml.pdp.eval.EvaluationException;
 import org.apache.openaz.xacml.pdp.eval.MatchResult;
@@ -53,8 +57,13 @@ import org.apache.openaz.xacml.pdp.policy.Policy;
 import org.apache.openaz.xacml.pdp.policy.PolicyDef;
 import org.apache.openaz.xacml.pdp.policy.PolicyFinder;
 import org.apache.openaz.xacml.pdp.policy.PolicyFinderResult;
+import org.apache.openaz.xacml.pdp.policy.PolicyIdReferenceBase;
 import org.apache.openaz.xacml.pdp.policy.PolicySet;
+import org.apache.openaz.xacml.pdp.policy.PolicySetIdReference;
 import org.apache.openaz.xacml.pdp.policy.PolicySetChild;
+import org.apache.openaz.xacml.pdp.policy.RequiredAttributeAnalyzer;
+import org.apache.openaz.xacml.pdp.policy.Target;
+import org.apache.openaz.xacml.pdp.policy.TargetIndex;
 import org.apache.openaz.xacml.pdp.policy.dom.DOMPolicyDef;
 import org.apache.openaz.xacml.std.StdStatus;
 import org.apache.openaz.xacml.std.StdStatusCode;
@@ -92,6 +101,9 @@ public class StdPolicyFinder implements PolicyFinder {
 
     private Log logger = LogFactory.getLog(this.getClass());
     private List<PolicyDef> listRoots = new ArrayList<PolicyDef>();
+    private TargetIndex<PolicyDef> rootIndex;
+    private Set<PIPRequest> requiredAttributes;
+    private Map<PolicyDef, Set<PIPRequest>> mapRootRequiredAttributes;
     private Map<Identifier, List<PolicyDef>> mapPolicies = new HashMap<Identifier, List<PolicyDef>>();
 
     public static class StdPolicyFinderException extends Exception {
@@ -311,6 +323,102 @@ public class StdPolicyFinder implements PolicyFinder {
         }
     }
 
+    /**
+     * Builds the {@link org.apache.openaz.xacml.pdp.policy.TargetIndex} over the <code>Target</code>s of the
+     * root <code>PolicyDef</code>s so that only candidate roots are matched against each request.
+     */
+    private void buildRootIndex() {
+        List<Target> listTargets = new ArrayList<Target>(this.listRoots.size());
+        for (PolicyDef policyDef : this.listRoots) {
+            listTargets.add(TargetIndex.getTarget(policyDef));
+        }
+        this.rootIndex = new TargetIndex<PolicyDef>(this.listRoots, listTargets);
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Indexed " + this.rootIndex.getIndexedCount() + " of " + this.rootIndex.size()
+                              + " root policies");
+        }
+    }
+
+    /**
+     * Creates a {@link org.apache.openaz.xacml.pdp.policy.RequiredAttributeAnalyzer} that follows policy
+     * references to the <code>PolicyDef</code>s already in the map of loaded policies.
+     *
+     * @return a new <code>RequiredAttributeAnalyzer</code>
+     */
+    private RequiredAttributeAnalyzer newRequiredAttributeAnalyzer() {
+        return new RequiredAttributeAnalyzer() {
+            @Override
+            protected PolicyDef getReferencedPolicyDef(PolicyIdReferenceBase<?> policyIdReference) {
+                if (policyIdReference.getIdReferenceMatch() == null) {
+                    return null;
+                }
+                List<? extends PolicyDef> listMatches = null;
+                if (policyIdReference instanceof PolicySetIdReference) {
+                    listMatches = StdPolicyFinder.this.getFromPolicyMap(policyIdReference
+                        .getIdReferenceMatch(), PolicySet.class);
+                } else {
+                    listMatches = StdPolicyFinder.this.getFromPolicyMap(policyIdReference
+                        .getIdReferenceMatch(), Policy.class);
+                }
+                return (listMatches == null ? null : StdPolicyFinder.this.getBestMatch(listMatches));
+            }
+        };
+    }
+
+    private void analyzeRequiredAttributes(Collection<PolicyDef> referencedPolicyDefs) {
+        RequiredAttributeAnalyzer requiredAttributeAnalyzer = this.newRequiredAttributeAnalyzer();
+        this.mapRootRequiredAttributes = new IdentityHashMap<PolicyDef, Set<PIPRequest>>();
+        for (PolicyDef policyDef : this.listRoots) {
+            requiredAttributeAnalyzer.analyze(policyDef);
+            RequiredAttributeAnalyzer rootRequiredAttributeAnalyzer = this.newRequiredAttributeAnalyzer();
+            rootRequiredAttributeAnalyzer.analyze(policyDef);
+            this.mapRootRequiredAttributes.put(policyDef,
+                                               rootRequiredAttributeAnalyzer.getRequiredAttributes());
+        }
+        if (referencedPolicyDefs != null) {
+            for (PolicyDef policyDef : referencedPolicyDefs) {
+                requiredAttributeAnalyzer.analyze(policyDef);
+            }
+        }
+        this.requiredAttributes = requiredAttributeAnalyzer.getRequiredAttributes();
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Policies may require " + this.requiredAttributes.size() + " attributes");
+        }
+    }
+
+    /**
+     * Gets the attributes that the root and referenced policies given to this <code>StdPolicyFinder</code>
+     * may request during evaluation. Policies loaded later from a <code>PolicyIdReference</code> URI are not
+     * included.
+     *
+     * @return the <code>Set</code> of <code>PIPRequest</code>s for the attributes the policies may require
+     */
+    public Set<PIPRequest> getRequiredAttributes() {
+        return this.requiredAttributes;
+    }
+
+    /**
+     * Gets the attributes that the root policies that may apply to the given <code>EvaluationContext</code>
+     * may request, including the policies they reference. Root policies are ruled out by the
+     * {@link org.apache.openaz.xacml.pdp.policy.TargetIndex} on their <code>Target</code>s, using only the
+     * attributes already in the <code>Request</code>.
+     *
+     * @param evaluationContext the <code>EvaluationContext</code> for the request
+     * @return the <code>Set</code> of <code>PIPRequest</code>s for the attributes the candidate root policies
+     *         may require
+     */
+    public Set<PIPRequest> getRequiredAttributes(EvaluationContext evaluationContext) {
+        List<PolicyDef> listCandidates = this.rootIndex.getCandidates(evaluationContext);
+        if (listCandidates.size() == 1) {
+            return this.mapRootRequiredAttributes.get(listCandidates.get(0));
+        }
+        Set<PIPRequest> candidateRequiredAttributes = new LinkedHashSet<PIPRequest>();
+        for (PolicyDef policyDef : listCandidates) {
+            candidateRequiredAttributes.addAll(this.mapRootRequiredAttributes.get(policyDef));
+        }
+        return candidateRequiredAttributes;
+    }
+
     public StdPolicyFinder(Collection<PolicyDef> listRootPolicies, Collection<PolicyDef> referencedPolicyDefs) {
         if (listRootPolicies != null) {
             for (PolicyDef policyDef : listRootPolicies) {
@@ -323,6 +431,8 @@ public class StdPolicyFinder implements PolicyFinder {
                 this.storeInPolicyMap(policyDef);
             }
         }
+        this.buildRootIndex();
+        this.analyzeRequiredAttributes(referencedPolicyDefs);
     }
 
     /**
@@ -341,12 +451,14 @@ public class StdPolicyFinder implements PolicyFinder {
                 this.storeInPolicyMap(policyDef);
             }
         }
+        this.buildRootIndex();
+        this.analyzeRequiredAttributes(referencedPolicyDefs);
     }
 
     @Override
     public PolicyFinderResult<PolicyDef> getRootPolicyDef(EvaluationContext evaluationContext) {
         PolicyDef policyDefFirstMatch = null;
-        Iterator<PolicyDef> iterRootPolicies = this.listRoots.iterator();
+        Iterator<PolicyDef> iterRootPolicies = this.rootIndex.getCandidates(evaluationContext).iterator();
         PolicyFinderResult<PolicyDef> firstIndeterminate = null;
         while (iterRootPolicies.hasNext()) {
             PolicyDef policyDef = iterRootPolicies.next();
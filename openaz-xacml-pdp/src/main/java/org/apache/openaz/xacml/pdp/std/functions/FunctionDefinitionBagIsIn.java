@@ -30,7 +30,6 @@
  */
 package org.apache.openaz.xacml.pdp.std.functions;
 
-import java.util.Iterator;
 import java.util.List;
 
 import org.apache.openaz.xacml.api.AttributeValue;
@@ -118,21 +117,12 @@ public class FunctionDefinitionBagIsIn<I> extends FunctionDefinitionBase<Boolean
 
         Bag bag = convertedBagArgument.getBag();
 
-        Iterator<AttributeValue<?>> iterBagContents = bag.getAttributeValues();
-        while (iterBagContents.hasNext()) {
-            AttributeValue<?> attributeValueBagContents = iterBagContents.next();
-
-            /*
-             * Should we be checking the type of the bag contents and returning an error if the bag contents
-             * are not of the right type? The spec does not say this, so we just use the
-             * AttributeValue.equals() method for now.
-             */
-            if (attributeValueElement.equals(attributeValueBagContents)) {
-                return ER_TRUE;
-            }
-        }
-
-        return ER_FALSE;
+        /*
+         * Should we be checking the type of the bag contents and returning an error if the bag contents are
+         * not of the right type? The spec does not say this, so we just use the AttributeValue.equals() method
+         * for now.
+         */
+        return bag.contains(attributeValueElement) ? ER_TRUE : ER_FALSE;
     }
 
 }
@@ -30,8 +30,9 @@
  */
 package org.apache.openaz.xacml.pdp.std.functions;
 
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.openaz.xacml.api.AttributeValue;
 import org.apache.openaz.xacml.api.DataType;
@@ -126,18 +127,15 @@ public class FunctionDefinitionSet<O, I> extends FunctionDefinitionBase<O, I> {
 
         // some functions return a bag rather than boolean
         Bag outBag;
-        List<AttributeValue<?>> outList;
+        Set<AttributeValue<?>> outSet;
 
         switch (operation) {
         case INTERSECTION:
-            outList = new ArrayList<AttributeValue<?>>();
+            outSet = new LinkedHashSet<AttributeValue<?>>();
 
             for (AttributeValue<?> element : list1) {
-                if (outList.contains(element)) {
-                    continue;
-                }
-                if (list2.contains(element)) {
-                    outList.add(element);
+                if (bag2.contains(element)) {
+                    outSet.add(element);
                 }
             }
 
@@ -145,7 +143,7 @@ public class FunctionDefinitionSet<O, I> extends FunctionDefinitionBase<O, I> {
 
             outBag = new Bag();
 
-            for (AttributeValue<?> element : outList) {
+            for (AttributeValue<?> element : outSet) {
                 outBag.add(element);
             }
 
@@ -161,7 +159,7 @@ public class FunctionDefinitionSet<O, I> extends FunctionDefinitionBase<O, I> {
             // in the second set
             // (because there IS no element in first set).
             for (AttributeValue<?> element : list1) {
-                if (list2.contains(element)) {
+                if (bag2.contains(element)) {
                     return ER_TRUE;
                 }
             }
@@ -169,26 +167,14 @@ public class FunctionDefinitionSet<O, I> extends FunctionDefinitionBase<O, I> {
             return ER_FALSE;
 
         case UNION:
-            outList = new ArrayList<AttributeValue<?>>();
+            outSet = new LinkedHashSet<AttributeValue<?>>(list1);
+            outSet.addAll(list2);
 
-            for (AttributeValue<?> element : list1) {
-                if (outList.contains(element)) {
-                    continue;
-                }
-                outList.add(element);
-            }
-            for (AttributeValue<?> element : list2) {
-                if (outList.contains(element)) {
-                    continue;
-                }
-                outList.add(element);
-            }
-
-            // now have the intersection; put it in a bag
+            // now have the union; put it in a bag
 
             outBag = new Bag();
 
-            for (AttributeValue<?> element : outList) {
+            for (AttributeValue<?> element : outSet) {
                 outBag.add(element);
             }
 
@@ -202,7 +188,7 @@ public class FunctionDefinitionSet<O, I> extends FunctionDefinitionBase<O, I> {
             // If the first set is empty we return TRUE because all elements (i.e. none) in the first set are
             // in the second.
             for (AttributeValue<?> element : list1) {
-                if (!list2.contains(element)) {
+                if (!bag2.contains(element)) {
                     return ER_FALSE;
                 }
             }
@@ -216,12 +202,12 @@ public class FunctionDefinitionSet<O, I> extends FunctionDefinitionBase<O, I> {
             // are all elements in list 1 in list 2 (ignoring duplicates)
             // are all elements in list 2 in list 1 (ignoring duplicates)
             for (AttributeValue<?> element : list1) {
-                if (!list2.contains(element)) {
+                if (!bag2.contains(element)) {
                     return ER_FALSE;
                 }
             }
             for (AttributeValue<?> element : list2) {
-                if (!list1.contains(element)) {
+                if (!bag1.contains(element)) {
                     return ER_FALSE;
                 }
             }
@@ -36,10 +36,15 @@ import org.apache.openaz.xacml.util.XACMLProperties;
 
 public class OpenAZPDPProperties extends XACMLProperties {
     public static final String PROP_EVALUATIONCONTEXTFACTORY = "xacml.openaz.evaluationContextFactory";
+    public static final String PROP_EVALUATIONCONTEXTFACTORY_PREFETCHTHREADS = "xacml.openaz.evaluationContextFactory.prefetchThreads";
+    public static final String PROP_EVALUATIONCONTEXTFACTORY_BATCHATTRIBUTES = "xacml.openaz.evaluationContextFactory.batchAttributes";
     public static final String PROP_COMBININGALGORITHMFACTORY = "xacml.openaz.combiningAlgorithmFactory";
     public static final String PROP_FUNCTIONDEFINITIONFACTORY = "xacml.openaz.functionDefinitionFactory";
     public static final String PROP_POLICYFINDERFACTORY = "xacml.openaz.policyFinderFactory";
     public static final String PROP_POLICYFINDERFACTORY_COMBINEROOTPOLICIES = "xacml.openaz.policyFinderFactory.combineRootPolicies";
+    public static final String PROP_PDPENGINE_PARALLELISM = "xacml.openaz.pdpEngine.parallelism";
+    public static final String PROP_PDPENGINE_PARALLELTHRESHOLD = "xacml.openaz.pdpEngine.parallelThreshold";
+    public static final String PROP_PDPENGINE_DECISIONCACHESPEC = "xacml.openaz.pdpEngine.decisionCacheSpec";
 
     public static final Identifier ID_POLICY_COMBINEDPERMITOVERRIDES = new IdentifierImpl("urn:org:apache:openaz:xacml:3.0:policy-combining-algorithm:combined-permit-overrides");
 
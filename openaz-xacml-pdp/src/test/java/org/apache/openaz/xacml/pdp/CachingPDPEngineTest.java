@@ -0,0 +1,164 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp;
+
+import org.apache.openaz.xacml.api.Decision;
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.Response;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pdp.PDPEngine;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContextFactory;
+import org.apache.openaz.xacml.pdp.policy.PolicyDef;
+import org.apache.openaz.xacml.pdp.policy.dom.DOMPolicyDef;
+import org.apache.openaz.xacml.pdp.std.StdEvaluationContextFactory;
+import org.apache.openaz.xacml.pdp.std.StdPolicyFinder;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.StdMutableRequestAttributes;
+import org.apache.openaz.xacml.std.StdMutableResponse;
+import org.apache.openaz.xacml.std.StdMutableResult;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingPDPEngineTest {
+
+    private static final String POLICY_TIME_OF_DAY = "<Policy"
+        + " xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\""
+        + " PolicyId=\"urn:example:policy:time-of-day\" Version=\"1.0\""
+        + " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+        + "<Target/><Rule RuleId=\"urn:example:rule:time-of-day\" Effect=\"Permit\"><Condition>"
+        + "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:integer-equal\">"
+        + "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:time-bag-size\">"
+        + "<AttributeDesignator Category=\"urn:oasis:names:tc:xacml:3.0:attribute-category:environment\""
+        + " AttributeId=\"urn:oasis:names:tc:xacml:1.0:environment:current-time\""
+        + " DataType=\"http://www.w3.org/2001/XMLSchema#time\" MustBePresent=\"true\"/></Apply>"
+        + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#integer\">1</AttributeValue>"
+        + "</Apply></Condition></Rule></Policy>";
+
+    private PDPEngine pdpEngine;
+    private CachingPDPEngine cachingPDPEngine;
+
+    @Before
+    public void before() throws Exception {
+        this.pdpEngine = mock(PDPEngine.class);
+        when(this.pdpEngine.decide(any(Request.class)))
+            .thenReturn(new StdMutableResponse(new StdMutableResult(Decision.PERMIT)));
+        this.cachingPDPEngine = new CachingPDPEngine(this.pdpEngine, "maximumSize=1");
+    }
+
+    @Test
+    public void testRepeatedRequestIsCached() throws Exception {
+        this.cachingPDPEngine.decide(createRequest(XACML3.ID_ACTION_ACTION_ID, "read"));
+        this.cachingPDPEngine.decide(createRequest(XACML3.ID_ACTION_ACTION_ID, "read"));
+        this.cachingPDPEngine.decide(createRequest(XACML3.ID_ACTION_ACTION_ID, "write"));
+
+        verify(this.pdpEngine, times(2)).decide(any(Request.class));
+        assertEquals(1, this.cachingPDPEngine.getHitCount());
+        assertEquals(2, this.cachingPDPEngine.getMissCount());
+        assertEquals(1, this.cachingPDPEngine.getEvictionCount());
+
+        this.cachingPDPEngine.invalidateAll();
+        assertEquals(0, this.cachingPDPEngine.size());
+    }
+
+    @Test
+    public void testCurrentTimeRequestIsNotCached() throws Exception {
+        StdMutableRequest request = createRequest(XACML3.ID_ACTION_ACTION_ID, "read");
+        StdMutableRequestAttributes environment = new StdMutableRequestAttributes();
+        environment.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT);
+        environment.add(new StdMutableAttribute(XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT,
+                                                XACML3.ID_ENVIRONMENT_CURRENT_DATETIME,
+                                                DataTypes.DT_DATETIME.createAttributeValue(new Date())));
+        request.add(environment);
+
+        this.cachingPDPEngine.decide(request);
+        this.cachingPDPEngine.decide(request);
+
+        verify(this.pdpEngine, times(2)).decide(any(Request.class));
+        assertEquals(0, this.cachingPDPEngine.size());
+    }
+
+    @Test
+    public void testIndeterminateIsNotCached() throws Exception {
+        when(this.pdpEngine.decide(any(Request.class)))
+            .thenReturn(new StdMutableResponse(new StdMutableResult(Decision.INDETERMINATE)));
+
+        this.cachingPDPEngine.decide(createRequest(XACML3.ID_ACTION_ACTION_ID, "read"));
+        this.cachingPDPEngine.decide(createRequest(XACML3.ID_ACTION_ACTION_ID, "read"));
+
+        verify(this.pdpEngine, times(2)).decide(any(Request.class));
+    }
+
+    @Test
+    public void testTimeOfDayPolicyIsNotCached() throws Exception {
+        PolicyDef policyDef = DOMPolicyDef.load(new ByteArrayInputStream(POLICY_TIME_OF_DAY
+            .getBytes("UTF-8")));
+        Properties properties = new Properties();
+        StdEvaluationContextFactory evaluationContextFactory = new StdEvaluationContextFactory(properties);
+        evaluationContextFactory.setPolicyFinder(new StdPolicyFinder(policyDef, null));
+        evaluationContextFactory.setPIPFinder(mock(PIPFinder.class));
+        OpenAZPDPEngine openAZPDPEngine = spy(new OpenAZPDPEngine(evaluationContextFactory, null));
+        CachingPDPEngine timeOfDayPDPEngine = new CachingPDPEngine(openAZPDPEngine, "maximumSize=1");
+
+        Response response = timeOfDayPDPEngine.decide(createRequest(XACML3.ID_ACTION_ACTION_ID, "read"));
+        assertEquals(Decision.PERMIT, response.getResults().iterator().next().getDecision());
+        timeOfDayPDPEngine.decide(createRequest(XACML3.ID_ACTION_ACTION_ID, "read"));
+
+        verify(openAZPDPEngine, times(2)).decide(any(Request.class));
+        assertEquals(0, timeOfDayPDPEngine.size());
+    }
+
+    @Test
+    public void testTraceableIsDelegated() throws Exception {
+        OpenAZPDPEngine openAZPDPEngine = new OpenAZPDPEngine(mock(EvaluationContextFactory.class), null);
+
+        assertEquals(openAZPDPEngine.getTraceId(),
+                     new CachingPDPEngine(openAZPDPEngine, "maximumSize=1").getTraceId());
+        assertEquals(CachingPDPEngine.class.getCanonicalName(), this.cachingPDPEngine.getTraceId());
+        assertNull(this.cachingPDPEngine.getCause());
+    }
+
+    private static StdMutableRequest createRequest(Identifier attributeId, String value) throws Exception {
+        StdMutableRequestAttributes requestAttributes = new StdMutableRequestAttributes();
+        requestAttributes.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION);
+        requestAttributes.add(new StdMutableAttribute(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION, attributeId,
+                                                      DataTypes.DT_STRING.createAttributeValue(value)));
+        StdMutableRequest request = new StdMutableRequest();
+        request.add(requestAttributes);
+        return request;
+    }
+}
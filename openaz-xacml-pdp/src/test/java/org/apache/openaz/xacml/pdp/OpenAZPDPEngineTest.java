@@ -0,0 +1,175 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package org.apache.openaz.xacml.pdp;
+
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Decision;
+import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.RequestAttributes;
+import org.apache.openaz.xacml.api.Response;
+import org.apache.openaz.xacml.api.Result;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContextFactory;
+import org.apache.openaz.xacml.pdp.eval.EvaluationResult;
+import org.apache.openaz.xacml.pdp.policy.PolicyDef;
+import org.apache.openaz.xacml.pdp.std.StdPolicyFinderResult;
+import org.apache.openaz.xacml.pdp.util.OpenAZPDPProperties;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.StdMutableRequestAttributes;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OpenAZPDPEngineTest {
+
+    private static final int RESOURCE_COUNT = 50;
+
+    private EvaluationContextFactory evaluationContextFactory;
+    private ExecutorService executorService;
+
+    @Before
+    public void before() throws Exception {
+        // Permit even numbered resources, deny odd numbered ones
+        final PolicyDef policyDef = mock(PolicyDef.class);
+        when(policyDef.evaluate(any(EvaluationContext.class))).thenAnswer(new Answer<EvaluationResult>() {
+            @Override
+            public EvaluationResult answer(InvocationOnMock invocation) throws Throwable {
+                EvaluationContext evaluationContext = (EvaluationContext)invocation.getArguments()[0];
+                int resource = Integer.parseInt(getResourceId(evaluationContext.getRequest()));
+                return new EvaluationResult(resource % 2 == 0 ? Decision.PERMIT : Decision.DENY);
+            }
+        });
+
+        this.evaluationContextFactory = mock(EvaluationContextFactory.class);
+        when(this.evaluationContextFactory.getEvaluationContext(any(Request.class)))
+            .thenAnswer(new Answer<EvaluationContext>() {
+                @Override
+                public EvaluationContext answer(InvocationOnMock invocation) throws Throwable {
+                    Request request = (Request)invocation.getArguments()[0];
+                    EvaluationContext evaluationContext = mock(EvaluationContext.class);
+                    when(evaluationContext.getRequest()).thenReturn(request);
+                    when(evaluationContext.getRootPolicyDef())
+                        .thenReturn(new StdPolicyFinderResult<PolicyDef>(policyDef));
+                    return evaluationContext;
+                }
+            });
+        when(this.evaluationContextFactory.getEvaluationContexts(anyListOf(Request.class)))
+            .thenCallRealMethod();
+        this.executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void after() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testParallelResultsKeepRequestOrder() throws Exception {
+        OpenAZPDPEngine sequential = new OpenAZPDPEngine(this.evaluationContextFactory, null);
+        OpenAZPDPEngine parallel = new OpenAZPDPEngine(this.evaluationContextFactory, Decision.INDETERMINATE,
+                                                       null, this.executorService);
+
+        List<Decision> sequentialDecisions = getDecisions(sequential.decide(createRequest(false)));
+        List<Decision> parallelDecisions = getDecisions(parallel.decide(createRequest(false)));
+
+        assertEquals(RESOURCE_COUNT, parallelDecisions.size());
+        assertEquals(sequentialDecisions, parallelDecisions);
+    }
+
+    @Test
+    public void testParallelCombinedDecision() throws Exception {
+        OpenAZPDPEngine parallel = new OpenAZPDPEngine(this.evaluationContextFactory, Decision.INDETERMINATE,
+                                                       null, this.executorService);
+
+        List<Decision> decisions = getDecisions(parallel.decide(createRequest(true)));
+
+        assertEquals(1, decisions.size());
+        assertEquals(Decision.INDETERMINATE, decisions.get(0));
+    }
+
+    @Test
+    public void testEnginesShareForkJoinPool() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(OpenAZPDPProperties.PROP_PDPENGINE_PARALLELISM, "3");
+        OpenAZPDPEngineFactory factory = new OpenAZPDPEngineFactory();
+        OpenAZPDPEngine first = factory
+            .configureParallelism(new OpenAZPDPEngine(this.evaluationContextFactory, null), properties);
+        OpenAZPDPEngine second = factory
+            .configureParallelism(new OpenAZPDPEngine(this.evaluationContextFactory, null), properties);
+
+        assertNotNull(first.getExecutorService());
+        assertSame(first.getExecutorService(), second.getExecutorService());
+    }
+
+    private static Request createRequest(boolean combinedDecision) throws Exception {
+        StdMutableRequest request = new StdMutableRequest();
+        request.setCombinedDecision(combinedDecision);
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            StdMutableRequestAttributes requestAttributes = new StdMutableRequestAttributes();
+            requestAttributes.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE);
+            requestAttributes.add(new StdMutableAttribute(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE,
+                                                          XACML3.ID_RESOURCE_RESOURCE_ID,
+                                                          DataTypes.DT_STRING.createAttributeValue(Integer
+                                                              .toString(i))));
+            request.add(requestAttributes);
+        }
+        return request;
+    }
+
+    private static String getResourceId(Request request) {
+        Iterator<RequestAttributes> iterRequestAttributes = request
+            .getRequestAttributes(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE);
+        Attribute attribute = iterRequestAttributes.next().getAttributes(XACML3.ID_RESOURCE_RESOURCE_ID)
+            .next();
+        AttributeValue<?> attributeValue = attribute.getValues().iterator().next();
+        return attributeValue.getValue().toString();
+    }
+
+    private static List<Decision> getDecisions(Response response) {
+        List<Decision> decisions = new ArrayList<Decision>();
+        for (Result result : response.getResults()) {
+            decisions.add(result.getDecision());
+        }
+        return decisions;
+    }
+}
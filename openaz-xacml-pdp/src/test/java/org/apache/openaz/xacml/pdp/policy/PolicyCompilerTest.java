@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.policy;
+
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.policy.expressions.Apply;
+import org.apache.openaz.xacml.pdp.policy.expressions.AttributeDesignator;
+import org.apache.openaz.xacml.pdp.policy.expressions.AttributeValueExpression;
+import org.apache.openaz.xacml.pdp.policy.expressions.CompiledApply;
+import org.apache.openaz.xacml.pdp.policy.expressions.ConstantExpression;
+import org.apache.openaz.xacml.std.IdentifierImpl;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.pip.StdSinglePIPResponse;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PolicyCompilerTest {
+
+    @Test
+    public void testCompiledApplyMatchesInterpreted() throws Exception {
+        AttributeDesignator attributeDesignator = new AttributeDesignator();
+        attributeDesignator.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION);
+        attributeDesignator.setAttributeId(XACML3.ID_ACTION_ACTION_ID);
+        attributeDesignator.setDataTypeId(XACML3.ID_DATATYPE_STRING);
+        attributeDesignator.setMustBePresent(false);
+        EvaluationContext evaluationContext = mock(EvaluationContext.class);
+        when(evaluationContext.getAttributes(any(PIPRequest.class)))
+            .thenReturn(new StdSinglePIPResponse(new StdMutableAttribute(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION,
+                                                                         XACML3.ID_ACTION_ACTION_ID,
+                                                                         DataTypes.DT_STRING
+                                                                             .createAttributeValue("read"))));
+        Apply apply = createApply(XACML3.ID_FUNCTION_AND,
+                                  createApply(XACML3.ID_FUNCTION_STRING_IS_IN, literal("read"), attributeDesignator),
+                                  createApply(XACML3.ID_FUNCTION_STRING_EQUAL, literal("read"), literal("write")));
+        ExpressionResult interpreted = apply.evaluate(evaluationContext, null);
+
+        PolicyCompiler policyCompiler = new PolicyCompiler();
+        Expression compiled = policyCompiler.compile(apply);
+
+        assertTrue(compiled instanceof CompiledApply);
+        assertEquals(2, policyCompiler.getCompiledCount());
+        assertEquals(1, policyCompiler.getFoldedCount());
+        assertEquals(interpreted.getValue(), compiled.evaluate(evaluationContext, null).getValue());
+        assertEquals(Boolean.FALSE, compiled.evaluate(evaluationContext, null).getValue().getValue());
+    }
+
+    @Test
+    public void testCompiledApplyFollowsArgumentChanges() throws Exception {
+        AttributeDesignator attributeDesignator = new AttributeDesignator();
+        attributeDesignator.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION);
+        attributeDesignator.setAttributeId(XACML3.ID_ACTION_ACTION_ID);
+        attributeDesignator.setDataTypeId(XACML3.ID_DATATYPE_STRING);
+        attributeDesignator.setMustBePresent(false);
+        EvaluationContext evaluationContext = mock(EvaluationContext.class);
+        when(evaluationContext.getAttributes(any(PIPRequest.class)))
+            .thenReturn(new StdSinglePIPResponse(new StdMutableAttribute(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION,
+                                                                         XACML3.ID_ACTION_ACTION_ID,
+                                                                         DataTypes.DT_STRING
+                                                                             .createAttributeValue("read"))));
+        Apply isIn = createApply(XACML3.ID_FUNCTION_STRING_IS_IN, literal("read"), attributeDesignator);
+        Apply apply = createApply(XACML3.ID_FUNCTION_NOT,
+                                  createApply(XACML3.ID_FUNCTION_NOT, isIn));
+
+        PolicyCompiler policyCompiler = new PolicyCompiler();
+        Apply compiled = (Apply)policyCompiler.compile(apply);
+        Apply compiledIsIn = (Apply)((Apply)compiled.getArguments().next()).getArguments().next();
+
+        assertEquals(3, policyCompiler.getCompiledCount());
+        assertEquals(Boolean.TRUE, compiled.evaluate(evaluationContext, null).getValue().getValue());
+        compiledIsIn.setArguments(Arrays.asList(literal("write"), attributeDesignator));
+        assertEquals(Boolean.FALSE, compiled.evaluate(evaluationContext, null).getValue().getValue());
+    }
+
+    @Test
+    public void testUnsupportedApplyStaysInterpreted() throws Exception {
+        Apply unknown = createApply(new IdentifierImpl("urn:example:function:unknown"), literal("read"));
+        Apply wrongArity = createApply(XACML3.ID_FUNCTION_STRING_EQUAL, literal("read"));
+
+        PolicyCompiler policyCompiler = new PolicyCompiler();
+
+        assertSame(unknown, policyCompiler.compile(unknown));
+        assertSame(wrongArity, policyCompiler.compile(wrongArity));
+        assertEquals(0, policyCompiler.getCompiledCount());
+        assertFalse(wrongArity.evaluate(mock(EvaluationContext.class), null).isOk());
+    }
+
+    @Test
+    public void testConstantApplyIsFolded() throws Exception {
+        Apply concatenate = createApply(XACML3.ID_FUNCTION_STRING_CONCATENATE, literal("re"), literal("ad"));
+        Apply bag = createApply(XACML3.ID_FUNCTION_STRING_BAG, literal("read"), literal("write"));
+        Apply or = createApply(XACML3.ID_FUNCTION_OR, literal(false),
+                               createApply(XACML3.ID_FUNCTION_NOT, literal(false)), new Apply());
+
+        PolicyCompiler policyCompiler = new PolicyCompiler();
+        Expression foldedConcatenate = policyCompiler.compile(concatenate);
+        Expression foldedBag = policyCompiler.compile(bag);
+        Expression foldedOr = policyCompiler.compile(or);
+
+        assertEquals("read", ((AttributeValueExpression)foldedConcatenate).getAttributeValue().getValue());
+        assertEquals(2, ((ConstantExpression)foldedBag).getExpressionResult().getBag().size());
+        assertEquals(Boolean.TRUE, ((AttributeValueExpression)foldedOr).getAttributeValue().getValue());
+        assertEquals(0, policyCompiler.getCompiledCount());
+        assertEquals(6, policyCompiler.getFoldedCount());
+    }
+
+    private static Expression literal(boolean value) throws Exception {
+        return new AttributeValueExpression(DataTypes.DT_BOOLEAN.createAttributeValue(value));
+    }
+
+    private static Expression literal(String value) throws Exception {
+        return new AttributeValueExpression(DataTypes.DT_STRING.createAttributeValue(value));
+    }
+
+    private static Apply createApply(Identifier functionId, Expression... arguments) {
+        return new Apply(functionId, null, Arrays.asList(arguments));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package org.apache.openaz.xacml.pdp.policy;
+
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.Decision;
+import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.XACML1;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.eval.EvaluationResult;
+import org.apache.openaz.xacml.pdp.policy.expressions.AttributeDesignator;
+import org.apache.openaz.xacml.pdp.std.combiners.CombiningAlgorithmBase;
+import org.apache.openaz.xacml.std.StdAttribute;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.StdMutableRequestAttributes;
+import org.apache.openaz.xacml.std.StdStatus;
+import org.apache.openaz.xacml.std.StdStatusCode;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TargetIndexTest {
+
+    private EvaluationContext evaluationContext;
+
+    @Before
+    public void before() {
+        this.evaluationContext = mock(EvaluationContext.class);
+    }
+
+    @Test
+    public void testCandidatesInDeclaredOrder() throws Exception {
+        List<String> elements = Arrays.asList("read", "unindexed", "write", "read-or-delete");
+        List<Target> targets = new ArrayList<Target>();
+        targets.add(createTarget("read"));
+        targets.add(new Target());
+        targets.add(createTarget("write"));
+        targets.add(createTarget("read", "delete"));
+
+        when(this.evaluationContext.getRequest()).thenReturn(createRequest("read"));
+        when(this.evaluationContext.getAttributes(any(PIPRequest.class)))
+            .thenReturn(new StdPIPResponse(createAction("read")));
+
+        TargetIndex<String> targetIndex = new TargetIndex<String>(elements, targets);
+
+        assertEquals(3, targetIndex.getIndexedCount());
+        assertEquals(Arrays.asList("read", "unindexed", "read-or-delete"),
+                     targetIndex.getCandidates(this.evaluationContext));
+    }
+
+    @Test
+    public void testIndeterminateDesignatorReturnsAll() throws Exception {
+        List<String> elements = Arrays.asList("read", "write");
+        List<Target> targets = Arrays.asList(createTarget("read"), createTarget("write"));
+
+        when(this.evaluationContext.getRequest()).thenReturn(createRequest("read"));
+        when(this.evaluationContext.getAttributes(any(PIPRequest.class)))
+            .thenReturn(new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR)));
+
+        TargetIndex<String> targetIndex = new TargetIndex<String>(elements, targets);
+
+        assertEquals(elements, targetIndex.getCandidates(this.evaluationContext));
+    }
+
+    @Test
+    public void testAttributeNotInRequestIsNotRetrieved() throws Exception {
+        List<String> elements = Arrays.asList("read", "write");
+        List<Target> targets = Arrays.asList(createTarget("read"), createTarget("write"));
+
+        when(this.evaluationContext.getRequest()).thenReturn(createRequest());
+
+        TargetIndex<String> targetIndex = new TargetIndex<String>(elements, targets);
+
+        assertEquals(elements, targetIndex.getCandidates(this.evaluationContext));
+        verify(this.evaluationContext, never()).getAttributes(any(PIPRequest.class));
+    }
+
+    @Test
+    public void testMatchThatIsNotIndexable() throws Exception {
+        List<String> elements = Arrays.asList("read", "write");
+        Match match = createTarget("write").getAnyOfs().next().getAllOfs().next().getMatches().next();
+        AllOf allOf = new AllOf();
+        allOf.addMatch(new Match(match.getMatchId(), match.getAttributeValue(),
+                                 match.getAttributeRetrievalBase(), null) {
+            @Override
+            public boolean isIndexable() {
+                return false;
+            }
+        });
+        List<Target> targets = Arrays.asList(createTarget("read"),
+                                             new Target(Collections.singletonList(new AnyOf(Collections
+                                                 .singletonList(allOf)))));
+
+        when(this.evaluationContext.getRequest()).thenReturn(createRequest("read"));
+        when(this.evaluationContext.getAttributes(any(PIPRequest.class)))
+            .thenReturn(new StdPIPResponse(createAction("read")));
+
+        TargetIndex<String> targetIndex = new TargetIndex<String>(elements, targets);
+
+        assertEquals(1, targetIndex.getIndexedCount());
+        assertEquals(elements, targetIndex.getCandidates(this.evaluationContext));
+    }
+
+    @Test
+    public void testPolicySkipsRulesThatCannotMatch() throws Exception {
+        final List<String> evaluatedRules = new ArrayList<String>();
+        Policy policy = new Policy(StdStatusCode.STATUS_CODE_OK);
+        policy.setTarget(new Target());
+        policy.setRuleCombiningAlgorithm(new CombiningAlgorithmBase<Rule>(XACML1.ID_RULE_COMBINING_ALGORITHM) {
+            @Override
+            public EvaluationResult combine(EvaluationContext evaluationContext,
+                                            List<CombiningElement<Rule>> combiningElements,
+                                            List<CombinerParameter> combinerParameters) {
+                for (CombiningElement<Rule> combiningElement : combiningElements) {
+                    evaluatedRules.add(combiningElement.getEvaluatable().getRuleId());
+                }
+                return new EvaluationResult(Decision.NOTAPPLICABLE);
+            }
+        });
+        List<String> actions = Arrays.asList("write", "read", "delete", "read");
+        for (int i = 0; i < actions.size(); i++) {
+            String action = actions.get(i);
+            Rule rule = new Rule();
+            rule.setPolicy(policy);
+            rule.setRuleId(action + i);
+            rule.setRuleEffect(RuleEffect.PERMIT);
+            rule.setTarget(createTarget(action));
+            policy.addRule(rule);
+        }
+
+        when(this.evaluationContext.getRequest()).thenReturn(createRequest("read"));
+        when(this.evaluationContext.getAttributes(any(PIPRequest.class)))
+            .thenReturn(new StdPIPResponse(createAction("read")));
+
+        policy.evaluate(this.evaluationContext);
+
+        assertEquals(Arrays.asList("read1", "read3"), evaluatedRules);
+    }
+
+    private static Attribute createAction(String action) throws Exception {
+        return new StdAttribute(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION, XACML3.ID_ACTION_ACTION_ID,
+                                DataTypes.DT_STRING.createAttributeValue(action));
+    }
+
+    private static Request createRequest(String... actions) throws Exception {
+        StdMutableRequest request = new StdMutableRequest();
+        for (String action : actions) {
+            StdMutableRequestAttributes requestAttributes = new StdMutableRequestAttributes();
+            requestAttributes.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION);
+            requestAttributes.add(createAction(action));
+            request.add(requestAttributes);
+        }
+        return request;
+    }
+
+    private static Target createTarget(String... actions) throws Exception {
+        AnyOf anyOf = new AnyOf();
+        for (String action : actions) {
+            AttributeDesignator attributeDesignator = new AttributeDesignator();
+            attributeDesignator.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION);
+            attributeDesignator.setAttributeId(XACML3.ID_ACTION_ACTION_ID);
+            attributeDesignator.setDataTypeId(XACML3.ID_DATATYPE_STRING);
+            attributeDesignator.setMustBePresent(false);
+
+            AllOf allOf = new AllOf();
+            allOf.addMatch(new Match(XACML3.ID_FUNCTION_STRING_EQUAL,
+                                     DataTypes.DT_STRING.createAttributeValue(action), attributeDesignator,
+                                     null));
+            anyOf.addAllOf(allOf);
+        }
+        return new Target(Collections.singletonList(anyOf));
+    }
+}
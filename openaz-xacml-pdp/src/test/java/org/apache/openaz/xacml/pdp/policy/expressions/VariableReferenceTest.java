@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.policy.expressions;
+
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.pdp.eval.EvaluationContext;
+import org.apache.openaz.xacml.pdp.eval.EvaluationException;
+import org.apache.openaz.xacml.pdp.policy.Expression;
+import org.apache.openaz.xacml.pdp.policy.ExpressionResult;
+import org.apache.openaz.xacml.pdp.policy.Policy;
+import org.apache.openaz.xacml.pdp.policy.PolicyDefaults;
+import org.apache.openaz.xacml.pdp.policy.VariableDefinition;
+import org.apache.openaz.xacml.pdp.std.StdEvaluationContext;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class VariableReferenceTest {
+
+    /**
+     * CountingApply counts how often its <code>Expression</code> is evaluated.
+     */
+    private static class CountingApply extends Apply {
+        private int evaluations;
+
+        CountingApply(Identifier functionId, Expression... arguments) {
+            super(functionId, null, Arrays.asList(arguments));
+        }
+
+        @Override
+        public ExpressionResult evaluate(EvaluationContext evaluationContext, PolicyDefaults policyDefaults)
+            throws EvaluationException {
+            this.evaluations++;
+            return super.evaluate(evaluationContext, policyDefaults);
+        }
+    }
+
+    @Test
+    public void testVariableIsEvaluatedOncePerContext() throws Exception {
+        CountingApply apply = new CountingApply(XACML3.ID_FUNCTION_STRING_EQUAL,
+                                                literal("read"), literal("read"));
+        VariableReference variableReference = createVariableReference(apply);
+
+        EvaluationContext evaluationContext = createEvaluationContext();
+        variableReference.evaluate(evaluationContext, null);
+        ExpressionResult expressionResult = variableReference.evaluate(evaluationContext, null);
+        assertEquals(Boolean.TRUE, expressionResult.getValue().getValue());
+        assertEquals(1, apply.evaluations);
+
+        variableReference.evaluate(createEvaluationContext(), null);
+        assertEquals(2, apply.evaluations);
+    }
+
+    @Test
+    public void testCurrentTimeVariableIsNotMemoized() throws Exception {
+        AttributeDesignator attributeDesignator = new AttributeDesignator();
+        attributeDesignator.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT);
+        attributeDesignator.setAttributeId(XACML3.ID_ENVIRONMENT_CURRENT_DATETIME);
+        attributeDesignator.setDataTypeId(XACML3.ID_DATATYPE_DATETIME);
+        CountingApply apply = new CountingApply(XACML3.ID_FUNCTION_DATETIME_BAG_SIZE, attributeDesignator);
+        VariableReference variableReference = createVariableReference(apply);
+
+        EvaluationContext evaluationContext = createEvaluationContext();
+        variableReference.evaluate(evaluationContext, null);
+        variableReference.evaluate(evaluationContext, null);
+        assertEquals(2, apply.evaluations);
+    }
+
+    @Test
+    public void testContextWithoutCacheEvaluatesEveryReference() throws Exception {
+        CountingApply apply = new CountingApply(XACML3.ID_FUNCTION_STRING_EQUAL,
+                                                literal("read"), literal("read"));
+        VariableReference variableReference = createVariableReference(apply);
+
+        EvaluationContext evaluationContext = mock(EvaluationContext.class);
+        variableReference.evaluate(evaluationContext, null);
+        ExpressionResult expressionResult = variableReference.evaluate(evaluationContext, null);
+        assertEquals(Boolean.TRUE, expressionResult.getValue().getValue());
+        assertEquals(2, apply.evaluations);
+    }
+
+    private static EvaluationContext createEvaluationContext() {
+        return new StdEvaluationContext(new StdMutableRequest(), null, mock(PIPFinder.class));
+    }
+
+    private static VariableReference createVariableReference(Expression expression) {
+        VariableDefinition variableDefinition = new VariableDefinition();
+        variableDefinition.setId("variable");
+        variableDefinition.setExpression(expression);
+        Policy policy = new Policy();
+        policy.addVariableDefinition(variableDefinition);
+        return new VariableReference(policy, "variable");
+    }
+
+    private static Expression literal(String value) throws Exception {
+        return new AttributeValueExpression(DataTypes.DT_STRING.createAttributeValue(value));
+    }
+}
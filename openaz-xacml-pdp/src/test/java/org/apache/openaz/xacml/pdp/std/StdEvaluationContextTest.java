@@ -0,0 +1,228 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.std;
+
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPEngine;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.pdp.policy.ExpressionResult;
+import org.apache.openaz.xacml.pdp.policy.PolicyDef;
+import org.apache.openaz.xacml.pdp.policy.dom.DOMPolicyDef;
+import org.apache.openaz.xacml.pdp.policy.expressions.AttributeDesignator;
+import org.apache.openaz.xacml.std.IdentifierImpl;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.StdMutableRequestAttributes;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.pip.StdPIPRequest;
+import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.apache.openaz.xacml.std.pip.StdSinglePIPResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StdEvaluationContextTest {
+
+    private static final PIPRequest PIP_REQUEST_ROLE = new StdPIPRequest(
+                                                                         XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                                         new IdentifierImpl("urn:example:role"),
+                                                                         XACML3.ID_DATATYPE_STRING);
+    private static final PIPRequest PIP_REQUEST_GROUP = new StdPIPRequest(
+                                                                          XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                                          new IdentifierImpl("urn:example:group"),
+                                                                          XACML3.ID_DATATYPE_STRING);
+
+    private static final String POLICY_FORMAT = "<Policy"
+        + " xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\""
+        + " PolicyId=\"urn:example:policy:%1$s\" Version=\"1.0\""
+        + " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+        + "<Target><AnyOf><AllOf>"
+        + "<Match MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+        + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">%1$s</AttributeValue>"
+        + "<AttributeDesignator Category=\"urn:oasis:names:tc:xacml:3.0:attribute-category:action\""
+        + " AttributeId=\"urn:oasis:names:tc:xacml:1.0:action:action-id\""
+        + " DataType=\"http://www.w3.org/2001/XMLSchema#string\" MustBePresent=\"false\"/>"
+        + "</Match></AllOf></AnyOf></Target>"
+        + "<Rule RuleId=\"urn:example:rule:%1$s\" Effect=\"Permit\"><Condition>"
+        + "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">"
+        + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">admin</AttributeValue>"
+        + "<AttributeDesignator"
+        + " Category=\"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject\""
+        + " AttributeId=\"%2$s\" DataType=\"http://www.w3.org/2001/XMLSchema#string\""
+        + " MustBePresent=\"false\"/>"
+        + "</Apply></Condition></Rule></Policy>";
+
+    private ExecutorService executorService;
+    private PIPFinder pipFinder;
+
+    @Before
+    public void before() throws Exception {
+        this.executorService = Executors.newFixedThreadPool(2);
+        this.pipFinder = mock(PIPFinder.class);
+        when(this.pipFinder.getAttributes(eq(PIP_REQUEST_ROLE), any(PIPEngine.class), any(PIPFinder.class)))
+            .thenReturn(new StdSinglePIPResponse(
+                                                 new StdMutableAttribute(
+                                                                         XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                                         PIP_REQUEST_ROLE.getAttributeId(),
+                                                                         DataTypes.DT_STRING
+                                                                             .createAttributeValue("admin"))));
+        when(this.pipFinder.getAttributes(eq(PIP_REQUEST_GROUP), any(PIPEngine.class), any(PIPFinder.class)))
+            .thenReturn(StdPIPResponse.PIP_RESPONSE_EMPTY);
+    }
+
+    @After
+    public void after() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testPrefetchSeedsRequestFinderCache() throws Exception {
+        StdEvaluationContext evaluationContext = new StdEvaluationContext(new StdMutableRequest(), null,
+                                                                          this.pipFinder);
+        evaluationContext.prefetchAttributes(Arrays.asList(PIP_REQUEST_ROLE, PIP_REQUEST_GROUP),
+                                             this.executorService);
+
+        PIPResponse pipResponseRole = evaluationContext.getAttributes(PIP_REQUEST_ROLE);
+        PIPResponse pipResponseGroup = evaluationContext.getAttributes(PIP_REQUEST_GROUP);
+
+        assertEquals(1, pipResponseRole.getAttributes().size());
+        assertEquals(0, pipResponseGroup.getAttributes().size());
+        verify(this.pipFinder, times(1)).getAttributes(eq(PIP_REQUEST_ROLE), any(PIPEngine.class),
+                                                       any(PIPFinder.class));
+        verify(this.pipFinder, times(1)).getAttributes(eq(PIP_REQUEST_GROUP), any(PIPEngine.class),
+                                                       any(PIPFinder.class));
+    }
+
+    @Test
+    public void testPrefetchMatchesDataType() throws Exception {
+        StdMutableRequestAttributes requestAttributes = new StdMutableRequestAttributes();
+        requestAttributes.setCategory(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT);
+        requestAttributes.add(new StdMutableAttribute(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                      PIP_REQUEST_ROLE.getAttributeId(),
+                                                      DataTypes.DT_INTEGER.createAttributeValue(7)));
+        StdMutableRequest request = new StdMutableRequest();
+        request.add(requestAttributes);
+
+        StdEvaluationContext evaluationContext = new StdEvaluationContext(request, null, this.pipFinder);
+        evaluationContext.prefetchAttributes(Arrays.asList(PIP_REQUEST_ROLE), this.executorService);
+
+        verify(this.pipFinder, times(1)).getAttributes(eq(PIP_REQUEST_ROLE), any(PIPEngine.class),
+                                                       any(PIPFinder.class));
+    }
+
+    @Test
+    public void testRequiredAttributesOfCandidateRoots() throws Exception {
+        List<PolicyDef> listPolicyDefs = Arrays.asList(loadPolicy("read", PIP_REQUEST_ROLE),
+                                                       loadPolicy("write", PIP_REQUEST_GROUP));
+        StdPolicyFinder policyFinder = new StdPolicyFinder(listPolicyDefs, null);
+        StdMutableRequestAttributes requestAttributes = new StdMutableRequestAttributes();
+        requestAttributes.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION);
+        requestAttributes.add(new StdMutableAttribute(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION,
+                                                      XACML3.ID_ACTION_ACTION_ID,
+                                                      DataTypes.DT_STRING.createAttributeValue("read")));
+        StdMutableRequest request = new StdMutableRequest();
+        request.add(requestAttributes);
+
+        Set<PIPRequest> requiredAttributes = policyFinder
+            .getRequiredAttributes(new StdEvaluationContext(request, policyFinder, this.pipFinder));
+
+        assertTrue(requiredAttributes.contains(PIP_REQUEST_ROLE));
+        assertFalse(requiredAttributes.contains(PIP_REQUEST_GROUP));
+        assertTrue(policyFinder.getRequiredAttributes().contains(PIP_REQUEST_GROUP));
+    }
+
+    @Test
+    public void testRequestAttributesComeFromIndex() throws Exception {
+        List<AttributeValue<?>> listValues = new ArrayList<AttributeValue<?>>();
+        listValues.add(DataTypes.DT_STRING.createAttributeValue("admin"));
+        listValues.add(DataTypes.DT_INTEGER.createAttributeValue(7));
+        listValues.add(DataTypes.DT_STRING.createAttributeValue("audit"));
+        StdMutableRequestAttributes requestAttributes = new StdMutableRequestAttributes();
+        requestAttributes.setCategory(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT);
+        requestAttributes.add(new StdMutableAttribute(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                      PIP_REQUEST_ROLE.getAttributeId(), listValues,
+                                                      "urn:example:issuer", false));
+        StdMutableRequest request = new StdMutableRequest();
+        request.add(requestAttributes);
+
+        StdEvaluationContext evaluationContext = new StdEvaluationContext(request, null, this.pipFinder);
+        PIPResponse pipResponseString = evaluationContext.getAttributes(PIP_REQUEST_ROLE);
+        PIPResponse pipResponseIssuer = evaluationContext
+            .getAttributes(new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, PIP_REQUEST_ROLE
+                .getAttributeId(), XACML3.ID_DATATYPE_INTEGER, "urn:example:issuer"));
+
+        assertEquals(1, pipResponseString.getAttributes().size());
+        assertEquals(2, pipResponseString.getAttributes().iterator().next().getValues().size());
+        assertEquals(1, pipResponseIssuer.getAttributes().size());
+        assertEquals(1, pipResponseIssuer.getAttributes().iterator().next().getValues().size());
+        assertEquals(4, request.getAttributeIndex().size());
+        verify(this.pipFinder, never()).getAttributes(eq(PIP_REQUEST_ROLE), any(PIPEngine.class),
+                                                      any(PIPFinder.class));
+    }
+
+    @Test
+    public void testAttributeDesignatorReusesBag() throws Exception {
+        AttributeDesignator attributeDesignator = new AttributeDesignator();
+        attributeDesignator.setCategory(PIP_REQUEST_ROLE.getCategory());
+        attributeDesignator.setAttributeId(PIP_REQUEST_ROLE.getAttributeId());
+        attributeDesignator.setDataTypeId(PIP_REQUEST_ROLE.getDataTypeId());
+        attributeDesignator.setMustBePresent(true);
+
+        StdEvaluationContext evaluationContext = new StdEvaluationContext(new StdMutableRequest(), null,
+                                                                          this.pipFinder);
+        ExpressionResult expressionResult1 = attributeDesignator.evaluate(evaluationContext, null);
+        ExpressionResult expressionResult2 = attributeDesignator.evaluate(evaluationContext, null);
+
+        assertEquals(1, expressionResult1.getBag().size());
+        assertSame(expressionResult1.getBag(), expressionResult2.getBag());
+        assertSame(expressionResult1.getBag(), evaluationContext.getAttributeBag(PIP_REQUEST_ROLE));
+    }
+
+    private static PolicyDef loadPolicy(String action, PIPRequest pipRequest) throws Exception {
+        return DOMPolicyDef.load(new ByteArrayInputStream(String.format(POLICY_FORMAT, action,
+                                                                        pipRequest.getAttributeId()
+                                                                            .stringValue())
+            .getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.std.dom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.xpath.XPath;
+
+import org.apache.openaz.xacml.std.datatypes.StringNamespaceContext;
+import org.apache.openaz.xacml.std.dom.DOMProperties;
+import org.apache.openaz.xacml.std.dom.DOMStructureException;
+import org.apache.openaz.xacml.std.dom.DOMUtil;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Tests the DocumentBuilders and XPaths that <code>DOMUtil</code> reuses for each thread.
+ */
+public class DOMUtilTest {
+
+    @Test
+    public void testXPathIsResetAndKeptPerThread() throws Exception {
+        XPath xPath = DOMUtil.getXPath();
+        xPath.setNamespaceContext(new StringNamespaceContext("md", "http://www.medico.com/schemas/record"));
+
+        XPath xPathAgain = DOMUtil.getXPath();
+        assertSame(xPath, xPathAgain);
+        assertNull(xPathAgain.getNamespaceContext());
+
+        final AtomicReference<XPath> xPathOtherThread = new AtomicReference<XPath>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                xPathOtherThread.set(DOMUtil.getXPath());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotSame(xPath, xPathOtherThread.get());
+    }
+
+    @Test
+    public void testLoadDocument() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Document document = DOMUtil.loadDocument(this.toInputStream("<md:record xmlns:md=\"urn:md\"/>"));
+            assertEquals("urn:md", document.getDocumentElement().getNamespaceURI());
+        }
+
+        /*
+         * Secure processing is on by default and does not let a document pull in an external DTD
+         */
+        assertTrue(DOMProperties.isSecureProcessing());
+        try {
+            DOMUtil.loadDocument(this.toInputStream("<!DOCTYPE record SYSTEM \"http://localhost:1/record.dtd\">"
+                                                    + "<record/>"));
+            fail("Operation should throw exception");
+        } catch (DOMStructureException e) {
+            // correct response
+        }
+
+        // the DocumentBuilder is reset after a failed parse as well
+        Document document = DOMUtil.loadDocument(this.toInputStream("<record/>"));
+        assertEquals("record", document.getDocumentElement().getLocalName());
+    }
+
+    private ByteArrayInputStream toInputStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.std.functions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.pdp.policy.Bag;
+import org.apache.openaz.xacml.pdp.policy.FunctionArgument;
+import org.apache.openaz.xacml.pdp.policy.FunctionArgumentAttributeValue;
+import org.apache.openaz.xacml.pdp.policy.FunctionArgumentBag;
+import org.apache.openaz.xacml.pdp.policy.FunctionDefinition;
+import org.apache.openaz.xacml.pdp.std.StdFunctions;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+
+/**
+ * FunctionDefinitionSetBenchmark times the string set functions and <code>string-is-in</code> on large bags,
+ * such as a subject with thousands of group memberships tested against a role set. It is run from the
+ * command line rather than as part of the unit tests:
+ *
+ * <pre>
+ * java -cp ... org.apache.openaz.xacml.pdp.std.functions.FunctionDefinitionSetBenchmark [size ...]
+ * </pre>
+ *
+ * For each bag size it prints the average time per call in nano-seconds.
+ */
+public class FunctionDefinitionSetBenchmark {
+    private static final int[] DEFAULT_SIZES = {
+        10, 100, 1000, 2000, 10000
+    };
+    private static final long MIN_NANOS = 200000000L;
+
+    private FunctionDefinitionSetBenchmark() {
+    }
+
+    private static Bag newBag(String prefix, int start, int size) throws Exception {
+        Bag bag = new Bag();
+        for (int i = start; i < start + size; i++) {
+            bag.add(DataTypes.DT_STRING.createAttributeValue(prefix + i));
+        }
+        return bag;
+    }
+
+    private static long time(FunctionDefinition functionDefinition, List<FunctionArgument> arguments) {
+        /*
+         * Warm up, then run for at least MIN_NANOS
+         */
+        for (int i = 0; i < 100; i++) {
+            functionDefinition.evaluate(null, arguments);
+        }
+        long calls = 0;
+        long tStart = System.nanoTime();
+        long tElapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                functionDefinition.evaluate(null, arguments);
+            }
+            calls += 100;
+            tElapsed = System.nanoTime() - tStart;
+        } while (tElapsed < MIN_NANOS);
+        return tElapsed / calls;
+    }
+
+    private static List<FunctionArgument> arguments(FunctionArgument... functionArguments) {
+        List<FunctionArgument> listArguments = new ArrayList<FunctionArgument>();
+        for (FunctionArgument functionArgument : functionArguments) {
+            listArguments.add(functionArgument);
+        }
+        return listArguments;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("size,intersection,union,at-least-one-member-of,subset,set-equals,is-in");
+        for (int size : sizes) {
+            /*
+             * The groups of a subject against a role set that overlaps it by half
+             */
+            FunctionArgument groups = new FunctionArgumentBag(newBag("group", 0, size));
+            FunctionArgument roles = new FunctionArgumentBag(newBag("group", size / 2, size));
+            AttributeValue<?> missing = DataTypes.DT_STRING.createAttributeValue("missing");
+
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(size);
+            stringBuilder.append(',').append(time(StdFunctions.FD_STRING_INTERSECTION, arguments(groups, roles)));
+            stringBuilder.append(',').append(time(StdFunctions.FD_STRING_UNION, arguments(groups, roles)));
+            stringBuilder.append(',').append(time(StdFunctions.FD_STRING_AT_LEAST_ONE_MEMBER_OF,
+                                                  arguments(new FunctionArgumentBag(newBag("other", 0, size)),
+                                                            roles)));
+            stringBuilder.append(',').append(time(StdFunctions.FD_STRING_SUBSET, arguments(groups, groups)));
+            stringBuilder.append(',').append(time(StdFunctions.FD_STRING_SET_EQUALS, arguments(groups, groups)));
+            stringBuilder.append(',').append(time(StdFunctions.FD_STRING_IS_IN,
+                                                  arguments(new FunctionArgumentAttributeValue(missing), groups)));
+            System.out.println(stringBuilder.toString());
+        }
+    }
+}
@@ -1874,6 +1874,68 @@ public class FunctionDefinitionSetTest {
 
     }
 
+    //
+    // Large bags use the hash index in Bag
+    //
+
+    @Test
+    public void testString_large_bags() {
+        Bag bagGroups = new Bag();
+        Bag bagRoles = new Bag();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                bagGroups.add(DataTypes.DT_STRING.createAttributeValue("group" + i));
+                bagGroups.add(DataTypes.DT_STRING.createAttributeValue("group" + i));
+            }
+            for (int i = 1990; i < 2010; i++) {
+                bagRoles.add(DataTypes.DT_STRING.createAttributeValue("group" + i));
+            }
+        } catch (Exception ex) {
+            fail("creating attribute e=" + ex);
+        }
+        FunctionArgumentBag attrBagGroups = new FunctionArgumentBag(bagGroups);
+        FunctionArgumentBag attrBagRoles = new FunctionArgumentBag(bagRoles);
+
+        // intersection keeps the order of the first bag and drops duplicates
+        arguments.clear();
+        arguments.add(attrBagGroups);
+        arguments.add(attrBagRoles);
+        ExpressionResult res = StdFunctions.FD_STRING_INTERSECTION.evaluate(null, arguments);
+        assertTrue(res.isOk());
+        assertEquals(10, res.getBag().size());
+        assertEquals("group1990", res.getBag().getAttributeValueList().get(0).getValue());
+
+        res = StdFunctions.FD_STRING_UNION.evaluate(null, arguments);
+        assertTrue(res.isOk());
+        assertEquals(2010, res.getBag().size());
+        assertEquals("group2009", res.getBag().getAttributeValueList().get(2009).getValue());
+
+        res = StdFunctions.FD_STRING_AT_LEAST_ONE_MEMBER_OF.evaluate(null, arguments);
+        assertTrue((Boolean)res.getValue().getValue());
+
+        res = StdFunctions.FD_STRING_SUBSET.evaluate(null, arguments);
+        assertFalse((Boolean)res.getValue().getValue());
+
+        res = StdFunctions.FD_STRING_SET_EQUALS.evaluate(null, arguments);
+        assertFalse((Boolean)res.getValue().getValue());
+
+        // values added after the first lookup are seen by later lookups
+        arguments.clear();
+        arguments.add(attrBagRoles);
+        arguments.add(attrBagGroups);
+        res = StdFunctions.FD_STRING_SUBSET.evaluate(null, arguments);
+        assertFalse((Boolean)res.getValue().getValue());
+        try {
+            for (int i = 2000; i < 2010; i++) {
+                bagGroups.add(DataTypes.DT_STRING.createAttributeValue("group" + i));
+            }
+        } catch (Exception ex) {
+            fail("creating attribute e=" + ex);
+        }
+        res = StdFunctions.FD_STRING_SUBSET.evaluate(null, arguments);
+        assertTrue((Boolean)res.getValue().getValue());
+    }
+
     //
     //
     // REST OF DATA TYPES OMITTED
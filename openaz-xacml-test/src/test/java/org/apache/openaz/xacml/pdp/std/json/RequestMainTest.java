@@ -31,8 +31,11 @@
 package org.apache.openaz.xacml.pdp.std.json;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+
 import org.apache.openaz.xacml.api.Request;
 import org.apache.openaz.xacml.std.json.JSONRequest;
 import org.apache.openaz.xacml.std.json.JSONStructureException;
@@ -937,4 +940,78 @@ public class RequestMainTest {
         }
     }
 
+    // The same Request read from an InputStream
+    @Test
+    public void testInputStream() {
+        try {
+            Request requestFromString = JSONRequest.load(allFieldsRequest);
+            request = JSONRequest.load(new ByteArrayInputStream(allFieldsRequest.getBytes("UTF-8")));
+            assertEquals(requestFromString.toString(), request.toString());
+
+            request = JSONRequest.load(new ByteArrayInputStream(exampleFromSpec.getBytes("UTF-8")));
+            assertEquals(JSONRequest.load(exampleFromSpec).toString(), request.toString());
+
+            // the stream is always read as UTF-8, whatever the platform default
+            String nonAscii = "{\"Request\" : {\"AccessSubject\" : {\"Attribute\" : {\"AttributeId\" : "
+                              + "\"subject-id\", \"Value\" : \"Ren\u00e9e \u00dcmit \u4e2d\" } } } }";
+            request = JSONRequest.load(new ByteArrayInputStream(nonAscii.getBytes("UTF-8")));
+            assertEquals(JSONRequest.load(nonAscii).toString(), request.toString());
+            assertTrue(request.toString(), request.toString().contains("Ren\u00e9e \u00dcmit \u4e2d"));
+        } catch (Exception e) {
+            fail("Failed convert from JSON to object: " + e);
+        }
+    }
+
+    // The message explaining why a Request could not be loaded
+    @Test
+    public void testErrorMessages() {
+        assertEquals("Top-level message contains unknown elements 'Foo', 'Bar'",
+                     loadError("{\"Foo\" : 1, \"Request\" : { }, \"Bar\" : {\"x\" : [ 1 ] } }"));
+        assertEquals("No \"Request\" property found.", loadError("{\"Foo\" : 1 }"));
+        assertEquals("Request contains unknown element 'Foo'",
+                     loadError("{\"Request\" : {\"Foo\" : [ { } ] } }"));
+        assertEquals("Category must contain list of objects, not 'class java.util.LinkedHashMap'",
+                     loadError("{\"Request\" : {\"Category\" : {\"CategoryId\" : \"custom-category\" } } }"));
+        assertEquals("Category list must contain objects contained within curly braces ({})",
+                     loadError("{\"Request\" : {\"Category\" : [ \"custom-category\" ] } }"));
+        assertEquals("Action array can only contain objects within curly braces",
+                     loadError("{\"Request\" : {\"Action\" : [ { }, 1 ] } }"));
+        assertEquals("Action must have one object contained within curly braces ({}) or an array of objects ([{}{}])",
+                     loadError("{\"Request\" : {\"Action\" : \"write\" } }"));
+        assertEquals("Action contains unknown element 'Foo'",
+                     loadError("{\"Request\" : {\"Action\" : {\"Foo\" : 1 } } }"));
+        assertEquals("Category 'Action' saw unexpected Attribute class class java.lang.String",
+                     loadError("{\"Request\" : {\"Action\" : {\"Attribute\" : \"write\" } } }"));
+        assertEquals("Expect Attribute content to be Map got class java.lang.Integer",
+                     loadError("{\"Request\" : {\"Action\" : {\"Attribute\" : [ 1 ] } } }"));
+        assertEquals("action-idAttribute 'action-id' contains unknown element 'Foo'",
+                     loadError("{\"Request\" : {\"Action\" : {\"Attribute\" : {\"AttributeId\" : \"action-id\", "
+                               + "\"Foo\" : 1, \"Value\" : \"write\" } } } }"));
+        assertEquals("Unable to map JSON, exception: expected an object, got START_ARRAY", loadError("[ ]"));
+
+        String message = loadError("{\"Request\" : {\"Action\"\n  { } } }");
+        assertTrue(message, message.startsWith("Unable to parse JSON starting at line 2, column 4"));
+
+        // load(String) reports the same problem
+        try {
+            request = JSONRequest.load("{\"Request\" : {\"Foo\" : 1 } }");
+            fail("Unknown element should throw exception");
+        } catch (JSONStructureException e) {
+            assertEquals("Exception loading String Request: Request contains unknown element 'Foo'",
+                         e.getMessage());
+        }
+    }
+
+    private String loadError(String json) {
+        try {
+            request = JSONRequest.load(new ByteArrayInputStream(json.getBytes("UTF-8")));
+            fail("Request should throw exception");
+        } catch (JSONStructureException e) {
+            return e.getMessage();
+        } catch (Exception e) {
+            fail("Failed convert from JSON to object: " + e);
+        }
+        return null;
+    }
+
 }
@@ -34,6 +34,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -2718,6 +2719,45 @@ public class ResponseTest {
         }
     }
 
+    @Test
+    public void testOutputStream() {
+        // the stream is UTF-8 and holds the same JSON as the String
+        response = new StdMutableResponse();
+        result = new StdMutableResult();
+        result.setDecision(Decision.PERMIT);
+        response.add(result);
+        result = new StdMutableResult();
+        result.setDecision(Decision.INDETERMINATE);
+        status = new StdMutableStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Ren\u00e9e \u4e2d");
+        result.setStatus(status);
+        response.add(result);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            JSONResponse.convert(response, outputStream);
+            jsonResponse = new String(outputStream.toByteArray(), "UTF-8");
+            assertEquals(JSONResponse.toString(response, false), jsonResponse);
+            assertTrue(jsonResponse, jsonResponse.contains("\"StatusMessage\":\"Ren\u00e9e \u4e2d\""));
+        } catch (Exception e) {
+            fail("operation failed, e=" + e);
+        }
+
+        // every Result is checked before anything is written, so a bad last Result leaves no output
+        result = new StdMutableResult();
+        result.setDecision(Decision.PERMIT);
+        result.setStatus(new StdMutableStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR));
+        response.add(result);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            JSONResponse.convert(response, outputStream);
+            fail("Operation should throw exception");
+        } catch (JSONStructureException e) {
+            // correct response
+        } catch (Exception e) {
+            fail("Failed convert from object to JSON: " + e);
+        }
+        assertEquals(0, outputStream.size());
+    }
+
     // TODO - the JSON and XML spec imply that the Result Attributes may include the Content (It is part of
     // the UML)
 
@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.std.stax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.RequestAttributes;
+import org.apache.openaz.xacml.std.dom.DOMProperties;
+import org.apache.openaz.xacml.std.dom.DOMRequest;
+import org.apache.openaz.xacml.std.stax.StAXRequest;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+/**
+ * Tests that <code>StAXRequest</code> loads the conformance test Requests into the same Request objects as
+ * <code>DOMRequest</code>. As in the JSON tests the two Requests are compared through their
+ * <code>toString</code>, with object hash codes removed, and the <code>Content</code> of each category is
+ * compared node by node.
+ */
+public class StAXRequestConformanceTest {
+
+    // where to find the conformance test XML files
+    private final String CONFORMANCE_DIRECTORY_PATH = "src/test/resources/testsets/conformance/xacml3.0-ct-v.0.4";
+
+    @Test
+    public void testConformanceRequests() throws Exception {
+        List<File> filesInDirectory = this.getRequestsInDirectory(new File(CONFORMANCE_DIRECTORY_PATH));
+        assertTrue(filesInDirectory.size() > 0);
+
+        boolean isLenient = DOMProperties.isLenient();
+        try {
+            for (boolean lenient : new boolean[] {
+                true, false
+            }) {
+                DOMProperties.setLenient(lenient);
+                for (File f : filesInDirectory) {
+                    Request domRequest = null;
+                    try {
+                        domRequest = DOMRequest.load(f);
+                    } catch (Exception e) {
+                        // a Request the DOM reader rejects must be rejected by the StAX reader as well
+                        try {
+                            Request staxRequest = StAXRequest.load(f);
+                            fail("StAX loaded '" + f.getName() + "' lenient=" + lenient
+                                 + " which DOM rejected: " + staxRequest);
+                        } catch (Exception eStAX) {
+                            // correct response
+                        }
+                        continue;
+                    }
+                    Request staxRequest = null;
+                    try {
+                        staxRequest = StAXRequest.load(f);
+                    } catch (Exception e) {
+                        fail("StAX did not load '" + f.getName() + "' lenient=" + lenient + " e=" + e);
+                    }
+                    assertEquals(f.getName(), this.normalize(domRequest), this.normalize(staxRequest));
+                    this.assertContentEquals(f, domRequest, staxRequest);
+                }
+            }
+        } finally {
+            DOMProperties.setLenient(isLenient);
+        }
+    }
+
+    @Test
+    public void testEntitiesAreNotExpanded() {
+        String xmlRequest = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                            + "<!DOCTYPE Request [<!ENTITY subject \"Julius Hibbert\">]>"
+                            + "<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\""
+                            + " ReturnPolicyIdList=\"false\" CombinedDecision=\"false\">"
+                            + "<Attributes"
+                            + " Category=\"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject\">"
+                            + "<Attribute IncludeInResult=\"false\""
+                            + " AttributeId=\"urn:oasis:names:tc:xacml:1.0:subject:subject-id\">"
+                            + "<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">&subject;"
+                            + "</AttributeValue></Attribute></Attributes></Request>";
+        try {
+            Request request = StAXRequest.load(xmlRequest);
+            fail("Entity should not be expanded: " + request);
+        } catch (Exception e) {
+            // correct response
+        }
+    }
+
+    private void assertContentEquals(File f, Request domRequest, Request staxRequest) {
+        Iterator<RequestAttributes> iterStAXRequestAttributes = staxRequest.getRequestAttributes().iterator();
+        for (RequestAttributes domRequestAttributes : domRequest.getRequestAttributes()) {
+            Node domContentRoot = domRequestAttributes.getContentRoot();
+            RequestAttributes staxRequestAttributes = iterStAXRequestAttributes.next();
+            Node staxContentRoot = staxRequestAttributes.getContentRoot();
+            if (domContentRoot == null) {
+                assertTrue(f.getName(), staxContentRoot == null);
+            } else {
+                assertTrue(f.getName(), domContentRoot.isEqualNode(staxContentRoot));
+                // the content root is only built once
+                assertTrue(f.getName(), staxContentRoot == staxRequestAttributes.getContentRoot());
+            }
+        }
+    }
+
+    private String normalize(Request request) {
+        return request.toString().replaceAll("@[0-9a-f]+", "@");
+    }
+
+    //
+    // HELPER to get list of all Request files in the given directory
+    //
+
+    private List<File> getRequestsInDirectory(File directory) {
+        List<File> fileList = new ArrayList<File>();
+
+        File[] fileArray = directory.listFiles();
+        for (File f : fileArray) {
+            if (f.isDirectory()) {
+                fileList.addAll(getRequestsInDirectory(f));
+            }
+            if (f.getName().endsWith("Request.xml")) {
+                fileList.add(f);
+            }
+        }
+        return fileList;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.std.stax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openaz.xacml.api.Response;
+import org.apache.openaz.xacml.std.dom.DOMResponse;
+import org.apache.openaz.xacml.std.stax.StAXResponse;
+import org.junit.Test;
+
+/**
+ * Tests that <code>StAXResponse</code> writes the conformance test Responses as the same bytes as
+ * <code>DOMResponse</code>, both with and without pretty-printing.
+ */
+public class StAXResponseConformanceTest {
+
+    // where to find the conformance test XML files
+    private final String CONFORMANCE_DIRECTORY_PATH = "src/test/resources/testsets/conformance/xacml3.0-ct-v.0.4";
+
+    @Test
+    public void testConformanceResponses() throws Exception {
+        List<File> filesInDirectory = this.getResponsesInDirectory(new File(CONFORMANCE_DIRECTORY_PATH));
+        assertTrue(filesInDirectory.size() > 0);
+
+        for (File f : filesInDirectory) {
+            Response response = DOMResponse.load(f);
+            for (boolean prettyPrint : new boolean[] {
+                false, true
+            }) {
+                ByteArrayOutputStream domOutputStream = new ByteArrayOutputStream();
+                DOMResponse.convert(response, domOutputStream, prettyPrint);
+                ByteArrayOutputStream staxOutputStream = new ByteArrayOutputStream();
+                StAXResponse.convert(response, staxOutputStream, prettyPrint);
+
+                String domString = new String(domOutputStream.toByteArray(), "UTF-8");
+                assertEquals(f.getName(), domString, new String(staxOutputStream.toByteArray(), "UTF-8"));
+                assertEquals(f.getName(), domString, StAXResponse.toString(response, prettyPrint));
+            }
+        }
+    }
+
+    //
+    // HELPER to get list of all Response files in the given directory
+    //
+
+    private List<File> getResponsesInDirectory(File directory) {
+        List<File> fileList = new ArrayList<File>();
+
+        File[] fileArray = directory.listFiles();
+        for (File f : fileArray) {
+            if (f.isDirectory()) {
+                fileList.addAll(getResponsesInDirectory(f));
+            }
+            if (f.getName().endsWith("Response.xml")) {
+                fileList.add(f);
+            }
+        }
+        return fileList;
+    }
+}
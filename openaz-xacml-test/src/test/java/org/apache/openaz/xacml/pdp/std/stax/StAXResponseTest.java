@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.pdp.std.stax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Decision;
+import org.apache.openaz.xacml.api.Response;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.std.IdentifierImpl;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdMutableAttributeAssignment;
+import org.apache.openaz.xacml.std.StdMutableAttributeCategory;
+import org.apache.openaz.xacml.std.StdMutableObligation;
+import org.apache.openaz.xacml.std.StdMutableResponse;
+import org.apache.openaz.xacml.std.StdMutableResult;
+import org.apache.openaz.xacml.std.StdMutableStatus;
+import org.apache.openaz.xacml.std.StdStatusCode;
+import org.apache.openaz.xacml.std.dom.DOMResponse;
+import org.apache.openaz.xacml.std.stax.StAXResponse;
+import org.apache.openaz.xacml.std.stax.StAXStructureException;
+import org.junit.Test;
+
+/**
+ * Test StAX XML Responses. The layout of the XML is covered by <code>StAXResponseConformanceTest</code>,
+ * this covers what differs from <code>DOMResponse</code>.
+ */
+public class StAXResponseTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        try {
+            StAXResponse.toString(null, false);
+            fail("Operation should throw exception");
+        } catch (StAXStructureException e) {
+            // correct response
+        }
+        try {
+            StAXResponse.convert(new StdMutableResponse(), new ByteArrayOutputStream());
+            fail("Operation should throw exception");
+        } catch (StAXStructureException e) {
+            // correct response
+        }
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        StdMutableStatus status = new StdMutableStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR);
+        status.setStatusMessage("Expected <one> & got \"two\"");
+        StdMutableResult result = new StdMutableResult(Decision.INDETERMINATE, status);
+        StdMutableResponse response = new StdMutableResponse(result);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        StAXResponse.convert(response, outputStream);
+
+        Response reloadedResponse = DOMResponse.load(new String(outputStream.toByteArray(), "UTF-8"));
+        assertEquals(status.getStatusMessage(), reloadedResponse.getResults().iterator().next().getStatus()
+            .getStatusMessage());
+    }
+
+    @Test
+    public void testInvalidResultWritesNothing() throws Exception {
+        StdMutableResponse response = new StdMutableResponse();
+        for (int i = 0; i < 1000; i++) {
+            response.add(new StdMutableResult(Decision.PERMIT));
+        }
+        // no Decision
+        response.add(new StdMutableResult());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            StAXResponse.convert(response, outputStream);
+            fail("Operation should throw exception");
+        } catch (StAXStructureException e) {
+            // correct response
+        }
+        assertEquals(0, outputStream.size());
+    }
+
+    @Test
+    public void testInvalidNestedContentWritesNothing() throws Exception {
+        // Obligation AttributeAssignment without a DataType or Value
+        StdMutableObligation obligation = new StdMutableObligation(new IdentifierImpl("obligation1"));
+        StdMutableAttributeAssignment attributeAssignment = new StdMutableAttributeAssignment();
+        attributeAssignment.setAttributeId(new IdentifierImpl("assignment1"));
+        obligation.addAttributeAssignment(attributeAssignment);
+        StdMutableResult result = new StdMutableResult(Decision.PERMIT);
+        result.addObligation(obligation);
+        assertEquals("Obligation AttributeAssignment 'assignment1' must have DataType and Value",
+                     this.convertError(result));
+
+        // included Attribute without any value
+        StdMutableAttributeCategory category = new StdMutableAttributeCategory();
+        category.setCategory(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT);
+        category.add(new StdMutableAttribute(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                             XACML3.ID_SUBJECT_SUBJECT_ID,
+                                             new ArrayList<AttributeValue<?>>(), null, true));
+        result = new StdMutableResult(Decision.PERMIT);
+        result.addAttributeCategory(category);
+        assertEquals("Attribute '" + XACML3.ID_SUBJECT_SUBJECT_ID + "' must have at least one value",
+                     this.convertError(result));
+
+        // null PolicyIdReference
+        result = new StdMutableResult(Decision.PERMIT);
+        result.addPolicyIdentifier(null);
+        assertEquals("PolicyIdentifiers has null IdReference", this.convertError(result));
+    }
+
+    /*
+     * Converts a Response with a valid Result followed by the given one, checking that nothing is written,
+     * and returns the message of the exception.
+     */
+    private String convertError(StdMutableResult result) throws Exception {
+        StdMutableResponse response = new StdMutableResponse(new StdMutableResult(Decision.PERMIT));
+        response.add(result);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            StAXResponse.convert(response, outputStream);
+            fail("Operation should throw exception");
+        } catch (StAXStructureException e) {
+            assertEquals(0, outputStream.size());
+            return e.getMessage();
+        }
+        return null;
+    }
+}
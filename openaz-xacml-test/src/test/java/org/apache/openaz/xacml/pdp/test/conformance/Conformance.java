@@ -124,6 +124,7 @@ public class Conformance {
     private boolean init(String[] args) {
         boolean lenientRequests = true;
         boolean lenientPolicies = false;
+        boolean staxRequests = false;
         // default is to not run any non-first-time iterations
         int iterations = -1;
         String testSetDirectoryNames = "";
@@ -203,6 +204,9 @@ public class Conformance {
             } else if (args[i].equals("--strict-requests")) {
                 lenientRequests = false;
                 i++;
+            } else if (args[i].equals("--stax-requests")) {
+                staxRequests = true;
+                i++;
             } else if (args[i].equals("--iterations")) {
                 // this is a count of how many ADDITIONAL times the decide() should be called.
                 // The first time decide() is called it takes a long time to set up,
@@ -234,6 +238,7 @@ public class Conformance {
 
         this.testEngine = new ConformanceTestEngine(this.getScopeResolver(), lenientRequests,
                                                     lenientPolicies, iterations);
+        this.testEngine.setStAXRequests(staxRequests);
 
         if (testSetDirectoryNames.length() == 0) {
             System.err.println("No test set directory given (need -i or --iniput command line option)");
@@ -320,6 +325,11 @@ public class Conformance {
             .println(" --strict-requests  Require Requests to have no unexpected elements, data in <Content>, etc.  \n"
                      + "                    This is the default, but can be used to override Requests when option --lenient is used.");
 
+        System.out.println("");
+        System.out
+            .println(" --stax-requests    Load Requests with the streaming StAX reader instead of building a DOM.  \n"
+                     + "                    Default is to load Requests through the DOM.");
+
         System.out.println("");
         System.out
             .println(" -t, --tests <list of test names>   A space-separated list of specific tests to be run. \n"
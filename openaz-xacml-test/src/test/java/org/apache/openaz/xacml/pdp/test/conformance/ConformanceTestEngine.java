@@ -40,6 +40,7 @@ import org.apache.openaz.xacml.api.pdp.ScopeResolver;
 import org.apache.openaz.xacml.std.dom.DOMProperties;
 import org.apache.openaz.xacml.std.dom.DOMRequest;
 import org.apache.openaz.xacml.std.dom.DOMResponse;
+import org.apache.openaz.xacml.std.stax.StAXRequest;
 import org.apache.openaz.xacml.util.FactoryException;
 
 /**
@@ -52,6 +53,7 @@ public class ConformanceTestEngine {
     private ScopeResolver scopeResolver;
     private boolean lenientRequests;
     private boolean lenientPolicies;
+    private boolean staxRequests;
     private int iterations = 1;
 
     // total of all first calls to decide()
@@ -81,6 +83,10 @@ public class ConformanceTestEngine {
         this.iterations = iterationsIn;
     }
 
+    public void setStAXRequests(boolean staxRequestsIn) {
+        this.staxRequests = staxRequestsIn;
+    }
+
     public ConformanceTestResult run(ConformanceTest conformanceTest) {
         if (conformanceTest.getRequest() == null || conformanceTest.getResponse() == null
             || conformanceTest.getRepository() == null) {
@@ -103,7 +109,11 @@ public class ConformanceTestEngine {
         try {
             DOMProperties.setLenient(this.lenientRequests);
             try {
-                request = DOMRequest.load(conformanceTest.getRequest());
+                if (this.staxRequests) {
+                    request = StAXRequest.load(conformanceTest.getRequest());
+                } else {
+                    request = DOMRequest.load(conformanceTest.getRequest());
+                }
                 conformanceTestResult.setRequest(request);
             } catch (Exception ex) {
                 logger.error("Exception loading Request file "
@@ -0,0 +1,91 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.std.pip.engines;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.std.IdentifierImpl;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.StdMutableRequestAttributes;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.pip.StdPIPRequest;
+import org.apache.openaz.xacml.std.pip.finders.RequestFinder;
+
+/**
+ * PIPEngineFixture holds what the PIP engine tests share: the subject-id attribute the engines take as a
+ * parameter, the role and group attributes they look up for it, and a <code>PIPFinder</code> for a request
+ * with a given subject-id.
+ */
+public final class PIPEngineFixture {
+    public static final PIPRequest PIP_REQUEST_SUBJECT_ID = new StdPIPRequest(
+                                                                              XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                                              XACML3.ID_SUBJECT_SUBJECT_ID,
+                                                                              XACML3.ID_DATATYPE_STRING);
+    public static final PIPRequest PIP_REQUEST_ROLE = new StdPIPRequest(
+                                                                        XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                                        new IdentifierImpl("urn:example:role"),
+                                                                        XACML3.ID_DATATYPE_STRING);
+    public static final PIPRequest PIP_REQUEST_GROUP = new StdPIPRequest(
+                                                                         XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                                         new IdentifierImpl("urn:example:group"),
+                                                                         XACML3.ID_DATATYPE_STRING);
+
+    private PIPEngineFixture() {
+    }
+
+    /**
+     * Sets the <code>id</code>, <code>datatype</code> and <code>category</code> properties under the given
+     * prefix, as the configurable resolvers expect them for their fields and parameters.
+     *
+     * @param properties the <code>Properties</code> to set
+     * @param prefix the prefix of the field or parameter, such as <code>jdbc.resolver.roles.field.role</code>
+     * @param pipRequest the <code>PIPRequest</code> for the attribute
+     */
+    public static void setAttributeProperties(Properties properties, String prefix, PIPRequest pipRequest) {
+        properties.setProperty(prefix + ".id", pipRequest.getAttributeId().stringValue());
+        properties.setProperty(prefix + ".datatype", pipRequest.getDataTypeId().stringValue());
+        properties.setProperty(prefix + ".category", pipRequest.getCategory().stringValue());
+    }
+
+    /**
+     * Creates a <code>PIPFinder</code> that answers from a request holding only the given subject-id.
+     *
+     * @param subjectId the value of the subject-id attribute
+     * @return a new <code>PIPFinder</code>
+     * @throws Exception if the subject-id value cannot be created
+     */
+    public static PIPFinder createFinder(String subjectId) throws Exception {
+        Attribute attributeSubjectId = new StdMutableAttribute(PIP_REQUEST_SUBJECT_ID.getCategory(),
+                                                               PIP_REQUEST_SUBJECT_ID.getAttributeId(),
+                                                               DataTypes.DT_STRING
+                                                                   .createAttributeValue(subjectId));
+        StdMutableRequest request = new StdMutableRequest();
+        request.add(new StdMutableRequestAttributes(PIP_REQUEST_SUBJECT_ID.getCategory(), Arrays
+            .asList(attributeSubjectId), null, null));
+        return new RequestFinder(null, new RequestEngine(request));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.std.pip.engines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * SingleFlightTest checks that concurrent calls for the same key share one execution of {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareOneExecution() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<String> lookup = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return "admins";
+            }
+        };
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executorService.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return singleFlight.execute("alice", lookup);
+                    }
+                }));
+            }
+            for (int i = 0; i < 500 && singleFlight.getSharedCount() < 3; i++) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("admins", future.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getExecutionCount());
+        assertEquals(3, singleFlight.getSharedCount());
+
+        /*
+         * Once the call is done the key is forgotten
+         */
+        assertEquals("admins", singleFlight.execute("alice", lookup));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testExceptionsAreShared() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<String, String>();
+        try {
+            singleFlight.execute("alice", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new IllegalStateException("directory unavailable");
+                }
+            });
+            fail("Expected the exception of the call");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+}
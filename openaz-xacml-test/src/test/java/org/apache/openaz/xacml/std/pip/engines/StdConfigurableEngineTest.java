@@ -0,0 +1,189 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.std.pip.engines;
+
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_ROLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.pip.PIPException;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdStatus;
+import org.apache.openaz.xacml.std.StdStatusCode;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.junit.Test;
+
+/**
+ * StdConfigurableEngineTest checks the circuit breaker, single flight and stale-while-refresh cache of
+ * {@link StdConfigurableEngine} with a stub engine.
+ */
+public class StdConfigurableEngineTest {
+
+    /**
+     * StubEngine answers every request with the current role, or with an error status while it is down.
+     */
+    private static class StubEngine extends StdConfigurableEngine {
+        private volatile String role = "admin";
+        private volatile boolean down;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Collection<PIPRequest> attributesRequired() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<PIPRequest> attributesProvided() {
+            return Collections.singletonList(PIP_REQUEST_ROLE);
+        }
+
+        @Override
+        public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+            final String cacheKey = this.newCacheKey(0, "alice");
+            return this.getResponse(cacheKey, new Callable<PIPResponse>() {
+                @Override
+                public PIPResponse call() throws Exception {
+                    StubEngine.this.calls.incrementAndGet();
+                    if (StubEngine.this.down) {
+                        return new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR));
+                    }
+                    Attribute attribute = new StdMutableAttribute(PIP_REQUEST_ROLE.getCategory(),
+                                                                  PIP_REQUEST_ROLE.getAttributeId(),
+                                                                  DataTypes.DT_STRING
+                                                                      .createAttributeValue(StubEngine.this.role));
+                    StubEngine.this.putCachedResponse(cacheKey, Collections.singletonList(attribute));
+                    return new StdPIPResponse(attribute);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testCircuitOpensAndProbes() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("stub." + StdConfigurableEngine.PROP_CIRCUIT_FAILURETHRESHOLD, "2");
+        properties.setProperty("stub." + StdConfigurableEngine.PROP_CIRCUIT_OPENINTERVAL, "100");
+        StubEngine stubEngine = new StubEngine();
+        stubEngine.configure("stub", properties);
+
+        stubEngine.down = true;
+        stubEngine.getAttributes(PIP_REQUEST_ROLE, null);
+        stubEngine.getAttributes(PIP_REQUEST_ROLE, null);
+        assertEquals(CircuitBreaker.State.OPEN, stubEngine.getCircuitBreaker().getState());
+
+        /*
+         * While open the back end is not called
+         */
+        try {
+            stubEngine.getAttributes(PIP_REQUEST_ROLE, null);
+            fail("Expected the open circuit to fail fast");
+        } catch (PIPException ex) {
+            assertEquals(2, stubEngine.calls.get());
+            assertEquals(1, stubEngine.getCircuitBreaker().getRejectedCount());
+        }
+
+        /*
+         * After the open interval a successful probe closes it again
+         */
+        stubEngine.down = false;
+        Thread.sleep(150);
+        PIPResponse pipResponse = stubEngine.getAttributes(PIP_REQUEST_ROLE, null);
+        assertEquals(1, pipResponse.getAttributes().size());
+        assertEquals(CircuitBreaker.State.CLOSED, stubEngine.getCircuitBreaker().getState());
+        assertEquals(1, stubEngine.getCircuitBreaker().getOpenCount());
+    }
+
+    @Test
+    public void testLateSuccessDoesNotCloseCircuit() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 60000, 0);
+        assertTrue(circuitBreaker.allowRequest());
+        assertTrue(circuitBreaker.allowRequest());
+
+        /*
+         * One call fails and opens the circuit, the other was let through before and succeeds afterwards
+         */
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess(1);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void testStaleResponseIsServedWhileRefreshing() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("stub." + StdConfigurableEngine.PROP_CACHESPEC, "expireAfterWrite=1h");
+        properties.setProperty("stub." + StdConfigurableEngine.PROP_REFRESHAFTER, "50");
+        StubEngine stubEngine = new StubEngine();
+        stubEngine.configure("stub", properties);
+
+        assertEquals("admin", this.getRole(stubEngine));
+        stubEngine.role = "auditor";
+        Thread.sleep(100);
+
+        /*
+         * The stale role comes back at once and the new one once the refresh is done
+         */
+        assertEquals("admin", this.getRole(stubEngine));
+        for (int i = 0; i < 500 && stubEngine.getRefreshCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, stubEngine.getStaleCount());
+        assertEquals(1, stubEngine.getRefreshCount());
+        assertEquals("auditor", this.getRole(stubEngine));
+        assertEquals(2, stubEngine.calls.get());
+    }
+
+    @Test
+    public void testSingleFlightIsOptIn() throws Exception {
+        StubEngine stubEngine = new StubEngine();
+        stubEngine.configure("stub", new Properties());
+        assertNull(stubEngine.getSingleFlight());
+
+        Properties properties = new Properties();
+        properties.setProperty("stub." + StdConfigurableEngine.PROP_SINGLEFLIGHT, "true");
+        stubEngine = new StubEngine();
+        stubEngine.configure("stub", properties);
+        assertNotNull(stubEngine.getSingleFlight());
+        assertEquals("admin", this.getRole(stubEngine));
+        assertEquals(1, stubEngine.getSingleFlight().getExecutionCount());
+    }
+
+    private String getRole(StubEngine stubEngine) throws PIPException {
+        PIPResponse pipResponse = stubEngine.getAttributes(PIP_REQUEST_ROLE, null);
+        return pipResponse.getAttributes().iterator().next().getValues().iterator().next().getValue()
+            .toString();
+    }
+}
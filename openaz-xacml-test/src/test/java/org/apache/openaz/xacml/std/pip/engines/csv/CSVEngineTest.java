@@ -0,0 +1,208 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.std.pip.engines.csv;
+
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_ROLE;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_SUBJECT_ID;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.createFinder;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.setAttributeProperties;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Properties;
+
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * CSVEngineTest runs the {@link CSVEngine} against a CSV file in a temporary folder.
+ */
+public class CSVEngineTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File csvFile;
+
+    @Before
+    public void before() throws Exception {
+        this.csvFile = this.temporaryFolder.newFile("roles.csv");
+        try (Writer writer = new FileWriter(this.csvFile)) {
+            writer.write("alice,admin\n");
+            writer.write("bob,user\n");
+            writer.write("alice,auditor\n");
+        }
+    }
+
+    @Test
+    public void testResultsAreCachedBySubject() throws Exception {
+        CSVEngine csvEngine = this.createEngine("maximumSize=100", false);
+
+        assertEquals(2, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+        assertEquals(1, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("bob")).getAttributes()
+            .size());
+        assertEquals(2, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+        assertEquals(1, csvEngine.getCacheStats().hitCount());
+        assertEquals(2, csvEngine.getCacheStats().missCount());
+
+        /*
+         * Empty results are not cached unless asked to
+         */
+        csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("carol"));
+        PIPResponse pipResponse = csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("carol"));
+        assertEquals(0, pipResponse.getAttributes().size());
+        assertEquals(1, csvEngine.getCacheStats().hitCount());
+    }
+
+    @Test
+    public void testEmptyResultsAreCachedNegatively() throws Exception {
+        CSVEngine csvEngine = this.createEngine("maximumSize=100", true);
+
+        csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("carol"));
+        PIPResponse pipResponse = csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("carol"));
+        assertEquals(0, pipResponse.getAttributes().size());
+        assertEquals(1, csvEngine.getCacheStats().hitCount());
+        assertEquals(0.5, csvEngine.getCacheHitRate(), 0.0);
+    }
+
+    @Test
+    public void testBigFileIsIndexed() throws Exception {
+        try (Writer writer = new FileWriter(this.csvFile)) {
+            writer.write("subject,role\r\n");
+            writer.write("alice,admin\r\n");
+            writer.write("carol,\"line one\nline two\"\r\n");
+            writer.write("bob,user\n");
+            writer.write("alice,auditor");
+        }
+        Properties properties = new Properties();
+        properties.setProperty("csv.maxsize", "1");
+        properties.setProperty("csv.skip", "1");
+        CSVEngine csvEngine = this.createEngine(properties, "maximumSize=0", false);
+
+        assertEquals(2, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+        PIPResponse pipResponse = csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("carol"));
+        assertEquals(1, pipResponse.getAttributes().size());
+        assertEquals("line one\nline two", pipResponse.getAttributes().iterator().next().getValues().iterator()
+            .next().getValue());
+        pipResponse = csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("bob"));
+        assertEquals("user", pipResponse.getAttributes().iterator().next().getValues().iterator().next()
+            .getValue());
+        assertEquals(0, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("subject"))
+            .getAttributes().size());
+    }
+
+    @Test
+    public void testBigFileIsReadFromSnapshotUntilReloaded() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("csv.maxsize", "1");
+        CSVEngine csvEngine = this.createEngine(properties, "maximumSize=0", false);
+        assertEquals(2, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+
+        /*
+         * The file is rewritten in place, so the old record offsets point into different records
+         */
+        try (Writer writer = new FileWriter(this.csvFile)) {
+            writer.write("carol,user\n");
+            writer.write("alice,guest\n");
+            writer.write("bob,admin\n");
+        }
+        PIPResponse pipResponse = csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("bob"));
+        assertEquals(1, pipResponse.getAttributes().size());
+        assertEquals("user", pipResponse.getAttributes().iterator().next().getValues().iterator().next()
+            .getValue());
+        assertEquals(2, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+
+        csvEngine.reload();
+        pipResponse = csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("bob"));
+        assertEquals(1, pipResponse.getAttributes().size());
+        assertEquals("admin", pipResponse.getAttributes().iterator().next().getValues().iterator().next()
+            .getValue());
+        assertEquals(1, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+    }
+
+    @Test
+    public void testChangedFileIsReloaded() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("csv." + CSVEngine.PROP_RELOAD_INTERVAL, "20");
+        CSVEngine csvEngine = this.createEngine(properties, "maximumSize=100", false);
+        assertEquals(3, csvEngine.getRecordCount());
+        assertEquals(1, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("bob")).getAttributes()
+            .size());
+
+        try (Writer writer = new FileWriter(this.csvFile)) {
+            writer.write("alice,admin\n");
+            writer.write("bob,user\n");
+            writer.write("bob,auditor\n");
+            writer.write("carol,user\n");
+        }
+        this.csvFile.setLastModified(this.csvFile.lastModified() + 2000);
+        CSVSourceWatcher csvSourceWatcher = csvEngine.getSourceWatcher();
+        for (int i = 0; i < 250 && csvSourceWatcher.getReloadCount() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, csvSourceWatcher.getReloadCount());
+        assertEquals(4, csvEngine.getRecordCount());
+        assertEquals(2, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("bob")).getAttributes()
+            .size());
+        assertEquals(1, csvEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("carol")).getAttributes()
+            .size());
+        csvSourceWatcher.stop();
+    }
+
+    private CSVEngine createEngine(String cacheSpec, boolean cacheNegative) throws Exception {
+        return this.createEngine(new Properties(), cacheSpec, cacheNegative);
+    }
+
+    private CSVEngine createEngine(Properties properties, String cacheSpec, boolean cacheNegative)
+        throws Exception {
+        properties.setProperty("csv.cacheSpec", cacheSpec);
+        properties.setProperty("csv.cacheNegative", Boolean.toString(cacheNegative));
+        properties.setProperty("csv.source", this.csvFile.getAbsolutePath());
+        properties.setProperty("csv.delimiter", ",");
+        properties.setProperty("csv.quote", "\"");
+        if (!properties.containsKey("csv.skip")) {
+            properties.setProperty("csv.skip", "0");
+        }
+        properties.setProperty("csv.resolvers", "roles");
+        properties.setProperty("csv.resolver.roles.classname", ConfigurableCSVResolver.class.getName());
+        properties.setProperty("csv.resolver.roles.fields", "role");
+        properties.setProperty("csv.resolver.roles.field.role.column", "1");
+        setAttributeProperties(properties, "csv.resolver.roles.field.role", PIP_REQUEST_ROLE);
+        properties.setProperty("csv.resolver.roles.parameters", "subject");
+        properties.setProperty("csv.resolver.roles.parameter.subject.column", "0");
+        setAttributeProperties(properties, "csv.resolver.roles.parameter.subject", PIP_REQUEST_SUBJECT_ID);
+
+        CSVEngine csvEngine = new CSVEngine();
+        csvEngine.configure("csv", properties);
+        return csvEngine;
+    }
+}
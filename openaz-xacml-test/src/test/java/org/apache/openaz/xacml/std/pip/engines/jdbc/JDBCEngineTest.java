@@ -0,0 +1,374 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.std.pip.engines.jdbc;
+
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_ROLE;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_SUBJECT_ID;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.createFinder;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.setAttributeProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPEngine;
+import org.apache.openaz.xacml.api.pip.PIPException;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.StdStatusCode;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.pip.StdPIPRequest;
+import org.apache.openaz.xacml.std.pip.engines.CircuitBreaker;
+import org.apache.openaz.xacml.std.pip.engines.StdConfigurableEngine;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * JDBCEngineTest runs the {@link JDBCEngine} against an in-memory HyperSQL database.
+ */
+public class JDBCEngineTest {
+    private static final String JDBC_DRIVER = "org.hsqldb.jdbcDriver";
+    private static final String JDBC_URL = "jdbc:hsqldb:mem:jdbcenginetest";
+
+    private static Connection connection;
+
+    /**
+     * RequestThreadFinder wraps the <code>PIPFinder</code> of a request and fails every call made from a
+     * thread other than the one evaluating the request.
+     */
+    private static class RequestThreadFinder implements PIPFinder {
+        private final PIPFinder pipFinder;
+        private final Thread thread = Thread.currentThread();
+
+        RequestThreadFinder(PIPFinder pipFinderIn) {
+            this.pipFinder = pipFinderIn;
+        }
+
+        private PIPFinder getPIPFinder() {
+            if (Thread.currentThread() != this.thread) {
+                throw new IllegalStateException("PIPFinder used outside of its request");
+            }
+            return this.pipFinder;
+        }
+
+        @Override
+        public PIPResponse getAttributes(PIPRequest pipRequest, PIPEngine exclude) throws PIPException {
+            return this.getPIPFinder().getAttributes(pipRequest, exclude);
+        }
+
+        @Override
+        public PIPResponse getMatchingAttributes(PIPRequest pipRequest, PIPEngine exclude)
+            throws PIPException {
+            return this.getPIPFinder().getMatchingAttributes(pipRequest, exclude);
+        }
+
+        @Override
+        public PIPResponse getAttributes(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent)
+            throws PIPException {
+            return this.getPIPFinder().getAttributes(pipRequest, exclude, pipFinderParent);
+        }
+
+        @Override
+        public PIPResponse getMatchingAttributes(PIPRequest pipRequest, PIPEngine exclude,
+                                                 PIPFinder pipFinderParent) throws PIPException {
+            return this.getPIPFinder().getMatchingAttributes(pipRequest, exclude, pipFinderParent);
+        }
+
+        @Override
+        public Collection<PIPEngine> getPIPEngines() {
+            return this.getPIPFinder().getPIPEngines();
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        Class.forName(JDBC_DRIVER);
+        connection = DriverManager.getConnection(JDBC_URL, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE roles (subject VARCHAR(32), role VARCHAR(32))");
+            statement.execute("INSERT INTO roles VALUES ('alice', 'admin')");
+            statement.execute("INSERT INTO roles VALUES ('alice', 'auditor')");
+            statement.execute("INSERT INTO roles VALUES ('bob', 'user')");
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        connection.close();
+    }
+
+    @Test
+    public void testConnectionsArePooled() throws Exception {
+        JDBCEngine jdbcEngine = createEngine(new Properties());
+        JDBCConnectionPool connectionPool = jdbcEngine.getConnectionPool();
+        assertNotNull(connectionPool);
+
+        assertEquals(2, jdbcEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+        PIPResponse pipResponse = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("bob"));
+        assertEquals(1, pipResponse.getAttributes().size());
+        Attribute attribute = pipResponse.getAttributes().iterator().next();
+        assertEquals("user", attribute.getValues().iterator().next().getValue());
+
+        assertEquals(0, connectionPool.getActiveCount());
+        assertEquals(1, connectionPool.getIdleCount());
+    }
+
+    @Test
+    public void testPooledConnection() throws Exception {
+        JDBCConnectionPool connectionPool = new JDBCConnectionPool(JDBC_URL, credentials(), 0, 2, 60000, 100,
+                                                                   "SELECT COUNT(*) FROM roles", 4);
+        Connection connection1 = connectionPool.getConnection();
+        Connection connection2 = connectionPool.getConnection();
+        assertEquals(2, connectionPool.getActiveCount());
+        try {
+            connectionPool.getConnection();
+            fail("Expected the pool to be exhausted");
+        } catch (SQLException ex) {
+            assertEquals(2, connectionPool.getActiveCount());
+        }
+        connection2.close();
+        connection2.close();
+        assertEquals(1, connectionPool.getActiveCount());
+        assertEquals(1, connectionPool.getIdleCount());
+        connection1.close();
+
+        connectionPool.close();
+        assertEquals(0, connectionPool.getIdleCount());
+    }
+
+    @Test
+    public void testPoolCanBeDisabled() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jdbc." + JDBCEngine.PROP_JDBC_POOL_MAX, "0");
+        JDBCEngine jdbcEngine = createEngine(properties);
+        assertNull(jdbcEngine.getConnectionPool());
+        assertEquals(2, jdbcEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice")).getAttributes()
+            .size());
+    }
+
+    @Test
+    public void testQueryErrorIsReturned() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jdbc.resolver.roles.select",
+                               "SELECT role FROM roles WHERE subject=? AND CAST(subject AS INTEGER) = 1");
+        JDBCEngine jdbcEngine = createEngine(properties);
+
+        PIPResponse pipResponse = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, createFinder("alice"));
+        assertEquals(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, pipResponse.getStatus().getStatusCode());
+        assertEquals(0, pipResponse.getAttributes().size());
+    }
+
+    @Test
+    public void testBatchAttributes() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jdbc." + JDBCEngine.PROP_BATCHSIZE, "2");
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_SELECT,
+                               "SELECT subject, role FROM roles WHERE subject IN ({parameters})");
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_KEYS, "subject");
+        JDBCEngine jdbcEngine = createEngine(properties);
+
+        List<PIPFinder> listPIPFinders = Arrays.asList(createFinder("alice"), createFinder("bob"),
+                                                       createFinder("carol"), createFinder("alice"));
+        List<PIPResponse> listPIPResponses = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, listPIPFinders);
+        assertEquals(4, listPIPResponses.size());
+        assertEquals(2, listPIPResponses.get(0).getAttributes().size());
+        assertEquals(1, listPIPResponses.get(1).getAttributes().size());
+        assertEquals("user", listPIPResponses.get(1).getAttributes().iterator().next().getValues().iterator()
+            .next().getValue());
+        assertEquals(0, listPIPResponses.get(2).getAttributes().size());
+        assertEquals(2, listPIPResponses.get(3).getAttributes().size());
+        assertEquals(0, jdbcEngine.getConnectionPool().getActiveCount());
+    }
+
+    @Test
+    public void testBatchIsPadded() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jdbc." + JDBCEngine.PROP_BATCHSIZE, "6");
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_SELECT,
+                               "SELECT subject, role FROM roles WHERE subject IN ({parameters})");
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_KEYS, "subject");
+        JDBCEngine jdbcEngine = createEngine(properties);
+        assertEquals(1, jdbcEngine.getPaddedBatchSize(1));
+        assertEquals(2, jdbcEngine.getPaddedBatchSize(2));
+        assertEquals(4, jdbcEngine.getPaddedBatchSize(3));
+        assertEquals(4, jdbcEngine.getPaddedBatchSize(4));
+        assertEquals(6, jdbcEngine.getPaddedBatchSize(5));
+        assertEquals(6, jdbcEngine.getPaddedBatchSize(6));
+
+        /*
+         * Three requests are padded to four, the padding matches no rows
+         */
+        List<PIPFinder> listPIPFinders = Arrays.asList(createFinder("alice"), createFinder("bob"),
+                                                       createFinder("carol"));
+        List<PIPResponse> listPIPResponses = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, listPIPFinders);
+        assertEquals(3, listPIPResponses.size());
+        assertEquals(2, listPIPResponses.get(0).getAttributes().size());
+        assertEquals(1, listPIPResponses.get(1).getAttributes().size());
+        assertEquals(0, listPIPResponses.get(2).getAttributes().size());
+    }
+
+    @Test
+    public void testBatchFallsBackToSingleQueries() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_SELECT,
+                               "SELECT subject, role FROM no_such_table WHERE subject IN ({parameters})");
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_KEYS, "subject");
+        JDBCEngine jdbcEngine = createEngine(properties);
+
+        /*
+         * The batch query cannot be prepared, so each request is looked up on its own
+         */
+        List<PIPFinder> listPIPFinders = Arrays.asList(createFinder("alice"), createFinder("bob"));
+        List<PIPResponse> listPIPResponses = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, listPIPFinders);
+        assertEquals(2, listPIPResponses.get(0).getAttributes().size());
+        assertEquals(1, listPIPResponses.get(1).getAttributes().size());
+    }
+
+    @Test
+    public void testBatchUsesCircuitBreaker() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jdbc." + StdConfigurableEngine.PROP_CIRCUIT_FAILURETHRESHOLD, "1");
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_SELECT,
+                               "SELECT subject, role FROM roles WHERE subject IN ({parameters})");
+        properties.setProperty("jdbc.resolver.roles." + ConfigurableJDBCResolver.PROP_BATCH_KEYS, "subject");
+        JDBCEngine jdbcEngine = createEngine(properties);
+        jdbcEngine.getCircuitBreaker().recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, jdbcEngine.getCircuitBreaker().getState());
+
+        /*
+         * The open circuit rejects the batch query, and every request in it gets an error
+         */
+        List<PIPFinder> listPIPFinders = Arrays.asList(createFinder("alice"), createFinder("bob"));
+        List<PIPResponse> listPIPResponses = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, listPIPFinders);
+        assertEquals(2, listPIPResponses.size());
+        for (PIPResponse pipResponse : listPIPResponses) {
+            assertFalse(pipResponse.getStatus().isOk());
+            assertEquals(0, pipResponse.getAttributes().size());
+        }
+        assertEquals(1, jdbcEngine.getCircuitBreaker().getRejectedCount());
+    }
+
+    @Test
+    public void testBatchKeysAreTyped() throws Exception {
+        PIPRequest pipRequestDay = new StdPIPRequest(XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT,
+                                                     XACML3.ID_ENVIRONMENT_CURRENT_DATETIME,
+                                                     XACML3.ID_DATATYPE_DATETIME);
+        Properties properties = new Properties();
+        properties.setProperty("days.select", "SELECT name FROM holidays WHERE day=?");
+        properties.setProperty("days.fields", "name");
+        setAttributeProperties(properties, "days.field.name", PIP_REQUEST_ROLE);
+        properties.setProperty("days.parameters", "day");
+        setAttributeProperties(properties, "days.parameter.day", pipRequestDay);
+        properties.setProperty("days." + ConfigurableJDBCResolver.PROP_BATCH_SELECT,
+                               "SELECT day, name FROM holidays WHERE day IN ({parameters})");
+        properties.setProperty("days." + ConfigurableJDBCResolver.PROP_BATCH_KEYS, "day");
+        ConfigurableJDBCResolver jdbcResolver = new ConfigurableJDBCResolver();
+        jdbcResolver.configure("days", properties, null);
+
+        /*
+         * A dateTime parameter is bound as a DATE, so it must match the DATE column it selects
+         */
+        List<AttributeValue<?>> parameterValues = new ArrayList<AttributeValue<?>>();
+        parameterValues.add(DataTypes.DT_DATETIME.createAttributeValue("2014-03-05T10:15:00"));
+        try (Statement statement = connection.createStatement();
+            ResultSet resultSet = statement
+                .executeQuery("SELECT CAST('2014-03-05' AS DATE) AS day FROM (VALUES(0))")) {
+            assertTrue(resultSet.next());
+            assertEquals(jdbcResolver.getBatchKey(parameterValues), jdbcResolver.getBatchKey(resultSet));
+        }
+    }
+
+    @Test
+    public void testRefreshDoesNotUseRequestFinder() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("jdbc." + StdConfigurableEngine.PROP_CACHESPEC, "expireAfterWrite=1h");
+        properties.setProperty("jdbc." + StdConfigurableEngine.PROP_REFRESHAFTER, "50");
+        JDBCEngine jdbcEngine = createEngine(properties);
+
+        PIPFinder pipFinder = new RequestThreadFinder(createFinder("alice"));
+        PIPResponse pipResponse = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, pipFinder);
+        assertEquals(2, pipResponse.getAttributes().size());
+        Thread.sleep(100);
+
+        /*
+         * The stale entry is refreshed on another thread, without the PIPFinder of the request
+         */
+        pipFinder = new RequestThreadFinder(createFinder("alice"));
+        pipResponse = jdbcEngine.getAttributes(PIP_REQUEST_ROLE, pipFinder);
+        assertEquals(2, pipResponse.getAttributes().size());
+        for (int i = 0; i < 500 && jdbcEngine.getRefreshCount() == 0
+                        && jdbcEngine.getRefreshFailureCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, jdbcEngine.getRefreshCount());
+        assertEquals(0, jdbcEngine.getRefreshFailureCount());
+    }
+
+    private static Properties credentials() {
+        Properties properties = new Properties();
+        properties.setProperty("user", "sa");
+        properties.setProperty("password", "");
+        return properties;
+    }
+
+    private static JDBCEngine createEngine(Properties properties) throws Exception {
+        properties.setProperty("jdbc.type", JDBCEngine.TYPE_JDBC);
+        properties.setProperty("jdbc.jdbc.driver", JDBC_DRIVER);
+        properties.setProperty("jdbc.jdbc.url", JDBC_URL);
+        properties.setProperty("jdbc.jdbc.conn.user", "sa");
+        properties.setProperty("jdbc.jdbc.conn.password", "");
+        properties.setProperty("jdbc.resolvers", "roles");
+        properties.setProperty("jdbc.resolver.roles.classname", ConfigurableJDBCResolver.class.getName());
+        if (!properties.containsKey("jdbc.resolver.roles.select")) {
+            properties.setProperty("jdbc.resolver.roles.select", "SELECT role FROM roles WHERE subject=?");
+        }
+        properties.setProperty("jdbc.resolver.roles.fields", "role");
+        setAttributeProperties(properties, "jdbc.resolver.roles.field.role", PIP_REQUEST_ROLE);
+        properties.setProperty("jdbc.resolver.roles.parameters", "subject");
+        setAttributeProperties(properties, "jdbc.resolver.roles.parameter.subject", PIP_REQUEST_SUBJECT_ID);
+
+        JDBCEngine jdbcEngine = new JDBCEngine();
+        jdbcEngine.configure("jdbc", properties);
+        return jdbcEngine;
+    }
+}
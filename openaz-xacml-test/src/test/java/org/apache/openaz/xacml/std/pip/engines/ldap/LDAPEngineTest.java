@@ -0,0 +1,258 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.std.pip.engines.ldap;
+
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_GROUP;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_SUBJECT_ID;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.createFinder;
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.setAttributeProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+import javax.naming.spi.InitialContextFactory;
+
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * LDAPEngineTest runs the {@link LDAPEngine} against mock <code>LdapContext</code>s.
+ */
+public class LDAPEngineTest {
+
+    /*
+     * The directory answers every search with these groups, two to a page when paging is asked for
+     */
+    private static final List<String> GROUPS = Arrays.asList("admins", "auditors", "users");
+
+    private static final AtomicInteger CONTEXTS_CREATED = new AtomicInteger();
+    private static final AtomicInteger SEARCHES = new AtomicInteger();
+    private static volatile SearchControls lastSearchControls;
+
+    /**
+     * MockContextFactory creates mock <code>LdapContext</code>s that serve the groups.
+     */
+    public static class MockContextFactory implements InitialContextFactory {
+        @Override
+        public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException {
+            CONTEXTS_CREATED.incrementAndGet();
+            final LdapContext ldapContext = mock(LdapContext.class);
+            final Control[][] requestControls = new Control[1][];
+            final int[] nextPage = new int[1];
+            doAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    requestControls[0] = (Control[])invocation.getArguments()[0];
+                    return null;
+                }
+            }).when(ldapContext).setRequestControls(any(Control[].class));
+            when(ldapContext.search(anyString(), anyString(), any(SearchControls.class)))
+                .thenAnswer(new Answer<NamingEnumeration<SearchResult>>() {
+                    @Override
+                    public NamingEnumeration<SearchResult> answer(InvocationOnMock invocation)
+                        throws Throwable {
+                        SEARCHES.incrementAndGet();
+                        lastSearchControls = (SearchControls)invocation.getArguments()[2];
+                        List<String> groups = GROUPS;
+                        if (requestControls[0] != null
+                            && requestControls[0][0] instanceof PagedResultsControl) {
+                            int from = nextPage[0] * 2;
+                            groups = GROUPS.subList(from, Math.min(from + 2, GROUPS.size()));
+                            nextPage[0]++;
+                        }
+                        return new ListEnumeration(groups.iterator());
+                    }
+                });
+            when(ldapContext.getResponseControls()).thenAnswer(new Answer<Control[]>() {
+                @Override
+                public Control[] answer(InvocationOnMock invocation) throws Throwable {
+                    boolean more = nextPage[0] * 2 < GROUPS.size();
+                    if (!more) {
+                        nextPage[0] = 0;
+                    }
+                    return new Control[] {
+                        newPagedResultsResponseControl(more)
+                    };
+                }
+            });
+            return ldapContext;
+        }
+    }
+
+    private static class ListEnumeration implements NamingEnumeration<SearchResult> {
+        private final Iterator<String> iterGroups;
+
+        ListEnumeration(Iterator<String> iterGroupsIn) {
+            this.iterGroups = iterGroupsIn;
+        }
+
+        @Override
+        public SearchResult next() {
+            String group = this.iterGroups.next();
+            BasicAttributes attributes = new BasicAttributes("cn", group);
+            return new SearchResult("cn=" + group, null, attributes);
+        }
+
+        @Override
+        public boolean hasMore() {
+            return this.iterGroups.hasNext();
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return this.hasMore();
+        }
+
+        @Override
+        public SearchResult nextElement() {
+            return this.next();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /*
+     * The BER encoding of the paged results response value: SEQUENCE { INTEGER size, OCTET STRING cookie }
+     */
+    private static PagedResultsResponseControl newPagedResultsResponseControl(boolean more) {
+        byte[] value = more ? new byte[] {
+            0x30, 0x06, 0x02, 0x01, 0x00, 0x04, 0x01, 'c'
+        } : new byte[] {
+            0x30, 0x05, 0x02, 0x01, 0x00, 0x04, 0x00
+        };
+        try {
+            return new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Before
+    public void before() {
+        CONTEXTS_CREATED.set(0);
+        SEARCHES.set(0);
+    }
+
+    @Test
+    public void testContextsArePooled() throws Exception {
+        LDAPEngine ldapEngine = createEngine(new Properties());
+
+        for (int i = 0; i < 3; i++) {
+            PIPResponse pipResponse = ldapEngine.getAttributes(PIP_REQUEST_GROUP, createFinder("alice"));
+            assertEquals(3, pipResponse.getAttributes().size());
+        }
+        assertEquals(1, CONTEXTS_CREATED.get());
+        assertEquals(0, ldapEngine.getContextPool().getActiveCount());
+        assertEquals(1, ldapEngine.getContextPool().getIdleCount());
+        assertTrue(Arrays.equals(new String[] {
+            "cn"
+        }, lastSearchControls.getReturningAttributes()));
+    }
+
+    @Test
+    public void testPoolCanBeDisabled() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("ldap." + LDAPEngine.PROP_POOL_MAX, "0");
+        LDAPEngine ldapEngine = createEngine(properties);
+
+        ldapEngine.getAttributes(PIP_REQUEST_GROUP, createFinder("alice"));
+        ldapEngine.getAttributes(PIP_REQUEST_GROUP, createFinder("alice"));
+        assertEquals(2, CONTEXTS_CREATED.get());
+    }
+
+    @Test
+    public void testExhaustedPoolTimesOut() throws Exception {
+        Hashtable<String, Object> ldapEnvironment = new Hashtable<String, Object>();
+        ldapEnvironment.put(Context.INITIAL_CONTEXT_FACTORY, MockContextFactory.class.getName());
+        LDAPContextPool contextPool = new LDAPContextPool(ldapEnvironment, 0, 1, 60000, 50, 60000);
+
+        LdapContext ldapContext = contextPool.getContext();
+        try {
+            contextPool.getContext();
+            fail("Expected the pool to be exhausted");
+        } catch (NamingException ex) {
+            assertEquals(1, contextPool.getActiveCount());
+        }
+        contextPool.releaseContext(ldapContext, false);
+        assertSame(ldapContext, contextPool.getContext());
+        assertEquals(1, CONTEXTS_CREATED.get());
+        contextPool.close();
+    }
+
+    @Test
+    public void testPagedSearch() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("ldap." + LDAPEngine.PROP_PAGESIZE, "2");
+        LDAPEngine ldapEngine = createEngine(properties);
+
+        PIPResponse pipResponse = ldapEngine.getAttributes(PIP_REQUEST_GROUP, createFinder("alice"));
+        assertEquals(3, pipResponse.getAttributes().size());
+        assertEquals(2, SEARCHES.get());
+    }
+
+    private static LDAPEngine createEngine(Properties properties) throws Exception {
+        properties.setProperty("ldap." + Context.INITIAL_CONTEXT_FACTORY, MockContextFactory.class.getName());
+        properties.setProperty("ldap." + Context.PROVIDER_URL, "ldap://localhost:10389");
+        properties.setProperty("ldap.resolvers", "groups");
+        properties.setProperty("ldap.resolver.groups.classname", ConfigurableLDAPResolver.class.getName());
+        properties.setProperty("ldap.resolver.groups.base", "ou=groups");
+        properties.setProperty("ldap.resolver.groups.base.parameters", "");
+        properties.setProperty("ldap.resolver.groups.filter", "member=${uid}");
+        properties.setProperty("ldap.resolver.groups.filter.parameters", "uid");
+        setAttributeProperties(properties, "ldap.resolver.groups.filter.parameters.uid",
+                               PIP_REQUEST_SUBJECT_ID);
+        properties.setProperty("ldap.resolver.groups.filter.view", "cn");
+        setAttributeProperties(properties, "ldap.resolver.groups.filter.view.cn", PIP_REQUEST_GROUP);
+
+        LDAPEngine ldapEngine = new LDAPEngine();
+        ldapEngine.configure("ldap", properties);
+        return ldapEngine;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.openaz.xacml.std.pip.finders;
+
+import static org.apache.openaz.xacml.std.pip.engines.PIPEngineFixture.PIP_REQUEST_ROLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.api.pip.PIPEngine;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.IdentifierImpl;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdStatusCode;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.pip.StdPIPRequest;
+import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * EngineFinderTest checks how {@link EngineFinder} routes requests to the <code>PIPEngine</code>s that
+ * provide them and fans them out with a timeout.
+ */
+public class EngineFinderTest {
+    private static final PIPRequest PIP_REQUEST_DEPARTMENT = new StdPIPRequest(
+                                                                               XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT,
+                                                                               new IdentifierImpl(
+                                                                                                  "urn:example:department"),
+                                                                               XACML3.ID_DATATYPE_STRING,
+                                                                               "hr");
+
+    private PIPEngine roleEngine;
+    private PIPEngine departmentEngine;
+    private PIPEngine broadcastEngine;
+    private EngineFinder engineFinder;
+
+    @Before
+    public void before() throws Exception {
+        this.roleEngine = this.createEngine("roles", PIP_REQUEST_ROLE, "admin");
+        this.departmentEngine = this.createEngine("departments", PIP_REQUEST_DEPARTMENT, "sales");
+        this.broadcastEngine = this.createEngine("broadcast", null, null);
+
+        this.engineFinder = new EngineFinder();
+        this.engineFinder.register(this.roleEngine);
+        this.engineFinder.register(this.departmentEngine);
+        this.engineFinder.register(this.broadcastEngine);
+    }
+
+    @Test
+    public void testRequestsAreRoutedToProviders() throws Exception {
+        assertEquals(Arrays.asList(this.roleEngine, this.broadcastEngine),
+                     this.engineFinder.getPIPEngines(PIP_REQUEST_ROLE));
+
+        PIPResponse pipResponse = this.engineFinder.getAttributes(PIP_REQUEST_ROLE, null);
+        assertEquals(1, pipResponse.getAttributes().size());
+        verify(this.roleEngine).getAttributes(any(PIPRequest.class), any(PIPFinder.class));
+        verify(this.broadcastEngine).getAttributes(any(PIPRequest.class), any(PIPFinder.class));
+        verify(this.departmentEngine, never()).getAttributes(any(PIPRequest.class), any(PIPFinder.class));
+    }
+
+    @Test
+    public void testRoutingByIssuer() throws Exception {
+        PIPRequest pipRequestAnyIssuer = new StdPIPRequest(PIP_REQUEST_DEPARTMENT.getCategory(),
+                                                           PIP_REQUEST_DEPARTMENT.getAttributeId(),
+                                                           PIP_REQUEST_DEPARTMENT.getDataTypeId());
+        assertEquals(Arrays.asList(this.departmentEngine, this.broadcastEngine),
+                     this.engineFinder.getPIPEngines(pipRequestAnyIssuer));
+        assertEquals(Arrays.asList(this.departmentEngine, this.broadcastEngine),
+                     this.engineFinder.getPIPEngines(PIP_REQUEST_DEPARTMENT));
+
+        PIPRequest pipRequestOtherIssuer = new StdPIPRequest(PIP_REQUEST_DEPARTMENT.getCategory(),
+                                                             PIP_REQUEST_DEPARTMENT.getAttributeId(),
+                                                             PIP_REQUEST_DEPARTMENT.getDataTypeId(), "finance");
+        assertEquals(Collections.singletonList(this.broadcastEngine),
+                     this.engineFinder.getPIPEngines(pipRequestOtherIssuer));
+    }
+
+    @Test
+    public void testFanOutTimeout() throws Exception {
+        PIPEngine slowEngine = this.createEngine("slow", PIP_REQUEST_ROLE, "auditor");
+        when(slowEngine.getAttributes(any(PIPRequest.class), any(PIPFinder.class)))
+            .thenAnswer(new Answer<PIPResponse>() {
+                @Override
+                public PIPResponse answer(InvocationOnMock invocation) throws Throwable {
+                    Thread.sleep(10000);
+                    return StdPIPResponse.PIP_RESPONSE_EMPTY;
+                }
+            });
+        this.engineFinder.register(slowEngine);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            this.engineFinder.setExecutorService(executorService);
+            this.engineFinder.setTimeout(200);
+
+            long start = System.currentTimeMillis();
+            PIPResponse pipResponse = this.engineFinder.getAttributes(PIP_REQUEST_ROLE, null);
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertTrue(pipResponse.getStatus().isOk());
+            assertEquals(1, pipResponse.getAttributes().size());
+
+            this.engineFinder.setFanOutPolicy(EngineFinder.FanOutPolicy.ALL_SUCCESS);
+            pipResponse = this.engineFinder.getAttributes(PIP_REQUEST_ROLE, null);
+            assertEquals(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, pipResponse.getStatus().getStatusCode());
+            assertEquals(0, pipResponse.getAttributes().size());
+
+            this.engineFinder.setFanOutPolicy(EngineFinder.FanOutPolicy.FIRST_SUCCESS);
+            start = System.currentTimeMillis();
+            pipResponse = this.engineFinder.getAttributes(PIP_REQUEST_ROLE, null);
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertEquals(1, pipResponse.getAttributes().size());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFanOutExecutorIsReusedOrShutDown() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(ConfigurableEngineFinder.PROP_PIP_FANOUT_THREADS, "2");
+        ConfigurableEngineFinder configurableEngineFinder = new ConfigurableEngineFinder();
+        configurableEngineFinder.configure(properties);
+        ExecutorService executorService = configurableEngineFinder.getExecutorService();
+        assertNotNull(executorService);
+
+        /*
+         * The same number of threads keeps the pool, a different number replaces it
+         */
+        configurableEngineFinder.configure(properties);
+        assertSame(executorService, configurableEngineFinder.getExecutorService());
+        properties.setProperty(ConfigurableEngineFinder.PROP_PIP_FANOUT_THREADS, "4");
+        configurableEngineFinder.configure(properties);
+        assertNotSame(executorService, configurableEngineFinder.getExecutorService());
+        assertTrue(executorService.isShutdown());
+
+        executorService = configurableEngineFinder.getExecutorService();
+        properties.setProperty(ConfigurableEngineFinder.PROP_PIP_FANOUT_THREADS, "0");
+        configurableEngineFinder.configure(properties);
+        assertNull(configurableEngineFinder.getExecutorService());
+        assertTrue(executorService.isShutdown());
+    }
+
+    private PIPEngine createEngine(String name, PIPRequest pipRequestProvided, String value) throws Exception {
+        PIPEngine pipEngine = mock(PIPEngine.class);
+        when(pipEngine.getName()).thenReturn(name);
+        if (pipRequestProvided == null) {
+            when(pipEngine.attributesProvided()).thenReturn(Collections.<PIPRequest> emptyList());
+            when(pipEngine.getAttributes(any(PIPRequest.class), any(PIPFinder.class)))
+                .thenReturn(StdPIPResponse.PIP_RESPONSE_EMPTY);
+        } else {
+            when(pipEngine.attributesProvided()).thenReturn(Collections.singletonList(pipRequestProvided));
+            when(pipEngine.getAttributes(any(PIPRequest.class), any(PIPFinder.class)))
+                .thenReturn(new StdPIPResponse(
+                                               new StdMutableAttribute(pipRequestProvided.getCategory(),
+                                                                       pipRequestProvided.getAttributeId(),
+                                                                       DataTypes.DT_STRING
+                                                                           .createAttributeValue(value),
+                                                                       pipRequestProvided.getIssuer(), false)));
+        }
+        return pipEngine;
+    }
+}
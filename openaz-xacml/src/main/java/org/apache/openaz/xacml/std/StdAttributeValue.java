@@ -94,7 +94,6 @@ public class StdAttributeValue<T> implements AttributeValue<T> {
         int result = 1;
         result = prime * result + ((dataTypeId == null) ? 0 : dataTypeId.hashCode());
         result = prime * result + ((value == null) ? 0 : value.hashCode());
-        result = prime * result + ((xpathCategory == null) ? 0 : xpathCategory.hashCode());
         return result;
     }
 
@@ -46,6 +46,7 @@ import org.apache.openaz.xacml.api.RequestAttributes;
 import org.apache.openaz.xacml.api.RequestDefaults;
 import org.apache.openaz.xacml.api.RequestReference;
 import org.apache.openaz.xacml.api.Status;
+import org.apache.openaz.xacml.std.pip.StdRequestAttributeIndex;
 import org.apache.openaz.xacml.util.ListUtil;
 import org.apache.openaz.xacml.util.ObjUtil;
 
@@ -69,6 +70,7 @@ public class StdMutableRequest implements Request {
     private HashMap<Identifier, List<RequestAttributes>> requestAttributesByCategoryId = new HashMap<Identifier, List<RequestAttributes>>();
     private HashMap<String, RequestAttributes> requestAttributesByXmlId = new HashMap<String, RequestAttributes>();
     private List<RequestReference> requestReferences;
+    private volatile StdRequestAttributeIndex attributeIndex;
 
     /**
      * Creates a new <code>StdMutableRequest</code> with the given parameters.
@@ -228,6 +230,7 @@ public class StdMutableRequest implements Request {
             this.requestAttributes = new ArrayList<RequestAttributes>();
         }
         this.requestAttributes.add(requestAttributesNew);
+        this.attributeIndex = null;
         List<RequestAttributes> listRequestAttributesForCategoryId = this.requestAttributesByCategoryId
             .get(requestAttributesNew.getCategory());
         if (listRequestAttributesForCategoryId == null) {
@@ -285,6 +288,23 @@ public class StdMutableRequest implements Request {
         return this.requestAttributesByXmlId.get(xmlId);
     }
 
+    /**
+     * Gets the {@link org.apache.openaz.xacml.std.pip.StdRequestAttributeIndex} for the
+     * <code>Attribute</code>s in this <code>StdMutableRequest</code>, building it on first use. The index is
+     * discarded when more <code>RequestAttributes</code> are added, but changes made to
+     * <code>RequestAttributes</code> that were already added are not seen by an index built before them.
+     *
+     * @return the <code>StdRequestAttributeIndex</code> for this <code>StdMutableRequest</code>
+     */
+    public StdRequestAttributeIndex getAttributeIndex() {
+        StdRequestAttributeIndex index = this.attributeIndex;
+        if (index == null) {
+            index = new StdRequestAttributeIndex(this);
+            this.attributeIndex = index;
+        }
+        return index;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) {
@@ -40,12 +40,15 @@ import org.apache.openaz.xacml.api.RequestAttributes;
 import org.apache.openaz.xacml.api.RequestDefaults;
 import org.apache.openaz.xacml.api.RequestReference;
 import org.apache.openaz.xacml.api.Status;
+import org.apache.openaz.xacml.std.pip.StdRequestAttributeIndex;
 import org.apache.openaz.xacml.util.Wrapper;
 
 /**
  * Immutable implementation of the {@link org.apache.openaz.xacml.api.Request} interface.
  */
 public class StdRequest extends Wrapper<Request> implements Request {
+    private volatile StdRequestAttributeIndex attributeIndex;
+
     /**
      * Creates a new <code>StdRequest</code> that is a copy of the given
      * {@link org.apache.openaz.xacml.api.Request}.
@@ -156,4 +159,22 @@ public class StdRequest extends Wrapper<Request> implements Request {
         return this.getWrappedObject().getStatus();
     }
 
+    /**
+     * Gets the {@link org.apache.openaz.xacml.std.pip.StdRequestAttributeIndex} for the
+     * <code>Attribute</code>s in this <code>StdRequest</code>, building it on first use.
+     *
+     * @return the <code>StdRequestAttributeIndex</code> for this <code>StdRequest</code>
+     */
+    public StdRequestAttributeIndex getAttributeIndex() {
+        if (this.getWrappedObject() instanceof StdMutableRequest) {
+            return ((StdMutableRequest)this.getWrappedObject()).getAttributeIndex();
+        }
+        StdRequestAttributeIndex index = this.attributeIndex;
+        if (index == null) {
+            index = new StdRequestAttributeIndex(this.getWrappedObject());
+            this.attributeIndex = index;
+        }
+        return index;
+    }
+
 }
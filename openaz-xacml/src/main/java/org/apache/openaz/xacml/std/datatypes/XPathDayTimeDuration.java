@@ -59,6 +59,14 @@ public class XPathDayTimeDuration extends ISO8601Duration implements Comparable<
         return this.fractionalSeconds;
     }
 
+    @Override
+    public int hashCode() {
+        /*
+         * Adding 0.0 turns -0.0 into 0.0, which equals() treats as the same duration
+         */
+        return Double.valueOf(this.getFractionalSeconds() + 0.0).hashCode();
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null || !(obj instanceof XPathDayTimeDuration)) {
@@ -35,11 +35,11 @@ import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.openaz.xacml.api.Status;
 import org.apache.openaz.xacml.std.StdStatus;
 import org.apache.openaz.xacml.std.StdStatusCode;
+import org.apache.openaz.xacml.std.dom.DOMUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
@@ -82,7 +82,7 @@ public class XPathExpressionWrapper implements XPathExpression {
         if (this.xpathExpressionWrapped == null && (this.getStatus() == null || this.getStatus().isOk())) {
             String thisPath = this.getPath();
             if (thisPath != null) {
-                XPath xPath = XPathFactory.newInstance().newXPath();
+                XPath xPath = DOMUtil.getXPath();
                 NamespaceContext namespaceContextThis = this.getNamespaceContext();
                 if (namespaceContextThis != null) {
                     xPath.setNamespaceContext(namespaceContextThis);
@@ -42,6 +42,7 @@ import org.apache.openaz.xacml.util.XACMLProperties;
 public class DOMProperties {
     private static final String PROP_LENIENT = "xacml.dom.lenient";
     private static final String PROP_EXCEPTIONS = "xacml.dom.exceptions";
+    private static final String PROP_SECURE_PROCESSING = "xacml.dom.secureProcessing";
 
     private static Map<String, Object> cachedProperties = new HashMap<String, Object>();
 
@@ -103,4 +104,17 @@ public class DOMProperties {
         cachedProperties.put(PROP_EXCEPTIONS, (b ? Boolean.TRUE : Boolean.FALSE));
     }
 
+    /**
+     * Whether documents are parsed with <code>XMLConstants.FEATURE_SECURE_PROCESSING</code>, which limits
+     * entity expansion and does not let a document load an external DTD. It is on unless
+     * <code>xacml.dom.secureProcessing</code> is false, and is read once, when <code>DOMUtil</code> first
+     * needs a <code>DocumentBuilder</code>.
+     *
+     * @return true if documents are parsed with secure processing
+     */
+    public static boolean isSecureProcessing() {
+        Boolean booleanSecureProcessing = getBooleanProperty(PROP_SECURE_PROCESSING);
+        return booleanSecureProcessing == null ? true : booleanSecureProcessing.booleanValue();
+    }
+
 }
@@ -37,6 +37,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.ParseException;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
@@ -46,6 +47,8 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.openaz.xacml.api.Identifier;
@@ -73,6 +76,18 @@ public class DOMUtil {
      */
     private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
 
+    /*
+     * Looking up the JAXP factories goes through the service loader, so each is found and configured once.
+     * The factories are not thread-safe, so they are only used under the DOMUtil lock, and each thread keeps
+     * the DocumentBuilder and XPath it creates from them. The DocumentBuilder is reset after every parse, so
+     * it does not hold on to the last Document; the XPath is reset before every use.
+     */
+    private static DocumentBuilderFactory documentBuilderFactory;
+    private static XPathFactory xPathFactory;
+    private static final ThreadLocal<DocumentBuilder> THREAD_DOCUMENT_BUILDER =
+        new ThreadLocal<DocumentBuilder>();
+    private static final ThreadLocal<XPath> THREAD_XPATH = new ThreadLocal<XPath>();
+
     protected DOMUtil() {
     }
 
@@ -86,8 +101,7 @@ public class DOMUtil {
     public static Node getDirectDocumentChild(Node node) throws DOMStructureException {
         Node nodeResult = null;
         try {
-            DocumentBuilder documentBuilder = getDocumentBuilder();
-            Document documentRoot = documentBuilder.newDocument();
+            Document documentRoot = newDocument();
             Node nodeTopRoot = documentRoot.importNode(node, true);
             documentRoot.appendChild(nodeTopRoot);
             nodeResult = documentRoot.getDocumentElement();
@@ -711,15 +725,36 @@ public class DOMUtil {
         return false;
     }
     
-    public static DocumentBuilder getDocumentBuilder() throws DOMStructureException {
+    /**
+     * Creates a new namespace-aware <code>DocumentBuilder</code>, with secure processing enabled unless
+     * {@link org.apache.openaz.xacml.std.dom.DOMProperties#isSecureProcessing()} says otherwise. The caller
+     * owns the <code>DocumentBuilder</code>; to parse a document or create an empty one use
+     * <code>loadDocument</code> or <code>newDocument</code>, which reuse a <code>DocumentBuilder</code> per
+     * thread instead.
+     *
+     * @return a new <code>DocumentBuilder</code>
+     * @throws DOMStructureException if the <code>DocumentBuilder</code> cannot be created
+     */
+    public static synchronized DocumentBuilder getDocumentBuilder() throws DOMStructureException {
         /*
          * Get the DocumentBuilderFactory
          */
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
         if (documentBuilderFactory == null) {
-            throw new DOMStructureException("No XML DocumentBuilderFactory configured");
+            DocumentBuilderFactory documentBuilderFactoryNew = DocumentBuilderFactory.newInstance();
+            if (documentBuilderFactoryNew == null) {
+                throw new DOMStructureException("No XML DocumentBuilderFactory configured");
+            }
+            documentBuilderFactoryNew.setNamespaceAware(true);
+            if (DOMProperties.isSecureProcessing()) {
+                try {
+                    documentBuilderFactoryNew.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                } catch (Exception ex) {
+                    throw new DOMStructureException("Exception configuring DocumentBuilderFactory: "
+                                                    + ex.getMessage(), ex);
+                }
+            }
+            documentBuilderFactory = documentBuilderFactoryNew;
         }
-        documentBuilderFactory.setNamespaceAware(true);
 
         /*
          * Get the DocumentBuilder
@@ -731,8 +766,53 @@ public class DOMUtil {
         }
     }
 
+    /*
+     * Gets the DocumentBuilder of the current thread. Whoever parses with it resets it afterwards.
+     */
+    private static DocumentBuilder getThreadDocumentBuilder() throws DOMStructureException {
+        DocumentBuilder documentBuilder = THREAD_DOCUMENT_BUILDER.get();
+        if (documentBuilder == null) {
+            documentBuilder = getDocumentBuilder();
+            THREAD_DOCUMENT_BUILDER.set(documentBuilder);
+        }
+        return documentBuilder;
+    }
+
+    /**
+     * Creates a new empty namespace-aware <code>Document</code>.
+     *
+     * @return the new <code>Document</code>
+     * @throws DOMStructureException if no <code>DocumentBuilder</code> can be created
+     */
+    public static Document newDocument() throws DOMStructureException {
+        return getThreadDocumentBuilder().newDocument();
+    }
+
+    /**
+     * Gets an <code>XPath</code> for use by the current thread. It is reset before it is returned, so any
+     * <code>NamespaceContext</code> set on it by a previous caller is gone. The <code>XPath</code> must not
+     * be kept or passed to another thread, but the <code>XPathExpression</code>s compiled with it may be.
+     *
+     * @return the <code>XPath</code> of the current thread
+     */
+    public static XPath getXPath() {
+        XPath xPath = THREAD_XPATH.get();
+        if (xPath == null) {
+            synchronized (DOMUtil.class) {
+                if (xPathFactory == null) {
+                    xPathFactory = XPathFactory.newInstance();
+                }
+                xPath = xPathFactory.newXPath();
+            }
+            THREAD_XPATH.set(xPath);
+        } else {
+            xPath.reset();
+        }
+        return xPath;
+    }
+
     public static Document loadDocument(File fileDocument) throws DOMStructureException {
-        DocumentBuilder documentBuilder = getDocumentBuilder();
+        DocumentBuilder documentBuilder = getThreadDocumentBuilder();
 
         /*
          * Parse the XML file
@@ -746,13 +826,15 @@ public class DOMUtil {
         } catch (Exception ex) {
             throw new DOMStructureException("Exception loading file \"" + fileDocument.getAbsolutePath()
                                             + "\": " + ex.getMessage(), ex);
+        } finally {
+            documentBuilder.reset();
         }
         return document;
 
     }
 
     public static Document loadDocument(InputStream inputStreamDocument) throws DOMStructureException {
-        DocumentBuilder documentBuilder = getDocumentBuilder();
+        DocumentBuilder documentBuilder = getThreadDocumentBuilder();
 
         /*
          * Parse the XML file
@@ -765,6 +847,8 @@ public class DOMUtil {
             }
         } catch (Exception ex) {
             throw new DOMStructureException("Exception loading file from stream: " + ex.getMessage(), ex);
+        } finally {
+            documentBuilder.reset();
         }
         return document;
 
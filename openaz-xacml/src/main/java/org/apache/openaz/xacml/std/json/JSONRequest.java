@@ -36,18 +36,23 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.math.BigInteger;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -92,10 +97,11 @@ import org.w3c.dom.Node;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonLocation;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
@@ -123,6 +129,31 @@ public class JSONRequest {
      */
     private static DataTypeFactory dataTypeFactory = null;
 
+    /*
+     * The shorthand names of the default categories and their CategoryIds, in the order their objects are
+     * added to the Request
+     */
+    private static final Map<String, Identifier> defaultCategories = new LinkedHashMap<String, Identifier>();
+
+    static {
+        defaultCategories.put("AccessSubject", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT);
+        // Provide backward compatibility for our PEP's
+        defaultCategories.put("Subject", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT);
+        defaultCategories.put("Action", XACML3.ID_ATTRIBUTE_CATEGORY_ACTION);
+        defaultCategories.put("Resource", XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE);
+        defaultCategories.put("Environment", XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT);
+        defaultCategories.put("RecipientSubject", XACML3.ID_SUBJECT_CATEGORY_RECIPIENT_SUBJECT);
+        defaultCategories.put("IntermediarySubject", XACML3.ID_SUBJECT_CATEGORY_INTERMEDIARY_SUBJECT);
+        defaultCategories.put("Codebase", XACML3.ID_SUBJECT_CATEGORY_CODEBASE);
+        defaultCategories.put("RequestingMachine", XACML3.ID_SUBJECT_CATEGORY_REQUESTING_MACHINE);
+    }
+
+    /*
+     * Parsers are created from a single JsonFactory, which is thread-safe once configured.
+     */
+    private static final JsonFactory jsonFactory = new JsonFactory()
+        .enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION);
+
     /*
      * Prevent creation of instances - this class contains only static methods that return other object types.
      */
@@ -161,12 +192,20 @@ public class JSONRequest {
      * used). If anything remains, throw an exception based on the component and the keys left in the map
      */
     private static void checkUnknown(String component, Map<?, ?> map) throws JSONStructureException {
-        if (map.size() == 0) {
+        checkUnknown(component, map.keySet());
+    }
+
+    /**
+     * Check that no unknown member names were seen in the given component. If any were, throw an exception
+     * based on the component and the names.
+     */
+    private static void checkUnknown(String component, Collection<?> names) throws JSONStructureException {
+        if (names.size() == 0) {
             return;
         }
 
         String keys = null;
-        Iterator<?> it = map.keySet().iterator();
+        Iterator<?> it = names.iterator();
         while (it.hasNext()) {
             if (keys == null) {
                 keys = "'" + it.next().toString() + "'";
@@ -175,7 +214,7 @@ public class JSONRequest {
             }
         }
 
-        String message = component + " contains unknown element" + ((map.size() == 1) ? " " : "s ") + keys;
+        String message = component + " contains unknown element" + ((names.size() == 1) ? " " : "s ") + keys;
         throw new JSONStructureException(message);
     }
 
@@ -309,51 +348,29 @@ public class JSONRequest {
     //
 
     /**
-     * Handle a List of Attributes for a Category
-     *
-     * @param categoryID
-     * @param attributes
-     * @param stdMutableRequest
-     * @throws JSONStructureException
-     */
-    private static List<Attribute> parseAttribute(Identifier categoryID, ArrayList<?> attributes)
-        throws JSONStructureException {
-        Iterator<?> iterAttributes = attributes.iterator();
-
-        List<Attribute> collectedAttributes = new ArrayList<Attribute>();
-
-        while (iterAttributes.hasNext()) {
-            Map<?, ?> attributeMap = (Map<?, ?>)iterAttributes.next();
-            if (!(attributeMap instanceof Map)) {
-                throw new JSONStructureException("Expect Attribute content to be Map got "
-                                                 + attributeMap.getClass());
-            }
-            Attribute attribute = parseAttribute(categoryID, attributeMap);
-            collectedAttributes.add(attribute);
-        }
-
-        // return list of all attributes for this Category
-        return collectedAttributes;
-    }
-
-    /**
-     * Given the map of the parsed JSON representation of an Attribute, create the Attribute from the map.
+     * Create an Attribute from the values of the members of its JSON representation, any of which may be
+     * null if the member was not given.
      *
      * @param categoryID
-     * @param attributeMap
-     * @param stdMutableRequest
+     * @param attributeIdObject the AttributeId member
+     * @param idObject the Id member, allowed in place of AttributeId
+     * @param Value the Value member: a single value, a List of values, or a Map for an XPathExpression
+     * @param issuerObject the Issuer member
+     * @param includeInResultObject the IncludeInResult member
+     * @param DataType the DataType member
      * @return
      * @throws JSONStructureException
      */
-    private static Attribute parseAttribute(Identifier categoryID, Map<?, ?> attributeMap)
-        throws JSONStructureException {
+    private static Attribute newAttribute(Identifier categoryID, Object attributeIdObject, Object idObject,
+                                          Object Value, Object issuerObject, Object includeInResultObject,
+                                          Object DataType) throws JSONStructureException {
 
         // TODO - ASSUME that the spec will remove the requirement that we MUST "handle" JavaScript special
         // values NaN, INF, -INF, none of which make sense on this interface.
 
         // TODO - ASSUME that the spec will fix inconsistency between AttributeId and Id (both are mentioned),
         // but we have code using both so allow both on input.
-        Object idString = attributeMap.remove("AttributeId");
+        Object idString = attributeIdObject;
         if (idString == null) {
             //
             // This is an annoying message, and since we have PEP's that already use it
@@ -362,13 +379,13 @@ public class JSONRequest {
             if (logger.isDebugEnabled()) {
                 logger.debug("Attribute missing AttributeId, looking for Id");
             }
-            idString = attributeMap.remove("Id");
+            idString = idObject;
             if (idString == null) {
                 throw new JSONStructureException("Attribute missing AttributeId (and Id)");
             }
         } else {
             // we have the AttributeId - should not also have Id
-            if (attributeMap.remove("Id") != null) {
+            if (idObject != null) {
                 throw new JSONStructureException("Found both AttributeId '" + idString
                                                  + "' and Id field.  Please use only AttributeId.");
             }
@@ -378,14 +395,12 @@ public class JSONRequest {
         }
         Identifier id = new IdentifierImpl(idString.toString());
 
-        Object Value = attributeMap.remove("Value");
         if (Value == null) {
             throw new JSONStructureException("Attribute missing Value");
         }
 
-        String Issuer = (String)attributeMap.remove("Issuer");
+        String Issuer = (String)issuerObject;
 
-        Object includeInResultObject = attributeMap.remove("IncludeInResult");
         Boolean includeInResult = makeBoolean(includeInResultObject, "IncludeInResult");
         if (includeInResult == null) {
             includeInResult = Boolean.FALSE;
@@ -399,7 +414,6 @@ public class JSONRequest {
         // - arrays must all use the same DataType
         // - we are limited in the data types that the Jackson parser is able to infer
         //
-        Object DataType = attributeMap.remove("DataType");
         if (DataType != null && !(DataType instanceof String)) {
             throw new JSONStructureException("DataType must be String, got " + DataType.getClass());
         }
@@ -564,8 +578,6 @@ public class JSONRequest {
                                              + "' to type '" + dataTypeId.stringValue() + "'");
         }
 
-        checkUnknown(id.stringValue() + "Attribute '" + idString.toString() + "'", attributeMap);
-
         return attribute;
     }
 
@@ -604,17 +616,17 @@ public class JSONRequest {
     }
 
     /**
-     * Helper to parse all components of one Category or default Category
+     * Get the Identifier of a Category or default Category from its CategoryId member, which may be null.
      *
-     * @param categoryMap
-     * @param request
+     * @param categoryIDString
+     * @param categoryName
+     * @param defaultCategoryId
+     * @return
+     * @throws JSONStructureException
      */
-    private static void parseCategory(Map<?, ?> categoryMap, String categoryName,
-                                      Identifier defaultCategoryId, StdMutableRequest stdMutableRequest)
-        throws JSONStructureException {
-
+    private static Identifier getCategoryId(Object categoryIDString, String categoryName,
+                                            Identifier defaultCategoryId) throws JSONStructureException {
         Identifier categoryId = defaultCategoryId;
-        Object categoryIDString = ((Map<?, ?>)categoryMap).remove("CategoryId");
         if (categoryIDString == null && defaultCategoryId == null) {
             throw new JSONStructureException("Category is missing CategoryId");
         }
@@ -633,32 +645,19 @@ public class JSONRequest {
                                              + "' which does not match default id '" + defaultCategoryId
                                              + "'");
         }
+        return categoryId;
+    }
 
-        // get the Id, a.k.a xmlId
-        String xmlId = (String)((Map<?, ?>)categoryMap).remove("Id");
-
-        // get the Attributes for this Category, if any
-        List<Attribute> attributeList = new ArrayList<Attribute>();
-        Object attributesMap = ((Map<?, ?>)categoryMap).remove("Attribute");
-        if (attributesMap != null) {
-            if (attributesMap instanceof ArrayList) {
-                attributeList = parseAttribute(categoryId, (ArrayList<?>)attributesMap);
-            } else if (attributesMap instanceof Map) {
-                // underlying code expects only collections of Attributes, so create a collection of one to
-                // pass this single value
-                ArrayList<Map<?, ?>> listForOne = new ArrayList<Map<?, ?>>();
-                listForOne.add((Map<?, ?>)attributesMap);
-                attributeList = parseAttribute(categoryId, listForOne);
-            } else {
-                throw new JSONStructureException("Category '" + categoryName
-                                                 + "' saw unexpected Attribute class "
-                                                 + attributesMap.getClass());
-            }
-        }
-
-        // Get the Content node for this Category, if any
+    /**
+     * Get the Content node of a Category from its Content member, which may be null.
+     *
+     * @param content
+     * @param categoryName
+     * @return
+     * @throws JSONStructureException
+     */
+    private static Node parseContent(Object content, String categoryName) throws JSONStructureException {
         Node contentRootNode = null;
-        Object content = categoryMap.remove("Content");
         if (content != null) {
             if (content instanceof String) {
                 //
@@ -712,59 +711,137 @@ public class JSONRequest {
                                                  + content.getClass());
             }
         }
+        return contentRootNode;
+    }
+
+    /**
+     * Add the RequestReferences from the MultiRequests member of the Request, which may be null.
+     *
+     * @param multiRequestsObject
+     * @param stdMutableRequest
+     * @throws JSONStructureException
+     */
+    private static void parseMultiRequests(Object multiRequestsObject, StdMutableRequest stdMutableRequest)
+        throws JSONStructureException {
+        //
+        // MultiRequest
+        //
+        Map<?, ?> multiRequests = (Map<?, ?>)multiRequestsObject;
+        if (multiRequests != null) {
+            if (!(multiRequests instanceof Map)) {
+                throw new JSONStructureException(
+                                                 "MultiRequests must be object structure, not single value");
+            }
+
+            List<?> requestReferenceList = (List<?>)multiRequests.remove("RequestReference");
+            if (requestReferenceList == null) {
+                throw new JSONStructureException("MultiRequest must contain a RequestReference element");
+            }
+            if (requestReferenceList.size() < 1) {
+                throw new JSONStructureException(
+                                                 "MultiRequest must contain at least one element in the RequestReference list");
+            }
+
+            checkUnknown("MultiRequest", multiRequests);
+
+            for (Object requestReferenceMapObject : requestReferenceList) {
+                if (!(requestReferenceMapObject instanceof Map)) {
+                    throw new JSONStructureException("MultiRequest RequestReference must be object");
+                }
+                Map<?, ?> requestReferenceMap = (Map<?, ?>)requestReferenceMapObject;
 
-        checkUnknown(categoryName, categoryMap);
+                // each object within the list must contain a ReferenceId and only a ReferenceId
+                Object referenceIdListObject = requestReferenceMap.remove("ReferenceId");
+                if (referenceIdListObject == null) {
+                    throw new JSONStructureException(
+                                                     "MultiRequest RequestReference list element must contain ReferenceId");
+                }
+                List<?> referenceIdList = (List<?>)referenceIdListObject;
+                if (referenceIdList.size() == 0) {
+                    // the spec does not disallow empty list RequestReference objects
+                    continue;
+                }
 
-        StdMutableRequestAttributes attributeCategory = new StdMutableRequestAttributes(categoryId,
-                                                                                        attributeList,
-                                                                                        contentRootNode,
-                                                                                        xmlId);
+                checkUnknown("RequestReference", requestReferenceMap);
 
-        stdMutableRequest.add(attributeCategory);
+                // create reference corresponding to RequestReference list element
+                StdMutableRequestReference requestReference = new StdMutableRequestReference();
 
+                for (Object referenceId : referenceIdList) {
+                    // add attributes to the reference
+                    // Since the order of the JSON is not constrained, we could process this section
+                    // before the section containing attribute being referenced,
+                    // so we cannot do a cross-check here to verify that the attribute reference exists.
+                    // That will happen later when the PDP attempts to find the attribute.
+                    StdRequestAttributesReference requestAttributesReference = new StdRequestAttributesReference(
+                                                                                                                 (String)referenceId);
+                    requestReference.add(requestAttributesReference);
+                }
+                stdMutableRequest.add(requestReference);
+            }
+        }
     }
 
     /**
-     * Load the "Default Category" objects, if any. This is used for the special cases of AccessSubject,
-     * Action, Resource, and Environment
+     * Set the ReturnPolicyIdList, CombinedDecision and XPathVersion of the Request from their members, any of
+     * which may be null.
      *
-     * @param jsonRequestMap
-     * @param categoryName
-     * @param categoryIdString
+     * @param returnPolicyIdList
+     * @param combinedDecision
+     * @param xPath
      * @param stdMutableRequest
      * @throws JSONStructureException
      */
-    private static void parseDefaultCategory(Map<?, ?> jsonRequestMap, String categoryName,
-                                             String categoryIdString, StdMutableRequest stdMutableRequest)
+    private static void parseRequestDefaults(Object returnPolicyIdList, Object combinedDecision, Object xPath,
+                                             StdMutableRequest stdMutableRequest)
         throws JSONStructureException {
-        Object categoryMap = jsonRequestMap.remove(categoryName);
-        if (categoryMap != null) {
-            Identifier defaultIdentifier = new IdentifierImpl(categoryIdString);
-            // The contents may be either a single item (whose attributes are in a Map)
-            // or a list of items
-            if (categoryMap instanceof Map) {
-                // default category contains a single object
-                parseCategory((Map<?, ?>)categoryMap, categoryName, defaultIdentifier, stdMutableRequest);
-            } else if (categoryMap instanceof List) {
-                // Array (for Multiple Decision) of this default category - create separate element for each
-                // item in list using same CategoryId for all
-                List<?> categoryList = (List<?>)categoryMap;
-                for (Object subCategory : categoryList) {
-                    if (!(subCategory instanceof Map)) {
-                        throw new JSONStructureException(
-                                                         categoryName
-                                                             + " array can only contain objects within curly braces");
-                    }
-                    parseCategory((Map<?, ?>)subCategory, categoryName, defaultIdentifier, stdMutableRequest);
-                }
-            } else {
-                // do not understand this
-                throw new JSONStructureException(
-                                                 categoryName
-                                                     + " must have one object contained within curly braces ({}) or an array of objects ([{}{}])");
-            }
+        //
+        // ReturnPolicyIdList
+        //
+        // If omitted this is set to a default of false by the StdMutableRequest constructor.
+        //
+        Boolean returnPolicyIdListBoolean = makeBoolean(returnPolicyIdList, "ReturnPolicyIdList");
+        if (returnPolicyIdList != null) {
+            stdMutableRequest.setReturnPolicyIdList(returnPolicyIdListBoolean);
         }
 
+        //
+        // CombinedDecision
+        //
+        // If omitted this is set to a default of false by the StdMutableRequest constructor.
+        //
+        Boolean combinedDecisionBoolean = makeBoolean(combinedDecision, "CombinedDecision");
+        if (combinedDecision != null) {
+            stdMutableRequest.setCombinedDecision(combinedDecisionBoolean);
+        }
+
+        //
+        // XPath
+        //
+
+        // The JSON spec says that this has a default value, implying that if it is missing in the Request
+        // we should fill it in.
+        // However the XML (DOM) version does not do that. If the value is missing it leaves the
+        // requestDefaults object blank.
+        // We are following the XML approach and ignoring the Default value for this field in the spec.
+
+        // TODO - Assume that no value for XPathVersion means "leave as null", not "fill in the default
+        // value from spec. This violates the JSON spec
+        if (xPath != null) {
+            // XPath is given in the JSON input
+            if (!(xPath instanceof String)) {
+                throw new JSONStructureException("XPathVersion not a URI passed as a String");
+            }
+            URI xPathUri = null;
+            try {
+                xPathUri = new URI(xPath.toString());
+            } catch (Exception e) {
+                throw new JSONStructureException("XPathVersion not a valid URI: '" + xPath + "'", e);
+            }
+
+            StdRequestDefaults requestDefaults = new StdRequestDefaults(xPathUri);
+            stdMutableRequest.setRequestDefaults(requestDefaults);
+        }
     }
 
     //
@@ -780,8 +857,8 @@ public class JSONRequest {
      */
     public static Request load(String jsonString) throws JSONStructureException {
         Request request = null;
-        try (InputStream is = new ByteArrayInputStream(jsonString.getBytes("UTF-8"))) {
-            request = JSONRequest.load(is);
+        try {
+            request = JSONRequest.load(new StringReader(jsonString));
         } catch (Exception ex) {
             throw new JSONStructureException("Exception loading String Request: " + ex.getMessage(), ex);
         }
@@ -809,7 +886,7 @@ public class JSONRequest {
     }
 
     /**
-     * Read characters from the given <code>InputStream</code> and parse them into an XACML
+     * Read UTF-8 characters from the given <code>InputStream</code> and parse them into an XACML
      * {@link org.apache.openaz.xacml.api.Request} object.
      *
      * @param is
@@ -817,6 +894,18 @@ public class JSONRequest {
      * @throws JSONStructureException
      */
     public static Request load(InputStream is) throws JSONStructureException {
+        return JSONRequest.load(new InputStreamReader(is, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse the JSON read from the given <code>Reader</code> a token at a time, building the
+     * {@link org.apache.openaz.xacml.std.StdMutableRequest} as it goes.
+     *
+     * @param reader
+     * @return
+     * @throws JSONStructureException
+     */
+    private static Request load(Reader reader) throws JSONStructureException {
 
         // TODO - ASSUME that order of members within an object does not matter (Different from XML, in JSON
         // everything is handled as Maps so order does not matter)
@@ -838,272 +927,365 @@ public class JSONRequest {
             }
         }
 
-        // create a new Request object to be filled in
-        StdMutableRequest stdMutableRequest = null;
-
-        String json = null;
-        ObjectMapper mapper = null;
+        // TODO - ASSUME that any duplicated component is a bad thing (probably indicating an error in the
+        // incoming JSON)
+        JsonParser jsonParser = null;
         try {
-
-            // read the inputStream into a buffer (trick found online scans entire input looking for
-            // end-of-file)
-            java.util.Scanner scanner = new java.util.Scanner(is);
-            scanner.useDelimiter("\\A");
-            json = scanner.hasNext() ? scanner.next() : "";
-            scanner.close();
-
-            mapper = new ObjectMapper().setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
-
-            // TODO - ASSUME that any duplicated component is a bad thing (probably indicating an error in the
-            // incoming JSON)
-            mapper.configure(JsonParser.Feature.STRICT_DUPLICATE_DETECTION, true);
-
-            Map<?, ?> root = mapper.readValue(json, Map.class);
-
-            //
-            // Does the request exist?
-            //
-            Map<?, ?> jsonRequestMap = (Map<?, ?>)root.remove("Request");
-            if (jsonRequestMap == null) {
-                throw new JSONStructureException("No \"Request\" property found.");
-            }
-
-            checkUnknown("Top-level message", root);
-
-            stdMutableRequest = new StdMutableRequest();
-
-            //
-            // Is there a Category?
-            //
-            Object categoryList = jsonRequestMap.remove("Category");
-            if (categoryList != null && !(categoryList instanceof List)) {
-                throw new JSONStructureException("Category must contain list of objects, not '"
-                                                 + categoryList.getClass() + "'");
+            jsonParser = jsonFactory.createParser(reader);
+            return new StdRequest(parseRoot(jsonParser));
+        } catch (JsonParseException e) {
+            // the input is not kept, so point to the problem area by its position
+            JsonLocation location = e.getLocation();
+            String locationOfError = "(unavailable)";
+            if (location != null && location != JsonLocation.NA) {
+                locationOfError = "line " + location.getLineNr() + ", column " + location.getColumnNr();
             }
-            if (categoryList != null) {
-                //
-                // Iterate each Category
-                //
-                Iterator<?> iter = ((List<?>)categoryList).iterator();
-                while (iter.hasNext()) {
-                    Object category = iter.next();
-                    if (!(category instanceof Map)) {
-                        throw new JSONStructureException(
-                                                         "Category list must contain objects contained within curly braces ({})");
-                    }
-
-                    parseCategory((Map<?, ?>)category, "Category", null, stdMutableRequest);
-
+            throw new JSONStructureException("Unable to parse JSON starting at " + locationOfError
+                                             + ", exception: " + e, e);
+        } catch (IOException e) {
+            throw new JSONStructureException("Unable to read JSON input, exception: " + e, e);
+        } finally {
+            if (jsonParser != null) {
+                try {
+                    jsonParser.close();
+                } catch (IOException ex) { //NOPMD
                 }
             }
+        }
+    }
 
-            // The following may be either a single instance or an array. This allows multiple decisions to
-            // work with the Default Category objects.
-            // Example:
-            // "AccessSubject" : [ {attributes group one},
-            // {attributes group two}
-            // ]
-
-            //
-            // Look for default Shorthand AccessSubject
-            //
-            parseDefaultCategory(jsonRequestMap, "AccessSubject",
-                                 "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject",
-                                 stdMutableRequest);
-            //
-            // Provide backward compatibility for our PEP's
-            //
-            parseDefaultCategory(jsonRequestMap, "Subject",
-                                 "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject",
-                                 stdMutableRequest);
-
-            //
-            // Look for default Shorthand Action
-            //
-            parseDefaultCategory(jsonRequestMap, "Action",
-                                 "urn:oasis:names:tc:xacml:3.0:attribute-category:action", stdMutableRequest);
-
-            //
-            // Look for default Shorthand Resource
-            //
-            parseDefaultCategory(jsonRequestMap, "Resource",
-                                 "urn:oasis:names:tc:xacml:3.0:attribute-category:resource",
-                                 stdMutableRequest);
-
-            //
-            // Look for default Shorthand Environment
-            //
-            parseDefaultCategory(jsonRequestMap, "Environment",
-                                 "urn:oasis:names:tc:xacml:3.0:attribute-category:environment",
-                                 stdMutableRequest);
-
-            //
-            // Look for default Shorthand RecipientSubject
-            //
-            parseDefaultCategory(jsonRequestMap, "RecipientSubject",
-                                 "urn:oasis:names:tc:xacml:1.0:subject-category:recipient-subject",
-                                 stdMutableRequest);
+    /**
+     * Parse the top-level JSON object, which must contain only the Request.
+     *
+     * @param jsonParser
+     * @return
+     * @throws JSONStructureException
+     * @throws IOException
+     */
+    private static StdMutableRequest parseRoot(JsonParser jsonParser) throws JSONStructureException,
+        IOException {
+        JsonToken jsonToken = jsonParser.nextToken();
+        if (jsonToken != JsonToken.START_OBJECT) {
+            throw new JSONStructureException("Unable to map JSON, exception: expected an object, got "
+                                             + (jsonToken == null ? "end of input" : jsonToken));
+        }
+        StdMutableRequest stdMutableRequest = null;
+        List<String> unknownNames = new ArrayList<String>();
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            jsonToken = jsonParser.nextToken();
+            if (!"Request".equals(name)) {
+                unknownNames.add(name);
+                jsonParser.skipChildren();
+            } else if (jsonToken == JsonToken.START_OBJECT) {
+                stdMutableRequest = parseRequest(jsonParser);
+            } else if (jsonToken != JsonToken.VALUE_NULL) {
+                throw new JSONStructureException("Request must be an object, not '"
+                                                 + getValueClass(jsonParser) + "'");
+            }
+        }
 
-            //
-            // Look for default Shorthand IntermediarySubject
-            //
-            parseDefaultCategory(jsonRequestMap, "IntermediarySubject",
-                                 "urn:oasis:names:tc:xacml:1.0:subject-category:intermediary-subject",
-                                 stdMutableRequest);
+        //
+        // Does the request exist?
+        //
+        if (stdMutableRequest == null) {
+            throw new JSONStructureException("No \"Request\" property found.");
+        }
 
-            //
-            // Look for default Shorthand Codebase
-            //
-            parseDefaultCategory(jsonRequestMap, "Codebase",
-                                 "urn:oasis:names:tc:xacml:1.0:subject-category:codebase", stdMutableRequest);
+        checkUnknown("Top-level message", unknownNames);
 
-            //
-            // Look for default Shorthand RequestingMachine
-            //
-            parseDefaultCategory(jsonRequestMap, "RequestingMachine",
-                                 "urn:oasis:names:tc:xacml:1.0:subject-category:requesting-machine",
-                                 stdMutableRequest);
+        // anything after the top-level object is ignored
+        return stdMutableRequest;
+    }
 
-            //
-            // MultiRequest
-            //
-            Map<?, ?> multiRequests = (Map<?, ?>)jsonRequestMap.remove("MultiRequests");
-            if (multiRequests != null) {
-                if (!(multiRequests instanceof Map)) {
-                    throw new JSONStructureException(
-                                                     "MultiRequests must be object structure, not single value");
+    /**
+     * Parse the members of the Request object. The Category objects are added in a fixed order no matter
+     * where they are in the text: the Category array first, followed by each default Category.
+     *
+     * @param jsonParser
+     * @return
+     * @throws JSONStructureException
+     * @throws IOException
+     */
+    private static StdMutableRequest parseRequest(JsonParser jsonParser) throws JSONStructureException,
+        IOException {
+        Map<String, List<RequestAttributes>> categoriesByName =
+            new HashMap<String, List<RequestAttributes>>();
+        Object multiRequests = null;
+        Object returnPolicyIdList = null;
+        Object combinedDecision = null;
+        Object xPath = null;
+        List<String> unknownNames = new ArrayList<String>();
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            JsonToken jsonToken = jsonParser.nextToken();
+            if ("Category".equals(name)) {
+                if (jsonToken == JsonToken.VALUE_NULL) {
+                    continue;
                 }
-
-                List<?> requestReferenceList = (List<?>)multiRequests.remove("RequestReference");
-                if (requestReferenceList == null) {
-                    throw new JSONStructureException("MultiRequest must contain a RequestReference element");
+                if (jsonToken != JsonToken.START_ARRAY) {
+                    throw new JSONStructureException("Category must contain list of objects, not '"
+                                                     + getValueClass(jsonParser) + "'");
                 }
-                if (requestReferenceList.size() < 1) {
+                categoriesByName.put(name, parseCategories(jsonParser, name, null));
+            } else if (defaultCategories.containsKey(name)) {
+                // The contents may be either a single item or a list of items (for Multiple Decision) using
+                // the same CategoryId for all
+                if (jsonToken == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                Identifier defaultCategoryId = defaultCategories.get(name);
+                if (jsonToken == JsonToken.START_OBJECT) {
+                    List<RequestAttributes> listCategories = new ArrayList<RequestAttributes>();
+                    listCategories.add(parseCategory(jsonParser, name, defaultCategoryId));
+                    categoriesByName.put(name, listCategories);
+                } else if (jsonToken == JsonToken.START_ARRAY) {
+                    categoriesByName.put(name, parseCategories(jsonParser, name, defaultCategoryId));
+                } else {
+                    // do not understand this
                     throw new JSONStructureException(
-                                                     "MultiRequest must contain at least one element in the RequestReference list");
+                                                     name
+                                                         + " must have one object contained within curly braces ({}) or an array of objects ([{}{}])");
                 }
+            } else if ("MultiRequests".equals(name)) {
+                multiRequests = readValue(jsonParser);
+            } else if ("ReturnPolicyIdList".equals(name)) {
+                returnPolicyIdList = readValue(jsonParser);
+            } else if ("CombinedDecision".equals(name)) {
+                combinedDecision = readValue(jsonParser);
+            } else if ("XPathVersion".equals(name)) {
+                xPath = readValue(jsonParser);
+            } else {
+                unknownNames.add(name);
+                jsonParser.skipChildren();
+            }
+        }
 
-                checkUnknown("MultiRequest", multiRequests);
+        StdMutableRequest stdMutableRequest = new StdMutableRequest();
+        addCategories(stdMutableRequest, categoriesByName.get("Category"));
+        for (String categoryName : defaultCategories.keySet()) {
+            addCategories(stdMutableRequest, categoriesByName.get(categoryName));
+        }
+        parseMultiRequests(multiRequests, stdMutableRequest);
+        parseRequestDefaults(returnPolicyIdList, combinedDecision, xPath, stdMutableRequest);
 
-                for (Object requestReferenceMapObject : requestReferenceList) {
-                    if (!(requestReferenceMapObject instanceof Map)) {
-                        throw new JSONStructureException("MultiRequest RequestReference must be object");
-                    }
-                    Map<?, ?> requestReferenceMap = (Map<?, ?>)requestReferenceMapObject;
+        checkUnknown("Request", unknownNames);
 
-                    // each object within the list must contain a ReferenceId and only a ReferenceId
-                    Object referenceIdListObject = requestReferenceMap.remove("ReferenceId");
-                    if (referenceIdListObject == null) {
-                        throw new JSONStructureException(
-                                                         "MultiRequest RequestReference list element must contain ReferenceId");
-                    }
-                    List<?> referenceIdList = (List<?>)referenceIdListObject;
-                    if (referenceIdList.size() == 0) {
-                        // the spec does not disallow empty list RequestReference objects
-                        continue;
-                    }
+        return stdMutableRequest;
+    }
 
-                    checkUnknown("RequestReference", requestReferenceMap);
+    private static void addCategories(StdMutableRequest stdMutableRequest,
+                                      List<RequestAttributes> listCategories) {
+        if (listCategories != null) {
+            for (RequestAttributes requestAttributes : listCategories) {
+                stdMutableRequest.add(requestAttributes);
+            }
+        }
+    }
 
-                    // create reference corresponding to RequestReference list element
-                    StdMutableRequestReference requestReference = new StdMutableRequestReference();
+    /**
+     * Parse an array of Category objects.
+     *
+     * @param jsonParser
+     * @param categoryName
+     * @param defaultCategoryId
+     * @return
+     * @throws JSONStructureException
+     * @throws IOException
+     */
+    private static List<RequestAttributes> parseCategories(JsonParser jsonParser, String categoryName,
+                                                           Identifier defaultCategoryId)
+        throws JSONStructureException, IOException {
+        List<RequestAttributes> listCategories = new ArrayList<RequestAttributes>();
+        while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+            if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+                if (defaultCategoryId == null) {
+                    throw new JSONStructureException(
+                                                     "Category list must contain objects contained within curly braces ({})");
+                }
+                throw new JSONStructureException(categoryName
+                                                 + " array can only contain objects within curly braces");
+            }
+            listCategories.add(parseCategory(jsonParser, categoryName, defaultCategoryId));
+        }
+        return listCategories;
+    }
 
-                    for (Object referenceId : referenceIdList) {
-                        // add attributes to the reference
-                        // Since the order of the JSON is not constrained, we could process this section
-                        // before the section containing attribute being referenced,
-                        // so we cannot do a cross-check here to verify that the attribute reference exists.
-                        // That will happen later when the PDP attempts to find the attribute.
-                        StdRequestAttributesReference requestAttributesReference = new StdRequestAttributesReference(
-                                                                                                                     (String)referenceId);
-                        requestReference.add(requestAttributesReference);
+    /**
+     * Parse one Category or default Category object. Its Attributes are created with the CategoryId known
+     * at the time they are read, and created again at the end if a CategoryId given after them differs.
+     *
+     * @param jsonParser
+     * @param categoryName
+     * @param defaultCategoryId
+     * @return
+     * @throws JSONStructureException
+     * @throws IOException
+     */
+    private static RequestAttributes parseCategory(JsonParser jsonParser, String categoryName,
+                                                   Identifier defaultCategoryId)
+        throws JSONStructureException, IOException {
+        Object categoryIDString = null;
+        Object xmlId = null;
+        Object content = null;
+        Identifier attributesCategoryId = defaultCategoryId;
+        List<Attribute> attributeList = new ArrayList<Attribute>();
+        List<String> unknownNames = new ArrayList<String>();
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            JsonToken jsonToken = jsonParser.nextToken();
+            if ("CategoryId".equals(name)) {
+                categoryIDString = readValue(jsonParser);
+                if (defaultCategoryId == null && categoryIDString instanceof String) {
+                    attributesCategoryId = new IdentifierImpl(categoryIDString.toString());
+                }
+            } else if ("Id".equals(name)) {
+                xmlId = readValue(jsonParser);
+            } else if ("Attribute".equals(name)) {
+                if (jsonToken == JsonToken.START_ARRAY) {
+                    while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+                        if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+                            throw new JSONStructureException("Expect Attribute content to be Map got "
+                                                             + getValueClass(jsonParser));
+                        }
+                        attributeList.add(parseAttribute(jsonParser, attributesCategoryId));
                     }
-                    stdMutableRequest.add(requestReference);
+                } else if (jsonToken == JsonToken.START_OBJECT) {
+                    attributeList.add(parseAttribute(jsonParser, attributesCategoryId));
+                } else if (jsonToken != JsonToken.VALUE_NULL) {
+                    throw new JSONStructureException("Category '" + categoryName
+                                                     + "' saw unexpected Attribute class "
+                                                     + getValueClass(jsonParser));
                 }
+            } else if ("Content".equals(name)) {
+                content = readValue(jsonParser);
+            } else {
+                unknownNames.add(name);
+                jsonParser.skipChildren();
             }
+        }
 
-            //
-            // ReturnPolicyIdList
-            //
-            // If omitted this is set to a default of false by the StdMutableRequest constructor.
-            //
-            Object returnPolicyIdList = jsonRequestMap.remove("ReturnPolicyIdList");
-            Boolean returnPolicyIdListBoolean = makeBoolean(returnPolicyIdList, "ReturnPolicyIdList");
-            if (returnPolicyIdList != null) {
-                stdMutableRequest.setReturnPolicyIdList(returnPolicyIdListBoolean);
+        Identifier categoryId = getCategoryId(categoryIDString, categoryName, defaultCategoryId);
+        if (!categoryId.equals(attributesCategoryId)) {
+            List<Attribute> attributeListCategory = new ArrayList<Attribute>(attributeList.size());
+            for (Attribute attribute : attributeList) {
+                attributeListCategory.add(new StdAttribute(categoryId, attribute.getAttributeId(),
+                                                           attribute.getValues(), attribute.getIssuer(),
+                                                           attribute.getIncludeInResults()));
             }
+            attributeList = attributeListCategory;
+        }
 
-            //
-            // CombinedDecision
-            //
-            // If omitted this is set to a default of false by the StdMutableRequest constructor.
-            //
-            Object combinedDecision = jsonRequestMap.remove("CombinedDecision");
-            Boolean combinedDecisionBoolean = makeBoolean(combinedDecision, "CombinedDecision");
-            if (combinedDecision != null) {
-                stdMutableRequest.setCombinedDecision(combinedDecisionBoolean);
-            }
+        // Get the Content node for this Category, if any
+        Node contentRootNode = parseContent(content, categoryName);
 
-            //
-            // XPath
-            //
+        checkUnknown(categoryName, unknownNames);
 
-            // The JSON spec says that this has a default value, implying that if it is missing in the Request
-            // we should fill it in.
-            // However the XML (DOM) version does not do that. If the value is missing it leaves the
-            // requestDefaults object blank.
-            // We are following the XML approach and ignoring the Default value for this field in the spec.
-
-            // TODO - Assume that no value for XPathVersion means "leave as null", not "fill in the default
-            // value from spec. This violates the JSON spec
-            Object xPath = jsonRequestMap.remove("XPathVersion");
-            if (xPath != null) {
-                // XPath is given in the JSON input
-                if (!(xPath instanceof String)) {
-                    throw new JSONStructureException("XPathVersion not a URI passed as a String");
-                }
-                URI xPathUri = null;
-                try {
-                    xPathUri = new URI(xPath.toString());
-                } catch (Exception e) {
-                    throw new JSONStructureException("XPathVersion not a valid URI: '" + xPath + "'", e);
-                }
+        return new StdMutableRequestAttributes(categoryId, attributeList, contentRootNode, (String)xmlId);
+    }
 
-                StdRequestDefaults requestDefaults = new StdRequestDefaults(xPathUri);
-                stdMutableRequest.setRequestDefaults(requestDefaults);
+    /**
+     * Parse one Attribute object.
+     *
+     * @param jsonParser
+     * @param categoryID
+     * @return
+     * @throws JSONStructureException
+     * @throws IOException
+     */
+    private static Attribute parseAttribute(JsonParser jsonParser, Identifier categoryID)
+        throws JSONStructureException, IOException {
+        Object attributeIdObject = null;
+        Object idObject = null;
+        Object value = null;
+        Object issuerObject = null;
+        Object includeInResultObject = null;
+        Object dataTypeObject = null;
+        List<String> unknownNames = new ArrayList<String>();
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+            if ("AttributeId".equals(name)) {
+                attributeIdObject = readValue(jsonParser);
+            } else if ("Id".equals(name)) {
+                idObject = readValue(jsonParser);
+            } else if ("Value".equals(name)) {
+                value = readValue(jsonParser);
+            } else if ("Issuer".equals(name)) {
+                issuerObject = readValue(jsonParser);
+            } else if ("IncludeInResult".equals(name)) {
+                includeInResultObject = readValue(jsonParser);
+            } else if ("DataType".equals(name)) {
+                dataTypeObject = readValue(jsonParser);
+            } else {
+                unknownNames.add(name);
+                jsonParser.skipChildren();
             }
+        }
+        Attribute attribute = newAttribute(categoryID, attributeIdObject, idObject, value, issuerObject,
+                                           includeInResultObject, dataTypeObject);
 
-            checkUnknown("Request", jsonRequestMap);
+        checkUnknown(attribute.getAttributeId().stringValue() + "Attribute '"
+                     + (attributeIdObject == null ? idObject : attributeIdObject) + "'", unknownNames);
 
-        } catch (JsonParseException e) {
-            // try to point to problem area in JSON input, if possible
-            JsonLocation location = e.getLocation();
-            String locationOfError = "(unavailable)";
-            if (location != null && location != JsonLocation.NA) {
-                String jsonText = json;
-                if (location.getLineNr() > 1) {
-                    String[] jsonArray = jsonText.split("\\r?\\n|\\r");
-                    jsonText = jsonArray[location.getLineNr()];
-                }
-                if (location.getCharOffset() < jsonText.length()) {
-                    if (location.getCharOffset() > 0) {
-                        locationOfError = jsonText.substring((int)location.getCharOffset() - 1);
-                    }
-                    if (locationOfError.length() > 30) {
-                        locationOfError = locationOfError.substring(0, 30);
-                    }
-                }
+        return attribute;
+    }
+
+    /**
+     * Read the value starting at the current token and return its class, for reporting a value of the wrong
+     * type.
+     *
+     * @param jsonParser
+     * @return the class of the value, or null for a JSON null
+     * @throws JSONStructureException
+     * @throws IOException
+     */
+    private static Class<?> getValueClass(JsonParser jsonParser) throws JSONStructureException, IOException {
+        Object value = readValue(jsonParser);
+        return value == null ? null : value.getClass();
+    }
+
+    /**
+     * Read the value starting at the current token as the same Java object an <code>ObjectMapper</code>
+     * would map it to: a String, Number, Boolean, List, Map or null.
+     *
+     * @param jsonParser
+     * @return
+     * @throws JSONStructureException
+     * @throws IOException
+     */
+    private static Object readValue(JsonParser jsonParser) throws JSONStructureException, IOException {
+        JsonToken jsonToken = jsonParser.getCurrentToken();
+        switch (jsonToken) {
+        case VALUE_STRING:
+            return jsonParser.getText();
+        case VALUE_NUMBER_INT:
+            return jsonParser.getNumberValue();
+        case VALUE_NUMBER_FLOAT:
+            return Double.valueOf(jsonParser.getDoubleValue());
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_NULL:
+            return null;
+        case START_ARRAY:
+            List<Object> list = new ArrayList<Object>();
+            while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+                list.add(readValue(jsonParser));
             }
-            throw new JSONStructureException("Unable to parse JSON starting at text'" + locationOfError
-                                             + "', input was '" + json + "', exception: " + e, e);
-        } catch (JsonMappingException e) {
-            throw new JSONStructureException("Unable to map JSON '" + json + "', exception: " + e, e);
-        } catch (IOException e) {
-            throw new JSONStructureException("Unable to read JSON input, exception: " + e, e);
+            return list;
+        case START_OBJECT:
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = jsonParser.getCurrentName();
+                jsonParser.nextToken();
+                map.put(name, readValue(jsonParser));
+            }
+            return map;
+        default:
+            throw new JSONStructureException("Unexpected JSON token " + jsonToken);
         }
-
-        // all done
-        return new StdRequest(stdMutableRequest);
     }
 
     //
@@ -32,13 +32,13 @@ package org.apache.openaz.xacml.std.json;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.math.BigInteger;
@@ -105,11 +105,12 @@ import org.w3c.dom.NodeList;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 
 /**
  * JSONResponse is used to convert JSON into {@link org.apache.openaz.xacml.api.Response} objects and
@@ -150,6 +151,19 @@ public class JSONResponse {
      */
     private static DataTypeFactory dataTypeFactory = null;
 
+    /*
+     * Shared by every conversion of a Response into JSON. The generators it creates leave the output open and
+     * do not close any open objects when they are closed, so a failed conversion is not made to look
+     * complete.
+     */
+    private static final ObjectMapper outputMapper = new ObjectMapper()
+        .setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
+
+    static {
+        outputMapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        outputMapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    }
+
     protected JSONResponse() {
     }
 
@@ -1106,14 +1120,9 @@ public class JSONResponse {
      * @throws Exception
      */
     public static String toString(Response response, boolean prettyPrint) throws Exception {
-        String outputString = null;
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            JSONResponse.convert(response, os, prettyPrint);
-            outputString = new String(os.toByteArray(), "UTF-8");
-        } catch (Exception ex) {
-            throw ex;
-        }
-        return outputString;
+        StringWriter stringWriter = new StringWriter();
+        JSONResponse.convert(response, stringWriter, prettyPrint);
+        return stringWriter.toString();
     }
 
     /**
@@ -1135,8 +1144,11 @@ public class JSONResponse {
 
     /**
      * Do the work of converting the {@link org.apache.openaz.xacml.api.Response} object to a string, allowing
-     * for pretty-printing if desired. IMPORTANT: This method does NOT close the outputStream. It is the
-     * responsibility of the caller to (who opened the stream) to close it.
+     * for pretty-printing if desired. The JSON is encoded as UTF-8 and written as it is generated, so the
+     * text for a Response with many Results is never held in memory as a whole. Every Result is converted
+     * before anything is written, so a <code>JSONStructureException</code> never leaves partial output.
+     * IMPORTANT: This method does NOT close the outputStream. It is the responsibility of the caller to (who
+     * opened the stream) to close it.
      *
      * @param response
      * @param outputStream
@@ -1145,13 +1157,33 @@ public class JSONResponse {
      */
     public static void convert(Response response, OutputStream outputStream, boolean prettyPrint)
         throws IOException, JSONStructureException {
+        List<Map<String, Object>> listResults = convertResults(response);
+        convert(listResults, outputMapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8),
+                prettyPrint);
+    }
 
-        // TODO - ASSUME that order of members within an object does not matter (Different from XML, in JSON
-        // everything is handled as Maps so order does not matter)
-
-        // TODO - ASSUME that the spec will fix inconsistency between AttributeId and Id (both are mentioned);
-        // for now use "AttributeId" as it is clearer.
+    /**
+     * Convert the {@link org.apache.openaz.xacml.api.Response} object to JSON text written to the given
+     * <code>Writer</code>, allowing for pretty-printing if desired. This is the same as the
+     * <code>OutputStream</code> version for callers that want characters rather than bytes. IMPORTANT: This
+     * method does NOT close the writer.
+     *
+     * @param response
+     * @param writer
+     * @param prettyPrint
+     * @throws java.io.IOException #throws JSONStructureException
+     */
+    public static void convert(Response response, Writer writer, boolean prettyPrint) throws IOException,
+        JSONStructureException {
+        List<Map<String, Object>> listResults = convertResults(response);
+        convert(listResults, outputMapper.getFactory().createGenerator(writer), prettyPrint);
+    }
 
+    /*
+     * Check the Response and convert each of its Results before anything is written. Each Result is
+     * converted only once; the Maps returned here are the ones that are written.
+     */
+    private static List<Map<String, Object>> convertResults(Response response) throws JSONStructureException {
         // ensure shorthand map is set up
         if (outputShorthandMap == null) {
             initOutputShorthandMap();
@@ -1166,542 +1198,555 @@ public class JSONResponse {
             throw new JSONStructureException("No Result in Response");
         }
 
-        String json = null;
-        ArrayList<Map<String, Object>> responses = new ArrayList<Map<String, Object>>();
+        List<Map<String, Object>> listResults = new ArrayList<Map<String, Object>>();
+        for (Result result : response.getResults()) {
+            listResults.add(convertResult(result));
+        }
+        return listResults;
+    }
 
-        //
-        // Process each Result object
-        //
+    /*
+     * Write the converted Results through the given generator. The "Response" object and its array are
+     * written token by token and each Result is written on its own, so the JSON text is never held in
+     * memory as a whole. The generator does not close the underlying output.
+     */
+    private static void convert(List<Map<String, Object>> listResults, JsonGenerator jsonGenerator,
+                                boolean prettyPrint) throws IOException {
+
+        // TODO - ASSUME that order of members within an object does not matter (Different from XML, in JSON
+        // everything is handled as Maps so order does not matter)
+
+        // TODO - ASSUME that the spec will fix inconsistency between AttributeId and Id (both are mentioned);
+        // for now use "AttributeId" as it is clearer.
 
-        Iterator<Result> iter = response.getResults().iterator();
-        while (iter.hasNext()) {
-            Result result = iter.next();
-            Map<String, Object> responseTree = new HashMap<String, Object>();
-            if (result.getDecision() == null) {
-                throw new JSONStructureException("No Decision in Result");
+        try {
+            if (prettyPrint) {
+                jsonGenerator.useDefaultPrettyPrinter();
             }
-            responseTree.put("Decision", result.getDecision().toString());
+            jsonGenerator.writeStartObject();
+            jsonGenerator.writeFieldName("Response");
+            jsonGenerator.writeStartArray();
 
-            if (result.getStatus() != null) {
-                // if the StatusCode object as a whole is missing it defaults to OK, but if it exists it must
-                // have an actual code value
-                if (result.getStatus().getStatusCode() == null) {
-                    throw new JSONStructureException("No Identifier given in StatusCode");
-                }
-                Identifier statusCodeId = result.getStatus().getStatusCode().getStatusCodeValue();
-
-                // if there is a status code, it must agree with the decision
-                // Permit/Deny/NotAllowed must all be OK
-                // Indeterminate must not be OK
-                if (statusCodeId.equals(StdStatusCode.STATUS_CODE_OK.getStatusCodeValue()) 
-                    && !(result.getDecision() == Decision.DENY || result.getDecision() == Decision.PERMIT 
-                        || result.getDecision() == Decision.NOTAPPLICABLE)
-                    || !statusCodeId.equals(StdStatusCode.STATUS_CODE_OK.getStatusCodeValue()) 
-                        && !(result.getDecision() == Decision.INDETERMINATE
-                            || result.getDecision() == Decision.INDETERMINATE_DENY
-                            || result.getDecision() == Decision.INDETERMINATE_DENYPERMIT 
-                            || result.getDecision() == Decision.INDETERMINATE_PERMIT)) {
-                    throw new JSONStructureException("StatusCode '" + statusCodeId.stringValue()
-                                                     + "' does not match Decision '"
-                                                     + result.getDecision().toString());
-                }
+            //
+            // Process each Result object
+            //
+            for (Map<String, Object> resultTree : listResults) {
+                outputMapper.writeValue(jsonGenerator, resultTree);
+            }
 
-                //
-                // Create the status
-                //
-                Map<String, Object> statusTree = new HashMap<String, Object>();
-                Map<String, Object> statusValue = new HashMap<String, Object>();
-                statusValue.put("Value", statusCodeId.stringValue());
-                addChildStatusCodes(result.getStatus().getStatusCode(), statusValue);
-                statusTree.put("StatusCode", statusValue);
-                String message = result.getStatus().getStatusMessage();
-                if (message != null) {
-                    statusTree.put("StatusMessage", message);
-                }
+            jsonGenerator.writeEndArray();
+            jsonGenerator.writeEndObject();
 
-                /*
-                 * StatusDetail - special information The XACML 3.0 core spec says that the StatusDetail field
-                 * depends on the StatusCode: StatusCode == missing-attribute => may have StatusDetail which
-                 * is a list of MissingAttributeDetail structures StatusCode == anything else => no
-                 * StatusDetail allowed This greatly simplifies handling the StatusDetail because the
-                 * MissingAttributeDetail structure is well-defined. Thus the statement in the specs (both
-                 * core and RESTful/JSON) that this can contain arbitrary XML is not correct.
-                 */
-                if (result.getStatus().getStatusDetail() != null) {
-
-                    String statusDetailXMLString = "";
-
-                    // cross-check that rules defined in XACML Core spec section 5.5.7 re: when StatusDetail
-                    // may/may-not be included have been followed
-                    if (result.getStatus().isOk()) {
-                        throw new JSONStructureException("Status '"
-                                                         + result.getStatus().getStatusCode().toString()
-                                                         + "' must not return StatusDetail");
-                    } else if (result.getStatus().getStatusCode().equals(XACML3.ID_STATUS_MISSING_ATTRIBUTE)
-                               && result.getStatus().getStatusDetail().getMissingAttributeDetails() == null) {
-                        throw new JSONStructureException(
-                                                         "Status '"
-                                                             + result.getStatus().getStatusCode().toString()
-                                                             + "' has StatusDetail without MissingAttributeDetail");
-                    } else if (result.getStatus().getStatusCode().equals(XACML3.ID_STATUS_SYNTAX_ERROR)) {
-                        throw new JSONStructureException("Status '"
-                                                         + result.getStatus().getStatusCode().toString()
-                                                         + "' must not return StatusDetail");
-                    } else if (result.getStatus().getStatusCode().equals(XACML3.ID_STATUS_PROCESSING_ERROR)) {
-                        throw new JSONStructureException("Status '"
-                                                         + result.getStatus().getStatusCode().toString()
-                                                         + "' must not return StatusDetail");
-                    }
+            // force output
+            jsonGenerator.flush();
+        } finally {
+            jsonGenerator.close();
+        }
+    }
 
-                    // if included, StatusDetail is handled differently for each type of detail message and
-                    // the contents are formatted into escaped XML rather than objects
+    /*
+     * Convert a single Result into the Map that is written as its JSON object.
+     */
+    private static Map<String, Object> convertResult(Result result) throws JSONStructureException {
+        Map<String, Object> responseTree = new HashMap<String, Object>();
+        if (result.getDecision() == null) {
+            throw new JSONStructureException("No Decision in Result");
+        }
+        responseTree.put("Decision", result.getDecision().toString());
 
-                    if (result.getStatus().getStatusDetail().getMissingAttributeDetails() != null) {
-                        if (!statusCodeId.equals(XACML3.ID_STATUS_MISSING_ATTRIBUTE)) {
-                            throw new JSONStructureException(
-                                                             "MissingAttributeDetails can only be included when StatusCode is MISSING_ATTRIBUTES, not '"
-                                                                 + statusCodeId.stringValue());
-                        }
-                        // ASSUME that a list of length 0 should be treated as having no
-                        // MissingAttributeDetails and ignored
-                        if (result.getStatus().getStatusDetail().getMissingAttributeDetails().size() > 0) {
-                            // TODO - ASSUME no newlines or indentation in XML - NOTE that white-space IS
-                            // significant in XML
-                            statusDetailXMLString = "";
-
-                            for (MissingAttributeDetail mad : result.getStatus().getStatusDetail()
-                                .getMissingAttributeDetails()) {
-                                statusDetailXMLString += "<MissingAttributeDetail";
-
-                                if (mad.getCategory() == null || mad.getAttributeId() == null
-                                    || mad.getDataTypeId() == null) {
-                                    throw new JSONStructureException(
-                                                                     "MissingAttributeDetail must have Category, AttributeId and DataType");
-                                }
-                                statusDetailXMLString += " Category=\"" + mad.getCategory().stringValue()
-                                                         + "\"";
-                                statusDetailXMLString += " AttributeId=\""
-                                                         + mad.getAttributeId().stringValue() + "\"";
-                                // TODO - In this case we do NOT use the shorthand notation for the DataType
-                                // because we are generating XML and it is not clear who should will be using
-                                // it on client
-                                statusDetailXMLString += " DataType=\"" + mad.getDataTypeId().stringValue()
-                                                         + "\"";
-                                if (mad.getIssuer() != null) {
-                                    statusDetailXMLString += " Issuer=\"" + mad.getIssuer() + "\"";
-                                }
+        if (result.getStatus() != null) {
+            // if the StatusCode object as a whole is missing it defaults to OK, but if it exists it must
+            // have an actual code value
+            if (result.getStatus().getStatusCode() == null) {
+                throw new JSONStructureException("No Identifier given in StatusCode");
+            }
+            Identifier statusCodeId = result.getStatus().getStatusCode().getStatusCodeValue();
+
+            // if there is a status code, it must agree with the decision
+            // Permit/Deny/NotAllowed must all be OK
+            // Indeterminate must not be OK
+            if (statusCodeId.equals(StdStatusCode.STATUS_CODE_OK.getStatusCodeValue()) 
+                && !(result.getDecision() == Decision.DENY || result.getDecision() == Decision.PERMIT 
+                    || result.getDecision() == Decision.NOTAPPLICABLE)
+                || !statusCodeId.equals(StdStatusCode.STATUS_CODE_OK.getStatusCodeValue()) 
+                    && !(result.getDecision() == Decision.INDETERMINATE
+                        || result.getDecision() == Decision.INDETERMINATE_DENY
+                        || result.getDecision() == Decision.INDETERMINATE_DENYPERMIT 
+                        || result.getDecision() == Decision.INDETERMINATE_PERMIT)) {
+                throw new JSONStructureException("StatusCode '" + statusCodeId.stringValue()
+                                                 + "' does not match Decision '"
+                                                 + result.getDecision().toString());
+            }
 
-                                // done with attibutes
-                                statusDetailXMLString += ">";
+            //
+            // Create the status
+            //
+            Map<String, Object> statusTree = new HashMap<String, Object>();
+            Map<String, Object> statusValue = new HashMap<String, Object>();
+            statusValue.put("Value", statusCodeId.stringValue());
+            addChildStatusCodes(result.getStatus().getStatusCode(), statusValue);
+            statusTree.put("StatusCode", statusValue);
+            String message = result.getStatus().getStatusMessage();
+            if (message != null) {
+                statusTree.put("StatusMessage", message);
+            }
 
-                                // Now get Values and add as child element nodes
-                                if (mad.getAttributeValues() != null && mad.getAttributeValues().size() > 0) {
-                                    for (AttributeValue<?> av : mad.getAttributeValues()) {
-                                        statusDetailXMLString += "<AttributeValue";
-                                        statusDetailXMLString += " DataType=\"" + av.getDataTypeId() + "\">";
-                                        statusDetailXMLString += jsonOutputObject(av.getValue(), av)
-                                            .toString() + "</AttributeValue>";
-                                    }
-                                }
+            /*
+             * StatusDetail - special information The XACML 3.0 core spec says that the StatusDetail field
+             * depends on the StatusCode: StatusCode == missing-attribute => may have StatusDetail which
+             * is a list of MissingAttributeDetail structures StatusCode == anything else => no
+             * StatusDetail allowed This greatly simplifies handling the StatusDetail because the
+             * MissingAttributeDetail structure is well-defined. Thus the statement in the specs (both
+             * core and RESTful/JSON) that this can contain arbitrary XML is not correct.
+             */
+            if (result.getStatus().getStatusDetail() != null) {
+
+                String statusDetailXMLString = "";
+
+                // cross-check that rules defined in XACML Core spec section 5.5.7 re: when StatusDetail
+                // may/may-not be included have been followed
+                if (result.getStatus().isOk()) {
+                    throw new JSONStructureException("Status '"
+                                                     + result.getStatus().getStatusCode().toString()
+                                                     + "' must not return StatusDetail");
+                } else if (result.getStatus().getStatusCode().equals(XACML3.ID_STATUS_MISSING_ATTRIBUTE)
+                           && result.getStatus().getStatusDetail().getMissingAttributeDetails() == null) {
+                    throw new JSONStructureException(
+                                                     "Status '"
+                                                         + result.getStatus().getStatusCode().toString()
+                                                         + "' has StatusDetail without MissingAttributeDetail");
+                } else if (result.getStatus().getStatusCode().equals(XACML3.ID_STATUS_SYNTAX_ERROR)) {
+                    throw new JSONStructureException("Status '"
+                                                     + result.getStatus().getStatusCode().toString()
+                                                     + "' must not return StatusDetail");
+                } else if (result.getStatus().getStatusCode().equals(XACML3.ID_STATUS_PROCESSING_ERROR)) {
+                    throw new JSONStructureException("Status '"
+                                                     + result.getStatus().getStatusCode().toString()
+                                                     + "' must not return StatusDetail");
+                }
 
-                            }
-                            statusDetailXMLString += "</MissingAttributeDetail>";
-                        }
-                    } else {
+                // if included, StatusDetail is handled differently for each type of detail message and
+                // the contents are formatted into escaped XML rather than objects
+
+                if (result.getStatus().getStatusDetail().getMissingAttributeDetails() != null) {
+                    if (!statusCodeId.equals(XACML3.ID_STATUS_MISSING_ATTRIBUTE)) {
                         throw new JSONStructureException(
-                                                         "Unhandled StatusDetail contents (statusDetail exists but is not MissingAttributeDetail)");
+                                                         "MissingAttributeDetails can only be included when StatusCode is MISSING_ATTRIBUTES, not '"
+                                                             + statusCodeId.stringValue());
                     }
+                    // ASSUME that a list of length 0 should be treated as having no
+                    // MissingAttributeDetails and ignored
+                    if (result.getStatus().getStatusDetail().getMissingAttributeDetails().size() > 0) {
+                        // TODO - ASSUME no newlines or indentation in XML - NOTE that white-space IS
+                        // significant in XML
+                        statusDetailXMLString = "";
+
+                        for (MissingAttributeDetail mad : result.getStatus().getStatusDetail()
+                            .getMissingAttributeDetails()) {
+                            statusDetailXMLString += "<MissingAttributeDetail";
+
+                            if (mad.getCategory() == null || mad.getAttributeId() == null
+                                || mad.getDataTypeId() == null) {
+                                throw new JSONStructureException(
+                                                                 "MissingAttributeDetail must have Category, AttributeId and DataType");
+                            }
+                            statusDetailXMLString += " Category=\"" + mad.getCategory().stringValue()
+                                                     + "\"";
+                            statusDetailXMLString += " AttributeId=\""
+                                                     + mad.getAttributeId().stringValue() + "\"";
+                            // TODO - In this case we do NOT use the shorthand notation for the DataType
+                            // because we are generating XML and it is not clear who should will be using
+                            // it on client
+                            statusDetailXMLString += " DataType=\"" + mad.getDataTypeId().stringValue()
+                                                     + "\"";
+                            if (mad.getIssuer() != null) {
+                                statusDetailXMLString += " Issuer=\"" + mad.getIssuer() + "\"";
+                            }
 
-                    if (statusDetailXMLString.length() > 0) {
-                        // make sure all backslashes and double-quotes are escaped
-                        // (will only exist in string values)
-                        statusDetailXMLString = statusDetailXMLString.replace("\\", "\\\\");
-                        statusDetailXMLString = statusDetailXMLString.replace("\"", "\\\"");
-                        statusTree.put("StatusDetail", statusDetailXMLString);
+                            // done with attibutes
+                            statusDetailXMLString += ">";
+
+                            // Now get Values and add as child element nodes
+                            if (mad.getAttributeValues() != null && mad.getAttributeValues().size() > 0) {
+                                for (AttributeValue<?> av : mad.getAttributeValues()) {
+                                    statusDetailXMLString += "<AttributeValue";
+                                    statusDetailXMLString += " DataType=\"" + av.getDataTypeId() + "\">";
+                                    statusDetailXMLString += jsonOutputObject(av.getValue(), av)
+                                        .toString() + "</AttributeValue>";
+                                }
+                            }
+
+                        }
+                        statusDetailXMLString += "</MissingAttributeDetail>";
                     }
+                } else {
+                    throw new JSONStructureException(
+                                                     "Unhandled StatusDetail contents (statusDetail exists but is not MissingAttributeDetail)");
+                }
 
+                if (statusDetailXMLString.length() > 0) {
+                    // make sure all backslashes and double-quotes are escaped
+                    // (will only exist in string values)
+                    statusDetailXMLString = statusDetailXMLString.replace("\\", "\\\\");
+                    statusDetailXMLString = statusDetailXMLString.replace("\"", "\\\"");
+                    statusTree.put("StatusDetail", statusDetailXMLString);
                 }
 
-                responseTree.put("Status", statusTree);
             }
 
-            //
-            // Obligations
-            //
-            if (result.getObligations() != null && result.getObligations().size() > 0) {
-                Iterator<Obligation> iterObs = result.getObligations().iterator();
-                List<Object> obligationCollectionList = new ArrayList<Object>();
-                while (iterObs.hasNext()) {
-                    Obligation ob = iterObs.next();
-                    Map<String, Object> obligationTree = new HashMap<String, Object>();
-                    if (ob.getId() == null) {
-                        throw new JSONStructureException("Obligation must have Id");
-                    }
-                    obligationTree.put("Id", ob.getId().stringValue());
-                    if (ob.getAttributeAssignments() != null && ob.getAttributeAssignments().size() > 0) {
-                        Iterator<AttributeAssignment> iterSetObs = ob.getAttributeAssignments().iterator();
-                        ArrayList<HashMap<String, Object>> attributes = new ArrayList<HashMap<String, Object>>();
-                        while (iterSetObs.hasNext()) {
-                            AttributeAssignment entity = iterSetObs.next();
-                            HashMap<String, Object> entityTree = new HashMap<String, Object>();
-                            if (entity.getAttributeId() == null) {
-                                throw new JSONStructureException("Obligation Attribute must have AttributeId");
-                            }
-                            entityTree.put("AttributeId", entity.getAttributeId().stringValue());
-                            if (entity.getCategory() != null) {
-                                entityTree.put("Category", entity.getCategory().stringValue());
-                            }
-                            if (entity.getIssuer() != null) {
-                                entityTree.put("Issuer", entity.getIssuer());
+            responseTree.put("Status", statusTree);
+        }
+
+        //
+        // Obligations
+        //
+        if (result.getObligations() != null && result.getObligations().size() > 0) {
+            Iterator<Obligation> iterObs = result.getObligations().iterator();
+            List<Object> obligationCollectionList = new ArrayList<Object>();
+            while (iterObs.hasNext()) {
+                Obligation ob = iterObs.next();
+                Map<String, Object> obligationTree = new HashMap<String, Object>();
+                if (ob.getId() == null) {
+                    throw new JSONStructureException("Obligation must have Id");
+                }
+                obligationTree.put("Id", ob.getId().stringValue());
+                if (ob.getAttributeAssignments() != null && ob.getAttributeAssignments().size() > 0) {
+                    Iterator<AttributeAssignment> iterSetObs = ob.getAttributeAssignments().iterator();
+                    ArrayList<HashMap<String, Object>> attributes = new ArrayList<HashMap<String, Object>>();
+                    while (iterSetObs.hasNext()) {
+                        AttributeAssignment entity = iterSetObs.next();
+                        HashMap<String, Object> entityTree = new HashMap<String, Object>();
+                        if (entity.getAttributeId() == null) {
+                            throw new JSONStructureException("Obligation Attribute must have AttributeId");
+                        }
+                        entityTree.put("AttributeId", entity.getAttributeId().stringValue());
+                        if (entity.getCategory() != null) {
+                            entityTree.put("Category", entity.getCategory().stringValue());
+                        }
+                        if (entity.getIssuer() != null) {
+                            entityTree.put("Issuer", entity.getIssuer());
+                        }
+                        AttributeValue<?> value = entity.getAttributeValue();
+                        if (value == null || value.getValue() == null) {
+                            // Yes it can
+                            // throw new JSONStructureException("Obligation Attribute must have Value");
+                            entityTree.put("Value", new String(""));
+                        } else {
+                            // we are "encouraged" to us Shorthand notation for DataType, but it is not
+                            // required
+                            if (value.getDataTypeId() != null) {
+                                //
+                                // Don't use shorthand by default, for backwards compatibility
+                                // to our pep's.
+                                //
+                                entityTree.put("DataType", value.getDataTypeId().stringValue());
                             }
-                            AttributeValue<?> value = entity.getAttributeValue();
-                            if (value == null || value.getValue() == null) {
-                                // Yes it can
-                                // throw new JSONStructureException("Obligation Attribute must have Value");
-                                entityTree.put("Value", new String(""));
-                            } else {
-                                // we are "encouraged" to us Shorthand notation for DataType, but it is not
-                                // required
-                                if (value.getDataTypeId() != null) {
-                                    //
-                                    // Don't use shorthand by default, for backwards compatibility
-                                    // to our pep's.
-                                    //
-                                    entityTree.put("DataType", value.getDataTypeId().stringValue());
-                                }
 
-                                // Internally the XPathCategory is in the AttributeValue object, but in the
-                                // JSON format it is part of the Value (handled by jsonOutputObject() )
-                                // so do not handle it here
+                            // Internally the XPathCategory is in the AttributeValue object, but in the
+                            // JSON format it is part of the Value (handled by jsonOutputObject() )
+                            // so do not handle it here
 
-                                entityTree.put("Value", jsonOutputObject(value.getValue(), value));
-                            }
-                            attributes.add(entityTree);
+                            entityTree.put("Value", jsonOutputObject(value.getValue(), value));
                         }
-                        obligationTree.put("AttributeAssignment", attributes);
+                        attributes.add(entityTree);
                     }
-                    obligationCollectionList.add(obligationTree);
+                    obligationTree.put("AttributeAssignment", attributes);
                 }
-                responseTree.put("Obligations", obligationCollectionList);
+                obligationCollectionList.add(obligationTree);
             }
+            responseTree.put("Obligations", obligationCollectionList);
+        }
 
-            //
-            // Advice
-            //
-            if (result.getAssociatedAdvice() != null && result.getAssociatedAdvice().size() > 0) {
-                Iterator<Advice> iterAAs = result.getAssociatedAdvice().iterator();
-                List<Object> adviceCollectionList = new ArrayList<Object>();
-                while (iterAAs.hasNext()) {
-                    Advice advice = iterAAs.next();
-                    Map<String, Object> adviceTree = new HashMap<String, Object>();
-                    if (advice.getId() == null) {
-                        throw new JSONStructureException("Advice must have Id");
-                    }
-                    adviceTree.put("Id", advice.getId().stringValue());
-                    if (advice.getAttributeAssignments() != null
-                        && advice.getAttributeAssignments().size() > 0) {
-                        Iterator<AttributeAssignment> iterSetObs = advice.getAttributeAssignments()
-                            .iterator();
-                        ArrayList<HashMap<String, Object>> attributes = new ArrayList<HashMap<String, Object>>();
-                        while (iterSetObs.hasNext()) {
-                            AttributeAssignment entity = iterSetObs.next();
-                            HashMap<String, Object> entityTree = new HashMap<String, Object>();
-                            if (entity.getAttributeId() == null) {
-                                throw new JSONStructureException("Advice Attribute must have AttributeId");
-                            }
-                            entityTree.put("AttributeId", entity.getAttributeId().stringValue());
-                            if (entity.getCategory() != null) {
-                                entityTree.put("Category", entity.getCategory().stringValue());
-                            }
-                            if (entity.getIssuer() != null) {
-                                entityTree.put("Issuer", entity.getIssuer());
+        //
+        // Advice
+        //
+        if (result.getAssociatedAdvice() != null && result.getAssociatedAdvice().size() > 0) {
+            Iterator<Advice> iterAAs = result.getAssociatedAdvice().iterator();
+            List<Object> adviceCollectionList = new ArrayList<Object>();
+            while (iterAAs.hasNext()) {
+                Advice advice = iterAAs.next();
+                Map<String, Object> adviceTree = new HashMap<String, Object>();
+                if (advice.getId() == null) {
+                    throw new JSONStructureException("Advice must have Id");
+                }
+                adviceTree.put("Id", advice.getId().stringValue());
+                if (advice.getAttributeAssignments() != null
+                    && advice.getAttributeAssignments().size() > 0) {
+                    Iterator<AttributeAssignment> iterSetObs = advice.getAttributeAssignments()
+                        .iterator();
+                    ArrayList<HashMap<String, Object>> attributes = new ArrayList<HashMap<String, Object>>();
+                    while (iterSetObs.hasNext()) {
+                        AttributeAssignment entity = iterSetObs.next();
+                        HashMap<String, Object> entityTree = new HashMap<String, Object>();
+                        if (entity.getAttributeId() == null) {
+                            throw new JSONStructureException("Advice Attribute must have AttributeId");
+                        }
+                        entityTree.put("AttributeId", entity.getAttributeId().stringValue());
+                        if (entity.getCategory() != null) {
+                            entityTree.put("Category", entity.getCategory().stringValue());
+                        }
+                        if (entity.getIssuer() != null) {
+                            entityTree.put("Issuer", entity.getIssuer());
+                        }
+                        AttributeValue<?> value = entity.getAttributeValue();
+                        if (value == null || value.getValue() == null) {
+                            // NO - it can have a null or empty string etc.
+                            // throw new JSONStructureException("Advice Attribute must have Value");
+                            entityTree.put("Value", new String(""));
+                        } else {
+                            // we are "encouraged" to us Shorthand notation for DataType, but it is not
+                            // required
+                            if (value.getDataTypeId() != null) {
+                                //
+                                // Don't use shorthand by default, for backwards compatibility
+                                // to our pep's.
+                                //
+                                entityTree.put("DataType", value.getDataTypeId().stringValue());
                             }
-                            AttributeValue<?> value = entity.getAttributeValue();
-                            if (value == null || value.getValue() == null) {
-                                // NO - it can have a null or empty string etc.
-                                // throw new JSONStructureException("Advice Attribute must have Value");
-                                entityTree.put("Value", new String(""));
-                            } else {
-                                // we are "encouraged" to us Shorthand notation for DataType, but it is not
-                                // required
-                                if (value.getDataTypeId() != null) {
-                                    //
-                                    // Don't use shorthand by default, for backwards compatibility
-                                    // to our pep's.
-                                    //
-                                    entityTree.put("DataType", value.getDataTypeId().stringValue());
-                                }
 
-                                // Internally the XPathCategory is in the AttributeValue object, but in the
-                                // JSON format it is part of the Value (handled by jsonOutputObject() )
-                                // so do not handle it here
+                            // Internally the XPathCategory is in the AttributeValue object, but in the
+                            // JSON format it is part of the Value (handled by jsonOutputObject() )
+                            // so do not handle it here
 
-                                entityTree.put("Value", jsonOutputObject(value.getValue(), value));
-                            }
-                            attributes.add(entityTree);
+                            entityTree.put("Value", jsonOutputObject(value.getValue(), value));
                         }
-                        adviceTree.put("AttributeAssignment", attributes);
+                        attributes.add(entityTree);
                     }
-                    adviceCollectionList.add(adviceTree);
+                    adviceTree.put("AttributeAssignment", attributes);
                 }
-                responseTree.put("AssociatedAdvice", adviceCollectionList);
+                adviceCollectionList.add(adviceTree);
             }
+            responseTree.put("AssociatedAdvice", adviceCollectionList);
+        }
 
-            //
-            // Attributes
-            //
-            // (note change in name from XML to JSON spec; this is called Category in the XML)
-            //
+        //
+        // Attributes
+        //
+        // (note change in name from XML to JSON spec; this is called Category in the XML)
+        //
 
-            if (result.getAttributes() != null && result.getAttributes().size() > 0) {
-                Iterator<AttributeCategory> iterAttributes = result.getAttributes().iterator();
-                ArrayList<HashMap<String, Object>> categoryArray = new ArrayList<HashMap<String, Object>>();
-                while (iterAttributes.hasNext()) {
-                    AttributeCategory entity = iterAttributes.next();
-                    HashMap<String, Object> categoryTree = new HashMap<String, Object>();
-                    categoryTree.put("CategoryId", entity.getCategory().stringValue());
-
-                    // The JSON and XML spec both imply that we can return Content here, but they do not say
-                    // so explicitly and give no indication of when to include/not-include it
-                    // Also we should be able to return the xml:Id associated with this attribute, but that
-                    // does not seem to be available in the AttributeCategory object
-                    // Note: Our choice is to not include these.
-                    // There is a question of when they would be included (since IncludeInResult is only on
-                    // the individual Attribute (singular) objects, not the Attributes),
-                    // and the Content can be quite lengthy and should not be included by default.
-                    // We could potentially return these only when at least one of the Attribute components
-                    // has IncludeInResult=true.
-                    // However the focus seems to be on returning the individual Attribute objects so the
-                    // caller can see what the response is referring to, and the Attributes (plural)
-                    // container is just re-used from the Request object without understanding that the Result
-                    // should be different or explicitly stating in the Spec what to do with those fields.
-
-                    Collection<Attribute> attrs = entity.getAttributes();
-                    if (attrs != null) {
-                        Iterator<Attribute> iterAttrs = attrs.iterator();
-                        ArrayList<HashMap<String, Object>> arrayAttributes = new ArrayList<HashMap<String, Object>>();
-                        while (iterAttrs.hasNext()) {
-                            Attribute attribute = iterAttrs.next();
-                            if (!attribute.getIncludeInResults()) {
-                                // Would this be an error? This is an internal matter and we arbitrarily
-                                // decided to just ignore it.
-                                // The attribute will not be included in the output, so the receiver won't
-                                // know that this happened.
-                                continue;
-                            }
+        if (result.getAttributes() != null && result.getAttributes().size() > 0) {
+            Iterator<AttributeCategory> iterAttributes = result.getAttributes().iterator();
+            ArrayList<HashMap<String, Object>> categoryArray = new ArrayList<HashMap<String, Object>>();
+            while (iterAttributes.hasNext()) {
+                AttributeCategory entity = iterAttributes.next();
+                HashMap<String, Object> categoryTree = new HashMap<String, Object>();
+                categoryTree.put("CategoryId", entity.getCategory().stringValue());
+
+                // The JSON and XML spec both imply that we can return Content here, but they do not say
+                // so explicitly and give no indication of when to include/not-include it
+                // Also we should be able to return the xml:Id associated with this attribute, but that
+                // does not seem to be available in the AttributeCategory object
+                // Note: Our choice is to not include these.
+                // There is a question of when they would be included (since IncludeInResult is only on
+                // the individual Attribute (singular) objects, not the Attributes),
+                // and the Content can be quite lengthy and should not be included by default.
+                // We could potentially return these only when at least one of the Attribute components
+                // has IncludeInResult=true.
+                // However the focus seems to be on returning the individual Attribute objects so the
+                // caller can see what the response is referring to, and the Attributes (plural)
+                // container is just re-used from the Request object without understanding that the Result
+                // should be different or explicitly stating in the Spec what to do with those fields.
+
+                Collection<Attribute> attrs = entity.getAttributes();
+                if (attrs != null) {
+                    Iterator<Attribute> iterAttrs = attrs.iterator();
+                    ArrayList<HashMap<String, Object>> arrayAttributes = new ArrayList<HashMap<String, Object>>();
+                    while (iterAttrs.hasNext()) {
+                        Attribute attribute = iterAttrs.next();
+                        if (!attribute.getIncludeInResults()) {
+                            // Would this be an error? This is an internal matter and we arbitrarily
+                            // decided to just ignore it.
+                            // The attribute will not be included in the output, so the receiver won't
+                            // know that this happened.
+                            continue;
+                        }
 
-                            HashMap<String, Object> theAttribute = new HashMap<String, Object>();
-                            // TODO - no need to put this in Result because, by definition, if it is in the
-                            // result then this must be true? Since it is optional we do not want to add to
-                            // length of JSON output
-                            // theAttribute.put("IncludeInResult", true);
+                        HashMap<String, Object> theAttribute = new HashMap<String, Object>();
+                        // TODO - no need to put this in Result because, by definition, if it is in the
+                        // result then this must be true? Since it is optional we do not want to add to
+                        // length of JSON output
+                        // theAttribute.put("IncludeInResult", true);
 
-                            if (attribute.getAttributeId() == null) {
-                                throw new JSONStructureException("Attribute must have AttributeId");
+                        if (attribute.getAttributeId() == null) {
+                            throw new JSONStructureException("Attribute must have AttributeId");
+                        }
+                        theAttribute.put("AttributeId", attribute.getAttributeId().stringValue());
+                        if (attribute.getValues() == null || attribute.getValues().size() == 0) {
+                            throw new JSONStructureException("Attribute missing required Value");
+                        }
+                        Iterator<AttributeValue<?>> valueIterator = attribute.getValues().iterator();
+
+                        // The spec talks about inferring the data type from the value and what to do if
+                        // it is a list.
+                        // However this is output from the PDP, and the attributes would have been
+                        // screened while processing the Request,
+                        // so we can assume at this point that we always have a DataType associated with
+                        // the values and that the values are
+                        // consistent with that DataType (because otherwise the Request would have been
+                        // rejected and we would never get here).
+                        // However we do need to extract the DataType from one of the Values and that is
+                        // done slightly differently
+                        // when there is one vs a list.
+                        if (attribute.getValues().size() == 1) {
+                            // exactly one value, so no need for list of values AND we know exactly what
+                            // the DataType is
+                            AttributeValue<?> attributeValue = valueIterator.next();
+                            if (attributeValue == null || attributeValue.getValue() == null) {
+                                throw new JSONStructureException("Attribute must have value");
                             }
-                            theAttribute.put("AttributeId", attribute.getAttributeId().stringValue());
-                            if (attribute.getValues() == null || attribute.getValues().size() == 0) {
-                                throw new JSONStructureException("Attribute missing required Value");
+                            theAttribute.put("Value",
+                                             jsonOutputObject(attributeValue.getValue(), attributeValue));
+                            if (attributeValue.getDataTypeId() != null) {
+                                // we are "encouraged" to us Shorthand notation for DataType, but it is
+                                // not required
+                                //
+                                // Don't use shorthand by default, for backwards compatibility
+                                // to our pep's.
+                                //
+                                theAttribute
+                                    .put("DataType", attributeValue.getDataTypeId().stringValue());
                             }
-                            Iterator<AttributeValue<?>> valueIterator = attribute.getValues().iterator();
-
-                            // The spec talks about inferring the data type from the value and what to do if
-                            // it is a list.
-                            // However this is output from the PDP, and the attributes would have been
-                            // screened while processing the Request,
-                            // so we can assume at this point that we always have a DataType associated with
-                            // the values and that the values are
-                            // consistent with that DataType (because otherwise the Request would have been
-                            // rejected and we would never get here).
-                            // However we do need to extract the DataType from one of the Values and that is
-                            // done slightly differently
-                            // when there is one vs a list.
-                            if (attribute.getValues().size() == 1) {
-                                // exactly one value, so no need for list of values AND we know exactly what
-                                // the DataType is
-                                AttributeValue<?> attributeValue = valueIterator.next();
-                                if (attributeValue == null || attributeValue.getValue() == null) {
-                                    throw new JSONStructureException("Attribute must have value");
-                                }
-                                theAttribute.put("Value",
-                                                 jsonOutputObject(attributeValue.getValue(), attributeValue));
-                                if (attributeValue.getDataTypeId() != null) {
-                                    // we are "encouraged" to us Shorthand notation for DataType, but it is
-                                    // not required
-                                    //
-                                    // Don't use shorthand by default, for backwards compatibility
-                                    // to our pep's.
-                                    //
-                                    theAttribute
-                                        .put("DataType", attributeValue.getDataTypeId().stringValue());
+                        } else {
+                            // there are multiple values so we have to make a list of the Values
+                            List<Object> attrValueList = new ArrayList<Object>();
+                            boolean mixedTypes = false;
+                            Identifier inferredDataTypeId = null;
+                            while (valueIterator.hasNext()) {
+                                AttributeValue<?> attrValue = valueIterator.next();
+                                if (attrValue == null || attrValue.getValue() == null) {
+                                    throw new JSONStructureException("Attribute in array must have value");
                                 }
-                            } else {
-                                // there are multiple values so we have to make a list of the Values
-                                List<Object> attrValueList = new ArrayList<Object>();
-                                boolean mixedTypes = false;
-                                Identifier inferredDataTypeId = null;
-                                while (valueIterator.hasNext()) {
-                                    AttributeValue<?> attrValue = valueIterator.next();
-                                    if (attrValue == null || attrValue.getValue() == null) {
-                                        throw new JSONStructureException("Attribute in array must have value");
-                                    }
-                                    attrValueList.add(jsonOutputObject(attrValue.getValue(), attrValue));
+                                attrValueList.add(jsonOutputObject(attrValue.getValue(), attrValue));
 
-                                    // try to infer the data type
-                                    if (attrValue.getDataTypeId() != null) {
-                                        if (inferredDataTypeId == null) {
+                                // try to infer the data type
+                                if (attrValue.getDataTypeId() != null) {
+                                    if (inferredDataTypeId == null) {
+                                        inferredDataTypeId = attrValue.getDataTypeId();
+                                    } else {
+                                        if (inferredDataTypeId.equals(DataTypes.DT_INTEGER.getId())
+                                            && attrValue.getDataTypeId().equals(DataTypes.DT_DOUBLE
+                                                                                    .getId())) {
+                                            // seeing a double anywhere in a list of integers means the
+                                            // type is double
                                             inferredDataTypeId = attrValue.getDataTypeId();
-                                        } else {
-                                            if (inferredDataTypeId.equals(DataTypes.DT_INTEGER.getId())
-                                                && attrValue.getDataTypeId().equals(DataTypes.DT_DOUBLE
-                                                                                        .getId())) {
-                                                // seeing a double anywhere in a list of integers means the
-                                                // type is double
-                                                inferredDataTypeId = attrValue.getDataTypeId();
-                                            } else if (inferredDataTypeId.equals(DataTypes.DT_DOUBLE.getId())
-                                                       && attrValue.getDataTypeId()
-                                                           .equals(DataTypes.DT_INTEGER.getId())) {
-                                                // integers are ok in a list of doubles
-                                                continue;
-                                            } else if (!inferredDataTypeId.equals(attrValue.getDataTypeId())) {
-                                                // all other combinations of types are illegal.
-                                                // Note: these attribute values were read from the client's
-                                                // Request and were assigned the appropriate DataType at that
-                                                // time.
-                                                // That DataType would have been the same for each one (e.g.
-                                                // String) so there should never be a case where
-                                                // there are multiple different types here.
-                                                // NOTE THAT IF THIS CHANGES and we want to allow mixed types,
-                                                // just replace this throws with
-                                                // mixedTypes = true;
-                                                throw new JSONStructureException(
-                                                                                 "Mixed DataTypes in Attribute values, '"
-                                                                                     + attrValue
-                                                                                         .getDataTypeId()
-                                                                                         .stringValue()
-                                                                                     + "' in list of '"
-                                                                                     + inferredDataTypeId
-                                                                                         .stringValue() + "'");
-                                            }
+                                        } else if (inferredDataTypeId.equals(DataTypes.DT_DOUBLE.getId())
+                                                   && attrValue.getDataTypeId()
+                                                       .equals(DataTypes.DT_INTEGER.getId())) {
+                                            // integers are ok in a list of doubles
+                                            continue;
+                                        } else if (!inferredDataTypeId.equals(attrValue.getDataTypeId())) {
+                                            // all other combinations of types are illegal.
+                                            // Note: these attribute values were read from the client's
+                                            // Request and were assigned the appropriate DataType at that
+                                            // time.
+                                            // That DataType would have been the same for each one (e.g.
+                                            // String) so there should never be a case where
+                                            // there are multiple different types here.
+                                            // NOTE THAT IF THIS CHANGES and we want to allow mixed types,
+                                            // just replace this throws with
+                                            // mixedTypes = true;
+                                            throw new JSONStructureException(
+                                                                             "Mixed DataTypes in Attribute values, '"
+                                                                                 + attrValue
+                                                                                     .getDataTypeId()
+                                                                                     .stringValue()
+                                                                                 + "' in list of '"
+                                                                                 + inferredDataTypeId
+                                                                                     .stringValue() + "'");
                                         }
                                     }
                                 }
-                                theAttribute.put("Value", attrValueList);
-
-                                if (inferredDataTypeId != null && !mixedTypes) {
-                                    // list is uniform and we know the type
-                                    //
-                                    // Don't use shorthand by default, for backwards compatibility
-                                    // to our pep's.
-                                    //
-                                    theAttribute.put("DataType", inferredDataTypeId.stringValue());
-                                }
-
                             }
-
-                            if (attribute.getIssuer() != null) {
-                                theAttribute.put("Issuer", attribute.getIssuer());
+                            theAttribute.put("Value", attrValueList);
+
+                            if (inferredDataTypeId != null && !mixedTypes) {
+                                // list is uniform and we know the type
+                                //
+                                // Don't use shorthand by default, for backwards compatibility
+                                // to our pep's.
+                                //
+                                theAttribute.put("DataType", inferredDataTypeId.stringValue());
                             }
 
-                            arrayAttributes.add(theAttribute);
                         }
-                        categoryTree.put("Attribute", arrayAttributes);
-                    }
 
-                    if (categoryTree.size() > 0) {
-                        categoryArray.add(categoryTree);
+                        if (attribute.getIssuer() != null) {
+                            theAttribute.put("Issuer", attribute.getIssuer());
+                        }
+
+                        arrayAttributes.add(theAttribute);
                     }
+                    categoryTree.put("Attribute", arrayAttributes);
                 }
-                if (categoryArray.size() > 0) {
-                    // TODO - Spec changing from Attributes to Category - change is for no good reason other
-                    // than they didn't like the XML name.
-                    responseTree.put("Category", categoryArray);
+
+                if (categoryTree.size() > 0) {
+                    categoryArray.add(categoryTree);
                 }
             }
+            if (categoryArray.size() > 0) {
+                // TODO - Spec changing from Attributes to Category - change is for no good reason other
+                // than they didn't like the XML name.
+                responseTree.put("Category", categoryArray);
+            }
+        }
 
-            //
-            // PolicyIdentifier
-            //
-            // (These seem to be handled differently from the XML version where multiple PolicyIdRef and
-            // PolicySetIdRef items can be jumbled together in any order.
-            // In the XACML JSON spec (5.2.10) it says that the PolicyIdReference and PolicySetIdReference are
-            // separate groups
-            // where each group is a list of IdReferences.)
-            //
-            //
+        //
+        // PolicyIdentifier
+        //
+        // (These seem to be handled differently from the XML version where multiple PolicyIdRef and
+        // PolicySetIdRef items can be jumbled together in any order.
+        // In the XACML JSON spec (5.2.10) it says that the PolicyIdReference and PolicySetIdReference are
+        // separate groups
+        // where each group is a list of IdReferences.)
+        //
+        //
 
-            if (result.getPolicyIdentifiers() != null && result.getPolicyIdentifiers().size() > 0
-                || result.getPolicySetIdentifiers() != null && result.getPolicySetIdentifiers().size() > 0) {
+        if (result.getPolicyIdentifiers() != null && result.getPolicyIdentifiers().size() > 0
+            || result.getPolicySetIdentifiers() != null && result.getPolicySetIdentifiers().size() > 0) {
 
-                Map<String, Object> policyIdentifierCollectionList = new HashMap<String, Object>();
-                // handle PolicyIds separately from PolicySetIds
-                if (result.getPolicyIdentifiers() != null && result.getPolicyIdentifiers().size() > 0) {
-                    List<Object> policyIdentifierList = new ArrayList<Object>();
-                    for (IdReference idRef : result.getPolicyIdentifiers()) {
-                        if (idRef == null) {
-                            throw new JSONStructureException("PolicyIdReference with null reference");
-                        }
-                        HashMap<String, Object> entityTree = new HashMap<String, Object>();
-                        entityTree.put("Id", idRef.getId().stringValue());
-                        if (idRef.getVersion() != null) {
-                            entityTree.put("Version", idRef.getVersion().stringValue());
-                        }
-
-                        policyIdentifierList.add(entityTree);
+            Map<String, Object> policyIdentifierCollectionList = new HashMap<String, Object>();
+            // handle PolicyIds separately from PolicySetIds
+            if (result.getPolicyIdentifiers() != null && result.getPolicyIdentifiers().size() > 0) {
+                List<Object> policyIdentifierList = new ArrayList<Object>();
+                for (IdReference idRef : result.getPolicyIdentifiers()) {
+                    if (idRef == null) {
+                        throw new JSONStructureException("PolicyIdReference with null reference");
+                    }
+                    HashMap<String, Object> entityTree = new HashMap<String, Object>();
+                    entityTree.put("Id", idRef.getId().stringValue());
+                    if (idRef.getVersion() != null) {
+                        entityTree.put("Version", idRef.getVersion().stringValue());
                     }
 
-                    policyIdentifierCollectionList.put("PolicyIdReference", policyIdentifierList);
+                    policyIdentifierList.add(entityTree);
                 }
-                // handle PolicySetIds
-                if (result.getPolicySetIdentifiers() != null && result.getPolicySetIdentifiers().size() > 0) {
-                    List<Object> policyIdentifierList = new ArrayList<Object>();
-                    for (IdReference idRef : result.getPolicySetIdentifiers()) {
-                        if (idRef == null) {
-                            throw new JSONStructureException("PolicySetIdReference with null reference");
-                        }
-                        HashMap<String, Object> entityTree = new HashMap<String, Object>();
-                        entityTree.put("Id", idRef.getId().stringValue());
-                        if (idRef.getVersion() != null) {
-                            entityTree.put("Version", idRef.getVersion().stringValue());
-                        }
 
-                        policyIdentifierList.add(entityTree);
+                policyIdentifierCollectionList.put("PolicyIdReference", policyIdentifierList);
+            }
+            // handle PolicySetIds
+            if (result.getPolicySetIdentifiers() != null && result.getPolicySetIdentifiers().size() > 0) {
+                List<Object> policyIdentifierList = new ArrayList<Object>();
+                for (IdReference idRef : result.getPolicySetIdentifiers()) {
+                    if (idRef == null) {
+                        throw new JSONStructureException("PolicySetIdReference with null reference");
+                    }
+                    HashMap<String, Object> entityTree = new HashMap<String, Object>();
+                    entityTree.put("Id", idRef.getId().stringValue());
+                    if (idRef.getVersion() != null) {
+                        entityTree.put("Version", idRef.getVersion().stringValue());
                     }
 
-                    policyIdentifierCollectionList.put("PolicySetIdReference", policyIdentifierList);
+                    policyIdentifierList.add(entityTree);
                 }
 
-                responseTree.put("PolicyIdentifier", policyIdentifierCollectionList);
+                policyIdentifierCollectionList.put("PolicySetIdReference", policyIdentifierList);
             }
 
-            //
-            // Finished
-            //
-            responses.add(responseTree);
-        }
-
-        //
-        // Create the overall response
-        //
-        Map<String, Object> theWholeResponse = new HashMap<String, Object>();
-        theWholeResponse.put("Response", responses);
-        //
-        // Create a string buffer
-        //
-        ObjectMapper mapper = new ObjectMapper().setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
-        mapper.configure(SerializationFeature.INDENT_OUTPUT, prettyPrint);
-        try (OutputStreamWriter osw = new OutputStreamWriter(outputStream)) {
-            json = mapper.writeValueAsString(theWholeResponse);
-
-            osw.write(json);
-
-            // force output
-            osw.flush();
-
-        } catch (Exception e) {
-            logger.error("Failed to write to json string: " + e.getLocalizedMessage(), e);
+            responseTree.put("PolicyIdentifier", policyIdentifierCollectionList);
         }
 
+        return responseTree;
     }
 
     /*
@@ -0,0 +1,139 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.RequestAttributes;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+
+/**
+ * StdRequestAttributeIndex maps the category, attribute id, data type id and issuer of each
+ * {@link org.apache.openaz.xacml.api.Attribute} in a {@link org.apache.openaz.xacml.api.Request} to an
+ * immutable {@link org.apache.openaz.xacml.api.pip.PIPResponse} holding the matching values, so that
+ * lookups against the <code>Request</code> do not have to scan its categories and attributes. Every
+ * <code>Attribute</code> is indexed both under its own issuer and under a null issuer, which matches the
+ * rules the {@link org.apache.openaz.xacml.std.pip.engines.RequestEngine} applies when scanning.
+ * <p>
+ * The index is a snapshot of the <code>Request</code> at the time it was built.
+ */
+public class StdRequestAttributeIndex {
+    private Map<PIPRequest, PIPResponse> index = new HashMap<PIPRequest, PIPResponse>();
+
+    /**
+     * Creates a new <code>StdRequestAttributeIndex</code> for the <code>Attribute</code>s in the given
+     * <code>Request</code>.
+     *
+     * @param request the <code>Request</code> to index
+     */
+    public StdRequestAttributeIndex(Request request) {
+        Map<PIPRequest, List<Attribute>> mapAttributes = new HashMap<PIPRequest, List<Attribute>>();
+        if (request != null && request.getRequestAttributes() != null) {
+            for (RequestAttributes requestAttributes : request.getRequestAttributes()) {
+                for (Attribute attribute : requestAttributes.getAttributes()) {
+                    this.addAttribute(mapAttributes, requestAttributes.getCategory(), attribute);
+                }
+            }
+        }
+        for (Map.Entry<PIPRequest, List<Attribute>> entry : mapAttributes.entrySet()) {
+            this.index.put(entry.getKey(), new StdPIPResponse(entry.getValue()));
+        }
+    }
+
+    private void addAttribute(Map<PIPRequest, List<Attribute>> mapAttributes, Identifier category,
+                              Attribute attribute) {
+        Collection<AttributeValue<?>> attributeValues = attribute.getValues();
+        if (attributeValues == null || attributeValues.size() == 0) {
+            return;
+        }
+
+        /*
+         * Split the values by data type, keeping their order
+         */
+        Map<Identifier, List<AttributeValue<?>>> mapValuesByDataType = new LinkedHashMap<Identifier, List<AttributeValue<?>>>();
+        for (AttributeValue<?> attributeValue : attributeValues) {
+            List<AttributeValue<?>> listValues = mapValuesByDataType.get(attributeValue.getDataTypeId());
+            if (listValues == null) {
+                listValues = new ArrayList<AttributeValue<?>>();
+                mapValuesByDataType.put(attributeValue.getDataTypeId(), listValues);
+            }
+            listValues.add(attributeValue);
+        }
+
+        for (Map.Entry<Identifier, List<AttributeValue<?>>> entry : mapValuesByDataType.entrySet()) {
+            /*
+             * If all of the values have the same data type, the whole Attribute can be used as is
+             */
+            Attribute attributeForDataType = attribute;
+            if (mapValuesByDataType.size() > 1) {
+                attributeForDataType = new StdMutableAttribute(attribute.getCategory(),
+                                                               attribute.getAttributeId(), entry.getValue(),
+                                                               attribute.getIssuer(),
+                                                               attribute.getIncludeInResults());
+            }
+            addEntry(mapAttributes, new StdPIPRequest(category, attribute.getAttributeId(), entry.getKey()),
+                     attributeForDataType);
+            if (attribute.getIssuer() != null) {
+                addEntry(mapAttributes, new StdPIPRequest(category, attribute.getAttributeId(),
+                                                          entry.getKey(), attribute.getIssuer()),
+                         attributeForDataType);
+            }
+        }
+    }
+
+    private static void addEntry(Map<PIPRequest, List<Attribute>> mapAttributes, PIPRequest pipRequest,
+                                 Attribute attribute) {
+        List<Attribute> listAttributes = mapAttributes.get(pipRequest);
+        if (listAttributes == null) {
+            listAttributes = new ArrayList<Attribute>();
+            mapAttributes.put(pipRequest, listAttributes);
+        }
+        listAttributes.add(attribute);
+    }
+
+    /**
+     * Gets the <code>Attribute</code>s in the indexed <code>Request</code> that match the given
+     * <code>PIPRequest</code>. A null issuer in the <code>PIPRequest</code> matches any issuer.
+     *
+     * @param pipRequest the <code>PIPRequest</code> to look up
+     * @return a <code>PIPResponse</code> with the matching <code>Attribute</code>s, or
+     *         {@link StdPIPResponse#PIP_RESPONSE_EMPTY} if there are none
+     */
+    public PIPResponse getAttributes(PIPRequest pipRequest) {
+        PIPResponse pipResponse = this.index.get(pipRequest instanceof StdPIPRequest
+            ? pipRequest : new StdPIPRequest(pipRequest));
+        return (pipResponse == null ? StdPIPResponse.PIP_RESPONSE_EMPTY : pipResponse);
+    }
+
+    public int size() {
+        return this.index.size();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines;
+
+import java.util.List;
+
+import org.apache.openaz.xacml.api.pip.PIPEngine;
+import org.apache.openaz.xacml.api.pip.PIPException;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+
+/**
+ * BatchEngine extends {@link org.apache.openaz.xacml.api.pip.PIPEngine} for engines that can answer the same
+ * {@link org.apache.openaz.xacml.api.pip.PIPRequest} for many requests at once, such as the individual
+ * decisions of a multiple decision request, with fewer round trips to their back end than calling
+ * <code>getAttributes</code> for each.
+ */
+public interface BatchEngine extends PIPEngine {
+    /**
+     * Retrieves the attributes for the given <code>PIPRequest</code> once for each of the given
+     * <code>PIPFinder</code>s, which supply the attribute values the engine needs as parameters.
+     *
+     * @param pipRequest the <code>PIPRequest</code> to answer
+     * @param pipFinders the <code>List</code> of <code>PIPFinder</code>s, one for each request
+     * @return a <code>List</code> with a <code>PIPResponse</code> for each <code>PIPFinder</code>, in the same
+     *         order
+     * @throws PIPException if there is an error retrieving the attributes
+     */
+    List<PIPResponse> getAttributes(PIPRequest pipRequest, List<PIPFinder> pipFinders) throws PIPException;
+}
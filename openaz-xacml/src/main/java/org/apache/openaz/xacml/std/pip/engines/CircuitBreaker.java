@@ -0,0 +1,157 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CircuitBreaker stops calls to a back end that keeps failing. After the given number of failures in a row
+ * the circuit opens and calls are rejected without trying the back end. Once the open interval has passed a
+ * single probe call is let through: if it succeeds the circuit closes again, otherwise it stays open for
+ * another interval. A call that succeeds but takes longer than the slow call threshold counts as a failure,
+ * so a back end that has slowed down to the point of timing out its callers is treated like one that is
+ * down.
+ */
+public class CircuitBreaker {
+    /**
+     * State is the state of a <code>CircuitBreaker</code>.
+     */
+    public enum State {
+        /**
+         * Calls go through to the back end
+         */
+        CLOSED,
+        /**
+         * Calls are rejected until the open interval has passed
+         */
+        OPEN,
+        /**
+         * A probe call is being made to see if the back end has recovered
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openInterval;
+    private final long slowCallThreshold;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private final AtomicLong openCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Creates a new closed <code>CircuitBreaker</code>.
+     *
+     * @param failureThresholdIn the number of failures in a row that opens the circuit
+     * @param openIntervalIn the number of milliseconds the circuit stays open before a probe is allowed
+     * @param slowCallThresholdIn the number of milliseconds after which a successful call counts as a
+     *            failure, or 0 if slow calls are not counted
+     */
+    public CircuitBreaker(int failureThresholdIn, long openIntervalIn, long slowCallThresholdIn) {
+        if (failureThresholdIn <= 0) {
+            throw new IllegalArgumentException("Failure threshold must be positive");
+        }
+        this.failureThreshold = failureThresholdIn;
+        this.openInterval = openIntervalIn;
+        this.slowCallThreshold = slowCallThresholdIn;
+    }
+
+    /**
+     * Determines if a call may be made now. When this returns true the caller must report the outcome of
+     * the call with <code>recordSuccess</code> or <code>recordFailure</code>.
+     *
+     * @return true if the call may go to the back end, false if it should fail fast
+     */
+    public synchronized boolean allowRequest() {
+        if (this.state == State.CLOSED) {
+            return true;
+        }
+        if (this.state == State.OPEN && System.currentTimeMillis() - this.openedAt >= this.openInterval) {
+            this.state = State.HALF_OPEN;
+            return true;
+        }
+        this.rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records a call that returned normally, closing the circuit if it was a probe. A call that was let
+     * through before the circuit opened does not close it.
+     *
+     * @param elapsed the number of milliseconds the call took
+     */
+    public synchronized void recordSuccess(long elapsed) {
+        if (this.slowCallThreshold > 0 && elapsed > this.slowCallThreshold) {
+            this.recordFailure();
+            return;
+        }
+        if (this.state == State.HALF_OPEN) {
+            this.state = State.CLOSED;
+        }
+        if (this.state == State.CLOSED) {
+            this.consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Records a call that failed, opening the circuit if it was a probe or the failure threshold is reached.
+     */
+    public synchronized void recordFailure() {
+        this.consecutiveFailures++;
+        if (this.state == State.HALF_OPEN
+            || this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold) {
+            this.state = State.OPEN;
+            this.openedAt = System.currentTimeMillis();
+            this.openCount.incrementAndGet();
+        }
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * Gets the number of calls that have failed since the last success.
+     *
+     * @return the number of consecutive failures
+     */
+    public synchronized int getConsecutiveFailures() {
+        return this.consecutiveFailures;
+    }
+
+    /**
+     * Gets the number of times the circuit has opened.
+     *
+     * @return the number of times the circuit opened
+     */
+    public long getOpenCount() {
+        return this.openCount.get();
+    }
+
+    /**
+     * Gets the number of calls that were rejected because the circuit was open.
+     *
+     * @return the number of rejected calls
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+}
@@ -217,4 +217,46 @@ public class Configurables {
         }
     }
 
+    /**
+     * Gets the <code>long</code> value of the given property.
+     *
+     * @param propertyName the <code>String</code> name of the property
+     * @param properties the <code>Properties</code> to look in
+     * @param defaultValue the value to use if the property is not set
+     * @return the value of the property, or <code>defaultValue</code> if it is not set
+     * @throws PIPException if the property is not a valid <code>long</code>
+     */
+    public static long getLongProperty(String propertyName, Properties properties, long defaultValue)
+        throws PIPException {
+        String stringProp = properties.getProperty(propertyName);
+        if (stringProp == null || stringProp.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(stringProp.trim());
+        } catch (NumberFormatException ex) {
+            logger.error("Invalid '" + propertyName + "' property: " + stringProp);
+            throw new PIPException("Invalid '" + propertyName + "' property: " + stringProp, ex);
+        }
+    }
+
+    /**
+     * Gets the <code>int</code> value of the given property.
+     *
+     * @param propertyName the <code>String</code> name of the property
+     * @param properties the <code>Properties</code> to look in
+     * @param defaultValue the value to use if the property is not set
+     * @return the value of the property, or <code>defaultValue</code> if it is not set
+     * @throws PIPException if the property is not a valid <code>int</code>
+     */
+    public static int getIntProperty(String propertyName, Properties properties, int defaultValue)
+        throws PIPException {
+        long value = getLongProperty(propertyName, properties, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            logger.error("Invalid '" + propertyName + "' property: " + value);
+            throw new PIPException("Invalid '" + propertyName + "' property: " + value);
+        }
+        return (int)value;
+    }
+
 }
@@ -49,9 +49,12 @@ import org.apache.openaz.xacml.api.pip.PIPFinder;
 import org.apache.openaz.xacml.api.pip.PIPRequest;
 import org.apache.openaz.xacml.api.pip.PIPResponse;
 import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.StdRequest;
 import org.apache.openaz.xacml.std.pip.StdMutablePIPResponse;
 import org.apache.openaz.xacml.std.pip.StdPIPRequest;
 import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.apache.openaz.xacml.std.pip.StdRequestAttributeIndex;
 
 /**
  * StdRequestEngine implements the {@link org.apache.openaz.xacml.api.pip.PIPEngine} interface to retrieve
@@ -65,6 +68,24 @@ public class RequestEngine implements PIPEngine {
         return this.request;
     }
 
+    /**
+     * Gets the {@link org.apache.openaz.xacml.std.pip.StdRequestAttributeIndex} of the <code>Request</code>
+     * if it keeps one.
+     *
+     * @return the <code>StdRequestAttributeIndex</code> for the <code>Request</code> or null if the
+     *         <code>Request</code> has to be scanned
+     */
+    protected StdRequestAttributeIndex getRequestAttributeIndex() {
+        Request thisRequest = this.getRequest();
+        if (thisRequest instanceof StdMutableRequest) {
+            return ((StdMutableRequest)thisRequest).getAttributeIndex();
+        } else if (thisRequest instanceof StdRequest) {
+            return ((StdRequest)thisRequest).getAttributeIndex();
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Creates a <code>StdRequestEngine</code> for retrieving <code>Attribute</code>s from a
      * <code>Request</code>.
@@ -92,6 +113,11 @@ public class RequestEngine implements PIPEngine {
             return StdPIPResponse.PIP_RESPONSE_EMPTY;
         }
 
+        StdRequestAttributeIndex requestAttributeIndex = this.getRequestAttributeIndex();
+        if (requestAttributeIndex != null) {
+            return requestAttributeIndex.getAttributes(pipRequest);
+        }
+
         Iterator<RequestAttributes> iterRequestAttributes = thisRequest.getRequestAttributes(pipRequest
             .getCategory());
         if (iterRequestAttributes == null || !iterRequestAttributes.hasNext()) {
@@ -161,6 +187,24 @@ public class RequestEngine implements PIPEngine {
         }
     }
 
+    /**
+     * Determines whether the <code>Request</code> itself has values for the attribute named by the given
+     * <code>PIPRequest</code>, matching its category, attribute id, data type and issuer the same way
+     * <code>getAttributes</code> does.
+     *
+     * @param pipRequest the <code>PIPRequest</code> for the attribute
+     * @return true if <code>getAttributes</code> would return at least one <code>Attribute</code>
+     */
+    public boolean hasAttributes(PIPRequest pipRequest) {
+        try {
+            PIPResponse pipResponse = this.getAttributes(pipRequest, null);
+            return (pipResponse.getStatus() == null || pipResponse.getStatus().isOk())
+                   && pipResponse.getAttributes().size() > 0;
+        } catch (PIPException ex) {
+            return false;
+        }
+    }
+
     @Override
     public Collection<PIPRequest> attributesRequired() {
         return Collections.emptyList();
@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SingleFlight makes concurrent calls for the same key share one execution: the first caller runs the
+ * <code>Callable</code> and every caller that asks for the same key while it is running waits for and gets
+ * the same result. Once the call completes the key is forgotten, so later callers run it again.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    public SingleFlight() {
+    }
+
+    /**
+     * Runs the given <code>Callable</code> for the key unless a call for the same key is already running, in
+     * which case its result is returned instead.
+     *
+     * @param key the key identifying the call
+     * @param callable the <code>Callable</code> to run
+     * @return the result of the call
+     * @throws ExecutionException if the call threw an exception, which is its cause
+     * @throws InterruptedException if the thread was interrupted while waiting for another caller
+     */
+    public V execute(K key, Callable<V> callable) throws ExecutionException, InterruptedException {
+        FutureTask<V> futureTask = new FutureTask<V>(callable);
+        FutureTask<V> futureTaskInFlight = this.inFlight.putIfAbsent(key, futureTask);
+        if (futureTaskInFlight != null) {
+            this.sharedCount.incrementAndGet();
+            return futureTaskInFlight.get();
+        }
+        try {
+            this.executionCount.incrementAndGet();
+            futureTask.run();
+        } finally {
+            this.inFlight.remove(key, futureTask);
+        }
+        return futureTask.get();
+    }
+
+    /**
+     * Gets the number of calls that were actually run.
+     *
+     * @return the number of executions
+     */
+    public long getExecutionCount() {
+        return this.executionCount.get();
+    }
+
+    /**
+     * Gets the number of callers that shared the result of a call that was already running.
+     *
+     * @return the number of shared results
+     */
+    public long getSharedCount() {
+        return this.sharedCount.get();
+    }
+}
@@ -30,32 +30,106 @@
  */
 package org.apache.openaz.xacml.std.pip.engines;
 
+import java.util.Collection;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.openaz.xacml.api.Attribute;
 import org.apache.openaz.xacml.api.pip.PIPException;
 import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.pip.StdPIPResponse;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * StdConfigurableEngine implements the {@link ConfigurableEngine} interface to automatically process the
  * standard name, description, and issuer properties.
+ * <p>
+ * If a "cacheSpec" property is given, a Guava cache built from that specification holds the
+ * <code>Attribute</code>s each resolver returned, keyed by the resolver and the parameter values it resolved
+ * (see {@link #newCacheKey(int, Object...)}). Empty results are only cached if the "cacheNegative" property
+ * is true.
+ * <p>
+ * If the "singleFlight" property is true, concurrent lookups with the same key share a single call to
+ * the back end (see {@link #getResponse(String, Callable)}), so a burst of requests for the same subject
+ * after a cache entry expires does not turn into a burst of queries.
+ * <p>
+ * If a "refreshAfter" property is given along with a cache, an entry older than that many milliseconds is
+ * still returned but is refreshed in the background, so requests do not wait on the back end while the entry
+ * is only stale. The expiry in the cache specification bounds how stale an entry can get.
+ * <p>
+ * If a "circuit.failureThreshold" property is given, a {@link CircuitBreaker} opens after that many failed or
+ * slow lookups in a row. While it is open lookups that are not in the cache fail fast with a
+ * <code>PIPException</code>, and after "circuit.openInterval" milliseconds a single probe is let through.
+ * Lookups slower than "circuit.slowCallThreshold" milliseconds count as failures. A lookup fails if it throws
+ * an exception or returns a <code>PIPResponse</code> whose status is not OK.
  */
 public abstract class StdConfigurableEngine implements ConfigurableEngine {
     public static final String PROP_NAME = "name";
     public static final String PROP_DESCRIPTION = "description";
     public static final String PROP_ISSUER = "issuer";
     public static final String PROP_CACHESPEC = "cacheSpec";
+    public static final String PROP_CACHENEGATIVE = "cacheNegative";
+    public static final String PROP_SINGLEFLIGHT = "singleFlight";
+    public static final String PROP_REFRESHAFTER = "refreshAfter";
+    public static final String PROP_CIRCUIT_FAILURETHRESHOLD = "circuit.failureThreshold";
+    public static final String PROP_CIRCUIT_OPENINTERVAL = "circuit.openInterval";
+    public static final String PROP_CIRCUIT_SLOWCALLTHRESHOLD = "circuit.slowCallThreshold";
 
+    public static final long DEFAULT_CIRCUIT_OPENINTERVAL = 30000;
+
+    private static final ExecutorService REFRESH_EXECUTOR = newRefreshExecutor();
+
+    private Log logger = LogFactory.getLog(this.getClass());
     private String name;
     private String description;
     private String issuer;
     private Cache<String, PIPResponse> cache;
+    private boolean cacheNegative;
+    private SingleFlight<String, PIPResponse> singleFlight;
+    private long refreshAfter;
+    private CircuitBreaker circuitBreaker;
+    private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<String, Boolean>();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+
+    /**
+     * CachedPIPResponse is a <code>PIPResponse</code> in the cache along with the time it was put there.
+     */
+    private static class CachedPIPResponse extends StdPIPResponse {
+        private final long createTime = System.currentTimeMillis();
+
+        CachedPIPResponse(PIPResponse pipResponseIn) {
+            super(pipResponseIn);
+        }
+    }
 
     public StdConfigurableEngine() {
     }
 
+    private static ExecutorService newRefreshExecutor() {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+            4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1024),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("openaz-pip-refresh-%d").build());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
     @Override
     public String getName() {
         return this.name;
@@ -90,6 +164,319 @@ public abstract class StdConfigurableEngine implements ConfigurableEngine {
         this.cache = cache;
     }
 
+    public boolean isCacheNegative() {
+        return this.cacheNegative;
+    }
+
+    public void setCacheNegative(boolean cacheNegativeIn) {
+        this.cacheNegative = cacheNegativeIn;
+    }
+
+    /**
+     * Gets the statistics for the cache of this <code>StdConfigurableEngine</code>.
+     *
+     * @return the <code>CacheStats</code> for the cache, or null if there is no cache
+     */
+    public CacheStats getCacheStats() {
+        return this.cache == null ? null : this.cache.stats();
+    }
+
+    /**
+     * Gets the fraction of cache lookups that were answered from the cache.
+     *
+     * @return the hit rate of the cache, or 0 if there is no cache
+     */
+    public double getCacheHitRate() {
+        return this.cache == null ? 0.0 : this.cache.stats().hitRate();
+    }
+
+    /**
+     * Gets the <code>SingleFlight</code> that coalesces concurrent lookups with the same key.
+     *
+     * @return the <code>SingleFlight</code> or null if lookups are not coalesced
+     */
+    public SingleFlight<String, PIPResponse> getSingleFlight() {
+        return this.singleFlight;
+    }
+
+    public void setSingleFlight(SingleFlight<String, PIPResponse> singleFlightIn) {
+        this.singleFlight = singleFlightIn;
+    }
+
+    /**
+     * Gets the number of milliseconds after which a cached entry is refreshed in the background.
+     *
+     * @return the refresh interval in milliseconds, or 0 if entries are not refreshed
+     */
+    public long getRefreshAfter() {
+        return this.refreshAfter;
+    }
+
+    public void setRefreshAfter(long refreshAfterIn) {
+        this.refreshAfter = refreshAfterIn;
+    }
+
+    /**
+     * Gets the <code>CircuitBreaker</code> guarding the back end of this engine, whose state and counts show
+     * how the back end has been behaving.
+     *
+     * @return the <code>CircuitBreaker</code> or null if lookups are not guarded
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreakerIn) {
+        this.circuitBreaker = circuitBreakerIn;
+    }
+
+    /**
+     * Gets the number of stale cache entries that were returned while they were refreshed.
+     *
+     * @return the number of stale responses
+     */
+    public long getStaleCount() {
+        return this.staleCount.get();
+    }
+
+    /**
+     * Gets the number of background refreshes of stale cache entries that completed.
+     *
+     * @return the number of refreshes
+     */
+    public long getRefreshCount() {
+        return this.refreshCount.get();
+    }
+
+    /**
+     * Gets the number of background refreshes of stale cache entries that failed or were rejected, leaving
+     * the stale entry in the cache.
+     *
+     * @return the number of failed refreshes
+     */
+    public long getRefreshFailureCount() {
+        return this.refreshFailureCount.get();
+    }
+
+    /**
+     * Determines if lookups need a key, either to cache their results or to coalesce concurrent lookups.
+     *
+     * @return true if there is a cache or lookups are coalesced, else false
+     */
+    protected boolean isKeyed() {
+        return this.cache != null || this.singleFlight != null;
+    }
+
+    /**
+     * Gets the response for a lookup, from the cache if it is there or else by calling the given
+     * <code>Callable</code>. A stale cache entry is returned as is while it is refreshed in the background.
+     * If another thread is already looking up the same key, this waits for and shares its response instead
+     * of calling the back end again. The <code>Callable</code> is responsible for caching its result.
+     *
+     * @param cacheKey the <code>String</code> cache key, or null if the lookup cannot be keyed
+     * @param lookup the <code>Callable</code> that calls the back end
+     * @return the <code>PIPResponse</code> from the cache or the lookup
+     * @throws PIPException if the lookup fails or the circuit is open
+     */
+    protected PIPResponse getResponse(final String cacheKey, final Callable<PIPResponse> lookup)
+        throws PIPException {
+        PIPResponse pipResponseCached = this.getCachedResponse(cacheKey);
+        if (pipResponseCached != null) {
+            if (this.isStale(pipResponseCached)) {
+                this.staleCount.incrementAndGet();
+                this.refresh(cacheKey, lookup);
+            }
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug("Returning cached response: " + pipResponseCached);
+            }
+            return pipResponseCached;
+        }
+        return this.getLookupResponse(cacheKey, lookup);
+    }
+
+    /**
+     * Gets the response for a lookup by calling the given <code>Callable</code> through the circuit breaker,
+     * without looking in the cache first. If another thread is already looking up the same key, this waits
+     * for and shares its response instead.
+     *
+     * @param cacheKey the <code>String</code> key of the lookup, or null if it cannot be shared
+     * @param lookup the <code>Callable</code> that calls the back end
+     * @return the <code>PIPResponse</code> from the lookup
+     * @throws PIPException if the lookup fails or the circuit is open
+     */
+    protected PIPResponse getLookupResponse(final String cacheKey, final Callable<PIPResponse> lookup)
+        throws PIPException {
+        try {
+            if (this.singleFlight == null || cacheKey == null) {
+                return this.callLookup(cacheKey, lookup);
+            }
+            return this.singleFlight.execute(cacheKey, new Callable<PIPResponse>() {
+                @Override
+                public PIPResponse call() throws Exception {
+                    /*
+                     * A lookup that finished just before this one started may have cached the response
+                     */
+                    if (StdConfigurableEngine.this.cache != null) {
+                        PIPResponse pipResponse = StdConfigurableEngine.this.cache.asMap().get(cacheKey);
+                        if (pipResponse != null && !StdConfigurableEngine.this.isStale(pipResponse)) {
+                            return pipResponse;
+                        }
+                    }
+                    return StdConfigurableEngine.this.callLookup(cacheKey, lookup);
+                }
+            });
+        } catch (ExecutionException ex) {
+            return this.rethrow(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new PIPException("Interrupted waiting for a lookup of " + cacheKey, ex);
+        } catch (Exception ex) {
+            return this.rethrow(ex);
+        }
+    }
+
+    /**
+     * Calls the given lookup through the <code>CircuitBreaker</code>, if there is one.
+     */
+    private PIPResponse callLookup(String cacheKey, Callable<PIPResponse> lookup) throws Exception {
+        CircuitBreaker thisCircuitBreaker = this.circuitBreaker;
+        if (thisCircuitBreaker == null) {
+            return lookup.call();
+        }
+        if (!thisCircuitBreaker.allowRequest()) {
+            throw new PIPException("Circuit for " + this.getName() + " is open, not looking up " + cacheKey);
+        }
+        long start = System.currentTimeMillis();
+        boolean failed = true;
+        try {
+            PIPResponse pipResponse = lookup.call();
+            failed = pipResponse == null
+                     || pipResponse.getStatus() != null && !pipResponse.getStatus().isOk();
+            return pipResponse;
+        } finally {
+            if (failed) {
+                thisCircuitBreaker.recordFailure();
+            } else {
+                thisCircuitBreaker.recordSuccess(System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    private boolean isStale(PIPResponse pipResponse) {
+        if (this.refreshAfter <= 0 || !(pipResponse instanceof CachedPIPResponse)) {
+            return false;
+        }
+        return System.currentTimeMillis() - ((CachedPIPResponse)pipResponse).createTime > this.refreshAfter;
+    }
+
+    /**
+     * Looks up the given key again in the background unless it is already being refreshed. A failed refresh
+     * leaves the stale entry in the cache until it expires.
+     */
+    private void refresh(final String cacheKey, final Callable<PIPResponse> lookup) {
+        if (this.refreshing.putIfAbsent(cacheKey, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            REFRESH_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        StdConfigurableEngine.this.refreshResponse(cacheKey, lookup);
+                        StdConfigurableEngine.this.refreshCount.incrementAndGet();
+                    } catch (Exception ex) {
+                        StdConfigurableEngine.this.refreshFailureCount.incrementAndGet();
+                        StdConfigurableEngine.this.logger.warn("Failed to refresh " + cacheKey + " in "
+                                                               + StdConfigurableEngine.this.getName() + ": "
+                                                               + ex.getMessage());
+                    } finally {
+                        StdConfigurableEngine.this.refreshing.remove(cacheKey);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.refreshing.remove(cacheKey);
+            this.refreshFailureCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Looks up a stale cache entry again on a background refresh thread, sharing the call to the back end
+     * with any request looking up the same key. Engines that guard their back end with a lock while
+     * answering requests must override this to take the same lock.
+     *
+     * @param cacheKey the <code>String</code> cache key of the stale entry
+     * @param lookup the <code>Callable</code> that calls the back end
+     * @return the <code>PIPResponse</code> from the lookup
+     * @throws PIPException if the lookup fails or the circuit is open
+     */
+    protected PIPResponse refreshResponse(String cacheKey, Callable<PIPResponse> lookup) throws PIPException {
+        return this.getLookupResponse(cacheKey, lookup);
+    }
+
+    private PIPResponse rethrow(Throwable throwable) throws PIPException {
+        if (throwable instanceof PIPException) {
+            throw (PIPException)throwable;
+        } else if (throwable instanceof RuntimeException) {
+            throw (RuntimeException)throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error)throwable;
+        }
+        throw new PIPException(throwable);
+    }
+
+    /**
+     * Creates a cache key for the resolver at the given position in this engine from the values it resolved
+     * for its parameters. Each part is length-prefixed so that different parameter values never produce the
+     * same key.
+     *
+     * @param resolverIndex the position of the resolver in this <code>StdConfigurableEngine</code>
+     * @param parameters the resolved parameter values, in the order the resolver uses them
+     * @return the <code>String</code> cache key
+     */
+    protected String newCacheKey(int resolverIndex, Object... parameters) {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(resolverIndex);
+        for (Object parameter : parameters) {
+            String stringParameter = String.valueOf(parameter);
+            stringBuilder.append(':').append(stringParameter.length()).append(':').append(stringParameter);
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Looks up the given key in the cache.
+     *
+     * @param cacheKey the <code>String</code> cache key, or null if the request cannot be cached
+     * @return the cached <code>PIPResponse</code> or null if there is no cache or no entry for the key
+     */
+    protected PIPResponse getCachedResponse(String cacheKey) {
+        if (this.cache == null || cacheKey == null) {
+            return null;
+        }
+        return this.cache.getIfPresent(cacheKey);
+    }
+
+    /**
+     * Puts the <code>Attribute</code>s a resolver returned into the cache under the given key. Empty results
+     * are only cached if negative caching is enabled.
+     *
+     * @param cacheKey the <code>String</code> cache key, or null if the request cannot be cached
+     * @param attributes the <code>Collection</code> of <code>Attribute</code>s to cache
+     */
+    protected void putCachedResponse(String cacheKey, Collection<Attribute> attributes) {
+        if (this.cache == null || cacheKey == null) {
+            return;
+        }
+        if (attributes == null || attributes.size() == 0) {
+            if (this.cacheNegative) {
+                this.cache.put(cacheKey, new CachedPIPResponse(StdPIPResponse.PIP_RESPONSE_EMPTY));
+            }
+        } else {
+            this.cache.put(cacheKey, new CachedPIPResponse(new StdPIPResponse(attributes)));
+        }
+    }
+
     @Override
     public void configure(String id, Properties properties) throws PIPException {
         this.setName(properties.getProperty(id + "." + PROP_NAME, id));
@@ -99,7 +486,38 @@ public abstract class StdConfigurableEngine implements ConfigurableEngine {
          * Configure the cache IF it is defined
          */
         if (properties.getProperty(id + "." + PROP_CACHESPEC) != null) {
-            this.cache = CacheBuilder.from(properties.getProperty(id + "." + PROP_CACHESPEC)).build();
+            this.cache = CacheBuilder.from(properties.getProperty(id + "." + PROP_CACHESPEC)).recordStats()
+                .build();
+        }
+        this.setCacheNegative(Boolean.parseBoolean(properties.getProperty(id + "." + PROP_CACHENEGATIVE)));
+        /*
+         * Coalesce concurrent lookups IF asked to
+         */
+        if (Boolean.parseBoolean(properties.getProperty(id + "." + PROP_SINGLEFLIGHT, "false"))) {
+            this.singleFlight = new SingleFlight<String, PIPResponse>();
+        } else {
+            this.singleFlight = null;
+        }
+        /*
+         * Refresh stale entries in the background IF asked to
+         */
+        this.setRefreshAfter(Configurables.getLongProperty(id + "." + PROP_REFRESHAFTER, properties, 0));
+        if (this.refreshAfter > 0 && this.cache == null) {
+            this.logger.warn(this.getName() + " has " + PROP_REFRESHAFTER + " but no " + PROP_CACHESPEC);
+        }
+        /*
+         * Guard the back end with a circuit breaker IF asked to
+         */
+        int failureThreshold = Configurables.getIntProperty(id + "." + PROP_CIRCUIT_FAILURETHRESHOLD,
+                                                            properties, 0);
+        if (failureThreshold > 0) {
+            this.circuitBreaker = new CircuitBreaker(
+                failureThreshold,
+                Configurables.getLongProperty(id + "." + PROP_CIRCUIT_OPENINTERVAL, properties,
+                                              DEFAULT_CIRCUIT_OPENINTERVAL),
+                Configurables.getLongProperty(id + "." + PROP_CIRCUIT_SLOWCALLTHRESHOLD, properties, 0));
+        } else {
+            this.circuitBreaker = null;
         }
     }
 
@@ -30,16 +30,34 @@
  */
 package org.apache.openaz.xacml.std.pip.engines.csv;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,6 +66,7 @@ import org.apache.openaz.xacml.api.AttributeValue;
 import org.apache.openaz.xacml.api.DataType;
 import org.apache.openaz.xacml.api.DataTypeException;
 import org.apache.openaz.xacml.api.DataTypeFactory;
+import org.apache.openaz.xacml.api.Identifier;
 import org.apache.openaz.xacml.api.pip.PIPException;
 import org.apache.openaz.xacml.api.pip.PIPFinder;
 import org.apache.openaz.xacml.api.pip.PIPRequest;
@@ -56,15 +75,30 @@ import org.apache.openaz.xacml.std.StdStatus;
 import org.apache.openaz.xacml.std.StdStatusCode;
 import org.apache.openaz.xacml.std.pip.StdMutablePIPResponse;
 import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.apache.openaz.xacml.std.pip.engines.Configurables;
 import org.apache.openaz.xacml.std.pip.engines.StdConfigurableEngine;
 import org.apache.openaz.xacml.util.AttributeUtils;
 import org.apache.openaz.xacml.util.FactoryException;
 
+import au.com.bytecode.opencsv.CSVParser;
 import au.com.bytecode.opencsv.CSVReader;
 
 import com.google.common.base.Splitter;
 
-public class CSVEngine extends StdConfigurableEngine {
+/**
+ * CSVEngine extends {@link org.apache.openaz.xacml.std.pip.engines.StdConfigurableEngine} to implement a PIP
+ * that retrieves XACML attributes from the lines of a CSV file that match the parameter values of its
+ * {@link CSVResolver}s. The records are indexed by the parameter columns with a {@link CSVIndex}, so only the
+ * lines that may match are checked. Small files are held in memory; big files are copied to a private
+ * snapshot when they are loaded, only the offset of each record in the snapshot is kept, and matching records
+ * are read from the snapshot when needed, so a source file that is rewritten in place is never read at the
+ * offsets of its previous contents.
+ * <p>
+ * If the "reload.interval" property is set, the file is checked for changes that often (in milliseconds) by
+ * a {@link CSVSourceWatcher}. A changed file is parsed and indexed in the background and then swapped in as a
+ * whole, so requests that are being evaluated never see a partly loaded file.
+ */
+public class CSVEngine extends StdConfigurableEngine implements CSVSourceWatcher.Listener {
 
     protected Log logger = LogFactory.getLog(this.getClass());
     /*
@@ -80,6 +114,7 @@ public class CSVEngine extends StdConfigurableEngine {
     public static final String PROP_DELIMITER = "delimiter";
     public static final String PROP_QUOTE = "quote";
     public static final String PROP_SKIP = "skip";
+    public static final String PROP_RELOAD_INTERVAL = "reload.interval";
 
     public static final String PROP_RESOLVERS = "resolvers";
     public static final String PROP_RESOLVER = "resolver";
@@ -102,20 +137,178 @@ public class CSVEngine extends StdConfigurableEngine {
     private char csvDelimiter;
     private char csvQuote;
     private int csvSkip;
+    private long reloadInterval;
     //
-    // big files must be read one line at a time; small files are read in all at once
-    //
-    private boolean fileIsBig = false;
+    // The records of the last load of the file, replaced as a whole when the file is reloaded
     //
-    // small files get all lines read at once into this list
-    //
-    private List<String[]> allLines = null;
+    private volatile CSVData csvData;
+    private CSVSourceWatcher csvSourceWatcher;
+    private final Object reloadLock = new Object();
 
     //
     // Our list of resolvers
     //
     private List<CSVResolver> csvResolvers = new ArrayList<CSVResolver>();
 
+    /**
+     * CSVData holds the records of one load of the CSV file and the indexes built on them. Requests that use
+     * it acquire it first, so the snapshot of a big file is only deleted once it has been replaced and the
+     * last request reading it has released it.
+     */
+    private static class CSVData {
+        //
+        // big files must be read one line at a time; small files are read in all at once
+        //
+        private boolean fileIsBig;
+        //
+        // big files are read from a private copy, so the offsets below always point at the same contents
+        //
+        private File snapshotFile;
+        private int readers;
+        private boolean retired;
+        //
+        // small files get all lines read at once into this list
+        //
+        private List<String[]> allLines;
+        //
+        // big files have the byte offset and length of each record kept instead
+        //
+        private long[] recordOffsets;
+        private int[] recordLengths;
+        //
+        // indexes on the parameter columns, by column and data type
+        //
+        private Map<String, CSVIndex> indexes = new ConcurrentHashMap<String, CSVIndex>();
+
+        public int getRecordCount() {
+            return this.fileIsBig ? this.recordOffsets.length : this.allLines.size();
+        }
+
+        public synchronized boolean acquire() {
+            if (this.retired) {
+                return false;
+            }
+            this.readers++;
+            return true;
+        }
+
+        public synchronized void release() {
+            this.readers--;
+            if (this.retired && this.readers == 0) {
+                this.deleteSnapshot();
+            }
+        }
+
+        public synchronized void retire() {
+            this.retired = true;
+            if (this.readers == 0) {
+                this.deleteSnapshot();
+            }
+        }
+
+        private void deleteSnapshot() {
+            if (this.snapshotFile != null && !this.snapshotFile.delete()) {
+                this.snapshotFile.deleteOnExit();
+            }
+            this.snapshotFile = null;
+        }
+    }
+
+    /**
+     * Reads the records of a CSV file the same way <code>CSVReader</code> does while keeping track of the
+     * byte offset and length of each one, so they can be read again directly.
+     */
+    private static class RecordReader implements Closeable {
+        private InputStream inputStream;
+        private byte[] buffer = new byte[65536];
+        private int bufferPosition;
+        private int bufferLimit;
+        private long position;
+        private long recordOffset;
+        private int recordLength;
+        private CSVParser csvParser;
+        private ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+
+        public RecordReader(File file, char delimiter, char quote, int skip) throws IOException {
+            this.inputStream = new FileInputStream(file);
+            this.csvParser = new CSVParser(delimiter, quote);
+            for (int i = 0; i < skip && this.readLine() != null; i++) { //NOPMD
+            }
+        }
+
+        private int read() throws IOException {
+            int b = this.peek();
+            if (b != -1) {
+                this.bufferPosition++;
+                this.position++;
+            }
+            return b;
+        }
+
+        private int peek() throws IOException {
+            if (this.bufferPosition == this.bufferLimit) {
+                this.bufferPosition = 0;
+                this.bufferLimit = Math.max(0, this.inputStream.read(this.buffer, 0, this.buffer.length));
+                if (this.bufferLimit == 0) {
+                    return -1;
+                }
+            }
+            return this.buffer[this.bufferPosition] & 0xFF;
+        }
+
+        private String readLine() throws IOException {
+            int b = this.read();
+            if (b == -1) {
+                return null;
+            }
+            this.lineBytes.reset();
+            while (b != -1 && b != '\n' && b != '\r') {
+                this.lineBytes.write(b);
+                b = this.read();
+            }
+            if (b == '\r' && this.peek() == '\n') {
+                this.read();
+            }
+            return new String(this.lineBytes.toByteArray(), Charset.defaultCharset());
+        }
+
+        public String[] readNext() throws IOException {
+            this.recordOffset = this.position;
+            String[] result = null;
+            do {
+                String line = this.readLine();
+                if (line == null) {
+                    break;
+                }
+                String[] fields = this.csvParser.parseLineMulti(line);
+                if (fields.length > 0) {
+                    if (result == null) {
+                        result = fields;
+                    } else {
+                        String[] resultFields = Arrays.copyOf(result, result.length + fields.length);
+                        System.arraycopy(fields, 0, resultFields, result.length, fields.length);
+                        result = resultFields;
+                    }
+                }
+            } while (this.csvParser.isPending());
+            this.recordLength = (int)(this.position - this.recordOffset);
+            return result;
+        }
+
+        public long getRecordOffset() {
+            return this.recordOffset;
+        }
+
+        public int getRecordLength() {
+            return this.recordLength;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.inputStream.close();
+        }
+    }
+
     public CSVEngine() {
     }
 
@@ -161,13 +354,6 @@ public class CSVEngine extends StdConfigurableEngine {
             logger.error(message);
             throw new PIPException(message);
         }
-        if (csvSourceFile.length() > this.maximumSize) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("File size is greater than max allowed (" + this.maximumSize + "): "
-                             + csvSourceFile.length());
-            }
-            fileIsBig = true;
-        }
         //
         // Get the properties for CSVReader
         //
@@ -201,6 +387,8 @@ public class CSVEngine extends StdConfigurableEngine {
             logger.error(message);
             throw new PIPException(message);
         }
+
+        this.reloadInterval = Configurables.getLongProperty(prefix + PROP_RELOAD_INTERVAL, properties, 0);
     }
 
     @Override
@@ -229,22 +417,357 @@ public class CSVEngine extends StdConfigurableEngine {
             this.createResolver(id + "." + PROP_RESOLVER + "." + resolverId, properties);
         }
         //
-        // If the file is small, we read it fully into memory.
+        // Read and index the file, then start watching it for changes if asked to
         //
-        if (!this.fileIsBig) {
+        if (this.csvSourceWatcher != null) {
+            this.csvSourceWatcher.stop();
+            this.csvSourceWatcher = null;
+        }
+        this.replaceCSVData(this.loadCSVData());
+        if (this.reloadInterval > 0) {
+            this.csvSourceWatcher = new CSVSourceWatcher(this.csvSourceFile, this);
+            this.csvSourceWatcher.start(this.reloadInterval);
+        }
+    }
+
+    /**
+     * Reads the CSV file and indexes its records by the parameter columns of our resolvers. If the file is
+     * small, it is read fully into memory, otherwise it is copied to a snapshot that is indexed instead.
+     *
+     * @return the new <code>CSVData</code>
+     * @throws PIPException if the file cannot be read
+     */
+    private CSVData loadCSVData() throws PIPException {
+        CSVData data = new CSVData();
+        if (this.csvSourceFile.length() > this.maximumSize) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("File size is greater than max allowed (" + this.maximumSize + "): "
+                             + this.csvSourceFile.length());
+            }
+            data.fileIsBig = true;
+            data.snapshotFile = this.copySourceFile();
+        } else {
             try (CSVReader csvReader = new CSVReader(new FileReader(csvSourceFile), csvDelimiter, csvQuote,
                                                      csvSkip)) {
-                this.allLines = csvReader.readAll();
+                data.allLines = csvReader.readAll();
                 if (logger.isDebugEnabled()) {
-                    logger.debug(id + ": All lines read from csv file, size=" + allLines.size());
+                    logger.debug(this.getName() + ": All lines read from csv file, size="
+                                 + data.allLines.size());
                 }
             } catch (IOException e) {
-                String message = id + ": CSVReader unable to read csv.source '"
+                String message = this.getName() + ": CSVReader unable to read csv.source '"
                                  + csvSourceFile.getAbsolutePath() + "': " + e;
                 logger.error(message, e);
                 throw new PIPException(message);
             }
         }
+        try {
+            this.buildIndexes(data, this.getParameterColumns());
+        } catch (IOException e) {
+            data.retire();
+            String message = this.getName() + ": unable to index csv.source '"
+                             + csvSourceFile.getAbsolutePath() + "': " + e;
+            logger.error(message, e);
+            throw new PIPException(message);
+        }
+        return data;
+    }
+
+    /**
+     * Copies the CSV file to a temporary snapshot, which is read instead of the file itself until it is
+     * loaded again.
+     *
+     * @return the <code>File</code> of the snapshot
+     * @throws PIPException if the file cannot be copied
+     */
+    private File copySourceFile() throws PIPException {
+        File snapshotFile = null;
+        try {
+            snapshotFile = File.createTempFile("openaz-csv-", ".csv");
+            Files.copy(this.csvSourceFile.toPath(), snapshotFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            return snapshotFile;
+        } catch (IOException e) {
+            if (snapshotFile != null && !snapshotFile.delete()) {
+                snapshotFile.deleteOnExit();
+            }
+            String message = this.getName() + ": unable to copy csv.source '"
+                             + csvSourceFile.getAbsolutePath() + "': " + e;
+            logger.error(message, e);
+            throw new PIPException(message);
+        }
+    }
+
+    /**
+     * Swaps in the given <code>CSVData</code> and retires the one it replaces. Cached results from the
+     * previous records are discarded.
+     *
+     * @param data the new <code>CSVData</code>
+     */
+    private void replaceCSVData(CSVData data) {
+        CSVData dataPrevious;
+        synchronized (this.reloadLock) {
+            dataPrevious = this.csvData;
+            this.csvData = data;
+            if (this.getCache() != null) {
+                this.getCache().invalidateAll();
+            }
+        }
+        if (dataPrevious != null) {
+            dataPrevious.retire();
+        }
+    }
+
+    /**
+     * Gets the current <code>CSVData</code> for a request, which must release it when it is done.
+     *
+     * @return the acquired <code>CSVData</code>
+     */
+    private CSVData acquireCSVData() {
+        CSVData data = this.csvData;
+        while (!data.acquire()) {
+            data = this.csvData;
+        }
+        return data;
+    }
+
+    /**
+     * Reads the CSV file again and swaps the new records in once they are all read and indexed. Cached
+     * results from the previous records are discarded.
+     *
+     * @throws PIPException if the file cannot be read, in which case the previous records are kept
+     */
+    public void reload() throws PIPException {
+        CSVData data = this.loadCSVData();
+        this.replaceCSVData(data);
+        this.logger.info(this.getName() + ": reloaded " + data.getRecordCount() + " records from "
+                         + this.csvSourceFile.getAbsolutePath());
+    }
+
+    @Override
+    public void sourceChanged(File source) throws PIPException {
+        this.reload();
+    }
+
+    /**
+     * Gets the number of records in the current load of the CSV file.
+     *
+     * @return the number of records
+     */
+    public int getRecordCount() {
+        CSVData data = this.csvData;
+        return data == null ? 0 : data.getRecordCount();
+    }
+
+    /**
+     * Gets the <code>CSVSourceWatcher</code> that reloads the CSV file, with the count and latency of its
+     * reloads.
+     *
+     * @return the <code>CSVSourceWatcher</code> or null if the file is not watched
+     */
+    public CSVSourceWatcher getSourceWatcher() {
+        return this.csvSourceWatcher;
+    }
+
+    /**
+     * Gets the data types of the parameter columns of the resolvers that declare them, so they can be
+     * indexed when the engine is configured. Other columns are indexed the first time they are used.
+     *
+     * @return a <code>Map</code> from column number to the data types it is searched by
+     */
+    protected Map<Integer, Set<Identifier>> getParameterColumns() {
+        Map<Integer, Set<Identifier>> mapColumns = new HashMap<Integer, Set<Identifier>>();
+        for (CSVResolver resolver : this.csvResolvers) {
+            if (resolver instanceof ConfigurableCSVResolver) {
+                for (Map.Entry<Integer, PIPRequest> entry : ((ConfigurableCSVResolver)resolver)
+                    .getParameterColumns().entrySet()) {
+                    Set<Identifier> dataTypeIds = mapColumns.get(entry.getKey());
+                    if (dataTypeIds == null) {
+                        dataTypeIds = new HashSet<Identifier>();
+                        mapColumns.put(entry.getKey(), dataTypeIds);
+                    }
+                    dataTypeIds.add(entry.getValue().getDataTypeId());
+                }
+            }
+        }
+        return mapColumns;
+    }
+
+    private static String getIndexKey(int column, Identifier dataTypeId) {
+        return column + ":" + dataTypeId.stringValue();
+    }
+
+    /**
+     * Builds a {@link CSVIndex} for each of the given columns and data types that is not indexed yet in a
+     * single pass over the records. For big files the pass also records the offset of each record.
+     *
+     * @param data the <code>CSVData</code> to index
+     * @param mapColumns a <code>Map</code> from column number to the data types to index it by
+     * @throws IOException if there is an error reading the file
+     */
+    private void buildIndexes(CSVData data, Map<Integer, Set<Identifier>> mapColumns) throws IOException {
+        synchronized (data) {
+            this.buildIndexesLocked(data, mapColumns);
+        }
+    }
+
+    private void buildIndexesLocked(CSVData data, Map<Integer, Set<Identifier>> mapColumns)
+        throws IOException {
+        List<String> listKeys = new ArrayList<String>();
+        List<Integer> listColumns = new ArrayList<Integer>();
+        List<DataType<?>> listDataTypes = new ArrayList<DataType<?>>();
+        List<CSVIndex> listIndexes = new ArrayList<CSVIndex>();
+        for (Map.Entry<Integer, Set<Identifier>> entry : mapColumns.entrySet()) {
+            for (Identifier dataTypeId : entry.getValue()) {
+                String indexKey = getIndexKey(entry.getKey(), dataTypeId);
+                DataType<?> dataType = dataTypeFactory.getDataType(dataTypeId);
+                if (dataType != null && !data.indexes.containsKey(indexKey)) {
+                    listKeys.add(indexKey);
+                    listColumns.add(entry.getKey());
+                    listDataTypes.add(dataType);
+                    listIndexes.add(new CSVIndex());
+                }
+            }
+        }
+        //
+        // the first pass over a big file also records where each record is
+        //
+        boolean readOffsets = data.fileIsBig && data.recordOffsets == null;
+        if (listKeys.isEmpty() && !readOffsets) {
+            return;
+        }
+        if (!data.fileIsBig) {
+            for (int record = 0; record < data.allLines.size(); record++) {
+                indexRecord(data.allLines.get(record), record, listColumns, listDataTypes, listIndexes);
+            }
+        } else {
+            long[] offsets = new long[1024];
+            int[] lengths = new int[1024];
+            int record = 0;
+            try (RecordReader recordReader = new RecordReader(data.snapshotFile, this.csvDelimiter,
+                                                              this.csvQuote, this.csvSkip)) {
+                String[] line;
+                while ((line = recordReader.readNext()) != null) {
+                    if (record == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, record * 2);
+                        lengths = Arrays.copyOf(lengths, record * 2);
+                    }
+                    offsets[record] = recordReader.getRecordOffset();
+                    lengths[record] = recordReader.getRecordLength();
+                    indexRecord(line, record, listColumns, listDataTypes, listIndexes);
+                    record++;
+                }
+            }
+            if (readOffsets) {
+                data.recordOffsets = Arrays.copyOf(offsets, record);
+                data.recordLengths = Arrays.copyOf(lengths, record);
+            }
+        }
+        for (int i = 0; i < listKeys.size(); i++) {
+            CSVIndex csvIndex = listIndexes.get(i);
+            csvIndex.seal();
+            data.indexes.put(listKeys.get(i), csvIndex);
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug(this.getName() + ": indexed " + csvIndex.size() + " records by "
+                                  + listKeys.get(i));
+            }
+        }
+    }
+
+    private static void indexRecord(String[] line, int record, List<Integer> listColumns,
+                                    List<DataType<?>> listDataTypes, List<CSVIndex> listIndexes) {
+        for (int i = 0; i < listColumns.size(); i++) {
+            int column = listColumns.get(i);
+            if (column >= line.length || line[column].length() == 0) {
+                continue;
+            }
+            try {
+                Object convertedValue = listDataTypes.get(i).convert(line[column]);
+                if (convertedValue != null) {
+                    listIndexes.get(i).add(convertedValue, record);
+                }
+            } catch (DataTypeException e) { //NOPMD
+                //
+                // A value that cannot be converted never matches a parameter
+                //
+            }
+        }
+    }
+
+    /**
+     * Gets the {@link CSVIndex} for the given column and data type, building it if needed.
+     *
+     * @param data the <code>CSVData</code> to look in
+     * @param column the column number
+     * @param dataTypeId the <code>Identifier</code> of the data type of the values to look up
+     * @return the <code>CSVIndex</code> or null if the data type is unknown
+     * @throws IOException if there is an error reading the file
+     */
+    private CSVIndex getIndex(CSVData data, int column, Identifier dataTypeId) throws IOException {
+        String indexKey = getIndexKey(column, dataTypeId);
+        CSVIndex csvIndex = data.indexes.get(indexKey);
+        if (csvIndex == null) {
+            this.buildIndexes(data, Collections.singletonMap(column, Collections.singleton(dataTypeId)));
+            csvIndex = data.indexes.get(indexKey);
+        }
+        return csvIndex;
+    }
+
+    /**
+     * Uses the indexes on the parameter columns to find the records that may match the given parameter
+     * values. The candidates come from the column that narrows them down the most; every record returned must
+     * still be checked with <code>doesLineMatch</code>.
+     *
+     * @param data the <code>CSVData</code> to look in
+     * @param listParameters the column parameter values of each resolver
+     * @return the <code>SortedSet</code> of record numbers, or null if the records cannot be narrowed down
+     * @throws IOException if there is an error reading the file
+     */
+    private SortedSet<Integer> getCandidateRecords(CSVData data,
+                                                   List<Map<Integer, List<AttributeValue<?>>>> listParameters)
+        throws IOException {
+        SortedSet<Integer> candidateRecords = null;
+        for (Map<Integer, List<AttributeValue<?>>> map : listParameters) {
+            for (Map.Entry<Integer, List<AttributeValue<?>>> entry : map.entrySet()) {
+                SortedSet<Integer> records = new TreeSet<Integer>();
+                for (AttributeValue<?> value : entry.getValue()) {
+                    CSVIndex csvIndex = this.getIndex(data, entry.getKey(), value.getDataTypeId());
+                    if (csvIndex == null || value.getValue() == null) {
+                        records = null;
+                        break;
+                    }
+                    csvIndex.getRecords(value.getValue(), records);
+                }
+                if (records != null
+                    && (candidateRecords == null || records.size() < candidateRecords.size())) {
+                    candidateRecords = records;
+                }
+            }
+        }
+        return candidateRecords;
+    }
+
+    /**
+     * Reads a single record of a big file at the offset found when it was indexed.
+     *
+     * @param data the <code>CSVData</code> with the record offsets
+     * @param randomAccessFile the <code>RandomAccessFile</code> open on the snapshot of the CSV file
+     * @param record the number of the record
+     * @return the fields of the record, or null if the snapshot is shorter than when it was indexed
+     * @throws IOException if there is an error reading the file
+     */
+    private String[] readRecord(CSVData data, RandomAccessFile randomAccessFile, int record)
+        throws IOException {
+        if (data.recordOffsets[record] + data.recordLengths[record] > randomAccessFile.length()) {
+            return null;
+        }
+        byte[] bytes = new byte[data.recordLengths[record]];
+        randomAccessFile.seek(data.recordOffsets[record]);
+        randomAccessFile.readFully(bytes);
+        String recordText = new String(bytes, Charset.defaultCharset());
+        try (CSVReader csvReader = new CSVReader(new StringReader(recordText), csvDelimiter, csvQuote)) {
+            return csvReader.readNext();
+        }
     }
 
     /**
@@ -303,7 +826,7 @@ public class CSVEngine extends StdConfigurableEngine {
         //
         // Do any of our resolvers support this?
         //
-        List<CSVResolver> resolvers = new ArrayList<CSVResolver>();
+        final List<CSVResolver> resolvers = new ArrayList<CSVResolver>();
         for (CSVResolver resolver : this.csvResolvers) {
             if (resolver.supportRequest(pipRequest)) {
                 resolvers.add(resolver);
@@ -321,7 +844,8 @@ public class CSVEngine extends StdConfigurableEngine {
         //
         // We have at least one, have the resolvers prepare themselves.
         //
-        List<Map<Integer, List<AttributeValue<?>>>> listParameters = new ArrayList<Map<Integer, List<AttributeValue<?>>>>();
+        final List<Map<Integer, List<AttributeValue<?>>>> listParameters =
+            new ArrayList<Map<Integer, List<AttributeValue<?>>>>();
         for (CSVResolver resolver : resolvers) {
             Map<Integer, List<AttributeValue<?>>> map = resolver.getColumnParameterValues(this, pipRequest,
                                                                                           pipFinder);
@@ -335,35 +859,85 @@ public class CSVEngine extends StdConfigurableEngine {
             listParameters.add(map);
         }
         //
+        // The lines that match depend on which resolvers take part and on their parameter values
+        //
+        String cacheKey = null;
+        if (this.isKeyed()) {
+            List<Object> listKeyParts = new ArrayList<Object>();
+            for (int i = 0; i < resolvers.size(); i++) {
+                listKeyParts.add(this.csvResolvers.indexOf(resolvers.get(i)));
+                listKeyParts.add(new TreeMap<Integer, List<AttributeValue<?>>>(listParameters.get(i)));
+            }
+            cacheKey = this.newCacheKey(this.csvResolvers.indexOf(resolvers.get(0)), listKeyParts.toArray());
+        }
+        //
+        // Use the cache, or search the file unless the same search is already running
+        //
+        final String searchCacheKey = cacheKey;
+        return this.getResponse(cacheKey, new Callable<PIPResponse>() {
+            @Override
+            public PIPResponse call() {
+                return CSVEngine.this.findAttributes(resolvers, listParameters, searchCacheKey);
+            }
+        });
+    }
+
+    private PIPResponse findAttributes(List<CSVResolver> resolvers,
+                                       List<Map<Integer, List<AttributeValue<?>>>> listParameters,
+                                       String cacheKey) {
+        //
         // Look at each line of the file to see if it matches the (non-unique) criteria in the parameters
         // and add the value in the associated column from the CSV file to the list of response Attributes.
         //
         StdMutablePIPResponse mutablePIPResponse = new StdMutablePIPResponse();
         //
+        // use the same load of the file throughout, even if it is reloaded in the meantime
+        //
+        CSVData data = this.acquireCSVData();
+        //
         // for smaller files, this is the index in the allLines List
         //
         int lineIndex = 0;
         //
-        // for big files we need to read one line at a time from the CSVReader
+        // for big files we need to read one line at a time from the CSVReader, or the records an index
+        // points to directly from the file
         //
         CSVReader csvReader = null;
+        RandomAccessFile randomAccessFile = null;
 
         try {
-            if (this.fileIsBig) {
-                csvReader = new CSVReader(new FileReader(csvSourceFile), csvDelimiter, csvQuote, csvSkip);
+            Iterator<Integer> iterCandidateRecords = null;
+            SortedSet<Integer> candidateRecords = this.getCandidateRecords(data, listParameters);
+            if (candidateRecords != null) {
+                iterCandidateRecords = candidateRecords.iterator();
+                if (data.fileIsBig && candidateRecords.size() > 0) {
+                    randomAccessFile = new RandomAccessFile(data.snapshotFile, "r");
+                }
+            } else if (data.fileIsBig) {
+                csvReader = new CSVReader(new FileReader(data.snapshotFile), csvDelimiter, csvQuote, csvSkip);
             }
 
             while (true) {
                 String[] line = null;
-                if (this.fileIsBig) {
+                if (iterCandidateRecords != null) {
+                    if (!iterCandidateRecords.hasNext()) {
+                        break;
+                    }
+                    int record = iterCandidateRecords.next();
+                    line = data.fileIsBig
+                        ? this.readRecord(data, randomAccessFile, record) : data.allLines.get(record);
+                    if (line == null) {
+                        continue;
+                    }
+                } else if (data.fileIsBig) {
                     line = csvReader.readNext();
                     if (line == null) {
                         // end of file
                         break;
                     }
                 } else {
-                    if (lineIndex < this.allLines.size()) {
-                        line = this.allLines.get(lineIndex);
+                    if (lineIndex < data.allLines.size()) {
+                        line = data.allLines.get(lineIndex);
                         lineIndex++;
                     } else {
                         //
@@ -400,6 +974,14 @@ public class CSVEngine extends StdConfigurableEngine {
                     this.logger.debug(System.lineSeparator() + AttributeUtils.prettyPrint(attribute));
                 }
             }
+            synchronized (this.reloadLock) {
+                //
+                // Results from records that have since been replaced are not cached
+                //
+                if (data == this.csvData) {
+                    this.putCachedResponse(cacheKey, mutablePIPResponse.getAttributes());
+                }
+            }
             return new StdPIPResponse(mutablePIPResponse);
         } catch (Exception e) {
             String message = this.getName() + ": Error processing line: " + e;
@@ -414,6 +996,14 @@ public class CSVEngine extends StdConfigurableEngine {
                     this.logger.error("Close CSV Reader: " + e.getLocalizedMessage());
                 }
             }
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    this.logger.error("Close CSV file: " + e.getLocalizedMessage());
+                }
+            }
+            data.release();
         }
     }
 
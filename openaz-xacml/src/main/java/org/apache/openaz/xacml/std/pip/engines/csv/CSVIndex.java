@@ -0,0 +1,100 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines.csv;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * CSVIndex indexes the records of a CSV file by the value of one column, converted to one XACML data type, so
+ * that the {@link CSVEngine} can find the records that may match a parameter value with a binary search
+ * instead of reading every record. Only the hash code of each value is kept together with the record number,
+ * so the index stays small even for files that are too big to hold in memory. Different values can share a
+ * hash code, so callers must still check the records that are returned.
+ */
+public class CSVIndex {
+    private long[] entries = new long[16];
+    private int size;
+    private boolean sorted;
+
+    public CSVIndex() {
+    }
+
+    /**
+     * Adds a record with the given value. All records must be added before the first call to
+     * <code>getRecords</code>.
+     *
+     * @param value the converted <code>Object</code> value of the indexed column in the record
+     * @param record the number of the record in the file
+     */
+    public void add(Object value, int record) {
+        if (this.size == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, this.size * 2);
+        }
+        this.entries[this.size++] = ((long)value.hashCode() << 32) | (record & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sorts the index once all of the records have been added.
+     */
+    public void seal() {
+        if (this.entries.length > this.size) {
+            this.entries = Arrays.copyOf(this.entries, this.size);
+        }
+        Arrays.sort(this.entries);
+        this.sorted = true;
+    }
+
+    /**
+     * Adds the numbers of the records that may have the given value to the given <code>Collection</code>.
+     *
+     * @param value the converted <code>Object</code> value to look up
+     * @param records the <code>Collection</code> to add the record numbers to
+     */
+    public void getRecords(Object value, Collection<Integer> records) {
+        if (!this.sorted) {
+            throw new IllegalStateException("CSVIndex has not been sealed");
+        }
+        int hash = value.hashCode();
+        long key = (long)hash << 32;
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.entries[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < this.size && (int)(this.entries[i] >>> 32) == hash; i++) {
+            records.add((int)this.entries[i]);
+        }
+    }
+
+    /**
+     * Gets the number of records in this <code>CSVIndex</code>.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return this.size;
+    }
+}
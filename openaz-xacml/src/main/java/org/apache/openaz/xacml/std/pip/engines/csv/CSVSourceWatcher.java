@@ -0,0 +1,236 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines.csv;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.openaz.xacml.api.pip.PIPException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * CSVSourceWatcher polls the modification time and length of the source file of a CSV PIP engine and tells
+ * its {@link Listener} to reload the file in the background when it changes. A change is only acted on once
+ * the file has looked the same for two polls in a row, so a file that is still being written is not loaded.
+ * Polling is used rather than a <code>WatchService</code> so that files on network file systems and files
+ * replaced by a rename are noticed as well.
+ * <p>
+ * All watchers share one thread for polling, which only looks at the file attributes. Reloads run on
+ * threads of their own, one at a time for each file, so a slow reload of one file does not hold up the
+ * others.
+ * <p>
+ * The listener is only weakly referenced, so an engine that is discarded when the PDP is reconfigured stops
+ * being watched once it is garbage collected.
+ */
+public class CSVSourceWatcher implements Runnable {
+    private static final ScheduledExecutorService SCHEDULER = Executors
+        .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("openaz-csv-watcher-%d").build());
+    private static final ExecutorService RELOAD_EXECUTOR = Executors
+        .newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("openaz-csv-reload-%d")
+            .build());
+
+    private Log logger = LogFactory.getLog(this.getClass());
+
+    /**
+     * Listener is implemented by the engines that can reload their source file.
+     */
+    public interface Listener {
+        /**
+         * Reloads the given source file, replacing the data from the previous load only once the new data
+         * is complete.
+         *
+         * @param source the <code>File</code> that changed
+         * @throws PIPException if the file cannot be loaded, in which case the previous data is kept
+         */
+        void sourceChanged(File source) throws PIPException;
+    }
+
+    private final File source;
+    private final WeakReference<Listener> listener;
+    private long lastModified;
+    private long length;
+    private long pendingLastModified = -1;
+    private long pendingLength = -1;
+    private ScheduledFuture<?> scheduledFuture;
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    private volatile long reloadCount;
+    private volatile long failureCount;
+    private volatile long lastReloadTime;
+    private volatile long lastReloadLatency;
+
+    /**
+     * Creates a <code>CSVSourceWatcher</code> for a source file that has just been loaded.
+     *
+     * @param sourceIn the <code>File</code> to watch
+     * @param listenerIn the <code>Listener</code> to tell about changes
+     */
+    public CSVSourceWatcher(File sourceIn, Listener listenerIn) {
+        this.source = sourceIn;
+        this.listener = new WeakReference<Listener>(listenerIn);
+        this.lastModified = sourceIn.lastModified();
+        this.length = sourceIn.length();
+    }
+
+    /**
+     * Starts polling the source file.
+     *
+     * @param interval the number of milliseconds between polls
+     */
+    public synchronized void start(long interval) {
+        if (this.scheduledFuture == null) {
+            this.scheduledFuture = SCHEDULER.scheduleWithFixedDelay(this, interval, interval,
+                                                                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops polling the source file.
+     */
+    public synchronized void stop() {
+        if (this.scheduledFuture != null) {
+            this.scheduledFuture.cancel(false);
+            this.scheduledFuture = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        Listener thisListener = this.listener.get();
+        if (thisListener == null) {
+            this.stop();
+            return;
+        }
+        if (this.reloading.get()) {
+            //
+            // Look at the file again once the reload that is running has finished
+            //
+            return;
+        }
+        long currentLastModified = this.source.lastModified();
+        long currentLength = this.source.length();
+        if (currentLastModified == 0 || currentLastModified == this.lastModified
+            && currentLength == this.length) {
+            this.pendingLastModified = -1;
+            this.pendingLength = -1;
+            return;
+        }
+        if (currentLastModified != this.pendingLastModified || currentLength != this.pendingLength) {
+            //
+            // Wait for the file to settle before loading it
+            //
+            this.pendingLastModified = currentLastModified;
+            this.pendingLength = currentLength;
+            return;
+        }
+        this.lastModified = currentLastModified;
+        this.length = currentLength;
+        this.reloading.set(true);
+        try {
+            RELOAD_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        CSVSourceWatcher.this.reload();
+                    } finally {
+                        CSVSourceWatcher.this.reloading.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.reloading.set(false);
+            this.failureCount++;
+            this.logger.error("Failed to start reloading " + this.source.getAbsolutePath() + ": "
+                              + ex.getMessage());
+        }
+    }
+
+    /**
+     * Tells the listener to reload the source file and records how long it took.
+     */
+    private void reload() {
+        Listener thisListener = this.listener.get();
+        if (thisListener == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            thisListener.sourceChanged(this.source);
+            this.lastReloadTime = System.currentTimeMillis();
+            this.lastReloadLatency = this.lastReloadTime - start;
+            this.reloadCount++;
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug("Reloaded " + this.source.getAbsolutePath() + " in "
+                                  + this.lastReloadLatency + "ms");
+            }
+        } catch (Exception ex) {
+            this.failureCount++;
+            this.logger.error("Failed to reload " + this.source.getAbsolutePath() + ": " + ex.getMessage(),
+                              ex);
+        }
+    }
+
+    /**
+     * Gets the number of times the source file has been reloaded.
+     *
+     * @return the number of successful reloads
+     */
+    public long getReloadCount() {
+        return this.reloadCount;
+    }
+
+    /**
+     * Gets the number of times reloading the source file failed.
+     *
+     * @return the number of failed reloads
+     */
+    public long getFailureCount() {
+        return this.failureCount;
+    }
+
+    /**
+     * Gets the time the source file was last reloaded.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if it has not been reloaded
+     */
+    public long getLastReloadTime() {
+        return this.lastReloadTime;
+    }
+
+    /**
+     * Gets how long the last reload took, from starting to parse the file to swapping in the new data.
+     *
+     * @return the latency of the last reload in milliseconds
+     */
+    public long getLastReloadLatency() {
+        return this.lastReloadLatency;
+    }
+}
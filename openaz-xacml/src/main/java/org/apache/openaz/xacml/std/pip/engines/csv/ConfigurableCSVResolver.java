@@ -32,6 +32,7 @@ package org.apache.openaz.xacml.std.pip.engines.csv;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -230,6 +231,16 @@ public class ConfigurableCSVResolver implements CSVResolver {
         return false;
     }
 
+    /**
+     * Gets the columns this resolver searches with the <code>PIPRequest</code> for the attribute whose values
+     * they are compared to.
+     *
+     * @return an unmodifiable <code>Map</code> from column number to parameter <code>PIPRequest</code>
+     */
+    public Map<Integer, PIPRequest> getParameterColumns() {
+        return Collections.unmodifiableMap(this.parameterMap);
+    }
+
     @Override
     public Map<Integer, List<AttributeValue<?>>> getColumnParameterValues(PIPEngine engine,
                                                                           PIPRequest request, PIPFinder finder)
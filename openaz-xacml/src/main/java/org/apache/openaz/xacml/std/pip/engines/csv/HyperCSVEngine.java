@@ -30,20 +30,39 @@
  */
 package org.apache.openaz.xacml.std.pip.engines.csv;
 
+import java.io.File;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.nio.file.FileSystems;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
 
 import org.apache.openaz.xacml.api.pip.PIPException;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.pip.engines.Configurables;
 import org.apache.openaz.xacml.std.pip.engines.jdbc.JDBCEngine;
 
-public class HyperCSVEngine extends JDBCEngine {
+/**
+ * HyperCSVEngine loads a CSV file into an in-memory HyperSQL text table and queries it as a
+ * {@link org.apache.openaz.xacml.std.pip.engines.jdbc.JDBCEngine}.
+ * <p>
+ * If the "reload.interval" property is set, the file is checked for changes that often (in milliseconds) by
+ * a {@link CSVSourceWatcher} and the text table is re-linked to it. HyperSQL re-reads the table in place, so
+ * requests wait for the reload to finish rather than see a partly loaded table.
+ */
+public class HyperCSVEngine extends JDBCEngine implements CSVSourceWatcher.Listener {
 
     public static final String PROP_SOURCE = "source";
     public static final String PROP_TARGET = "target";
     public static final String PROP_DEFINITION = "definition";
+    public static final String PROP_RELOAD_INTERVAL = "reload.interval";
 
     public static final String HYPER_DRIVER = "org.hsqldb.jdbcDriver";
     public static final String HYPER_URL = "jdbc:hsqldb:mem:xacml";
@@ -58,6 +77,9 @@ public class HyperCSVEngine extends JDBCEngine {
 
     private String source, target, definition;
     private HyperInitState hyperInitState = HyperInitState.init;
+    private ReadWriteLock reloadLock = new ReentrantReadWriteLock();
+    private CSVSourceWatcher csvSourceWatcher;
+    private volatile int recordCount;
 
     public HyperCSVEngine() {
     }
@@ -106,6 +128,94 @@ public class HyperCSVEngine extends JDBCEngine {
         } catch (SQLException sqlx) {
             throw new PIPException("The HyperSQL initialization failed");
         }
+        this.recordCount = this.countRecords();
+        //
+        // watch the source for changes
+        //
+        if (this.csvSourceWatcher != null) {
+            this.csvSourceWatcher.stop();
+            this.csvSourceWatcher = null;
+        }
+        long reloadInterval = Configurables.getLongProperty(id + "." + PROP_RELOAD_INTERVAL, properties, 0);
+        if (reloadInterval > 0) {
+            this.csvSourceWatcher = new CSVSourceWatcher(new File(this.source), this);
+            this.csvSourceWatcher.start(reloadInterval);
+        }
+    }
+
+    @Override
+    public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+        this.reloadLock.readLock().lock();
+        try {
+            return super.getAttributes(pipRequest, pipFinder);
+        } finally {
+            this.reloadLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<PIPResponse> getAttributes(PIPRequest pipRequest, List<PIPFinder> pipFinders)
+        throws PIPException {
+        this.reloadLock.readLock().lock();
+        try {
+            return super.getAttributes(pipRequest, pipFinders);
+        } finally {
+            this.reloadLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected PIPResponse refreshResponse(String cacheKey, Callable<PIPResponse> lookup) throws PIPException {
+        this.reloadLock.readLock().lock();
+        try {
+            return super.refreshResponse(cacheKey, lookup);
+        } finally {
+            this.reloadLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Has HyperSQL read the source file again and discards cached results from the previous contents.
+     *
+     * @throws PIPException if the table cannot be re-linked to the file
+     */
+    public void reload() throws PIPException {
+        this.reloadLock.writeLock().lock();
+        try {
+            this.hyperReload();
+            if (this.getCache() != null) {
+                this.getCache().invalidateAll();
+            }
+            this.recordCount = this.countRecords();
+        } finally {
+            this.reloadLock.writeLock().unlock();
+        }
+        this.logger.info("Reloaded " + this.recordCount + " records in '" + this.target + "' from '"
+                         + this.source + "'");
+    }
+
+    @Override
+    public void sourceChanged(File sourceFile) throws PIPException {
+        this.reload();
+    }
+
+    /**
+     * Gets the number of records in the text table as of the last load of the source file.
+     *
+     * @return the number of records
+     */
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Gets the <code>CSVSourceWatcher</code> that reloads the source file, with the count and latency of its
+     * reloads.
+     *
+     * @return the <code>CSVSourceWatcher</code> or null if the file is not watched
+     */
+    public CSVSourceWatcher getSourceWatcher() {
+        return this.csvSourceWatcher;
     }
 
     /*
@@ -167,4 +277,23 @@ public class HyperCSVEngine extends JDBCEngine {
 
         this.logger.info("Loading '" + this.target + "' from '" + this.source + "' completed");
     }
+
+    private void hyperReload() throws PIPException {
+        try (Connection conn = this.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("SET TABLE " + this.target + " SOURCE OFF");
+            stmt.execute("SET TABLE " + this.target + " SOURCE ON");
+        } catch (SQLException sqlx) {
+            throw new PIPException("Failed to reload HyperSQL table '" + this.target + "'", sqlx);
+        }
+    }
+
+    private int countRecords() throws PIPException {
+        try (Connection conn = this.getConnection();
+            Statement stmt = conn.createStatement();
+            ResultSet resultSet = stmt.executeQuery("SELECT COUNT(*) FROM " + this.target)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        } catch (SQLException sqlx) {
+            throw new PIPException("Failed to count the records in '" + this.target + "'", sqlx);
+        }
+    }
 }
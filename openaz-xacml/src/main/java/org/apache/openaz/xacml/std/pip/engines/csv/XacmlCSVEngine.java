@@ -77,7 +77,7 @@ public class XacmlCSVEngine implements ConfigurableEngine {
     private String name;
     private String description;
     private Map<String, PIPResponse> cache = new HashMap<String, PIPResponse>();
-    private List<Attribute> listAttributes = new ArrayList<Attribute>();
+    private Map<String, List<Attribute>> mapAttributes = new HashMap<String, List<Attribute>>();
     private DataTypeFactory dataTypeFactory;
 
     protected DataTypeFactory getDataTypeFactory() throws FactoryException {
@@ -101,6 +101,10 @@ public class XacmlCSVEngine implements ConfigurableEngine {
         return stringBuilder.toString();
     }
 
+    protected static String generateAttributeKey(Identifier category, Identifier attributeId) {
+        return category.toString() + '+' + attributeId.toString();
+    }
+
     protected void store(String[] fields) throws FactoryException {
         DataTypeFactory thisDataTypeFactory = this.getDataTypeFactory();
         Identifier identifierCategory = new IdentifierImpl(fields[0]);
@@ -123,7 +127,13 @@ public class XacmlCSVEngine implements ConfigurableEngine {
         }
         Attribute attribute = new StdMutableAttribute(identifierCategory, identifierAttribute,
                                                       attributeValue, issuer, false);
-        this.listAttributes.add(attribute);
+        String attributeKey = generateAttributeKey(identifierCategory, identifierAttribute);
+        List<Attribute> listKeyAttributes = this.mapAttributes.get(attributeKey);
+        if (listKeyAttributes == null) {
+            listKeyAttributes = new ArrayList<Attribute>();
+            this.mapAttributes.put(attributeKey, listKeyAttributes);
+        }
+        listKeyAttributes.add(attribute);
     }
 
     public XacmlCSVEngine() {
@@ -158,14 +168,16 @@ public class XacmlCSVEngine implements ConfigurableEngine {
     }
 
     protected Attribute findAttribute(PIPRequest pipRequest) {
+        List<Attribute> listKeyAttributes = this.mapAttributes.get(generateAttributeKey(pipRequest
+            .getCategory(), pipRequest.getAttributeId()));
+        if (listKeyAttributes == null) {
+            return null;
+        }
         Attribute attributeResult = null;
-        Iterator<Attribute> iterAttributes = this.listAttributes.iterator();
+        Iterator<Attribute> iterAttributes = listKeyAttributes.iterator();
         while (attributeResult == null && iterAttributes.hasNext()) {
             Attribute attributeTest = iterAttributes.next();
-            if (pipRequest.getCategory().equals(attributeTest.getCategory())
-                && pipRequest.getAttributeId().equals(attributeTest.getAttributeId())
-                && (pipRequest.getIssuer() == null || pipRequest.getIssuer()
-                    .equals(attributeTest.getIssuer()))) {
+            if (pipRequest.getIssuer() == null || pipRequest.getIssuer().equals(attributeTest.getIssuer())) {
                 attributeResult = attributeTest;
             }
         }
@@ -0,0 +1,99 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.pip.PIPEngine;
+import org.apache.openaz.xacml.api.pip.PIPException;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+
+/**
+ * BatchJDBCResolver extends {@link JDBCResolver} for resolvers that can look up the values for many sets of
+ * query parameters in a single SQL SELECT statement, returning the parameter values in each row so that the
+ * {@link JDBCEngine} can split the rows back up by the request they belong to.
+ */
+public interface BatchJDBCResolver extends JDBCResolver {
+
+    /**
+     * Determines if this <code>BatchJDBCResolver</code> can answer the given <code>PIPRequest</code> with a
+     * batch query.
+     *
+     * @param pipRequest the {@link org.apache.openaz.xacml.api.pip.PIPRequest} to check
+     * @return true if a batch query can be used for the <code>PIPRequest</code>, else false
+     */
+    boolean isBatchSupported(PIPRequest pipRequest);
+
+    /**
+     * Gets the values of the query parameters for a single request.
+     *
+     * @param pipEngine the {@link org.apache.openaz.xacml.api.pip.PIPEngine} making the request
+     * @param pipRequest the <code>PIPRequest</code> with the requested XACML Attributes
+     * @param pipFinder the {@link org.apache.openaz.xacml.api.pip.PIPFinder} for the request
+     * @return the <code>List</code> of parameter values in query order, or null if they are not all
+     *         available
+     * @throws org.apache.openaz.xacml.api.pip.PIPException if there is an error retrieving the values
+     */
+    List<AttributeValue<?>> getParameterValues(PIPEngine pipEngine, PIPRequest pipRequest,
+                                               PIPFinder pipFinder) throws PIPException;
+
+    /**
+     * Creates a {@link java.sql.PreparedStatement} that selects the rows for all of the given sets of
+     * parameter values at once.
+     *
+     * @param pipEngine the <code>PIPEngine</code> making the request
+     * @param pipRequest the <code>PIPRequest</code> with the requested XACML Attributes
+     * @param listParameterValues the <code>List</code> of parameter values, as returned by
+     *            <code>getParameterValues</code>, for each request. A null entry pads the batch to one of a
+     *            few fixed sizes and its parameters are bound to SQL <code>NULL</code>, which selects no
+     *            rows
+     * @param connection the {@link java.sql.Connection} needed to create the <code>PreparedStatement</code>
+     * @return a <code>PreparedStatement</code> for the batch query, or null if it could not be created
+     * @throws org.apache.openaz.xacml.api.pip.PIPException if there is an error creating the
+     *             <code>PreparedStatement</code>
+     */
+    PreparedStatement getBatchPreparedStatement(PIPEngine pipEngine, PIPRequest pipRequest,
+                                                List<List<AttributeValue<?>>> listParameterValues,
+                                                Connection connection) throws PIPException;
+
+    /**
+     * Gets the key for a set of parameter values. It must be equal to the key returned by
+     * {@link #getBatchKey(ResultSet)} for the rows selected by those values.
+     *
+     * @param parameterValues the <code>List</code> of parameter values for a request
+     * @return the key <code>Object</code>
+     */
+    Object getBatchKey(List<AttributeValue<?>> parameterValues);
+
+    /**
+     * Gets the key for the current row of the <code>ResultSet</code> of a batch query from the parameter
+     * values it was selected by.
+     *
+     * @param resultSet the {@link java.sql.ResultSet} positioned on a row
+     * @return the key <code>Object</code>
+     * @throws org.apache.openaz.xacml.api.pip.PIPException if the key cannot be read
+     */
+    Object getBatchKey(ResultSet resultSet) throws PIPException;
+}
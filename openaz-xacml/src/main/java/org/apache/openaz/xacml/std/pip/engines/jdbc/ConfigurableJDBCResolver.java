@@ -34,7 +34,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -48,6 +50,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.openaz.xacml.api.Attribute;
 import org.apache.openaz.xacml.api.AttributeValue;
 import org.apache.openaz.xacml.api.DataType;
+import org.apache.openaz.xacml.api.DataTypeException;
 import org.apache.openaz.xacml.api.DataTypeFactory;
 import org.apache.openaz.xacml.api.Identifier;
 import org.apache.openaz.xacml.api.XACML3;
@@ -69,13 +72,25 @@ import com.google.common.base.Splitter;
 /**
  * Implements the {@link JDBCResolver} for SQL queries with parameters in their prepared statements specified
  * as XACML Attribute values.
+ * <p>
+ * If a "batch.select" query is configured, it is also a {@link BatchJDBCResolver}. The batch query contains
+ * the token <code>{parameters}</code>, which is replaced by a place-holder for each parameter value of each
+ * request: <code>?, ?, ?</code> when there is one parameter, <code>(?, ?), (?, ?)</code> when there are
+ * more, so it can be used in an <code>IN</code> list or a <code>VALUES</code> table. The "batch.keys"
+ * property lists the columns of the result that hold the parameter values, in parameter order. Rows are
+ * matched to requests by the values of those columns, read as the data types of the parameters. The engine
+ * pads a batch to a power of two requests with null entries, whose parameters are bound to SQL
+ * <code>NULL</code> so they match no rows.
  */
-public class ConfigurableJDBCResolver implements JDBCResolver {
+public class ConfigurableJDBCResolver implements BatchJDBCResolver {
     public static final String PROP_SELECT = "select";
     public static final String PROP_SELECT_FIELDS = "fields";
     public static final String PROP_SELECT_FIELD = "field";
     public static final String PROP_SELECT_PARAMETERS = "parameters";
     public static final String PROP_SELECT_PARAMETER = "parameter";
+    public static final String PROP_BATCH_SELECT = "batch.select";
+    public static final String PROP_BATCH_KEYS = "batch.keys";
+    public static final String BATCH_PARAMETERS = "{parameters}";
 
     private Log logger = LogFactory.getLog(this.getClass());
     private String defaultIssuer;
@@ -84,6 +99,8 @@ public class ConfigurableJDBCResolver implements JDBCResolver {
     private Map<String, PIPRequest> mapFields = new HashMap<String, PIPRequest>();
     private String sqlQuery;
     private List<PIPRequest> parameters = new ArrayList<PIPRequest>();
+    private String batchQuery;
+    private List<String> batchKeys = new ArrayList<String>();
     private static DataTypeFactory dataTypeFactory = null;
 
     static {
@@ -276,6 +293,33 @@ public class ConfigurableJDBCResolver implements JDBCResolver {
                 this.configureParameter(id, parameter, properties);
             }
         }
+
+        /*
+         * Get the optional batch query and the columns holding its keys
+         */
+        stringProp = idPrefix + PROP_BATCH_SELECT;
+        this.batchQuery = properties.getProperty(stringProp);
+        if (this.batchQuery != null && this.batchQuery.length() > 0) {
+            if (!this.batchQuery.contains(BATCH_PARAMETERS) || this.parameters.size() == 0) {
+                this.logger.error("'" + stringProp + "' property must contain " + BATCH_PARAMETERS
+                                  + " and the query must have parameters");
+                throw new PIPException("'" + stringProp + "' property must contain " + BATCH_PARAMETERS
+                                       + " and the query must have parameters");
+            }
+            stringProp = idPrefix + PROP_BATCH_KEYS;
+            String keys = properties.getProperty(stringProp);
+            if (keys != null) {
+                for (String key : Splitter.on(',').trimResults().omitEmptyStrings().split(keys)) {
+                    this.batchKeys.add(key);
+                }
+            }
+            if (this.batchKeys.size() != this.parameters.size()) {
+                this.logger.error("'" + stringProp + "' property must name a column for each parameter");
+                throw new PIPException("'" + stringProp + "' property must name a column for each parameter");
+            }
+        } else {
+            this.batchQuery = null;
+        }
     }
 
     @Override
@@ -289,6 +333,15 @@ public class ConfigurableJDBCResolver implements JDBCResolver {
             return null;
         }
 
+        /*
+         * Gather all of the AttributeValues for parameters to the prepared statement
+         */
+        List<AttributeValue<?>> listParameterValues = this.getParameterValues(pipEngine, pipRequest,
+                                                                              pipFinder);
+        if (listParameterValues == null) {
+            return null;
+        }
+
         PreparedStatement preparedStatement = null;
         try {
             preparedStatement = connection.prepareStatement(this.sqlQuery);
@@ -297,92 +350,272 @@ public class ConfigurableJDBCResolver implements JDBCResolver {
             // TODO: throw the exception or return a null PreparedStatement?
             return null;
         }
+        for (int i = 0; i < listParameterValues.size(); i++) {
+            if (!this.setParameter(preparedStatement, i + 1, listParameterValues.get(i))) {
+                return null;
+            }
+        }
+        return preparedStatement;
+    }
 
-        if (this.parameters.size() > 0) {
-            /*
-             * Gather all of the AttributeValues for parameters to the prepared statement. For now, we assume
-             * a single value for each parameter. If there are multiple values we will log an error and return
-             * a null PreparedStatement. TODO: Should the interface change to return a cross-product of
-             * PreparedStatements to deal with multiple values for parameters? If not, should we just take the
-             * first value and use it as the parameter value?
-             */
-            for (int i = 0; i < this.parameters.size(); i++) {
-                PIPRequest pipRequestParameter = this.parameters.get(i);
-                PIPResponse pipResponse = pipFinder.getMatchingAttributes(pipRequestParameter, null);
-                if (pipResponse.getStatus() == null || pipResponse.getStatus().isOk()) {
-                    Collection<Attribute> listAttributes = pipResponse.getAttributes();
-                    if (listAttributes.size() > 0) {
-                        if (listAttributes.size() > 1) {
-                            this.logger.error("PIPFinder returned more than one Attribute for "
-                                              + pipRequestParameter.toString());
-                            throw new PIPException("PIPFinder returned more than one Attribute for "
-                                                   + pipRequestParameter.toString());
-                        }
-                        Collection<AttributeValue<?>> listAttributeValuesReturned = listAttributes.iterator()
-                            .next().getValues();
-                        if (listAttributeValuesReturned.size() > 0) {
-                            if (listAttributeValuesReturned.size() > 1) {
-                                this.logger.warn("PIPFinder returned more than one AttributeValue for "
-                                                 + pipRequestParameter.toString());
-                                return null;
-                            }
-                            AttributeValue<?> attributeValue = listAttributeValuesReturned.iterator().next();
-                            Identifier identifierAttributeValueDataType = attributeValue.getDataTypeId();
-                            try {
-                                if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_INTEGER)) {
-                                    preparedStatement.setInt(i + 1,
-                                                             DataTypes.DT_INTEGER.convert(attributeValue
-                                                                                              .getValue())
-                                                                 .intValue());
-                                } else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DOUBLE)) {
-                                    preparedStatement.setDouble(i + 1, DataTypes.DT_DOUBLE
-                                        .convert(attributeValue.getValue()));
-                                } else if (identifierAttributeValueDataType
-                                    .equals(XACML3.ID_DATATYPE_BOOLEAN)) {
-                                    preparedStatement.setBoolean(i + 1, DataTypes.DT_BOOLEAN
-                                        .convert(attributeValue.getValue()));
-                                } else if (identifierAttributeValueDataType
-                                    .equals(XACML3.ID_DATATYPE_DATETIME)) {
-                                    ISO8601DateTime iso8601DateTime = DataTypes.DT_DATETIME
-                                        .convert(attributeValue.getValue());
-                                    java.sql.Date sqlDate = new java.sql.Date(iso8601DateTime.getCalendar()
-                                        .getTimeInMillis());
-                                    preparedStatement.setDate(i + 1, sqlDate, iso8601DateTime.getCalendar());
-                                } else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DATE)) {
-                                    ISO8601Date iso8601Date = DataTypes.DT_DATE.convert(attributeValue
-                                        .getValue());
-                                    java.sql.Date sqlDate = new java.sql.Date(iso8601Date.getCalendar()
-                                        .getTimeInMillis());
-                                    preparedStatement.setDate(i + 1, sqlDate, iso8601Date.getCalendar());
-                                } else {
-                                    preparedStatement.setString(i + 1, DataTypes.DT_STRING
-                                        .convert(attributeValue.getValue()));
-                                }
-                            } catch (Exception ex) {
-                                this.logger.error("Exception setting parameter " + (i + 1) + " to "
-                                                  + attributeValue.toString() + ": " + ex.toString(), ex);
-                                return null;
-                            }
-                        } else {
-                            this.logger.warn("No AttributeValues returned for parameter "
-                                             + pipRequestParameter.toString());
-                            return null;
-                        }
-                    } else {
-                        this.logger.warn("No Attributes returned for parameter "
-                                         + pipRequestParameter.toString());
+    @Override
+    public List<AttributeValue<?>> getParameterValues(PIPEngine pipEngine, PIPRequest pipRequest,
+                                                      PIPFinder pipFinder) throws PIPException {
+        /*
+         * For now, we assume a single value for each parameter. If there are multiple values we will log an
+         * error and return null. TODO: Should the interface change to return a cross-product of
+         * PreparedStatements to deal with multiple values for parameters? If not, should we just take the
+         * first value and use it as the parameter value?
+         */
+        List<AttributeValue<?>> listParameterValues = new ArrayList<AttributeValue<?>>(this.parameters.size());
+        for (PIPRequest pipRequestParameter : this.parameters) {
+            PIPResponse pipResponse = pipFinder.getMatchingAttributes(pipRequestParameter, null);
+            if (pipResponse.getStatus() != null && !pipResponse.getStatus().isOk()) {
+                this.logger.warn("PIPFinder returned status " + pipResponse.getStatus().toString());
+                return null;
+            }
+            Collection<Attribute> listAttributes = pipResponse.getAttributes();
+            if (listAttributes.size() == 0) {
+                this.logger.warn("No Attributes returned for parameter " + pipRequestParameter.toString());
+                return null;
+            } else if (listAttributes.size() > 1) {
+                this.logger.error("PIPFinder returned more than one Attribute for "
+                                  + pipRequestParameter.toString());
+                throw new PIPException("PIPFinder returned more than one Attribute for "
+                                       + pipRequestParameter.toString());
+            }
+            Collection<AttributeValue<?>> listAttributeValuesReturned = listAttributes.iterator().next()
+                .getValues();
+            if (listAttributeValuesReturned.size() == 0) {
+                this.logger.warn("No AttributeValues returned for parameter " + pipRequestParameter.toString());
+                return null;
+            } else if (listAttributeValuesReturned.size() > 1) {
+                this.logger.warn("PIPFinder returned more than one AttributeValue for "
+                                 + pipRequestParameter.toString());
+                return null;
+            }
+            listParameterValues.add(listAttributeValuesReturned.iterator().next());
+        }
+        return listParameterValues;
+    }
+
+    /**
+     * Sets the parameter at the given index of the <code>PreparedStatement</code> to the given
+     * <code>AttributeValue</code>, converted according to its data type.
+     *
+     * @param preparedStatement the <code>PreparedStatement</code> to set the parameter on
+     * @param index the index of the parameter, starting at 1
+     * @param attributeValue the <code>AttributeValue</code> for the parameter
+     * @return true if the parameter was set, false if there was an error
+     */
+    protected boolean setParameter(PreparedStatement preparedStatement, int index,
+                                   AttributeValue<?> attributeValue) {
+        Identifier identifierAttributeValueDataType = attributeValue.getDataTypeId();
+        try {
+            if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_INTEGER)) {
+                preparedStatement.setInt(index, DataTypes.DT_INTEGER.convert(attributeValue.getValue())
+                    .intValue());
+            } else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DOUBLE)) {
+                preparedStatement.setDouble(index, DataTypes.DT_DOUBLE.convert(attributeValue.getValue()));
+            } else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_BOOLEAN)) {
+                preparedStatement.setBoolean(index, DataTypes.DT_BOOLEAN.convert(attributeValue.getValue()));
+            } else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DATETIME)) {
+                ISO8601DateTime iso8601DateTime = DataTypes.DT_DATETIME.convert(attributeValue.getValue());
+                java.sql.Date sqlDate = new java.sql.Date(iso8601DateTime.getCalendar().getTimeInMillis());
+                preparedStatement.setDate(index, sqlDate, iso8601DateTime.getCalendar());
+            } else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DATE)) {
+                ISO8601Date iso8601Date = DataTypes.DT_DATE.convert(attributeValue.getValue());
+                java.sql.Date sqlDate = new java.sql.Date(iso8601Date.getCalendar().getTimeInMillis());
+                preparedStatement.setDate(index, sqlDate, iso8601Date.getCalendar());
+            } else {
+                preparedStatement.setString(index, DataTypes.DT_STRING.convert(attributeValue.getValue()));
+            }
+            return true;
+        } catch (Exception ex) {
+            this.logger.error("Exception setting parameter " + index + " to " + attributeValue.toString()
+                              + ": " + ex.toString(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Sets the parameter at the given index to SQL <code>NULL</code> of the type <code>setParameter</code>
+     * would use for a value of the given data type.
+     *
+     * @param preparedStatement the <code>PreparedStatement</code> to set the parameter of
+     * @param index the index of the parameter
+     * @param identifierDataType the XACML data type of the parameter
+     * @return true if the parameter was set, else false
+     */
+    protected boolean setNullParameter(PreparedStatement preparedStatement, int index,
+                                       Identifier identifierDataType) {
+        int sqlType = Types.VARCHAR;
+        if (XACML3.ID_DATATYPE_INTEGER.equals(identifierDataType)) {
+            sqlType = Types.INTEGER;
+        } else if (XACML3.ID_DATATYPE_DOUBLE.equals(identifierDataType)) {
+            sqlType = Types.DOUBLE;
+        } else if (XACML3.ID_DATATYPE_BOOLEAN.equals(identifierDataType)) {
+            sqlType = Types.BOOLEAN;
+        } else if (XACML3.ID_DATATYPE_DATETIME.equals(identifierDataType)
+                   || XACML3.ID_DATATYPE_DATE.equals(identifierDataType)) {
+            sqlType = Types.DATE;
+        }
+        try {
+            preparedStatement.setNull(index, sqlType);
+            return true;
+        } catch (SQLException ex) {
+            this.logger.error("SQLException setting parameter " + index + " to NULL: " + ex.toString(), ex);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isBatchSupported(PIPRequest pipRequest) {
+        return this.batchQuery != null && this.isSupported(pipRequest);
+    }
+
+    @Override
+    public PreparedStatement getBatchPreparedStatement(PIPEngine pipEngine, PIPRequest pipRequest,
+                                                       List<List<AttributeValue<?>>> listParameterValues,
+                                                       Connection connection) throws PIPException {
+        if (!this.isBatchSupported(pipRequest) || listParameterValues.size() == 0) {
+            return null;
+        }
+
+        /*
+         * Expand the place-holders for each request's parameter values
+         */
+        int parameterCount = this.parameters.size();
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < listParameterValues.size(); i++) {
+            if (i > 0) {
+                stringBuilder.append(", ");
+            }
+            if (parameterCount > 1) {
+                stringBuilder.append('(');
+            }
+            for (int j = 0; j < parameterCount; j++) {
+                stringBuilder.append(j == 0 ? "?" : ", ?");
+            }
+            if (parameterCount > 1) {
+                stringBuilder.append(')');
+            }
+        }
+        String sqlBatchQuery = this.batchQuery.replace(BATCH_PARAMETERS, stringBuilder.toString());
+
+        PreparedStatement preparedStatement = null;
+        try {
+            preparedStatement = connection.prepareStatement(sqlBatchQuery);
+        } catch (SQLException ex) {
+            this.logger.error("SQLException creating batch PreparedStatement: " + ex.toString(), ex);
+            return null;
+        }
+        int index = 1;
+        for (List<AttributeValue<?>> parameterValues : listParameterValues) {
+            if (parameterValues == null) {
+                for (PIPRequest pipRequestParameter : this.parameters) {
+                    if (!this.setNullParameter(preparedStatement, index++,
+                                               pipRequestParameter.getDataTypeId())) {
                         return null;
                     }
-                } else {
-                    this.logger.warn("PIPFinder returned status " + pipResponse.getStatus().toString());
+                }
+                continue;
+            }
+            for (AttributeValue<?> attributeValue : parameterValues) {
+                if (!this.setParameter(preparedStatement, index++, attributeValue)) {
                     return null;
                 }
             }
         }
-
         return preparedStatement;
     }
 
+    @Override
+    public Object getBatchKey(List<AttributeValue<?>> parameterValues) {
+        List<Object> listKey = new ArrayList<Object>(parameterValues.size());
+        for (AttributeValue<?> attributeValue : parameterValues) {
+            listKey.add(this.getBatchKeyValue(attributeValue));
+        }
+        return listKey;
+    }
+
+    @Override
+    public Object getBatchKey(ResultSet resultSet) throws PIPException {
+        List<Object> listKey = new ArrayList<Object>(this.batchKeys.size());
+        try {
+            for (int i = 0; i < this.batchKeys.size(); i++) {
+                listKey.add(this.getBatchKeyValue(resultSet, this.batchKeys.get(i),
+                                                  this.parameters.get(i).getDataTypeId()));
+            }
+        } catch (SQLException ex) {
+            this.logger.error("SQLException reading batch key: " + ex.toString(), ex);
+            throw new PIPException("SQLException reading batch key", ex);
+        }
+        return listKey;
+    }
+
+    /**
+     * Gets the part of a batch key for a parameter value: the value as <code>setParameter</code> binds it,
+     * so that it equals the part read back from the key column by
+     * {@link #getBatchKeyValue(ResultSet, String, Identifier)}. Dates are compared by their day.
+     *
+     * @param attributeValue the <code>AttributeValue</code> of the parameter
+     * @return the key part <code>Object</code>
+     */
+    protected Object getBatchKeyValue(AttributeValue<?> attributeValue) {
+        Identifier identifierDataType = attributeValue.getDataTypeId();
+        try {
+            if (identifierDataType.equals(XACML3.ID_DATATYPE_INTEGER)) {
+                return Integer.valueOf(DataTypes.DT_INTEGER.convert(attributeValue.getValue()).intValue());
+            } else if (identifierDataType.equals(XACML3.ID_DATATYPE_DOUBLE)) {
+                return DataTypes.DT_DOUBLE.convert(attributeValue.getValue());
+            } else if (identifierDataType.equals(XACML3.ID_DATATYPE_BOOLEAN)) {
+                return DataTypes.DT_BOOLEAN.convert(attributeValue.getValue());
+            } else if (identifierDataType.equals(XACML3.ID_DATATYPE_DATETIME)) {
+                return getDayKey(DataTypes.DT_DATETIME.convert(attributeValue.getValue()).getCalendar());
+            } else if (identifierDataType.equals(XACML3.ID_DATATYPE_DATE)) {
+                return getDayKey(DataTypes.DT_DATE.convert(attributeValue.getValue()).getCalendar());
+            }
+            return DataTypes.DT_STRING.convert(attributeValue.getValue());
+        } catch (DataTypeException ex) {
+            return String.valueOf(attributeValue.getValue());
+        }
+    }
+
+    /**
+     * Gets the part of a batch key from the given column of the current row of a batch query, read as the
+     * given data type of the parameter it was selected by.
+     *
+     * @param resultSet the <code>ResultSet</code> positioned on a row
+     * @param columnLabel the label of the key column
+     * @param identifierDataType the XACML data type of the parameter
+     * @return the key part <code>Object</code>
+     * @throws SQLException if the column cannot be read
+     */
+    protected Object getBatchKeyValue(ResultSet resultSet, String columnLabel, Identifier identifierDataType)
+        throws SQLException {
+        Object value;
+        if (identifierDataType.equals(XACML3.ID_DATATYPE_INTEGER)) {
+            value = Integer.valueOf(resultSet.getInt(columnLabel));
+        } else if (identifierDataType.equals(XACML3.ID_DATATYPE_DOUBLE)) {
+            value = Double.valueOf(resultSet.getDouble(columnLabel));
+        } else if (identifierDataType.equals(XACML3.ID_DATATYPE_BOOLEAN)) {
+            value = Boolean.valueOf(resultSet.getBoolean(columnLabel));
+        } else if (identifierDataType.equals(XACML3.ID_DATATYPE_DATETIME)
+                   || identifierDataType.equals(XACML3.ID_DATATYPE_DATE)) {
+            java.sql.Date sqlDate = resultSet.getDate(columnLabel);
+            value = (sqlDate == null ? null : sqlDate.toString());
+        } else {
+            value = resultSet.getString(columnLabel);
+        }
+        return resultSet.wasNull() ? null : value;
+    }
+
+    private static String getDayKey(Calendar calendar) {
+        return String.format("%04d-%02d-%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                             calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
     /**
      * Creates an {@link org.apache.openaz.xacml.api.Attribute} from the value associated with the field with
      * the given <code>fieldName</code>.
@@ -0,0 +1,369 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * JDBCConnectionPool is a bounded pool of JDBC {@link java.sql.Connection}s created through the
+ * {@link java.sql.DriverManager} for the {@link JDBCEngine}.
+ * <p>
+ * The <code>Connection</code>s handed out are proxies: closing one returns it to the pool, and the
+ * <code>PreparedStatement</code>s it prepares are kept with the pooled <code>Connection</code> and reused
+ * for the same SQL, with <code>close</code> only clearing their parameters. Idle <code>Connection</code>s
+ * beyond the minimum are closed once they have been idle longer than the idle timeout, and if a validation
+ * query is configured it is run before an idle <code>Connection</code> is handed out again.
+ */
+public class JDBCConnectionPool {
+    /*
+     * SQLState class for connection exceptions
+     */
+    private static final String SQLSTATE_CONNECTION_EXCEPTION = "08";
+
+    private Log logger = LogFactory.getLog(this.getClass());
+    private final String jdbcUrl;
+    private final Properties jdbcConnProperties;
+    private final int minIdle;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final long maxWait;
+    private final String validationQuery;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<PooledConnection>();
+    private volatile boolean closed;
+
+    /**
+     * PooledConnection holds a physical <code>Connection</code> and the <code>PreparedStatement</code>s
+     * prepared on it.
+     */
+    private class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private long lastUsed = System.currentTimeMillis();
+        private volatile boolean broken;
+
+        PooledConnection(Connection connectionIn) {
+            this.connection = connectionIn;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (this.size() > JDBCConnectionPool.this.statementCacheSize) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        PreparedStatement prepareStatement(String sql) throws SQLException {
+            PreparedStatement preparedStatement = this.statements.get(sql);
+            if (preparedStatement == null) {
+                preparedStatement = this.connection.prepareStatement(sql);
+                this.statements.put(sql, preparedStatement);
+            }
+            return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                             new Class<?>[] {
+                                                                 PreparedStatement.class
+                                                             }, new StatementHandle(this, preparedStatement));
+        }
+
+        void checkException(Throwable throwable) {
+            if (throwable instanceof SQLException) {
+                String sqlState = ((SQLException)throwable).getSQLState();
+                if (sqlState != null && sqlState.startsWith(SQLSTATE_CONNECTION_EXCEPTION)) {
+                    this.broken = true;
+                }
+            }
+        }
+
+        void close() {
+            for (PreparedStatement preparedStatement : this.statements.values()) {
+                closeQuietly(preparedStatement);
+            }
+            this.statements.clear();
+            try {
+                this.connection.close();
+            } catch (SQLException ex) {
+                JDBCConnectionPool.this.logger.warn("SQLException closing pooled Connection: " + ex.toString());
+            }
+        }
+    }
+
+    /**
+     * ConnectionHandle is the <code>InvocationHandler</code> for a borrowed <code>Connection</code>.
+     */
+    private class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooledConnection;
+        private volatile boolean released;
+
+        ConnectionHandle(PooledConnection pooledConnectionIn) {
+            this.pooledConnection = pooledConnectionIn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if ("close".equals(methodName)) {
+                if (!this.released) {
+                    this.released = true;
+                    JDBCConnectionPool.this.release(this.pooledConnection);
+                }
+                return null;
+            } else if ("isClosed".equals(methodName)) {
+                return this.released || this.pooledConnection.connection.isClosed();
+            } else if ("equals".equals(methodName)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(methodName)) {
+                return System.identityHashCode(proxy);
+            } else if (this.released) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            try {
+                if ("prepareStatement".equals(methodName) && args.length == 1
+                    && JDBCConnectionPool.this.statementCacheSize > 0) {
+                    return this.pooledConnection.prepareStatement((String)args[0]);
+                }
+                return method.invoke(this.pooledConnection.connection, args);
+            } catch (InvocationTargetException ex) {
+                this.pooledConnection.checkException(ex.getCause());
+                throw ex.getCause();
+            } catch (SQLException ex) {
+                this.pooledConnection.checkException(ex);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * StatementHandle is the <code>InvocationHandler</code> for a cached <code>PreparedStatement</code>.
+     */
+    private static class StatementHandle implements InvocationHandler {
+        private final PooledConnection pooledConnection;
+        private final PreparedStatement preparedStatement;
+
+        StatementHandle(PooledConnection pooledConnectionIn, PreparedStatement preparedStatementIn) {
+            this.pooledConnection = pooledConnectionIn;
+            this.preparedStatement = preparedStatementIn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            try {
+                if ("close".equals(methodName)) {
+                    this.preparedStatement.clearParameters();
+                    return null;
+                } else if ("equals".equals(methodName)) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(methodName)) {
+                    return System.identityHashCode(proxy);
+                }
+                return method.invoke(this.preparedStatement, args);
+            } catch (InvocationTargetException ex) {
+                this.pooledConnection.checkException(ex.getCause());
+                throw ex.getCause();
+            } catch (SQLException ex) {
+                this.pooledConnection.checkException(ex);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Creates a new <code>JDBCConnectionPool</code>. The JDBC driver must already be loaded.
+     *
+     * @param jdbcUrlIn the <code>String</code> JDBC URL to connect to
+     * @param jdbcConnPropertiesIn the <code>Properties</code> passed to the <code>DriverManager</code>
+     * @param minIdleIn the number of idle <code>Connection</code>s that are kept regardless of the idle
+     *            timeout
+     * @param maxSizeIn the maximum number of <code>Connection</code>s open at once
+     * @param idleTimeoutIn the time in milli-seconds after which an idle <code>Connection</code> is closed
+     * @param maxWaitIn the time in milli-seconds to wait for a <code>Connection</code> when all are in use
+     * @param validationQueryIn the <code>String</code> SQL query used to check an idle <code>Connection</code>,
+     *            or null
+     * @param statementCacheSizeIn the maximum number of <code>PreparedStatement</code>s kept per
+     *            <code>Connection</code>
+     */
+    public JDBCConnectionPool(String jdbcUrlIn, Properties jdbcConnPropertiesIn, int minIdleIn, int maxSizeIn,
+                              long idleTimeoutIn, long maxWaitIn, String validationQueryIn,
+                              int statementCacheSizeIn) {
+        if (maxSizeIn <= 0) {
+            throw new IllegalArgumentException("Maximum pool size must be positive");
+        }
+        this.jdbcUrl = jdbcUrlIn;
+        this.jdbcConnProperties = jdbcConnPropertiesIn;
+        this.minIdle = minIdleIn;
+        this.maxSize = maxSizeIn;
+        this.idleTimeout = idleTimeoutIn;
+        this.maxWait = maxWaitIn;
+        this.validationQuery = validationQueryIn;
+        this.statementCacheSize = statementCacheSizeIn;
+        this.permits = new Semaphore(maxSizeIn, true);
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) { //NOPMD
+        }
+    }
+
+    /**
+     * Gets a <code>Connection</code> from the pool, opening a new one if no idle <code>Connection</code> is
+     * available. The caller must close the <code>Connection</code> to return it to the pool.
+     *
+     * @return a pooled <code>Connection</code>
+     * @throws SQLException if the pool is closed, no <code>Connection</code> becomes available within the
+     *             maximum wait time or a new <code>Connection</code> cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!this.permits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for one of " + this.maxSize + " pooled connections");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a pooled connection", ex);
+        }
+
+        try {
+            this.evictIdle();
+            PooledConnection pooledConnection;
+            while ((pooledConnection = this.idleConnections.pollFirst()) != null) {
+                if (this.isValid(pooledConnection)) {
+                    break;
+                }
+                pooledConnection.close();
+            }
+            if (pooledConnection == null) {
+                pooledConnection = new PooledConnection(DriverManager.getConnection(this.jdbcUrl,
+                                                                                    this.jdbcConnProperties));
+            }
+            return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {
+                Connection.class
+            }, new ConnectionHandle(pooledConnection));
+        } catch (SQLException | RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    private boolean isValid(PooledConnection pooledConnection) {
+        try {
+            if (pooledConnection.connection.isClosed()) {
+                return false;
+            }
+            if (this.validationQuery != null) {
+                try (Statement statement = pooledConnection.connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(this.validationQuery)) {
+                    return resultSet.next();
+                }
+            }
+            return true;
+        } catch (SQLException ex) {
+            this.logger.warn("Discarding pooled Connection that failed validation: " + ex.toString());
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooledConnection) {
+        try {
+            if (this.closed || pooledConnection.broken) {
+                pooledConnection.close();
+            } else {
+                pooledConnection.lastUsed = System.currentTimeMillis();
+                this.idleConnections.offerFirst(pooledConnection);
+            }
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Closes the least recently used idle <code>Connection</code>s that have been idle longer than the idle
+     * timeout, keeping at least the minimum number of idle <code>Connection</code>s.
+     */
+    private void evictIdle() {
+        long expired = System.currentTimeMillis() - this.idleTimeout;
+        PooledConnection pooledConnection;
+        while (this.idleConnections.size() > this.minIdle
+               && (pooledConnection = this.idleConnections.peekLast()) != null
+               && pooledConnection.lastUsed < expired) {
+            if (this.idleConnections.removeLastOccurrence(pooledConnection)) {
+                pooledConnection.close();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of <code>Connection</code>s currently borrowed from the pool.
+     *
+     * @return the number of borrowed <code>Connection</code>s
+     */
+    public int getActiveCount() {
+        return this.maxSize - this.permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of open <code>Connection</code>s waiting in the pool.
+     *
+     * @return the number of idle <code>Connection</code>s
+     */
+    public int getIdleCount() {
+        return this.idleConnections.size();
+    }
+
+    /**
+     * Closes all idle <code>Connection</code>s. <code>Connection</code>s that are in use are closed when
+     * they are returned.
+     */
+    public void close() {
+        this.closed = true;
+        PooledConnection pooledConnection;
+        while ((pooledConnection = this.idleConnections.pollFirst()) != null) {
+            pooledConnection.close();
+        }
+    }
+}
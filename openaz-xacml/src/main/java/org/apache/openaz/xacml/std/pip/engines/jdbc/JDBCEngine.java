@@ -37,10 +37,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -50,36 +54,63 @@ import javax.sql.DataSource;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Status;
 import org.apache.openaz.xacml.api.pip.PIPException;
 import org.apache.openaz.xacml.api.pip.PIPFinder;
 import org.apache.openaz.xacml.api.pip.PIPRequest;
 import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.StdStatus;
+import org.apache.openaz.xacml.std.StdStatusCode;
 import org.apache.openaz.xacml.std.pip.StdMutablePIPResponse;
 import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.apache.openaz.xacml.std.pip.engines.BatchEngine;
+import org.apache.openaz.xacml.std.pip.engines.Configurables;
 import org.apache.openaz.xacml.std.pip.engines.StdConfigurableEngine;
+import org.apache.openaz.xacml.std.pip.finders.SnapshotFinder;
 import org.apache.openaz.xacml.util.AttributeUtils;
 
 import com.google.common.base.Splitter;
 
 /**
  * PIPEgineJDBC extends {@link org.apache.openaz.xacml.std.pip.engines.StdConfigurableEngine} to implement a
- * PIP that retrieves XACML attributes from a database using JDBC. This is a minimal implementation that does
- * not do any caching of results. It does not perform JDBC connection pooling either.
+ * PIP that retrieves XACML attributes from a database using JDBC. If a cache is configured, the results of
+ * each resolver are cached by the values of its query parameters. Connections of the "jdbc" type are taken
+ * from a {@link JDBCConnectionPool}, which also reuses the <code>PreparedStatement</code>s of the resolvers,
+ * unless the "jdbc.pool.max" property is 0.
+ * <p>
+ * As a {@link org.apache.openaz.xacml.std.pip.engines.BatchEngine} it answers a request for many
+ * <code>PIPFinder</code>s at once: resolvers that are {@link BatchJDBCResolver}s run one query for up to
+ * "batchSize" distinct sets of parameter values and split the rows back up by their keys.
  */
-public class JDBCEngine extends StdConfigurableEngine {
+public class JDBCEngine extends StdConfigurableEngine implements BatchEngine {
     public static final String PROP_TYPE = "type";
     public static final String PROP_JDBC_DRIVER = "jdbc.driver";
     public static final String PROP_JDBC_URL = "jdbc.url";
     public static final String PROP_JDBC_CONN = "jdbc.conn";
     public static final String PROP_JDBC_CONN_USER = "jdbc.conn.user";
     public static final String PROP_JDBC_CONN_PASS = "jdbc.conn.password";
+    public static final String PROP_JDBC_POOL_MIN = "jdbc.pool.min";
+    public static final String PROP_JDBC_POOL_MAX = "jdbc.pool.max";
+    public static final String PROP_JDBC_POOL_IDLETIMEOUT = "jdbc.pool.idleTimeout";
+    public static final String PROP_JDBC_POOL_MAXWAIT = "jdbc.pool.maxWait";
+    public static final String PROP_JDBC_POOL_VALIDATIONQUERY = "jdbc.pool.validationQuery";
+    public static final String PROP_JDBC_POOL_STATEMENTS = "jdbc.pool.statements";
     public static final String PROP_RESOLVERS = "resolvers";
     public static final String PROP_RESOLVER = "resolver";
     public static final String PROP_CLASSNAME = "classname";
+    public static final String PROP_BATCHSIZE = "batchSize";
 
     public static final String TYPE_JDBC = "jdbc";
     public static final String TYPE_JNDI = "jndi";
 
+    public static final int DEFAULT_POOL_MIN = 0;
+    public static final int DEFAULT_POOL_MAX = 10;
+    public static final long DEFAULT_POOL_IDLETIMEOUT = 300000;
+    public static final long DEFAULT_POOL_MAXWAIT = 30000;
+    public static final int DEFAULT_POOL_STATEMENTS = 20;
+    public static final int DEFAULT_BATCHSIZE = 100;
+
     protected Log logger = LogFactory.getLog(this.getClass());
     private String type;
     private String jndiDataSource;
@@ -88,6 +119,21 @@ public class JDBCEngine extends StdConfigurableEngine {
     private String jdbcUrl;
     private Properties jdbcConnProperties = new Properties();
     private List<JDBCResolver> jdbcResolvers = new ArrayList<JDBCResolver>();
+    private JDBCConnectionPool connectionPool;
+    private int batchSize = DEFAULT_BATCHSIZE;
+
+    /**
+     * BatchPIPResponse is the response to a batch query: the <code>Attribute</code>s found for each key, or
+     * null if the resolver could not create the batch query.
+     */
+    private static class BatchPIPResponse extends StdPIPResponse {
+        private final Map<Object, List<Attribute>> mapResults;
+
+        BatchPIPResponse(Map<Object, List<Attribute>> mapResultsIn) {
+            super(StdStatus.STATUS_OK);
+            this.mapResults = mapResultsIn;
+        }
+    }
 
     /**
      * If the JDBC driver <code>Class</code> has not been loaded yet, do so now.
@@ -138,11 +184,15 @@ public class JDBCEngine extends StdConfigurableEngine {
         }
 
         /*
-         * Try to create a new Connection
+         * Try to create a new Connection or take one from the pool
          */
         Connection connectionResult = null;
         try {
-            connectionResult = DriverManager.getConnection(this.jdbcUrl, this.jdbcConnProperties);
+            if (this.connectionPool != null) {
+                connectionResult = this.connectionPool.getConnection();
+            } else {
+                connectionResult = DriverManager.getConnection(this.jdbcUrl, this.jdbcConnProperties);
+            }
         } catch (SQLException ex) {
             this.logger.error("SQLException creating Connection", ex);
             throw new PIPException("SQLException creating Connection", ex);
@@ -151,6 +201,15 @@ public class JDBCEngine extends StdConfigurableEngine {
         return connectionResult;
     }
 
+    /**
+     * Gets the {@link JDBCConnectionPool} used for connections of the "jdbc" type.
+     *
+     * @return the <code>JDBCConnectionPool</code> or null if connections are not pooled
+     */
+    public JDBCConnectionPool getConnectionPool() {
+        return this.connectionPool;
+    }
+
     protected Connection getJNDIConnection() throws PIPException {
         try {
             Context initialContext = new InitialContext();
@@ -165,8 +224,118 @@ public class JDBCEngine extends StdConfigurableEngine {
         }
     }
 
-    protected void getAttributes(PIPRequest pipRequest, PIPFinder pipFinder, JDBCResolver jdbcResolver,
-                                 StdMutablePIPResponse pipResponse) throws PIPException {
+    /**
+     * Gets the cache key for the results of the given {@link JDBCResolver} from the values of the attributes
+     * it requires as query parameters.
+     *
+     * @param pipRequest the <code>PIPRequest</code> being resolved
+     * @param pipFinder the <code>PIPFinder</code> to get the parameter values from
+     * @param jdbcResolver the <code>JDBCResolver</code> that will run the query
+     * @return the <code>String</code> cache key or null if lookups are not keyed, the
+     *         <code>JDBCResolver</code> does not provide the requested attribute or a parameter value could
+     *         not be retrieved
+     * @throws PIPException if there is an error retrieving a parameter value
+     */
+    protected String getCacheKey(PIPRequest pipRequest, PIPFinder pipFinder, JDBCResolver jdbcResolver)
+        throws PIPException {
+        if (!this.isKeyed()) {
+            return null;
+        }
+
+        /*
+         * Cached results are shared by all of the attributes the resolver provides, so make sure the request
+         * is one of them
+         */
+        if (!this.isProvided(pipRequest, jdbcResolver)) {
+            return null;
+        }
+
+        List<PIPRequest> listParameters = new ArrayList<PIPRequest>();
+        jdbcResolver.attributesRequired(listParameters);
+        if (listParameters.size() > 0 && pipFinder == null) {
+            return null;
+        }
+        Object[] parameterValues = new Object[listParameters.size()];
+        for (int i = 0; i < parameterValues.length; i++) {
+            PIPResponse pipResponse = pipFinder.getMatchingAttributes(listParameters.get(i), null);
+            if (pipResponse.getStatus() != null && !pipResponse.getStatus().isOk()) {
+                return null;
+            }
+            List<Object> listValues = new ArrayList<Object>();
+            for (Attribute attribute : pipResponse.getAttributes()) {
+                listValues.addAll(attribute.getValues());
+            }
+            parameterValues[i] = listValues;
+        }
+        return this.newCacheKey(this.jdbcResolvers.indexOf(jdbcResolver), parameterValues);
+    }
+
+    private boolean isProvided(PIPRequest pipRequest, JDBCResolver jdbcResolver) {
+        List<PIPRequest> listProvided = new ArrayList<PIPRequest>();
+        jdbcResolver.attributesProvided(listProvided);
+        for (PIPRequest pipRequestProvided : listProvided) {
+            if (pipRequestProvided.getCategory().equals(pipRequest.getCategory())
+                && pipRequestProvided.getAttributeId().equals(pipRequest.getAttributeId())
+                && pipRequestProvided.getDataTypeId().equals(pipRequest.getDataTypeId())
+                && (pipRequest.getIssuer() == null || pipRequest.getIssuer()
+                    .equals(pipRequestProvided.getIssuer()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void getAttributes(final PIPRequest pipRequest, PIPFinder pipFinder,
+                                 final JDBCResolver jdbcResolver, StdMutablePIPResponse pipResponse)
+        throws PIPException {
+        /*
+         * Resolve the query parameters of a lookup that may be cached now, so a query run later to refresh
+         * the cache does not use the PIPFinder of a request that has finished
+         */
+        final PIPFinder pipFinderParameters = (this.isKeyed() && this.isProvided(pipRequest, jdbcResolver)
+            ? this.getParameterFinder(pipFinder, jdbcResolver) : pipFinder);
+
+        /*
+         * Use the cache, or run the query unless the same lookup is already running
+         */
+        final String cacheKey = this.getCacheKey(pipRequest, pipFinderParameters, jdbcResolver);
+        PIPResponse pipResponseQuery = this.getResponse(cacheKey, new Callable<PIPResponse>() {
+            @Override
+            public PIPResponse call() throws PIPException {
+                StdMutablePIPResponse mutablePIPResponse = new StdMutablePIPResponse();
+                JDBCEngine.this.queryAttributes(pipRequest, pipFinderParameters, jdbcResolver, cacheKey,
+                                                mutablePIPResponse);
+                return new StdPIPResponse(mutablePIPResponse);
+            }
+        });
+        pipResponse.addAttributes(pipResponseQuery.getAttributes());
+        if (pipResponseQuery.getStatus() != null && !pipResponseQuery.getStatus().isOk()) {
+            pipResponse.setStatus(pipResponseQuery.getStatus());
+        }
+    }
+
+    /**
+     * Gets a <code>PIPFinder</code> holding the values the given {@link JDBCResolver} requires as query
+     * parameters, retrieved from the given <code>PIPFinder</code>.
+     *
+     * @param pipFinder the <code>PIPFinder</code> to get the parameter values from
+     * @param jdbcResolver the <code>JDBCResolver</code> that will run the query
+     * @return a {@link SnapshotFinder} with the parameter values, or null if the given <code>PIPFinder</code>
+     *         is null
+     * @throws PIPException if there is an error retrieving a parameter value
+     */
+    protected PIPFinder getParameterFinder(PIPFinder pipFinder, JDBCResolver jdbcResolver)
+        throws PIPException {
+        if (pipFinder == null) {
+            return null;
+        }
+        List<PIPRequest> listParameters = new ArrayList<PIPRequest>();
+        jdbcResolver.attributesRequired(listParameters);
+        return new SnapshotFinder(pipFinder, listParameters);
+    }
+
+    private void queryAttributes(PIPRequest pipRequest, PIPFinder pipFinder, JDBCResolver jdbcResolver,
+                                 String cacheKey, StdMutablePIPResponse pipResponse) throws PIPException {
         /*
          * First we need to get a PreparedStatement
          */
@@ -184,14 +353,7 @@ public class JDBCEngine extends StdConfigurableEngine {
             return;
         }
 
-        /*
-         * Is it in the cache?
-         */
         this.logger.debug(preparedStatement.toString());
-        // Cache<String, PIPResponse> cache = this.getCache();
-        //if (cache != null) {
-            // TODO - a cache key
-        //}
 
         /*
          * Execute the prepared statement
@@ -202,6 +364,7 @@ public class JDBCEngine extends StdConfigurableEngine {
         } catch (SQLException ex) {
             this.logger.error("SQLException executing query: " + ex.toString(), ex);
             // TODO: Should we re-throw the exception, or just return an empty response?
+            pipResponse.setStatus(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, ex.getMessage()));
         }
         if (resultSet == null) {
             try {
@@ -221,21 +384,22 @@ public class JDBCEngine extends StdConfigurableEngine {
             /*
              * Get all the results
              */
+            List<Attribute> listAttributesResolved = new ArrayList<Attribute>();
             while (resultSet.next()) {
                 List<Attribute> listAttributes = jdbcResolver.decodeResult(resultSet);
                 if (listAttributes != null) {
-                    pipResponse.addAttributes(listAttributes);
+                    listAttributesResolved.addAll(listAttributes);
                 }
             }
+            pipResponse.addAttributes(listAttributesResolved);
             /*
              * Save it in the cache
              */
-            //if (cache != null) {
-                // TODO
-            //}
+            this.putCachedResponse(cacheKey, listAttributesResolved);
         } catch (SQLException ex) {
             this.logger.error("SQLException decoding results: " + ex.toString());
             // TODO: Should we re-throw the exception or just continue
+            pipResponse.setStatus(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, ex.getMessage()));
         } finally {
             if (resultSet != null) {
                 try {
@@ -260,6 +424,248 @@ public class JDBCEngine extends StdConfigurableEngine {
         }
     }
 
+    /**
+     * Resolves the given <code>PIPRequest</code> with a {@link BatchJDBCResolver} for each of the given
+     * <code>PIPFinder</code>s. Cached results are used where possible, and the distinct sets of parameter
+     * values left over are looked up with one batch query for every "batchSize" of them. Batch queries go
+     * through the circuit breaker and are shared with concurrent identical batches, like single lookups.
+     * If the resolver cannot create a batch query its requests are looked up one at a time, and if a batch
+     * query fails its requests get an error status.
+     *
+     * @param pipRequest the <code>PIPRequest</code> being resolved
+     * @param pipFinders the <code>List</code> of <code>PIPFinder</code>s to get the parameter values from
+     * @param batchJDBCResolver the <code>BatchJDBCResolver</code> that will run the queries
+     * @param listPIPResponses the <code>StdMutablePIPResponse</code> for each <code>PIPFinder</code>
+     * @throws PIPException if there is an error retrieving a parameter value
+     */
+    protected void getBatchAttributes(final PIPRequest pipRequest, List<PIPFinder> pipFinders,
+                                      final BatchJDBCResolver batchJDBCResolver,
+                                      List<StdMutablePIPResponse> listPIPResponses) throws PIPException {
+        /*
+         * Gather the parameter values of each request that is not in the cache
+         */
+        List<Object> listBatchKeys = new ArrayList<Object>(pipFinders.size());
+        Map<Object, List<AttributeValue<?>>> mapPending = new LinkedHashMap<Object, List<AttributeValue<?>>>();
+        final Map<Object, String> mapCacheKeys = new HashMap<Object, String>();
+        for (int i = 0; i < pipFinders.size(); i++) {
+            PIPFinder pipFinder = pipFinders.get(i);
+            String cacheKey = this.getCacheKey(pipRequest, pipFinder, batchJDBCResolver);
+            PIPResponse pipResponseCached = this.getCachedResponse(cacheKey);
+            if (pipResponseCached != null) {
+                listPIPResponses.get(i).addAttributes(pipResponseCached.getAttributes());
+                listBatchKeys.add(null);
+                continue;
+            }
+            List<AttributeValue<?>> parameterValues = batchJDBCResolver.getParameterValues(this, pipRequest,
+                                                                                           pipFinder);
+            if (parameterValues == null) {
+                listBatchKeys.add(null);
+                continue;
+            }
+            Object batchKey = batchJDBCResolver.getBatchKey(parameterValues);
+            listBatchKeys.add(batchKey);
+            if (!mapPending.containsKey(batchKey)) {
+                mapPending.put(batchKey, parameterValues);
+                mapCacheKeys.put(batchKey, cacheKey);
+            }
+        }
+        if (mapPending.size() == 0) {
+            return;
+        }
+
+        /*
+         * Run the batch queries
+         */
+        Map<Object, List<Attribute>> mapResults = new HashMap<Object, List<Attribute>>();
+        Map<Object, Status> mapFailures = new HashMap<Object, Status>();
+        Set<Object> setUnbatched = new HashSet<Object>();
+        List<Object> listPending = new ArrayList<Object>(mapPending.keySet());
+        for (int from = 0; from < listPending.size(); from += this.batchSize) {
+            int to = Math.min(listPending.size(), from + this.batchSize);
+            final List<Object> listChunk = listPending.subList(from, to);
+            final List<List<AttributeValue<?>>> listParameterValues = new ArrayList<List<AttributeValue<?>>>(
+                this.batchSize);
+            for (Object batchKey : listChunk) {
+                listParameterValues.add(mapPending.get(batchKey));
+            }
+            int paddedSize = this.getPaddedBatchSize(listChunk.size());
+            while (listParameterValues.size() < paddedSize) {
+                listParameterValues.add(null);
+            }
+            Callable<PIPResponse> lookup = new Callable<PIPResponse>() {
+                @Override
+                public PIPResponse call() throws PIPException {
+                    Map<Object, List<Attribute>> mapChunkResults = JDBCEngine.this
+                        .executeBatch(pipRequest, batchJDBCResolver, listParameterValues);
+                    if (mapChunkResults != null) {
+                        for (Object batchKey : listChunk) {
+                            JDBCEngine.this.putCachedResponse(mapCacheKeys.get(batchKey),
+                                                              mapChunkResults.get(batchKey));
+                        }
+                    }
+                    return new BatchPIPResponse(mapChunkResults);
+                }
+            };
+            BatchPIPResponse batchPIPResponse = null;
+            try {
+                batchPIPResponse = (BatchPIPResponse)this.getLookupResponse(this.getBatchCacheKey(listChunk,
+                                                                                                mapCacheKeys),
+                                                                            lookup);
+            } catch (PIPException ex) {
+                this.logger.error("Batch query for " + pipRequest.toString() + " failed: " + ex.getMessage());
+                Status status = new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, ex.getMessage());
+                for (Object batchKey : listChunk) {
+                    mapFailures.put(batchKey, status);
+                }
+                continue;
+            }
+            if (batchPIPResponse.mapResults == null) {
+                setUnbatched.addAll(listChunk);
+            } else {
+                mapResults.putAll(batchPIPResponse.mapResults);
+            }
+        }
+
+        /*
+         * Split the results back up by request
+         */
+        for (int i = 0; i < pipFinders.size(); i++) {
+            Object batchKey = listBatchKeys.get(i);
+            if (batchKey == null) {
+                continue;
+            }
+            if (setUnbatched.contains(batchKey)) {
+                this.getAttributes(pipRequest, pipFinders.get(i), batchJDBCResolver, listPIPResponses.get(i));
+            } else if (mapFailures.containsKey(batchKey)) {
+                listPIPResponses.get(i).setStatus(mapFailures.get(batchKey));
+            } else {
+                List<Attribute> listAttributes = mapResults.get(batchKey);
+                if (listAttributes != null) {
+                    listPIPResponses.get(i).addAttributes(listAttributes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the key a batch query is shared under from the cache keys of the requests in it.
+     *
+     * @param listChunk the <code>List</code> of keys of the requests in the batch
+     * @param mapCacheKeys the <code>Map</code> from the key of each request to its cache key
+     * @return the <code>String</code> key for the batch, or null if a request in it cannot be keyed
+     */
+    private String getBatchCacheKey(List<Object> listChunk, Map<Object, String> mapCacheKeys) {
+        StringBuilder stringBuilder = new StringBuilder("batch");
+        for (Object batchKey : listChunk) {
+            String cacheKey = mapCacheKeys.get(batchKey);
+            if (cacheKey == null) {
+                return null;
+            }
+            stringBuilder.append(':').append(cacheKey.length()).append(':').append(cacheKey);
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Gets the number of requests a batch query for the given number of requests is padded to: the next power
+     * of two, but no more than "batchSize". The SQL of a batch query depends on its size, so this keeps the
+     * number of distinct statements the driver prepares and caches small.
+     *
+     * @param size the number of requests in the batch
+     * @return the padded number of requests
+     */
+    protected int getPaddedBatchSize(int size) {
+        int paddedSize = Integer.highestOneBit(size);
+        if (paddedSize < size) {
+            paddedSize <<= 1;
+        }
+        return Math.min(paddedSize, this.batchSize);
+    }
+
+    /**
+     * Executes a single batch query and collects the <code>Attribute</code>s decoded from each row under the
+     * row's key.
+     *
+     * @param pipRequest the <code>PIPRequest</code> being resolved
+     * @param batchJDBCResolver the <code>BatchJDBCResolver</code> that creates the query
+     * @param listParameterValues the <code>List</code> of parameter values for each request in the batch
+     * @return the <code>Map</code> from key to the <code>Attribute</code>s found for it, or null if the
+     *         resolver could not create the query
+     * @throws PIPException if there is an error getting a <code>Connection</code> or running the query
+     */
+    protected Map<Object, List<Attribute>> executeBatch(PIPRequest pipRequest,
+                                                        BatchJDBCResolver batchJDBCResolver,
+                                                        List<List<AttributeValue<?>>> listParameterValues)
+        throws PIPException {
+        Map<Object, List<Attribute>> mapResults = new HashMap<Object, List<Attribute>>();
+        Connection connection = this.getConnection();
+        try (PreparedStatement preparedStatement = batchJDBCResolver
+            .getBatchPreparedStatement(this, pipRequest, listParameterValues, connection)) {
+            if (preparedStatement == null) {
+                this.logger.debug(this.getName() + " does not batch " + pipRequest.toString());
+                return null;
+            }
+            this.logger.debug(preparedStatement.toString());
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    Object batchKey = batchJDBCResolver.getBatchKey(resultSet);
+                    List<Attribute> listAttributes = batchJDBCResolver.decodeResult(resultSet);
+                    if (listAttributes != null) {
+                        List<Attribute> listAttributesResolved = mapResults.get(batchKey);
+                        if (listAttributesResolved == null) {
+                            listAttributesResolved = new ArrayList<Attribute>();
+                            mapResults.put(batchKey, listAttributesResolved);
+                        }
+                        listAttributesResolved.addAll(listAttributes);
+                    }
+                }
+            }
+            return mapResults;
+        } catch (SQLException ex) {
+            this.logger.error("SQLException executing batch query: " + ex.toString(), ex);
+            throw new PIPException("SQLException executing batch query: " + ex.getMessage(), ex);
+        } finally {
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                this.logger.error("SQLException closing connection: " + e.toString()
+                                  + "  (May be memory leak)");
+            }
+        }
+    }
+
+    @Override
+    public List<PIPResponse> getAttributes(PIPRequest pipRequest, List<PIPFinder> pipFinders)
+        throws PIPException {
+        if (this.jdbcResolvers.size() == 0) {
+            throw new IllegalStateException(this.getClass().getCanonicalName() + " is not configured");
+        }
+
+        List<StdMutablePIPResponse> listMutablePIPResponses = new ArrayList<StdMutablePIPResponse>();
+        for (int i = 0; i < pipFinders.size(); i++) {
+            listMutablePIPResponses.add(new StdMutablePIPResponse());
+        }
+        for (JDBCResolver jdbcResolver : this.jdbcResolvers) {
+            if (jdbcResolver instanceof BatchJDBCResolver
+                && ((BatchJDBCResolver)jdbcResolver).isBatchSupported(pipRequest)) {
+                this.getBatchAttributes(pipRequest, pipFinders, (BatchJDBCResolver)jdbcResolver,
+                                        listMutablePIPResponses);
+            } else {
+                for (int i = 0; i < pipFinders.size(); i++) {
+                    this.getAttributes(pipRequest, pipFinders.get(i), jdbcResolver,
+                                       listMutablePIPResponses.get(i));
+                }
+            }
+        }
+        List<PIPResponse> listPIPResponses = new ArrayList<PIPResponse>(pipFinders.size());
+        for (StdMutablePIPResponse mutablePIPResponse : listMutablePIPResponses) {
+            listPIPResponses.add(this.getPIPResponse(mutablePIPResponse));
+        }
+        return listPIPResponses;
+    }
+
     @Override
     public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
         if (this.jdbcResolvers.size() == 0) {
@@ -270,7 +676,12 @@ public class JDBCEngine extends StdConfigurableEngine {
         for (JDBCResolver jdbcResolver : this.jdbcResolvers) {
             this.getAttributes(pipRequest, pipFinder, jdbcResolver, mutablePIPResponse);
         }
-        if (mutablePIPResponse.getAttributes().size() == 0) {
+        return this.getPIPResponse(mutablePIPResponse);
+    }
+
+    private PIPResponse getPIPResponse(StdMutablePIPResponse mutablePIPResponse) {
+        if (mutablePIPResponse.getAttributes().size() == 0
+            && (mutablePIPResponse.getStatus() == null || mutablePIPResponse.getStatus().isOk())) {
             if (this.logger.isDebugEnabled()) {
                 this.logger.debug("returning empty response");
             }
@@ -391,6 +802,38 @@ public class JDBCEngine extends StdConfigurableEngine {
                 }
             }
         }
+        this.batchSize = Configurables.getIntProperty(propPrefix + PROP_BATCHSIZE, properties,
+                                                      DEFAULT_BATCHSIZE);
+        if (this.batchSize <= 0) {
+            this.logger.error("Invalid '" + propPrefix + PROP_BATCHSIZE + "' property");
+            throw new PIPException("Invalid '" + propPrefix + PROP_BATCHSIZE + "' property");
+        }
+        //
+        // Pool the connections unless told not to
+        //
+        if (TYPE_JDBC.equals(this.type)) {
+            int poolMax = Configurables.getIntProperty(propPrefix + PROP_JDBC_POOL_MAX, properties,
+                                                       DEFAULT_POOL_MAX);
+            if (this.connectionPool != null) {
+                this.connectionPool.close();
+                this.connectionPool = null;
+            }
+            if (poolMax > 0) {
+                int poolMin = Configurables.getIntProperty(propPrefix + PROP_JDBC_POOL_MIN, properties,
+                                                           DEFAULT_POOL_MIN);
+                long poolIdleTimeout = Configurables.getLongProperty(propPrefix + PROP_JDBC_POOL_IDLETIMEOUT,
+                                                                     properties, DEFAULT_POOL_IDLETIMEOUT);
+                long poolMaxWait = Configurables.getLongProperty(propPrefix + PROP_JDBC_POOL_MAXWAIT,
+                                                                 properties, DEFAULT_POOL_MAXWAIT);
+                int poolStatements = Configurables.getIntProperty(propPrefix + PROP_JDBC_POOL_STATEMENTS,
+                                                                  properties, DEFAULT_POOL_STATEMENTS);
+                this.connectionPool = new JDBCConnectionPool(this.jdbcUrl, this.jdbcConnProperties, poolMin,
+                                                             poolMax, poolIdleTimeout, poolMaxWait,
+                                                             properties.getProperty(propPrefix
+                                                                 + PROP_JDBC_POOL_VALIDATIONQUERY),
+                                                             poolStatements);
+            }
+        }
     }
 
     @Override
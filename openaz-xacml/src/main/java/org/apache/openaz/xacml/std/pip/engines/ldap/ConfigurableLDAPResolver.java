@@ -351,6 +351,22 @@ public class ConfigurableLDAPResolver implements LDAPResolver {
         return attr;
     }
 
+    /**
+     * Gets the names of the directory attributes in the view of this resolver, so a search only returns
+     * those. The "dn" view is read from the name of each result and is not asked for.
+     *
+     * @return the array of directory attribute names
+     */
+    public String[] getReturningAttributes() {
+        List<String> listReturningAttributes = new ArrayList<String>();
+        for (String view : this.filterView.keySet()) {
+            if (!"dn".equalsIgnoreCase(view)) {
+                listReturningAttributes.add(view);
+            }
+        }
+        return listReturningAttributes.toArray(new String[listReturningAttributes.size()]);
+    }
+
     @Override
     public List<Attribute> decodeResult(SearchResult searchResult) throws PIPException {
         List<Attribute> attributes = new ArrayList<Attribute>();
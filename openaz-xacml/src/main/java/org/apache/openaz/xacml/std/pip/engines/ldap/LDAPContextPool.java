@@ -0,0 +1,238 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.engines.ldap;
+
+import java.util.Hashtable;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * LDAPContextPool is a bounded pool of bound {@link javax.naming.ldap.LdapContext}s for the
+ * {@link LDAPEngine}, so that the TLS handshake and bind are not repeated for every search.
+ * <p>
+ * A <code>LdapContext</code> taken with <code>getContext</code> must be given back with
+ * <code>releaseContext</code>. Idle <code>LdapContext</code>s beyond the minimum are closed once they have
+ * been idle longer than the idle timeout, and one that has been idle longer than the validation interval is
+ * checked by reading its own entry before it is handed out again.
+ */
+public class LDAPContextPool {
+    private static final String[] VALIDATION_ATTRIBUTES = new String[] {
+        "objectClass"
+    };
+
+    private Log logger = LogFactory.getLog(this.getClass());
+    private final Hashtable<?, ?> ldapEnvironment;
+    private final int minIdle;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final long maxWait;
+    private final long validateAfter;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleContext> idleContexts = new LinkedBlockingDeque<IdleContext>();
+    private volatile boolean closed;
+
+    /**
+     * IdleContext holds a <code>LdapContext</code> waiting in the pool and when it was last used.
+     */
+    private static class IdleContext {
+        private final LdapContext ldapContext;
+        private final long lastUsed = System.currentTimeMillis();
+
+        IdleContext(LdapContext ldapContextIn) {
+            this.ldapContext = ldapContextIn;
+        }
+    }
+
+    /**
+     * Creates a new <code>LDAPContextPool</code>.
+     *
+     * @param ldapEnvironmentIn the <code>Hashtable</code> environment used to create each
+     *            <code>LdapContext</code>
+     * @param minIdleIn the number of idle <code>LdapContext</code>s that are kept regardless of the idle
+     *            timeout
+     * @param maxSizeIn the maximum number of <code>LdapContext</code>s open at once
+     * @param idleTimeoutIn the time in milli-seconds after which an idle <code>LdapContext</code> is closed
+     * @param maxWaitIn the time in milli-seconds to wait for a <code>LdapContext</code> when all are in use
+     * @param validateAfterIn the time in milli-seconds a <code>LdapContext</code> can be idle before it is
+     *            checked again
+     */
+    public LDAPContextPool(Hashtable<?, ?> ldapEnvironmentIn, int minIdleIn, int maxSizeIn,
+                           long idleTimeoutIn, long maxWaitIn, long validateAfterIn) {
+        if (maxSizeIn <= 0) {
+            throw new IllegalArgumentException("Maximum pool size must be positive");
+        }
+        this.ldapEnvironment = ldapEnvironmentIn;
+        this.minIdle = minIdleIn;
+        this.maxSize = maxSizeIn;
+        this.idleTimeout = idleTimeoutIn;
+        this.maxWait = maxWaitIn;
+        this.validateAfter = validateAfterIn;
+        this.permits = new Semaphore(maxSizeIn, true);
+    }
+
+    /**
+     * Determines if the given <code>NamingException</code> means the connection behind a
+     * <code>LdapContext</code> can no longer be used.
+     *
+     * @param ex the <code>NamingException</code> to check
+     * @return true if the <code>LdapContext</code> should be discarded, else false
+     */
+    public static boolean isBroken(NamingException ex) {
+        return ex instanceof CommunicationException || ex instanceof ServiceUnavailableException;
+    }
+
+    private static void closeQuietly(LdapContext ldapContext) {
+        try {
+            ldapContext.close();
+        } catch (NamingException ex) { //NOPMD
+        }
+    }
+
+    /**
+     * Gets a <code>LdapContext</code> from the pool, creating a new one if no idle <code>LdapContext</code>
+     * is available. The caller must give it back with <code>releaseContext</code>.
+     *
+     * @return a bound <code>LdapContext</code>
+     * @throws NamingException if the pool is closed, no <code>LdapContext</code> becomes available within the
+     *             maximum wait time or a new <code>LdapContext</code> cannot be created
+     */
+    public LdapContext getContext() throws NamingException {
+        if (this.closed) {
+            throw new NamingException("LDAP context pool is closed");
+        }
+        try {
+            if (!this.permits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+                throw new NamingException("Timed out waiting for one of " + this.maxSize
+                                          + " pooled LDAP contexts");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new NamingException("Interrupted waiting for a pooled LDAP context");
+        }
+
+        try {
+            this.evictIdle();
+            IdleContext idleContext;
+            while ((idleContext = this.idleContexts.pollFirst()) != null) {
+                if (this.isValid(idleContext)) {
+                    return idleContext.ldapContext;
+                }
+                closeQuietly(idleContext.ldapContext);
+            }
+            return new InitialLdapContext(this.ldapEnvironment, null);
+        } catch (NamingException | RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    private boolean isValid(IdleContext idleContext) {
+        if (System.currentTimeMillis() - idleContext.lastUsed < this.validateAfter) {
+            return true;
+        }
+        try {
+            idleContext.ldapContext.getAttributes("", VALIDATION_ATTRIBUTES);
+            return true;
+        } catch (NamingException ex) {
+            this.logger.warn("Discarding pooled LDAP context that failed validation: " + ex.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Gives a <code>LdapContext</code> taken with <code>getContext</code> back to the pool. Any request
+     * controls set on it are cleared.
+     *
+     * @param ldapContext the <code>LdapContext</code> to give back
+     * @param broken true if the <code>LdapContext</code> failed in a way that means it should be closed
+     */
+    public void releaseContext(LdapContext ldapContext, boolean broken) {
+        try {
+            if (this.closed || broken) {
+                closeQuietly(ldapContext);
+            } else {
+                try {
+                    ldapContext.setRequestControls(null);
+                    this.idleContexts.offerFirst(new IdleContext(ldapContext));
+                } catch (NamingException ex) {
+                    this.logger.warn("Discarding pooled LDAP context: " + ex.toString());
+                    closeQuietly(ldapContext);
+                }
+            }
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Closes the least recently used idle <code>LdapContext</code>s that have been idle longer than the idle
+     * timeout, keeping at least the minimum number of idle <code>LdapContext</code>s.
+     */
+    private void evictIdle() {
+        long expired = System.currentTimeMillis() - this.idleTimeout;
+        IdleContext idleContext;
+        while (this.idleContexts.size() > this.minIdle && (idleContext = this.idleContexts.peekLast()) != null
+               && idleContext.lastUsed < expired) {
+            if (this.idleContexts.removeLastOccurrence(idleContext)) {
+                closeQuietly(idleContext.ldapContext);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of <code>LdapContext</code>s currently taken from the pool.
+     *
+     * @return the number of <code>LdapContext</code>s in use
+     */
+    public int getActiveCount() {
+        return this.maxSize - this.permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of bound <code>LdapContext</code>s waiting in the pool.
+     *
+     * @return the number of idle <code>LdapContext</code>s
+     */
+    public int getIdleCount() {
+        return this.idleContexts.size();
+    }
+
+    /**
+     * Closes all idle <code>LdapContext</code>s. <code>LdapContext</code>s that are in use are closed when
+     * they are given back.
+     */
+    public void close() {
+        this.closed = true;
+        IdleContext idleContext;
+        while ((idleContext = this.idleContexts.pollFirst()) != null) {
+            closeQuietly(idleContext.ldapContext);
+        }
+    }
+}
@@ -30,6 +30,7 @@
  */
 package org.apache.openaz.xacml.std.pip.engines.ldap;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -37,14 +38,18 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -53,22 +58,40 @@ import org.apache.openaz.xacml.api.pip.PIPException;
 import org.apache.openaz.xacml.api.pip.PIPFinder;
 import org.apache.openaz.xacml.api.pip.PIPRequest;
 import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.StdStatus;
+import org.apache.openaz.xacml.std.StdStatusCode;
 import org.apache.openaz.xacml.std.pip.StdMutablePIPResponse;
 import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+import org.apache.openaz.xacml.std.pip.engines.Configurables;
 import org.apache.openaz.xacml.std.pip.engines.StdConfigurableEngine;
 
 import com.google.common.base.Splitter;
-import com.google.common.cache.Cache;
 
 /**
  * LDAPEngine extends {@link org.apache.openaz.xacml.std.pip.engines.StdConfigurableEngine} to implement a
  * generic PIP for accessing data from and LDAP server, including a configurable cache to avoid repeat
  * queries.
+ * <p>
+ * Bound contexts are taken from a {@link LDAPContextPool} unless the "pool.max" property is 0. If the
+ * "pageSize" property is set, searches ask for their results in pages of that size with the paged-results
+ * control, and {@link ConfigurableLDAPResolver}s only ask for the attributes in their view.
  */
 public class LDAPEngine extends StdConfigurableEngine {
     public static final String PROP_RESOLVERS = "resolvers";
     public static final String PROP_RESOLVER = "resolver";
     public static final String PROP_LDAP_SCOPE = "scope";
+    public static final String PROP_PAGESIZE = "pageSize";
+    public static final String PROP_POOL_MIN = "pool.min";
+    public static final String PROP_POOL_MAX = "pool.max";
+    public static final String PROP_POOL_IDLETIMEOUT = "pool.idleTimeout";
+    public static final String PROP_POOL_MAXWAIT = "pool.maxWait";
+    public static final String PROP_POOL_VALIDATEAFTER = "pool.validateAfter";
+
+    public static final int DEFAULT_POOL_MIN = 0;
+    public static final int DEFAULT_POOL_MAX = 10;
+    public static final long DEFAULT_POOL_IDLETIMEOUT = 300000;
+    public static final long DEFAULT_POOL_MAXWAIT = 30000;
+    public static final long DEFAULT_POOL_VALIDATEAFTER = 30000;
 
     private static final String LDAP_SCOPE_SUBTREE = "subtree";
     private static final String LDAP_SCOPE_OBJECT = "object";
@@ -80,6 +103,8 @@ public class LDAPEngine extends StdConfigurableEngine {
     private Hashtable<Object, Object> ldapEnvironment = new Hashtable<Object, Object>();
     private List<LDAPResolver> ldapResolvers = new ArrayList<LDAPResolver>();
     private int ldapScope;
+    private int pageSize;
+    private LDAPContextPool contextPool;
 
     /*
      * In addition, we pull the following standard LDAP properties from the configuration
@@ -167,6 +192,30 @@ public class LDAPEngine extends StdConfigurableEngine {
             this.ldapScope = SearchControls.SUBTREE_SCOPE;
         }
 
+        this.pageSize = Configurables.getIntProperty(propertyPrefix + PROP_PAGESIZE, properties, 0);
+
+        /*
+         * Pool the bound contexts unless told not to
+         */
+        if (this.contextPool != null) {
+            this.contextPool.close();
+            this.contextPool = null;
+        }
+        int poolMax = Configurables.getIntProperty(propertyPrefix + PROP_POOL_MAX, properties,
+                                                   DEFAULT_POOL_MAX);
+        if (poolMax > 0) {
+            int poolMin = Configurables.getIntProperty(propertyPrefix + PROP_POOL_MIN, properties,
+                                                       DEFAULT_POOL_MIN);
+            long poolIdleTimeout = Configurables.getLongProperty(propertyPrefix + PROP_POOL_IDLETIMEOUT,
+                                                                 properties, DEFAULT_POOL_IDLETIMEOUT);
+            long poolMaxWait = Configurables.getLongProperty(propertyPrefix + PROP_POOL_MAXWAIT, properties,
+                                                             DEFAULT_POOL_MAXWAIT);
+            long poolValidateAfter = Configurables.getLongProperty(propertyPrefix + PROP_POOL_VALIDATEAFTER,
+                                                                   properties, DEFAULT_POOL_VALIDATEAFTER);
+            this.contextPool = new LDAPContextPool(this.ldapEnvironment, poolMin, poolMax, poolIdleTimeout,
+                                                   poolMaxWait, poolValidateAfter);
+        }
+
         /*
          * Get list of resolvers defined for this LDAP Engine
          */
@@ -215,6 +264,34 @@ public class LDAPEngine extends StdConfigurableEngine {
 
     }
 
+    /**
+     * Gets the <code>LDAPContextPool</code> the bound contexts are taken from.
+     *
+     * @return the <code>LDAPContextPool</code> or null if contexts are not pooled
+     */
+    public LDAPContextPool getContextPool() {
+        return this.contextPool;
+    }
+
+    private LdapContext getContext() throws NamingException {
+        if (this.contextPool != null) {
+            return this.contextPool.getContext();
+        }
+        return new InitialLdapContext(this.ldapEnvironment, null);
+    }
+
+    private void releaseContext(LdapContext ldapContext, boolean broken) {
+        if (this.contextPool != null) {
+            this.contextPool.releaseContext(ldapContext, broken);
+        } else {
+            try {
+                ldapContext.close();
+            } catch (Exception ex) {
+                this.logger.warn("Exception closing DirContext: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
     @Override
     public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
         /*
@@ -228,7 +305,8 @@ public class LDAPEngine extends StdConfigurableEngine {
         for (LDAPResolver ldapResolver : this.ldapResolvers) {
             this.getAttributes(pipRequest, pipFinder, mutablePIPResponse, ldapResolver);
         }
-        if (mutablePIPResponse.getAttributes().size() == 0) {
+        if (mutablePIPResponse.getAttributes().size() == 0
+            && (mutablePIPResponse.getStatus() == null || mutablePIPResponse.getStatus().isOk())) {
             if (this.logger.isDebugEnabled()) {
                 this.logger.debug("returning empty response");
             }
@@ -243,12 +321,12 @@ public class LDAPEngine extends StdConfigurableEngine {
     }
 
     public void getAttributes(PIPRequest pipRequest, PIPFinder pipFinder,
-                              StdMutablePIPResponse mutablePIPResponse, LDAPResolver ldapResolver)
+                              StdMutablePIPResponse mutablePIPResponse, final LDAPResolver ldapResolver)
         throws PIPException {
         /*
          * Check with the resolver to get the base string
          */
-        String stringBase = ldapResolver.getBase(this, pipRequest, pipFinder);
+        final String stringBase = ldapResolver.getBase(this, pipRequest, pipFinder);
         if (stringBase == null) {
             this.logger.warn(this.getName() + " does not handle " + pipRequest.toString());
             return;
@@ -257,70 +335,103 @@ public class LDAPEngine extends StdConfigurableEngine {
         /*
          * Get the filter string
          */
-        String stringFilter = ldapResolver.getFilterString(this, pipRequest, pipFinder);
+        final String stringFilter = ldapResolver.getFilterString(this, pipRequest, pipFinder);
 
         /*
-         * Check the cache
+         * Use the cache, or search unless the same search is already running
          */
-        Cache<String, PIPResponse> cache = this.getCache();
-        String cacheKey = stringBase + "::" + (stringFilter == null ? "" : stringFilter);
-        if (cache != null) {
-            PIPResponse pipResponse = cache.getIfPresent(cacheKey);
-            if (pipResponse != null) {
-                if (this.logger.isDebugEnabled()) {
-                    this.logger.debug("Returning cached response: " + pipResponse);
-                }
-                mutablePIPResponse.addAttributes(pipResponse.getAttributes());
-                return;
+        final String cacheKey = this.newCacheKey(this.ldapResolvers.indexOf(ldapResolver), stringBase,
+                                           stringFilter == null ? "" : stringFilter);
+        PIPResponse pipResponse = this.getResponse(cacheKey, new Callable<PIPResponse>() {
+            @Override
+            public PIPResponse call() throws PIPException {
+                StdMutablePIPResponse mutablePIPResponseSearch = new StdMutablePIPResponse();
+                LDAPEngine.this.search(stringBase, stringFilter, ldapResolver, cacheKey,
+                                       mutablePIPResponseSearch);
+                return new StdPIPResponse(mutablePIPResponseSearch);
             }
+        });
+        mutablePIPResponse.addAttributes(pipResponse.getAttributes());
+        if (pipResponse.getStatus() != null && !pipResponse.getStatus().isOk()) {
+            mutablePIPResponse.setStatus(pipResponse.getStatus());
         }
-        /*
-         * Not in the cache, so set up the LDAP query session
-         */
-        DirContext dirContext = null;
-        PIPResponse pipResponse = null;
+    }
+
+    private void search(String stringBase, String stringFilter, LDAPResolver ldapResolver, String cacheKey,
+                        StdMutablePIPResponse mutablePIPResponse) throws PIPException {
+        LdapContext ldapContext = null;
+        boolean broken = false;
         try {
             /*
-             * Create the DirContext
+             * Get a bound context
              */
-            dirContext = new InitialDirContext(this.ldapEnvironment);
+            ldapContext = this.getContext();
 
             /*
-             * Set up the search controls
+             * Set up the search controls, only asking for the attributes the resolver decodes
              */
             SearchControls searchControls = new SearchControls();
             searchControls.setSearchScope(this.ldapScope);
+            if (ldapResolver instanceof ConfigurableLDAPResolver) {
+                searchControls.setReturningAttributes(((ConfigurableLDAPResolver)ldapResolver)
+                    .getReturningAttributes());
+            }
 
             /*
-             * Do the search
+             * Do the search, a page at a time if asked to
              */
-            NamingEnumeration<SearchResult> namingEnumeration = dirContext.search(stringBase, stringFilter,
-                                                                                  searchControls);
-            if (namingEnumeration != null && namingEnumeration.hasMore()) {
-                while (namingEnumeration.hasMore()) {
-                    List<Attribute> listAttributes = ldapResolver.decodeResult(namingEnumeration.next());
-                    if (listAttributes != null && listAttributes.size() > 0) {
-                        mutablePIPResponse.addAttributes(listAttributes);
+            List<Attribute> listAttributesResolved = new ArrayList<Attribute>();
+            byte[] cookie = null;
+            do {
+                if (this.pageSize > 0) {
+                    ldapContext.setRequestControls(new Control[] {
+                        new PagedResultsControl(this.pageSize, cookie, Control.NONCRITICAL)
+                    });
+                }
+                NamingEnumeration<SearchResult> namingEnumeration = ldapContext.search(stringBase,
+                                                                                       stringFilter,
+                                                                                       searchControls);
+                if (namingEnumeration != null) {
+                    while (namingEnumeration.hasMore()) {
+                        List<Attribute> listAttributes = ldapResolver.decodeResult(namingEnumeration.next());
+                        if (listAttributes != null && listAttributes.size() > 0) {
+                            listAttributesResolved.addAll(listAttributes);
+                        }
                     }
+                    namingEnumeration.close();
                 }
-            }
+                cookie = this.pageSize > 0 ? getPagedResultsCookie(ldapContext.getResponseControls()) : null;
+            } while (cookie != null && cookie.length > 0);
+            mutablePIPResponse.addAttributes(listAttributesResolved);
             /*
              * Put in the cache
              */
-            if (cache != null) {
-                cache.put(cacheKey, pipResponse);
-            }
+            this.putCachedResponse(cacheKey, listAttributesResolved);
         } catch (NamingException ex) {
-            this.logger.error("NamingException creating the DirContext: " + ex.getMessage(), ex);
+            broken = LDAPContextPool.isBroken(ex);
+            this.logger.error("NamingException searching the DirContext: " + ex.getMessage(), ex);
+            mutablePIPResponse.setStatus(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR,
+                                                       ex.getMessage()));
+        } catch (IOException ex) {
+            this.logger.error("IOException creating the paged results control: " + ex.getMessage(), ex);
+            mutablePIPResponse.setStatus(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR,
+                                                       ex.getMessage()));
         } finally {
-            if (dirContext != null) {
-                try {
-                    dirContext.close();
-                } catch (Exception ex) {
-                    this.logger.warn("Exception closing DirContext: " + ex.getMessage(), ex);
+            if (ldapContext != null) {
+                this.releaseContext(ldapContext, broken);
+            }
+        }
+    }
+
+    private static byte[] getPagedResultsCookie(Control[] controls) {
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    return ((PagedResultsResponseControl)control).getCookie();
                 }
             }
         }
+        return null;
     }
 
     @Override
@@ -32,23 +32,36 @@ package org.apache.openaz.xacml.std.pip.finders;
 
 import java.util.Collection;
 import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.openaz.xacml.api.pip.PIPException;
 import org.apache.openaz.xacml.api.pip.PIPRequest;
 import org.apache.openaz.xacml.std.pip.engines.ConfigurableEngine;
+import org.apache.openaz.xacml.std.pip.engines.Configurables;
 import org.apache.openaz.xacml.util.AttributeUtils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * ConfigurableEngineFinder extends {@link EngineFinder} with a method for configuring it from a
- * <code>Properties</code> object.
+ * <code>Properties</code> object. If "xacml.pip.fanout.threads" is greater than 0, the engines for a request
+ * are called in parallel on a pool of that many threads, with the "xacml.pip.fanout.timeout" in milliseconds
+ * and the "xacml.pip.fanout.policy" {@link EngineFinder.FanOutPolicy}.
  */
 public class ConfigurableEngineFinder extends EngineFinder {
+    public static final String PROP_PIP_FANOUT_THREADS = "xacml.pip.fanout.threads";
+    public static final String PROP_PIP_FANOUT_TIMEOUT = "xacml.pip.fanout.timeout";
+    public static final String PROP_PIP_FANOUT_POLICY = "xacml.pip.fanout.policy";
+
     private static final String PROP_PIP_ENGINES = "xacml.pip.engines";
     private static final String CLASSNAME = ".classname";
 
     private Log logger = LogFactory.getLog(this.getClass());
+    private ThreadPoolExecutor fanOutExecutor;
 
     /**
      * Creates an instance of the given <code>String</code> className for an object implementing the
@@ -114,6 +127,61 @@ public class ConfigurableEngineFinder extends EngineFinder {
     public ConfigurableEngineFinder() {
     }
 
+    /**
+     * Sets up the parallel fan-out of requests to the engines from the "xacml.pip.fanout" properties. The
+     * thread pool created by an earlier call is reused if it has the same number of threads, and is shut
+     * down otherwise.
+     *
+     * @param properties the <code>Properties</code> to read
+     * @throws org.apache.openaz.xacml.api.pip.PIPException if a property has an invalid value
+     */
+    protected void configureFanOut(Properties properties) throws PIPException {
+        int threads = Configurables.getIntProperty(PROP_PIP_FANOUT_THREADS, properties, 0);
+        if (threads <= 0) {
+            this.shutdownFanOut();
+            return;
+        }
+        this.setTimeout(Configurables.getLongProperty(PROP_PIP_FANOUT_TIMEOUT, properties, 0));
+        String policy = properties.getProperty(PROP_PIP_FANOUT_POLICY);
+        if (policy != null && policy.trim().length() > 0) {
+            try {
+                this.setFanOutPolicy(FanOutPolicy.valueOf(policy.trim().toUpperCase().replace('-', '_')));
+            } catch (IllegalArgumentException ex) {
+                throw new PIPException("Invalid value for " + PROP_PIP_FANOUT_POLICY + ": " + policy);
+            }
+        }
+        if (this.fanOutExecutor != null && this.fanOutExecutor.getCorePoolSize() == threads
+            && this.getExecutorService() == this.fanOutExecutor) {
+            return;
+        }
+        this.shutdownFanOut();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                                       new LinkedBlockingQueue<Runnable>(),
+                                                                       new ThreadFactoryBuilder()
+                                                                           .setDaemon(true)
+                                                                           .setNameFormat("openaz-pip-fanout-%d")
+                                                                           .build());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.fanOutExecutor = threadPoolExecutor;
+        this.setExecutorService(threadPoolExecutor);
+    }
+
+    /**
+     * Shuts down the thread pool created by <code>configureFanOut</code>, if there is one, letting the
+     * requests already running on it finish. Engines are called on the calling thread afterwards unless
+     * another <code>ExecutorService</code> has been set.
+     */
+    public void shutdownFanOut() {
+        if (this.fanOutExecutor == null) {
+            return;
+        }
+        if (this.getExecutorService() == this.fanOutExecutor) {
+            this.setExecutorService(null);
+        }
+        this.fanOutExecutor.shutdown();
+        this.fanOutExecutor = null;
+    }
+
     /**
      * Gets the "org.apache.openaz.xacml.pip.engines" property from the given <code>Properties</code> to find
      * the list of PIP engines that should be created, configured, and registered.
@@ -123,6 +191,8 @@ public class ConfigurableEngineFinder extends EngineFinder {
      *             engines
      */
     public void configure(Properties properties) throws PIPException {
+        this.configureFanOut(properties);
+
         String engineIds = properties.getProperty(PROP_PIP_ENGINES);
         if (engineIds == null || engineIds.length() == 0) {
             return;
@@ -34,9 +34,22 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.apache.openaz.xacml.api.Status;
 import org.apache.openaz.xacml.api.pip.PIPEngine;
@@ -47,14 +60,94 @@ import org.apache.openaz.xacml.api.pip.PIPResponse;
 import org.apache.openaz.xacml.std.StdStatus;
 import org.apache.openaz.xacml.std.StdStatusCode;
 import org.apache.openaz.xacml.std.pip.StdMutablePIPResponse;
+import org.apache.openaz.xacml.std.pip.StdPIPRequest;
 import org.apache.openaz.xacml.std.pip.StdPIPResponse;
 
 /**
  * EngineFinder implements the {@link org.apache.openaz.xacml.api.pip.PIPFinder} interface by maintaining a
- * simple list of registered {@link org.apache.openaz.xacml.api.pip.PIPEngine} objects.
+ * simple list of registered {@link org.apache.openaz.xacml.api.pip.PIPEngine} objects. When an engine is
+ * registered, the attributes it declares in <code>attributesProvided</code> are added to a routing table so
+ * that a <code>PIPRequest</code> is only sent to the engines that can answer it. Engines that do not declare
+ * any attributes are sent every request.
+ * <p>
+ * If an <code>ExecutorService</code> is set, the engines for a request are called in parallel on it and each
+ * is given at most the configured timeout to answer. An engine that times out contributes a processing error
+ * status instead of blocking the request. The {@link FanOutPolicy} decides how the responses are combined.
  */
 public class EngineFinder implements PIPFinder {
+    /**
+     * FanOutPolicy determines how the responses from several <code>PIPEngine</code>s are combined.
+     */
+    public enum FanOutPolicy {
+        /**
+         * Return the first response with attributes and stop waiting for the other engines
+         */
+        FIRST_SUCCESS,
+        /**
+         * Return the merged attributes only if every engine answered without an error, otherwise return the
+         * first error status
+         */
+        ALL_SUCCESS,
+        /**
+         * Return the merged attributes of the engines that answered, and the first error status only if
+         * there are none. This is the default.
+         */
+        MERGE_AVAILABLE
+    }
+
+    private static final ThreadLocal<Boolean> IN_FAN_OUT = new ThreadLocal<Boolean>();
+
+    private Log logger = LogFactory.getLog(this.getClass());
     private Map<String, List<PIPEngine>> pipEngines = new HashMap<String, List<PIPEngine>>();
+    private Map<PIPRequest, Set<PIPEngine>> routesByAttribute = new HashMap<PIPRequest, Set<PIPEngine>>();
+    private Map<PIPRequest, Set<PIPEngine>> routesByIssuer = new HashMap<PIPRequest, Set<PIPEngine>>();
+    private List<PIPEngine> broadcastEngines = new ArrayList<PIPEngine>();
+    private ExecutorService executorService;
+    private long timeout;
+    private FanOutPolicy fanOutPolicy = FanOutPolicy.MERGE_AVAILABLE;
+
+    /**
+     * Collects the responses of the engines for a single request according to a <code>FanOutPolicy</code>.
+     */
+    private static class FanOutResult {
+        private FanOutPolicy fanOutPolicy;
+        private StdMutablePIPResponse pipResponse = new StdMutablePIPResponse();
+        private Status firstErrorStatus;
+
+        public FanOutResult(FanOutPolicy fanOutPolicyIn) {
+            this.fanOutPolicy = fanOutPolicyIn;
+        }
+
+        /**
+         * Adds the response of an engine.
+         *
+         * @param pipResponseEngine the <code>PIPResponse</code> from the engine
+         * @return true if no more responses are needed, else false
+         */
+        public boolean add(PIPResponse pipResponseEngine) {
+            if (pipResponseEngine == null) {
+                return false;
+            }
+            if (pipResponseEngine.getStatus() == null || pipResponseEngine.getStatus().isOk()) {
+                this.pipResponse.addAttributes(pipResponseEngine.getAttributes());
+                return this.fanOutPolicy == FanOutPolicy.FIRST_SUCCESS
+                       && pipResponseEngine.getAttributes().size() > 0;
+            }
+            if (this.firstErrorStatus == null) {
+                this.firstErrorStatus = pipResponseEngine.getStatus();
+            }
+            return this.fanOutPolicy == FanOutPolicy.ALL_SUCCESS;
+        }
+
+        public PIPResponse getResponse() {
+            if (this.firstErrorStatus != null
+                && (this.fanOutPolicy == FanOutPolicy.ALL_SUCCESS
+                    || this.pipResponse.getAttributes().size() == 0)) {
+                return new StdPIPResponse(this.firstErrorStatus);
+            }
+            return new StdPIPResponse(this.pipResponse);
+        }
+    }
 
     /**
      * Creates an empty <code>EngineFinder</code>
@@ -75,42 +168,242 @@ public class EngineFinder implements PIPFinder {
                 this.pipEngines.put(pipEngine.getName(), pipEnginesForName);
             }
             pipEnginesForName.add(pipEngine);
+            this.addRoutes(pipEngine);
+        }
+    }
+
+    /**
+     * Adds the given <code>PIPEngine</code> to the routing table under each attribute it provides, or to the
+     * broadcast list if it does not declare any.
+     *
+     * @param pipEngine the <code>PIPEngine</code> to route requests to
+     */
+    protected void addRoutes(PIPEngine pipEngine) {
+        Collection<PIPRequest> attributesProvided = pipEngine.attributesProvided();
+        if (attributesProvided == null || attributesProvided.isEmpty()) {
+            this.broadcastEngines.add(pipEngine);
+            return;
+        }
+        for (PIPRequest pipRequestProvided : attributesProvided) {
+            addRoute(this.routesByAttribute, newRouteKey(pipRequestProvided, null), pipEngine);
+            if (pipRequestProvided.getIssuer() != null) {
+                addRoute(this.routesByIssuer, newRouteKey(pipRequestProvided, pipRequestProvided.getIssuer()),
+                         pipEngine);
+            }
+        }
+    }
+
+    private static void addRoute(Map<PIPRequest, Set<PIPEngine>> routes, PIPRequest routeKey,
+                                 PIPEngine pipEngine) {
+        Set<PIPEngine> routedEngines = routes.get(routeKey);
+        if (routedEngines == null) {
+            routedEngines = new LinkedHashSet<PIPEngine>();
+            routes.put(routeKey, routedEngines);
+        }
+        routedEngines.add(pipEngine);
+    }
+
+    private static PIPRequest newRouteKey(PIPRequest pipRequest, String issuer) {
+        return new StdPIPRequest(pipRequest.getCategory(), pipRequest.getAttributeId(),
+                                 pipRequest.getDataTypeId(), issuer);
+    }
+
+    /**
+     * Gets the registered <code>PIPEngine</code>s that may be able to answer the given
+     * <code>PIPRequest</code>: those that provide its category, attribute id and data type with the same
+     * issuer, or with any issuer if the request has none, followed by those that do not declare the
+     * attributes they provide.
+     *
+     * @param pipRequest the <code>PIPRequest</code> to route
+     * @return the <code>List</code> of <code>PIPEngine</code>s to send the request to
+     */
+    public List<PIPEngine> getPIPEngines(PIPRequest pipRequest) {
+        Set<PIPEngine> routedEngines = null;
+        if (pipRequest.getIssuer() == null) {
+            routedEngines = this.routesByAttribute.get(newRouteKey(pipRequest, null));
+        } else {
+            routedEngines = this.routesByIssuer.get(newRouteKey(pipRequest, pipRequest.getIssuer()));
+        }
+        if (routedEngines == null) {
+            return Collections.unmodifiableList(this.broadcastEngines);
+        }
+        List<PIPEngine> listPIPEngines = new ArrayList<PIPEngine>(routedEngines.size()
+                                                                  + this.broadcastEngines.size());
+        listPIPEngines.addAll(routedEngines);
+        listPIPEngines.addAll(this.broadcastEngines);
+        return listPIPEngines;
+    }
+
+    /**
+     * Gets the <code>ExecutorService</code> the engines for a request are called on in parallel.
+     *
+     * @return the <code>ExecutorService</code> or null if engines are called one after another
+     */
+    public ExecutorService getExecutorService() {
+        return this.executorService;
+    }
+
+    /**
+     * Sets the <code>ExecutorService</code> to call the engines for a request on in parallel. It may be
+     * shared with other <code>EngineFinder</code>s. If null, engines are called one after another on the
+     * calling thread and timeouts do not apply.
+     *
+     * @param executorServiceIn the <code>ExecutorService</code> or null
+     */
+    public void setExecutorService(ExecutorService executorServiceIn) {
+        this.executorService = executorServiceIn;
+    }
+
+    /**
+     * Gets the number of milliseconds each engine is given to answer a request when called in parallel.
+     *
+     * @return the timeout in milliseconds, or 0 to wait as long as needed
+     */
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Sets the number of milliseconds each engine is given to answer a request when called in parallel. An
+     * engine that has not answered by then contributes a processing error status.
+     *
+     * @param timeoutIn the timeout in milliseconds, or 0 to wait as long as needed
+     */
+    public void setTimeout(long timeoutIn) {
+        this.timeout = timeoutIn;
+    }
+
+    /**
+     * Gets the {@link FanOutPolicy} that decides how the responses of the engines for a request are combined.
+     *
+     * @return the <code>FanOutPolicy</code>
+     */
+    public FanOutPolicy getFanOutPolicy() {
+        return this.fanOutPolicy;
+    }
+
+    /**
+     * Sets the {@link FanOutPolicy} that decides how the responses of the engines for a request are combined.
+     *
+     * @param fanOutPolicyIn the <code>FanOutPolicy</code>, or null for <code>MERGE_AVAILABLE</code>
+     */
+    public void setFanOutPolicy(FanOutPolicy fanOutPolicyIn) {
+        this.fanOutPolicy = fanOutPolicyIn == null ? FanOutPolicy.MERGE_AVAILABLE : fanOutPolicyIn;
+    }
+
+    private static PIPResponse getAttributes(PIPEngine pipEngine, PIPRequest pipRequest,
+                                             PIPFinder pipFinderParent) {
+        try {
+            return pipEngine.getAttributes(pipRequest, pipFinderParent);
+        } catch (Exception e) {
+            return new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR));
         }
     }
 
+    private static PIPResponse newErrorResponse(String message) {
+        return new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, message));
+    }
+
     @Override
     public PIPResponse getAttributes(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent)
         throws PIPException {
-        StdMutablePIPResponse pipResponse = new StdMutablePIPResponse();
-        Status firstErrorStatus = null;
-        Iterator<List<PIPEngine>> iterPIPEngineLists = this.pipEngines.values().iterator();
-        while (iterPIPEngineLists.hasNext()) {
-            List<PIPEngine> listPIPEngines = iterPIPEngineLists.next();
+        List<PIPEngine> listPIPEngines = new ArrayList<PIPEngine>();
+        for (PIPEngine pipEngine : this.getPIPEngines(pipRequest)) {
+            if (pipEngine != exclude) {
+                listPIPEngines.add(pipEngine);
+            }
+        }
+
+        /*
+         * Engines called from a fan-out thread, for example to resolve their own parameters, are called on
+         * that thread so nested requests cannot use up the executor waiting on each other
+         */
+        FanOutResult fanOutResult = new FanOutResult(this.fanOutPolicy);
+        if (this.executorService == null || listPIPEngines.isEmpty()
+            || Boolean.TRUE.equals(IN_FAN_OUT.get())) {
             for (PIPEngine pipEngine : listPIPEngines) {
-                if (pipEngine != exclude) {
-                    PIPResponse pipResponseEngine = null;
-                    try {
-                        pipResponseEngine = pipEngine.getAttributes(pipRequest, pipFinderParent);
-                    } catch (Exception e) {
-                        pipResponseEngine = new StdPIPResponse(
-                                                               new StdStatus(
-                                                                             StdStatusCode.STATUS_CODE_PROCESSING_ERROR));
-                    }
-                    if (pipResponseEngine != null) {
-                        if (pipResponseEngine.getStatus() == null || pipResponseEngine.getStatus().isOk()) {
-                            pipResponse.addAttributes(pipResponseEngine.getAttributes());
-                        } else if (firstErrorStatus == null) {
-                            firstErrorStatus = pipResponseEngine.getStatus();
+                if (fanOutResult.add(getAttributes(pipEngine, pipRequest, pipFinderParent))) {
+                    break;
+                }
+            }
+        } else {
+            this.fanOut(listPIPEngines, pipRequest, pipFinderParent, fanOutResult);
+        }
+        return fanOutResult.getResponse();
+    }
+
+    /**
+     * Calls the given engines in parallel on the <code>ExecutorService</code>, adding their responses to the
+     * <code>FanOutResult</code> as they complete until it has enough or the timeout expires.
+     */
+    private void fanOut(List<PIPEngine> listPIPEngines, final PIPRequest pipRequest,
+                        final PIPFinder pipFinderParent, FanOutResult fanOutResult) throws PIPException {
+        CompletionService<PIPResponse> completionService = new ExecutorCompletionService<PIPResponse>(
+            this.executorService);
+        Map<Future<PIPResponse>, PIPEngine> mapPending = new LinkedHashMap<Future<PIPResponse>, PIPEngine>();
+        boolean isDone = false;
+        for (final PIPEngine pipEngine : listPIPEngines) {
+            try {
+                mapPending.put(completionService.submit(new Callable<PIPResponse>() {
+                    @Override
+                    public PIPResponse call() {
+                        IN_FAN_OUT.set(Boolean.TRUE);
+                        try {
+                            return getAttributes(pipEngine, pipRequest, pipFinderParent);
+                        } finally {
+                            IN_FAN_OUT.remove();
                         }
                     }
+                }), pipEngine);
+            } catch (RejectedExecutionException ex) {
+                this.logger.warn("PIP engine " + pipEngine.getName()
+                                 + " rejected by executor, calling it directly");
+                if (fanOutResult.add(getAttributes(pipEngine, pipRequest, pipFinderParent))) {
+                    isDone = true;
+                    break;
                 }
             }
         }
-        if (pipResponse.getAttributes().size() == 0 && firstErrorStatus != null) {
-            pipResponse.setStatus(firstErrorStatus);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+        try {
+            while (!isDone && !mapPending.isEmpty()) {
+                Future<PIPResponse> future = null;
+                if (this.timeout > 0) {
+                    future = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (future == null) {
+                        break;
+                    }
+                } else {
+                    future = completionService.take();
+                }
+                mapPending.remove(future);
+                try {
+                    isDone = fanOutResult.add(future.get());
+                } catch (ExecutionException ex) {
+                    isDone = fanOutResult.add(newErrorResponse(String.valueOf(ex.getCause())));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            for (Future<PIPResponse> future : mapPending.keySet()) {
+                future.cancel(true);
+            }
+            throw new PIPException("Interrupted waiting for PIP engines", ex);
         }
 
-        return new StdPIPResponse(pipResponse);
+        /*
+         * Anything still pending either timed out or is no longer needed
+         */
+        for (Map.Entry<Future<PIPResponse>, PIPEngine> entry : mapPending.entrySet()) {
+            entry.getKey().cancel(true);
+            if (!isDone) {
+                String message = "PIP engine " + entry.getValue().getName() + " timed out after "
+                                 + this.timeout + "ms";
+                this.logger.warn(message + " for " + pipRequest);
+                isDone = fanOutResult.add(newErrorResponse(message));
+            }
+        }
     }
 
     @Override
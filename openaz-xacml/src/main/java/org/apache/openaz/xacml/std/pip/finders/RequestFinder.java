@@ -34,9 +34,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.openaz.xacml.api.Status;
 import org.apache.openaz.xacml.api.XACML3;
@@ -59,7 +59,7 @@ import org.apache.openaz.xacml.std.pip.engines.RequestEngine;
 public class RequestFinder extends WrappingFinder {
     private RequestEngine requestEngine;
     private EnvironmentEngine environmentEngine;
-    private Map<PIPRequest, PIPResponse> mapCache = new HashMap<PIPRequest, PIPResponse>();
+    private Map<PIPRequest, PIPResponse> mapCache = new ConcurrentHashMap<PIPRequest, PIPResponse>();
 
     protected RequestEngine getRequestEngine() {
         return this.requestEngine;
@@ -173,6 +173,21 @@ public class RequestFinder extends WrappingFinder {
         // System.out.println("RequestFinder.getAttributesInternal() = " + (tEnd - tStart));
     }
 
+    /**
+     * Stores the given <code>PIPResponse</code> as the answer to the given <code>PIPRequest</code> for
+     * later calls to <code>getAttributes</code> that are not satisfied by the <code>Request</code> or the
+     * environment. This lets callers seed the cache with attributes retrieved ahead of evaluation, including
+     * requests that no <code>PIPEngine</code> could answer.
+     *
+     * @param pipRequest the <code>PIPRequest</code>
+     * @param pipResponse the <code>PIPResponse</code> to return for the <code>PIPRequest</code>
+     */
+    public void putCachedResponse(PIPRequest pipRequest, PIPResponse pipResponse) {
+        if (pipRequest != null && pipResponse != null) {
+            this.mapCache.put(pipRequest, pipResponse);
+        }
+    }
+
     @Override
     public Collection<PIPEngine> getPIPEngines() {
         List<PIPEngine> engines = new ArrayList<PIPEngine>();
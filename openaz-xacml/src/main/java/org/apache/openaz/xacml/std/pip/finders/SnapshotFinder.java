@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.pip.finders;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.openaz.xacml.api.pip.PIPEngine;
+import org.apache.openaz.xacml.api.pip.PIPException;
+import org.apache.openaz.xacml.api.pip.PIPFinder;
+import org.apache.openaz.xacml.api.pip.PIPRequest;
+import org.apache.openaz.xacml.api.pip.PIPResponse;
+import org.apache.openaz.xacml.std.pip.StdPIPResponse;
+
+/**
+ * SnapshotFinder implements the {@link org.apache.openaz.xacml.api.pip.PIPFinder} interface by answering a
+ * fixed set of {@link org.apache.openaz.xacml.api.pip.PIPRequest}s with the responses another
+ * <code>PIPFinder</code> gave for them. It keeps no reference to that <code>PIPFinder</code>, so an engine
+ * can hand it to work that outlives the request, such as a background refresh, without keeping the
+ * request's evaluation context alive or using it from another thread. Any other <code>PIPRequest</code>
+ * gets an empty response.
+ */
+public class SnapshotFinder implements PIPFinder {
+    private final Map<PIPRequest, PIPResponse> mapResponses;
+
+    /**
+     * Creates a new <code>SnapshotFinder</code> with the matching attributes the given <code>PIPFinder</code>
+     * returns for each of the given <code>PIPRequest</code>s.
+     *
+     * @param pipFinder the <code>PIPFinder</code> to retrieve the attributes from
+     * @param pipRequests the <code>PIPRequest</code>s to retrieve
+     * @throws PIPException if there is an error retrieving the attributes
+     */
+    public SnapshotFinder(PIPFinder pipFinder, Collection<PIPRequest> pipRequests) throws PIPException {
+        Map<PIPRequest, PIPResponse> mapResponsesRetrieved = new HashMap<PIPRequest, PIPResponse>();
+        for (PIPRequest pipRequest : pipRequests) {
+            mapResponsesRetrieved.put(pipRequest, pipFinder.getMatchingAttributes(pipRequest, null));
+        }
+        this.mapResponses = Collections.unmodifiableMap(mapResponsesRetrieved);
+    }
+
+    @Override
+    public PIPResponse getAttributes(PIPRequest pipRequest, PIPEngine exclude) throws PIPException {
+        PIPResponse pipResponse = this.mapResponses.get(pipRequest);
+        return (pipResponse == null ? StdPIPResponse.PIP_RESPONSE_EMPTY : pipResponse);
+    }
+
+    @Override
+    public PIPResponse getMatchingAttributes(PIPRequest pipRequest, PIPEngine exclude) throws PIPException {
+        return StdPIPResponse.getMatchingResponse(pipRequest, this.getAttributes(pipRequest, exclude));
+    }
+
+    @Override
+    public PIPResponse getAttributes(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent)
+        throws PIPException {
+        return this.getAttributes(pipRequest, exclude);
+    }
+
+    @Override
+    public PIPResponse getMatchingAttributes(PIPRequest pipRequest, PIPEngine exclude,
+                                             PIPFinder pipFinderParent) throws PIPException {
+        return this.getMatchingAttributes(pipRequest, exclude);
+    }
+
+    @Override
+    public Collection<PIPEngine> getPIPEngines() {
+        return Collections.emptyList();
+    }
+}
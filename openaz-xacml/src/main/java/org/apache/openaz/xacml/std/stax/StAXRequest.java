@@ -0,0 +1,826 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.stax;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.DataType;
+import org.apache.openaz.xacml.api.DataTypeException;
+import org.apache.openaz.xacml.api.DataTypeFactory;
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.Request;
+import org.apache.openaz.xacml.api.RequestAttributes;
+import org.apache.openaz.xacml.api.RequestDefaults;
+import org.apache.openaz.xacml.api.RequestReference;
+import org.apache.openaz.xacml.api.XACML;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.std.IdentifierImpl;
+import org.apache.openaz.xacml.std.StdAttribute;
+import org.apache.openaz.xacml.std.StdMutableAttribute;
+import org.apache.openaz.xacml.std.StdMutableRequest;
+import org.apache.openaz.xacml.std.StdMutableRequestReference;
+import org.apache.openaz.xacml.std.StdRequest;
+import org.apache.openaz.xacml.std.StdRequestAttributes;
+import org.apache.openaz.xacml.std.StdRequestAttributesReference;
+import org.apache.openaz.xacml.std.StdRequestDefaults;
+import org.apache.openaz.xacml.std.StdRequestReference;
+import org.apache.openaz.xacml.std.datatypes.DataTypeXPathExpression;
+import org.apache.openaz.xacml.std.datatypes.DataTypes;
+import org.apache.openaz.xacml.std.datatypes.ExtendedNamespaceContext;
+import org.apache.openaz.xacml.std.datatypes.XPathExpressionWrapper;
+import org.apache.openaz.xacml.std.dom.DOMProperties;
+import org.apache.openaz.xacml.std.dom.DOMStructureException;
+import org.apache.openaz.xacml.std.dom.DOMUtil;
+import org.apache.openaz.xacml.util.FactoryException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * StAXRequest is used to convert XML into {@link org.apache.openaz.xacml.api.Request} objects in a single
+ * pass over a StAX {@link javax.xml.stream.XMLStreamReader}. It accepts the same documents and builds the
+ * same {@link org.apache.openaz.xacml.std.StdRequest} objects as
+ * {@link org.apache.openaz.xacml.std.dom.DOMRequest} but never builds a DOM tree of the whole Request. The
+ * contents of Content elements are recorded as they are read and only turned into DOM nodes, which
+ * AttributeSelectors and XPath functions evaluate against, the first time the content root is asked for.
+ * Like <code>DOMRequest</code>, unexpected elements and missing attributes are only errors if
+ * {@link org.apache.openaz.xacml.std.dom.DOMProperties} is not lenient.
+ */
+public class StAXRequest {
+    private static final Log logger = LogFactory.getLog(StAXRequest.class);
+
+    /*
+     * XMLInputFactory instances are safe to share once configured. DTDs are not processed, so neither
+     * internal nor external entities are ever expanded.
+     */
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    private final XMLStreamReader xmlStreamReader;
+    private final boolean bLenient = DOMProperties.isLenient();
+    private DataTypeFactory dataTypeFactory;
+    private ExtendedNamespaceContext namespaceContext;
+
+    /*
+     * Instances only live for the duration of a single load.
+     */
+    protected StAXRequest(XMLStreamReader xmlStreamReaderIn) {
+        this.xmlStreamReader = xmlStreamReaderIn;
+    }
+
+    /**
+     * Parse an XML string into a {@link org.apache.openaz.xacml.api.Request} object.
+     *
+     * @param xmlString
+     * @return
+     * @throws StAXStructureException
+     */
+    public static Request load(String xmlString) throws StAXStructureException {
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(new StringReader(xmlString));
+        } catch (XMLStreamException ex) {
+            throw new StAXStructureException("Exception loading String Request: " + ex.getMessage(), ex);
+        }
+        return StAXRequest.load(reader);
+    }
+
+    /**
+     * Read a file containing the XML description of a XACML Request and parse it into a
+     * {@link org.apache.openaz.xacml.api.Request} Object.
+     *
+     * @param fileRequest
+     * @return
+     * @throws StAXStructureException
+     */
+    public static Request load(File fileRequest) throws StAXStructureException {
+        try (FileInputStream fis = new FileInputStream(fileRequest)) {
+            return StAXRequest.load(fis);
+        } catch (IOException ex) {
+            throw new StAXStructureException("Exception loading File Request: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Read characters from the given <code>InputStream</code> and parse them into an XACML
+     * {@link org.apache.openaz.xacml.api.Request} object. The encoding is taken from the XML declaration.
+     *
+     * @param is
+     * @return
+     * @throws StAXStructureException
+     */
+    public static Request load(InputStream is) throws StAXStructureException {
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(is);
+        } catch (XMLStreamException ex) {
+            throw new StAXStructureException("Exception loading Request: " + ex.getMessage(), ex);
+        }
+        return StAXRequest.load(reader);
+    }
+
+    /**
+     * Reads a XACML Request document from the given <code>XMLStreamReader</code>, which must be positioned
+     * before the Request element. The reader is closed when done.
+     *
+     * @param reader the <code>XMLStreamReader</code> to read from
+     * @return a new {@link org.apache.openaz.xacml.std.StdRequest} parsed from the reader
+     * @throws StAXStructureException if the conversion cannot be made
+     */
+    public static Request load(XMLStreamReader reader) throws StAXStructureException {
+        try {
+            return new StAXRequest(reader).parseDocument();
+        } catch (Exception ex) {
+            throw new StAXStructureException("Exception loading Request: " + ex.getMessage(), ex);
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException ex) {
+                logger.warn("Failed to close XMLStreamReader: " + ex.getMessage());
+            }
+        }
+    }
+
+    private Request parseDocument() throws XMLStreamException, StAXStructureException {
+        while (this.xmlStreamReader.next() != XMLStreamConstants.START_ELEMENT) {
+            if (this.xmlStreamReader.getEventType() == XMLStreamConstants.END_DOCUMENT) {
+                throw new StAXStructureException("No child in document");
+            }
+        }
+        if (!this.isXACMLElement() || !XACML3.ELEMENT_REQUEST.equals(this.xmlStreamReader.getLocalName())) {
+            throw new StAXStructureException("Unexpected element \"" + this.getElementLabel() + "\"");
+        }
+
+        /*
+         * XPathExpression values resolve their prefixes against the namespaces declared on the root element
+         */
+        this.namespaceContext = new RootNamespaceContext(this.xmlStreamReader);
+        try {
+            this.dataTypeFactory = DataTypeFactory.newInstance();
+        } catch (FactoryException ex) {
+            throw new StAXStructureException("FactoryException loading DataTypeFactory: " + ex.getMessage(),
+                                             ex);
+        }
+        return this.parseRequest();
+    }
+
+    /*
+     * Parses the Request element the reader is positioned at.
+     */
+    private Request parseRequest() throws XMLStreamException, StAXStructureException {
+        String labelRequest = this.getElementLabel();
+        StdMutableRequest stdMutableRequest = new StdMutableRequest();
+
+        Boolean returnPolicyIdList = this.getBooleanAttribute(XACML3.ATTRIBUTE_RETURNPOLICYIDLIST,
+                                                              !this.bLenient);
+        if (returnPolicyIdList != null) {
+            stdMutableRequest.setReturnPolicyIdList(returnPolicyIdList);
+        }
+        Boolean combinedDecision = this.getBooleanAttribute(XACML3.ATTRIBUTE_COMBINEDDECISION,
+                                                            !this.bLenient);
+        if (combinedDecision != null) {
+            stdMutableRequest.setCombinedDecision(combinedDecision);
+        }
+
+        boolean sawAttributes = false;
+        while (this.nextChildElement()) {
+            String childName = this.xmlStreamReader.getLocalName();
+            if (this.isXACMLElement() && XACML3.ELEMENT_ATTRIBUTES.equals(childName)) {
+                stdMutableRequest.add(this.parseAttributes());
+                sawAttributes = true;
+            } else if (this.isXACMLElement() && XACML3.ELEMENT_REQUESTDEFAULTS.equals(childName)) {
+                stdMutableRequest.setRequestDefaults(this.parseRequestDefaults());
+            } else if (this.isXACMLElement() && XACML3.ELEMENT_MULTIREQUESTS.equals(childName)) {
+                this.parseMultiRequests(stdMutableRequest);
+            } else {
+                this.unexpectedElement(labelRequest);
+            }
+        }
+        if (!sawAttributes && !this.bLenient) {
+            throw newMissingElementException(labelRequest, XACML3.ELEMENT_ATTRIBUTES);
+        }
+
+        return new StdRequest(stdMutableRequest);
+    }
+
+    private RequestAttributes parseAttributes() throws XMLStreamException, StAXStructureException {
+        String labelAttributes = this.getElementLabel();
+        Identifier identifierCategory = this.getIdentifierAttribute(XACML3.ATTRIBUTE_CATEGORY,
+                                                                    !this.bLenient);
+        String xmlId = this.xmlStreamReader.getAttributeValue(XMLConstants.XML_NS_URI, "id");
+        ContentRecording contentRecording = null;
+        List<Attribute> listAttributes = new ArrayList<Attribute>();
+        boolean sawContent = false;
+
+        while (this.nextChildElement()) {
+            String childName = this.xmlStreamReader.getLocalName();
+            if (this.isXACMLElement() && XACML3.ELEMENT_CONTENT.equals(childName)) {
+                if (sawContent && !this.bLenient) {
+                    throw this.newUnexpectedElementException(labelAttributes);
+                }
+                sawContent = true;
+                contentRecording = this.parseContent(contentRecording);
+            } else if (this.isXACMLElement() && XACML3.ELEMENT_ATTRIBUTE.equals(childName)) {
+                listAttributes.add(this.parseAttribute(identifierCategory));
+            } else {
+                this.unexpectedElement(labelAttributes);
+            }
+        }
+
+        if (contentRecording == null) {
+            return new StdRequestAttributes(identifierCategory, listAttributes, null, xmlId);
+        }
+        return new StAXRequestAttributes(identifierCategory, listAttributes, contentRecording, xmlId);
+    }
+
+    /*
+     * Parses a Content element, recording the events of the single root element of the content. The given
+     * recording from an earlier Content element, if any, is kept.
+     */
+    private ContentRecording parseContent(ContentRecording contentRecording) throws XMLStreamException,
+        StAXStructureException {
+        String labelContent = this.getElementLabel();
+        while (this.nextChildElement()) {
+            if (contentRecording != null) {
+                this.unexpectedElement(labelContent);
+            } else {
+                contentRecording = this.recordContentRoot();
+            }
+        }
+        if (contentRecording == null && !this.bLenient) {
+            throw new StAXStructureException("Missing content for \"" + labelContent + "\"");
+        }
+        return contentRecording;
+    }
+
+    /*
+     * Records the events from the start element the reader is positioned at through its end element.
+     */
+    private ContentRecording recordContentRoot() throws XMLStreamException {
+        List<ContentEvent> listContentEvents = new ArrayList<ContentEvent>();
+        listContentEvents.add(new ContentEvent(this.xmlStreamReader));
+        int depth = 1;
+        while (depth > 0) {
+            switch (this.xmlStreamReader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                listContentEvents.add(new ContentEvent(this.xmlStreamReader));
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                listContentEvents.add(new ContentEvent(this.xmlStreamReader));
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                listContentEvents.add(new ContentEvent(this.xmlStreamReader));
+                break;
+            default:
+                break;
+            }
+        }
+        return new ContentRecording(listContentEvents);
+    }
+
+    private Attribute parseAttribute(Identifier category) throws XMLStreamException, StAXStructureException {
+        String labelAttribute = this.getElementLabel();
+        StdMutableAttribute mutableAttribute = new StdMutableAttribute();
+
+        mutableAttribute.setCategory(category);
+        mutableAttribute.setAttributeId(this.getIdentifierAttribute(XACML3.ATTRIBUTE_ATTRIBUTEID,
+                                                                    !this.bLenient));
+        String issuer = this.getStringAttribute(XACML3.ATTRIBUTE_ISSUER, false);
+        String includeInResult = this.getStringAttribute(XACML3.ATTRIBUTE_INCLUDEINRESULT, !this.bLenient);
+
+        boolean sawAttributeValue = false;
+        while (this.nextChildElement()) {
+            if (this.isXACMLElement()
+                && XACML3.ELEMENT_ATTRIBUTEVALUE.equals(this.xmlStreamReader.getLocalName())) {
+                mutableAttribute.addValue(this.parseAttributeValue(category));
+                sawAttributeValue = true;
+            } else {
+                this.unexpectedElement(labelAttribute);
+            }
+        }
+
+        if (!sawAttributeValue && !this.bLenient) {
+            throw newMissingElementException(labelAttribute, XACML3.ELEMENT_ATTRIBUTEVALUE);
+        }
+
+        mutableAttribute.setIssuer(issuer);
+        Boolean booleanIncludeInResult = toBoolean(labelAttribute, includeInResult);
+        if (booleanIncludeInResult != null) {
+            mutableAttribute.setIncludeInResults(booleanIncludeInResult);
+        }
+
+        return new StdAttribute(mutableAttribute);
+    }
+
+    /*
+     * Parses an AttributeValue element. As with DOMAttributeValue a missing or unknown DataType is repaired
+     * to the closest known data type rather than rejected.
+     */
+    private AttributeValue<?> parseAttributeValue(Identifier category) throws XMLStreamException,
+        StAXStructureException {
+        String labelAttributeValue = this.getElementLabel();
+        Identifier identifierDataTypeId = this.getIdentifierAttribute(XACML3.ATTRIBUTE_DATATYPE, false);
+        String xpathCategory = this.getStringAttribute(XACML3.ATTRIBUTE_XPATHCATEGORY, false);
+        String textContent = this.getTextContent();
+
+        DataType<?> dataTypeExtended = identifierDataTypeId == null ? null : this.dataTypeFactory
+            .getDataType(identifierDataTypeId);
+        if (dataTypeExtended == null) {
+            if (XACML.ID_DATATYPE_WD_DAYTIMEDURATION.equals(identifierDataTypeId)) {
+                dataTypeExtended = DataTypes.DT_DAYTIMEDURATION;
+            } else if (XACML.ID_DATATYPE_WD_YEARMONTHDURATION.equals(identifierDataTypeId)) {
+                dataTypeExtended = DataTypes.DT_YEARMONTHDURATION;
+            } else {
+                dataTypeExtended = DataTypes.DT_STRING;
+            }
+            logger.warn("Changing " + (identifierDataTypeId == null ? "missing" : "unknown") + " DataType "
+                        + (identifierDataTypeId == null ? "" : identifierDataTypeId.stringValue() + " ")
+                        + "to " + dataTypeExtended.getId().stringValue());
+        }
+
+        Identifier identifierXPathCategory = null;
+        if (xpathCategory != null) {
+            try {
+                identifierXPathCategory = new IdentifierImpl(xpathCategory);
+            } catch (IllegalArgumentException ex) { //NOPMD
+                // ignored, as it is when the data type reads it from a DOM Node
+            }
+        }
+
+        AttributeValue<?> attributeValue = null;
+        try {
+            Object source = textContent;
+            if (dataTypeExtended instanceof DataTypeXPathExpression) {
+                if (textContent.length() == 0) {
+                    throw new IllegalArgumentException("XPathExpression must have XPath value");
+                }
+                source = new XPathExpressionWrapper(this.namespaceContext, textContent);
+            }
+            attributeValue = dataTypeExtended.createAttributeValue(source, identifierXPathCategory);
+        } catch (DataTypeException | RuntimeException ex) {
+            throw new StAXStructureException("Unable to convert \"" + labelAttributeValue + "\" to \""
+                                             + dataTypeExtended.getId().toString() + "\"", ex);
+        }
+        if (!this.bLenient && attributeValue != null && attributeValue.getXPathCategory() != null
+            && category != null && !category.equals(attributeValue.getXPathCategory())) {
+            throw new StAXStructureException("AttributeValue XPathCategory does not match "
+                                             + category.stringValue());
+        }
+        return attributeValue;
+    }
+
+    private RequestDefaults parseRequestDefaults() throws XMLStreamException, StAXStructureException {
+        String labelRequestDefaults = this.getElementLabel();
+        URI uriXPathVersion = null;
+        while (this.nextChildElement()) {
+            if (this.isXACMLElement()
+                && XACML3.ELEMENT_XPATHVERSION.equals(this.xmlStreamReader.getLocalName())) {
+                String labelXPathVersion = this.getElementLabel();
+                String xpathVersion = this.getTextContent();
+                try {
+                    uriXPathVersion = new URI(xpathVersion);
+                } catch (URISyntaxException ex) {
+                    throw new StAXStructureException("Illegal URI value \"" + xpathVersion + "\" in \""
+                                                     + labelXPathVersion + "\"", ex);
+                }
+            } else {
+                this.unexpectedElement(labelRequestDefaults);
+            }
+        }
+        return new StdRequestDefaults(uriXPathVersion);
+    }
+
+    private void parseMultiRequests(StdMutableRequest stdMutableRequest) throws XMLStreamException,
+        StAXStructureException {
+        String labelMultiRequests = this.getElementLabel();
+        while (this.nextChildElement()) {
+            if (this.isXACMLElement()
+                && XACML3.ELEMENT_REQUESTREFERENCE.equals(this.xmlStreamReader.getLocalName())) {
+                stdMutableRequest.add(this.parseRequestReference());
+            } else {
+                this.unexpectedElement(labelMultiRequests);
+            }
+        }
+    }
+
+    private RequestReference parseRequestReference() throws XMLStreamException, StAXStructureException {
+        String labelRequestReference = this.getElementLabel();
+        StdMutableRequestReference stdRequestReference = new StdMutableRequestReference();
+        boolean sawAttributesReference = false;
+        while (this.nextChildElement()) {
+            if (this.isXACMLElement()
+                && XACML3.ELEMENT_ATTRIBUTESREFERENCE.equals(this.xmlStreamReader.getLocalName())) {
+                stdRequestReference.add(new StdRequestAttributesReference(this
+                    .getStringAttribute(XACML3.ATTRIBUTE_REFERENCEID, !this.bLenient)));
+                this.skipElement();
+                sawAttributesReference = true;
+            } else {
+                this.unexpectedElement(labelRequestReference);
+            }
+        }
+        if (!sawAttributesReference && !this.bLenient) {
+            throw newMissingElementException(labelRequestReference, XACML3.ELEMENT_ATTRIBUTESREFERENCE);
+        }
+        return new StdRequestReference(stdRequestReference);
+    }
+
+    //
+    // HELPER METHODS
+    //
+
+    /*
+     * Moves to the next child element of the current element. Returns false, positioned at the end of the
+     * current element, when there are no more children. Every child element must be consumed up to its own
+     * end element before this is called again.
+     */
+    private boolean nextChildElement() throws XMLStreamException {
+        while (true) {
+            switch (this.xmlStreamReader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                return true;
+            case XMLStreamConstants.END_ELEMENT:
+                return false;
+            default:
+                break;
+            }
+        }
+    }
+
+    /*
+     * Skips to the end of the current element.
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int eventType = this.xmlStreamReader.next();
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /*
+     * Reads the text of the current element and all of its descendants, the same as the DOM getTextContent,
+     * leaving the reader at the end of the element.
+     */
+    private String getTextContent() throws XMLStreamException {
+        StringBuilder stringBuilder = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (this.xmlStreamReader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                stringBuilder.append(this.xmlStreamReader.getText());
+                break;
+            default:
+                break;
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    /*
+     * An unexpected child element is an error unless lenient, in which case it is skipped.
+     */
+    private void unexpectedElement(String labelParent) throws XMLStreamException, StAXStructureException {
+        if (!this.bLenient) {
+            throw this.newUnexpectedElementException(labelParent);
+        }
+        this.skipElement();
+    }
+
+    private boolean isXACMLElement() {
+        return XACML3.XMLNS.equals(this.xmlStreamReader.getNamespaceURI());
+    }
+
+    private String getElementLabel() {
+        String namespaceURI = emptyToNull(this.xmlStreamReader.getNamespaceURI());
+        return namespaceURI == null ? this.xmlStreamReader.getLocalName() : namespaceURI + ":"
+                                                                             + this.xmlStreamReader
+                                                                                 .getLocalName();
+    }
+
+    private StAXStructureException newUnexpectedElementException(String labelParent) {
+        return new StAXStructureException("Unexpected element \"" + this.getElementLabel() + "\" in \""
+                                          + labelParent + "\"");
+    }
+
+    private static StAXStructureException newMissingElementException(String label, String elementName) {
+        return new StAXStructureException("Missing element \"" + XACML3.XMLNS + ":" + elementName + "\" in \""
+                                          + label + "\"");
+    }
+
+    /*
+     * Gets an unqualified attribute of the current element by its local name.
+     */
+    private String getStringAttribute(String localName, boolean bRequired) throws StAXStructureException {
+        for (int i = 0; i < this.xmlStreamReader.getAttributeCount(); i++) {
+            if (localName.equals(this.xmlStreamReader.getAttributeLocalName(i))
+                && emptyToNull(this.xmlStreamReader.getAttributePrefix(i)) == null) {
+                return this.xmlStreamReader.getAttributeValue(i);
+            }
+        }
+        if (bRequired) {
+            throw new StAXStructureException("Missing attribute \"" + localName + "\" in \""
+                                             + this.getElementLabel() + "\"");
+        }
+        return null;
+    }
+
+    private Identifier getIdentifierAttribute(String localName, boolean bRequired)
+        throws StAXStructureException {
+        String stringAttribute = this.getStringAttribute(localName, bRequired);
+        if (stringAttribute == null) {
+            return null;
+        }
+        try {
+            return new IdentifierImpl(stringAttribute);
+        } catch (IllegalArgumentException ex) {
+            throw new StAXStructureException("Invalid Identifier \"" + stringAttribute + "\" in \""
+                                             + this.getElementLabel() + "\"", ex);
+        }
+    }
+
+    private Boolean getBooleanAttribute(String localName, boolean bRequired) throws StAXStructureException {
+        return toBoolean(this.getElementLabel(), this.getStringAttribute(localName, bRequired));
+    }
+
+    private static Boolean toBoolean(String label, String stringAttribute) throws StAXStructureException {
+        if (stringAttribute == null) {
+            return null;
+        } else if (stringAttribute.equals("0") || stringAttribute.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        } else if (stringAttribute.equals("1") || stringAttribute.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        } else {
+            throw new StAXStructureException("Illegal Boolean value \"" + stringAttribute + "\" in \"" + label
+                                             + "\"");
+        }
+    }
+
+    private static String emptyToNull(String string) {
+        return string == null || string.length() == 0 ? null : string;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * StAXRequestAttributes is a {@link org.apache.openaz.xacml.std.StdRequestAttributes} whose content root
+     * is built from its recorded Content element the first time it is asked for, so a Content that no
+     * AttributeSelector or XPath function looks at is never turned into DOM nodes.
+     */
+    private static class StAXRequestAttributes extends StdRequestAttributes {
+        private final ContentRecording contentRecording;
+        private Node contentRoot;
+
+        StAXRequestAttributes(Identifier identifierCategory, Collection<Attribute> listAttributes,
+                              ContentRecording contentRecordingIn, String xmlIdIn) {
+            super(identifierCategory, listAttributes, null, xmlIdIn);
+            this.contentRecording = contentRecordingIn;
+        }
+
+        @Override
+        public synchronized Node getContentRoot() {
+            if (this.contentRoot == null) {
+                this.contentRoot = this.contentRecording.newContentRoot();
+            }
+            return this.contentRoot;
+        }
+    }
+
+    /**
+     * ContentRecording holds the events of the root element of a Content element and replays them into a
+     * <code>Document</code> of its own.
+     */
+    private static class ContentRecording {
+        private final List<ContentEvent> contentEvents;
+
+        ContentRecording(List<ContentEvent> contentEventsIn) {
+            this.contentEvents = contentEventsIn;
+        }
+
+        Node newContentRoot() {
+            Document document;
+            try {
+                document = DOMUtil.newDocument();
+            } catch (DOMStructureException ex) {
+                throw new IllegalStateException("Exception generating Document root Node: " + ex.getMessage(),
+                                                ex);
+            }
+
+            Node nodeCurrent = document;
+            for (ContentEvent contentEvent : this.contentEvents) {
+                switch (contentEvent.eventType) {
+                case XMLStreamConstants.START_ELEMENT:
+                    nodeCurrent = nodeCurrent.appendChild(contentEvent.newElement(document));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    nodeCurrent = nodeCurrent.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    /*
+                     * Adjacent character events are one text node, as they would be in a parsed Document
+                     */
+                    Node nodeLast = nodeCurrent.getLastChild();
+                    if (nodeLast != null && nodeLast.getNodeType() == Node.TEXT_NODE) {
+                        ((Text)nodeLast).appendData(contentEvent.text);
+                    } else {
+                        nodeCurrent.appendChild(document.createTextNode(contentEvent.text));
+                    }
+                    break;
+                case XMLStreamConstants.CDATA:
+                    nodeCurrent.appendChild(document.createCDATASection(contentEvent.text));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    nodeCurrent.appendChild(document.createComment(contentEvent.text));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    nodeCurrent.appendChild(document.createProcessingInstruction(contentEvent.name,
+                                                                                 contentEvent.text));
+                    break;
+                default:
+                    break;
+                }
+            }
+            return document.getDocumentElement();
+        }
+    }
+
+    /**
+     * ContentEvent is one recorded event of a Content element. A start element keeps its namespace, its
+     * qualified name and, as namespace, qualified name and value triples, its namespace declarations
+     * followed by its attributes. A processing instruction keeps its target as the name and its data as the
+     * text. Every other event only keeps its text.
+     */
+    private static class ContentEvent {
+        private final int eventType;
+        private final String namespaceURI;
+        private final String name;
+        private final String[] attributes;
+        private final String text;
+
+        ContentEvent(XMLStreamReader xmlStreamReader) {
+            String namespaceURIEvent = null;
+            String nameEvent = null;
+            String[] attributesEvent = null;
+            String textEvent = null;
+
+            this.eventType = xmlStreamReader.getEventType();
+            switch (this.eventType) {
+            case XMLStreamConstants.START_ELEMENT:
+                namespaceURIEvent = emptyToNull(xmlStreamReader.getNamespaceURI());
+                nameEvent = qualifiedName(xmlStreamReader.getPrefix(), xmlStreamReader.getLocalName());
+                int namespaceCount = xmlStreamReader.getNamespaceCount();
+                attributesEvent = new String[3 * (namespaceCount + xmlStreamReader.getAttributeCount())];
+                int pos = 0;
+                for (int i = 0; i < namespaceCount; i++) {
+                    String namespaceURIDeclared = xmlStreamReader.getNamespaceURI(i);
+                    attributesEvent[pos++] = XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+                    attributesEvent[pos++] = qualifiedName(XMLConstants.XMLNS_ATTRIBUTE,
+                                                           xmlStreamReader.getNamespacePrefix(i));
+                    attributesEvent[pos++] = namespaceURIDeclared == null ? "" : namespaceURIDeclared;
+                }
+                for (int i = 0; i < xmlStreamReader.getAttributeCount(); i++) {
+                    attributesEvent[pos++] = emptyToNull(xmlStreamReader.getAttributeNamespace(i));
+                    attributesEvent[pos++] = qualifiedName(xmlStreamReader.getAttributePrefix(i),
+                                                           xmlStreamReader.getAttributeLocalName(i));
+                    attributesEvent[pos++] = xmlStreamReader.getAttributeValue(i);
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                nameEvent = xmlStreamReader.getPITarget();
+                textEvent = xmlStreamReader.getPIData();
+                break;
+            default:
+                textEvent = xmlStreamReader.getText();
+                break;
+            }
+
+            this.namespaceURI = namespaceURIEvent;
+            this.name = nameEvent;
+            this.attributes = attributesEvent;
+            this.text = textEvent;
+        }
+
+        /*
+         * Creates a DOM Element for a recorded start element, with the same namespace declarations and
+         * attributes.
+         */
+        Element newElement(Document document) {
+            Element element = document.createElementNS(this.namespaceURI, this.name);
+            for (int i = 0; i < this.attributes.length; i += 3) {
+                element.setAttributeNS(this.attributes[i], this.attributes[i + 1], this.attributes[i + 2]);
+            }
+            return element;
+        }
+    }
+
+    /**
+     * RootNamespaceContext holds the namespaces declared on the root element of the Request, the same
+     * namespaces a {@link org.apache.openaz.xacml.std.datatypes.NodeNamespaceContext} on the parsed
+     * <code>Document</code> would resolve. They are kept sorted by prefix, the order the DOM keeps the
+     * declaring attributes in.
+     */
+    private static class RootNamespaceContext extends ExtendedNamespaceContext {
+        private final Map<String, String> namespaces = new TreeMap<String, String>();
+
+        RootNamespaceContext(XMLStreamReader xmlStreamReader) {
+            for (int i = 0; i < xmlStreamReader.getNamespaceCount(); i++) {
+                String prefix = xmlStreamReader.getNamespacePrefix(i);
+                this.namespaces.put(prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix,
+                                    emptyToNull(xmlStreamReader.getNamespaceURI(i)));
+            }
+        }
+
+        @Override
+        public String getNamespaceURI(String prefix) {
+            return this.namespaces.get(prefix);
+        }
+
+        @Override
+        public String getPrefix(String namespaceURI) {
+            for (Map.Entry<String, String> entry : this.namespaces.entrySet()) {
+                if (entry.getKey().length() > 0 && namespaceURI.equals(entry.getValue())) {
+                    return entry.getKey();
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public Iterator getPrefixes(String namespaceURI) {
+            return null;
+        }
+
+        @Override
+        public Iterator<String> getAllPrefixes() {
+            return this.namespaces.keySet().iterator();
+        }
+    }
+}
@@ -0,0 +1,653 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.stax;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.security.auth.x500.X500Principal;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.openaz.xacml.api.Advice;
+import org.apache.openaz.xacml.api.Attribute;
+import org.apache.openaz.xacml.api.AttributeAssignment;
+import org.apache.openaz.xacml.api.AttributeCategory;
+import org.apache.openaz.xacml.api.AttributeValue;
+import org.apache.openaz.xacml.api.Decision;
+import org.apache.openaz.xacml.api.IdReference;
+import org.apache.openaz.xacml.api.Identifier;
+import org.apache.openaz.xacml.api.MissingAttributeDetail;
+import org.apache.openaz.xacml.api.Obligation;
+import org.apache.openaz.xacml.api.Response;
+import org.apache.openaz.xacml.api.Result;
+import org.apache.openaz.xacml.api.SemanticString;
+import org.apache.openaz.xacml.api.Status;
+import org.apache.openaz.xacml.api.StatusCode;
+import org.apache.openaz.xacml.api.StatusDetail;
+import org.apache.openaz.xacml.api.XACML3;
+import org.apache.openaz.xacml.std.StdStatusCode;
+import org.apache.openaz.xacml.std.datatypes.ExtendedNamespaceContext;
+import org.apache.openaz.xacml.std.datatypes.XPathExpressionWrapper;
+
+/**
+ * StAXResponse writes {@link org.apache.openaz.xacml.api.Response} objects as XML through a StAX
+ * {@link javax.xml.stream.XMLStreamWriter}. The elements, attributes and pretty-printing are the same as
+ * those of {@link org.apache.openaz.xacml.std.dom.DOMResponse#convert(Response, OutputStream, boolean)}, so
+ * for the same Response the two produce the same bytes, but the XML is encoded as UTF-8 and written to the
+ * output as it is generated rather than first being built up as a single String. Unlike
+ * <code>DOMResponse</code>, text and attribute values are escaped, so a status message or value containing
+ * markup characters still produces well-formed XML.
+ */
+public class StAXResponse {
+    private static final String XACML3_NAMESPACE = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17";
+    private static final String XACML3_SCHEMA_LOCATION = XACML3_NAMESPACE + " "
+        + "http://docs.oasis-open.org/xacml/3.0/xacml-core-v3-schema-wd-17.xsd";
+
+    /*
+     * XMLOutputFactory instances are safe to share once configured.
+     */
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
+    private final XMLStreamWriter xmlStreamWriter;
+    private final boolean prettyPrint;
+
+    /*
+     * Instances only live for the duration of a single conversion.
+     */
+    protected StAXResponse(XMLStreamWriter xmlStreamWriterIn, boolean prettyPrintIn) {
+        this.xmlStreamWriter = xmlStreamWriterIn;
+        this.prettyPrint = prettyPrintIn;
+    }
+
+    /**
+     * Convert the {@link org.apache.openaz.xacml.api.Response} into an XML string, allowing for
+     * pretty-printing if desired.
+     *
+     * @param response
+     * @param prettyPrint
+     * @return
+     * @throws StAXStructureException
+     */
+    public static String toString(Response response, boolean prettyPrint) throws StAXStructureException {
+        StringWriter stringWriter = new StringWriter();
+        try {
+            convert(response, stringWriter, prettyPrint);
+        } catch (IOException ex) {
+            // a StringWriter does not throw IOExceptions
+            throw new StAXStructureException(ex);
+        }
+        return stringWriter.toString();
+    }
+
+    /**
+     * Convert the {@link org.apache.openaz.xacml.api.Response} object into XML written to the given
+     * <code>OutputStream</code> without any pretty-printing. This is the method normally called by the Web
+     * Service for generating the output to the PEP through the RESTful interface. IMPORTANT: This method does
+     * NOT close the outputStream.
+     *
+     * @param response
+     * @param outputStream
+     * @throws IOException
+     * @throws StAXStructureException
+     */
+    public static void convert(Response response, OutputStream outputStream) throws IOException,
+        StAXStructureException {
+        convert(response, outputStream, false);
+    }
+
+    /**
+     * Convert the {@link org.apache.openaz.xacml.api.Response} object into XML encoded as UTF-8 and written
+     * to the given <code>OutputStream</code>, allowing for pretty-printing if desired. Every Result is
+     * checked before anything is written, so a <code>StAXStructureException</code> never leaves partial
+     * output. IMPORTANT: This method does NOT close the outputStream.
+     *
+     * @param response
+     * @param outputStream
+     * @param prettyPrint
+     * @throws IOException
+     * @throws StAXStructureException
+     */
+    public static void convert(Response response, OutputStream outputStream, boolean prettyPrint)
+        throws IOException, StAXStructureException {
+        validate(response);
+        /*
+         * The writer encodes UTF-8 one byte at a time straight to the stream it is given, so give it a buffer
+         */
+        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream);
+        XMLStreamWriter writer;
+        try {
+            writer = xmlOutputFactory.createXMLStreamWriter(bufferedOutputStream, "UTF-8");
+        } catch (XMLStreamException ex) {
+            throw new StAXStructureException("Exception creating writer: " + ex.getMessage(), ex);
+        }
+        new StAXResponse(writer, prettyPrint).writeResponse(response);
+        bufferedOutputStream.flush();
+    }
+
+    /**
+     * Convert the {@link org.apache.openaz.xacml.api.Response} object into XML written to the given
+     * <code>Writer</code>, allowing for pretty-printing if desired. This is the same as the
+     * <code>OutputStream</code> version for callers that want characters rather than bytes. IMPORTANT: This
+     * method does NOT close the writer.
+     *
+     * @param response
+     * @param writer
+     * @param prettyPrint
+     * @throws IOException
+     * @throws StAXStructureException
+     */
+    public static void convert(Response response, Writer writer, boolean prettyPrint) throws IOException,
+        StAXStructureException {
+        validate(response);
+        XMLStreamWriter xmlWriter;
+        try {
+            xmlWriter = xmlOutputFactory.createXMLStreamWriter(writer);
+        } catch (XMLStreamException ex) {
+            throw new StAXStructureException("Exception creating writer: " + ex.getMessage(), ex);
+        }
+        new StAXResponse(xmlWriter, prettyPrint).writeResponse(response);
+    }
+
+    /*
+     * Check the Response and each of its Results before anything is written. These are all of the checks
+     * made on a Response; the write methods rely on them having passed.
+     */
+    private static void validate(Response response) throws StAXStructureException {
+        if (response == null) {
+            throw new StAXStructureException("No Response in convert");
+        }
+        if (response.getResults() == null || response.getResults().size() == 0) {
+            // must be at least one result
+            throw new StAXStructureException("No Result in Response");
+        }
+        for (Result result : response.getResults()) {
+            validateResult(result);
+        }
+    }
+
+    private static void validateResult(Result result) throws StAXStructureException {
+        if (result.getDecision() == null) {
+            throw new StAXStructureException("Result missing Decision");
+        }
+        if (result.getStatus() != null) {
+            validateStatus(result.getStatus(), result.getDecision());
+        }
+        if (result.getObligations() != null) {
+            for (Obligation obligation : result.getObligations()) {
+                if (obligation.getId() == null) {
+                    throw new StAXStructureException("Obligation must have ObligationId");
+                }
+                validateAttributeAssignments("Obligation", obligation.getAttributeAssignments());
+            }
+        }
+        if (result.getAssociatedAdvice() != null) {
+            for (Advice advice : result.getAssociatedAdvice()) {
+                if (advice.getId() == null) {
+                    throw new StAXStructureException("Advice must have AdviceId");
+                }
+                validateAttributeAssignments("Advice", advice.getAttributeAssignments());
+            }
+        }
+        if (result.getAttributes() != null) {
+            for (AttributeCategory category : result.getAttributes()) {
+                validateAttributeCategory(category);
+            }
+        }
+        validateIdReferences("PolicyIdentifiers", result.getPolicyIdentifiers());
+        validateIdReferences("PolicySetIdentifiers", result.getPolicySetIdentifiers());
+    }
+
+    private static void validateStatus(Status status, Decision decision) throws StAXStructureException {
+        StatusCode statusCode = status.getStatusCode();
+        if (statusCode == null) {
+            throw new StAXStructureException("Status must have StatusCode");
+        }
+        Identifier statusCodeId = statusCode.getStatusCodeValue();
+        // if there is a status code, it must agree with the decision
+        // Permit/Deny/NotAllowed must all be OK
+        // Indeterminate must not be OK
+        boolean isOkDecision = decision == Decision.DENY || decision == Decision.PERMIT
+                               || decision == Decision.NOTAPPLICABLE;
+        if (statusCodeId.equals(StdStatusCode.STATUS_CODE_OK.getStatusCodeValue()) != isOkDecision) {
+            throw new StAXStructureException("StatusCode '" + statusCodeId.stringValue()
+                                             + "' does not match Decision '" + decision.toString());
+        }
+
+        StatusDetail statusDetail = status.getStatusDetail();
+        if (statusDetail != null) {
+            // cross-check that rules defined in XACML Core spec section 5.5.7 re: when StatusDetail
+            // may/may-not be included have been followed
+            if (status.isOk() || statusCodeId.equals(XACML3.ID_STATUS_SYNTAX_ERROR)
+                || statusCodeId.equals(XACML3.ID_STATUS_PROCESSING_ERROR)) {
+                throw new StAXStructureException("Status '" + statusCodeId.stringValue()
+                                                 + "' must not return StatusDetail");
+            } else if (statusCodeId.equals(XACML3.ID_STATUS_MISSING_ATTRIBUTE)
+                       && statusDetail.getMissingAttributeDetails() == null) {
+                throw new StAXStructureException("Status '" + statusCodeId.stringValue()
+                                                 + "' has StatusDetail without MissingAttributeDetail");
+            }
+            if (statusDetail.getMissingAttributeDetails() != null) {
+                for (MissingAttributeDetail mad : statusDetail.getMissingAttributeDetails()) {
+                    if (mad.getAttributeId() == null || mad.getCategory() == null
+                        || mad.getDataTypeId() == null) {
+                        throw new StAXStructureException("MissingAttributeDetail is missing required "
+                                                         + "AttributeId, Category or DataTypeId");
+                    }
+                    if (mad.getAttributeValues() != null) {
+                        for (AttributeValue<?> value : mad.getAttributeValues()) {
+                            validateValue(value.getValue());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void validateAttributeAssignments(String parentName,
+                                                     Collection<AttributeAssignment> attributeAssignments)
+        throws StAXStructureException {
+        for (AttributeAssignment aa : attributeAssignments) {
+            if (aa.getAttributeId() == null) {
+                throw new StAXStructureException(parentName + " AttributeAssignment must have AttributeId");
+            }
+            if (aa.getDataTypeId() == null || aa.getAttributeValue() == null
+                || aa.getAttributeValue().getValue() == null) {
+                throw new StAXStructureException(parentName + " AttributeAssignment '"
+                                                 + aa.getAttributeId().stringValue()
+                                                 + "' must have DataType and Value");
+            }
+            validateValue(aa.getAttributeValue().getValue());
+        }
+    }
+
+    private static void validateAttributeCategory(AttributeCategory category) throws StAXStructureException {
+        if (category.getCategory() == null) {
+            throw new StAXStructureException("Attributes must have Category");
+        }
+        for (Attribute attr : category.getAttributes()) {
+            if (!attr.getIncludeInResults()) {
+                // not written, so not checked
+                continue;
+            }
+            if (attr.getAttributeId() == null) {
+                throw new StAXStructureException("Attribute in Category '"
+                                                 + category.getCategory().stringValue()
+                                                 + "' must have AttributeId");
+            }
+            if (attr.getValues().size() == 0) {
+                throw new StAXStructureException("Attribute '" + attr.getAttributeId()
+                                                 + "' must have at least one value");
+            }
+            for (AttributeValue<?> value : attr.getValues()) {
+                if (value.getDataTypeId() == null || value.getValue() == null) {
+                    throw new StAXStructureException("Attribute '" + attr.getAttributeId()
+                                                     + "' has AttributeValue missing either DataType "
+                                                     + "or Value");
+                }
+                validateValue(value.getValue());
+            }
+        }
+    }
+
+    private static void validateIdReferences(String listName, Collection<IdReference> idReferences)
+        throws StAXStructureException {
+        if (idReferences == null) {
+            return;
+        }
+        for (IdReference idReference : idReferences) {
+            if (idReference == null) {
+                throw new StAXStructureException(listName + " has null IdReference");
+            }
+        }
+    }
+
+    private static void validateValue(Object obj) throws StAXStructureException {
+        if (!isOutputValue(obj)) {
+            throw new StAXStructureException("Unhandled data type='" + obj.getClass().getName() + "'");
+        }
+    }
+
+    /*
+     * Write the whole document. The XMLStreamWriter does not close the underlying output.
+     */
+    private void writeResponse(Response response) throws IOException, StAXStructureException {
+        try {
+            try {
+                this.xmlStreamWriter.writeStartDocument("UTF-8", "1.0");
+                this.newLine(0);
+
+                // the same namespaces as DOMResponse; those of XPathExpression values are declared on the
+                // elements the values are written in
+                this.xmlStreamWriter.writeStartElement("Response");
+                this.xmlStreamWriter.writeDefaultNamespace(XACML3_NAMESPACE);
+                this.xmlStreamWriter.writeNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+                this.xmlStreamWriter.writeAttribute("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI,
+                                                    "schemaLocation", XACML3_SCHEMA_LOCATION);
+
+                for (Result result : response.getResults()) {
+                    this.writeResult(result);
+                }
+
+                this.newLine(0);
+                this.xmlStreamWriter.writeEndElement();
+                this.xmlStreamWriter.writeEndDocument();
+
+                // force output
+                this.xmlStreamWriter.flush();
+            } finally {
+                this.xmlStreamWriter.close();
+            }
+        } catch (XMLStreamException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException)ex.getCause();
+            }
+            throw new StAXStructureException("Exception writing Response: " + ex.getMessage(), ex);
+        }
+    }
+
+    private void writeResult(Result result) throws XMLStreamException, StAXStructureException {
+        this.newLine(1);
+        this.xmlStreamWriter.writeStartElement("Result");
+
+        this.newLine(2);
+        this.writeTextElement("Decision", result.getDecision().toString());
+
+        if (result.getStatus() != null) {
+            this.writeStatus(result.getStatus());
+        }
+
+        // Obligations
+        if (result.getObligations() != null && result.getObligations().size() > 0) {
+            this.newLine(2);
+            this.xmlStreamWriter.writeStartElement("Obligations");
+            for (Obligation obligation : result.getObligations()) {
+                this.newLine(3);
+                this.xmlStreamWriter.writeStartElement("Obligation");
+                this.xmlStreamWriter.writeAttribute("ObligationId", obligation.getId().stringValue());
+                this.writeAttributeAssignments(obligation.getAttributeAssignments());
+                this.newLine(3);
+                this.xmlStreamWriter.writeEndElement();
+            }
+            this.newLine(2);
+            this.xmlStreamWriter.writeEndElement();
+        }
+
+        // AssociatedAdvice
+        if (result.getAssociatedAdvice() != null && result.getAssociatedAdvice().size() > 0) {
+            this.newLine(2);
+            this.xmlStreamWriter.writeStartElement("AssociatedAdvice");
+            for (Advice advice : result.getAssociatedAdvice()) {
+                this.newLine(3);
+                this.xmlStreamWriter.writeStartElement("Advice");
+                this.xmlStreamWriter.writeAttribute("AdviceId", advice.getId().stringValue());
+                this.writeAttributeAssignments(advice.getAttributeAssignments());
+                this.newLine(3);
+                this.xmlStreamWriter.writeEndElement();
+            }
+            this.newLine(2);
+            this.xmlStreamWriter.writeEndElement();
+        }
+
+        // Attributes, which may include attributes with IncludeInResult=false
+        if (result.getAttributes() != null) {
+            for (AttributeCategory category : result.getAttributes()) {
+                this.writeAttributeCategory(category);
+            }
+        }
+
+        // PolicyIdentifierList
+        Collection<IdReference> policyIds = result.getPolicyIdentifiers();
+        Collection<IdReference> policySetIds = result.getPolicySetIdentifiers();
+        if (policyIds != null && policyIds.size() > 0 || policySetIds != null && policySetIds.size() > 0) {
+            this.newLine(3);
+            this.xmlStreamWriter.writeStartElement("PolicyIdentifierList");
+            this.writeIdReferences("PolicyIdReference", policyIds);
+            this.writeIdReferences("PolicySetIdReference", policySetIds);
+            this.newLine(3);
+            this.xmlStreamWriter.writeEndElement();
+        }
+
+        this.newLine(1);
+        this.xmlStreamWriter.writeEndElement();
+    }
+
+    private void writeStatus(Status status) throws XMLStreamException, StAXStructureException {
+        this.newLine(2);
+        this.xmlStreamWriter.writeStartElement("Status");
+
+        this.writeStatusCode(status.getStatusCode(), 3);
+
+        if (status.getStatusMessage() != null) {
+            this.newLine(3);
+            this.writeTextElement("StatusMessage", status.getStatusMessage());
+        }
+
+        StatusDetail statusDetail = status.getStatusDetail();
+        if (statusDetail != null && statusDetail.getMissingAttributeDetails() != null) {
+            this.newLine(3);
+            this.xmlStreamWriter.writeStartElement("StatusDetail");
+            for (MissingAttributeDetail mad : statusDetail.getMissingAttributeDetails()) {
+                this.writeMissingAttributeDetail(mad);
+            }
+            this.newLine(3);
+            this.xmlStreamWriter.writeEndElement();
+        }
+
+        this.newLine(2);
+        this.xmlStreamWriter.writeEndElement();
+    }
+
+    private void writeStatusCode(StatusCode statusCode, int depth) throws XMLStreamException {
+        this.newLine(depth);
+        if (statusCode.getChild() == null) {
+            // no child code, so the StatusCode element is empty
+            this.xmlStreamWriter.writeEmptyElement("StatusCode");
+        } else {
+            this.xmlStreamWriter.writeStartElement("StatusCode");
+        }
+        if (statusCode.getStatusCodeValue() != null) {
+            this.xmlStreamWriter.writeAttribute("Value", statusCode.getStatusCodeValue().stringValue());
+        }
+        if (statusCode.getChild() != null) {
+            this.writeStatusCode(statusCode.getChild(), depth + 1);
+            this.newLine(depth);
+            this.xmlStreamWriter.writeEndElement();
+        }
+    }
+
+    private void writeMissingAttributeDetail(MissingAttributeDetail mad) throws XMLStreamException,
+        StAXStructureException {
+        this.newLine(4);
+        this.xmlStreamWriter.writeStartElement("MissingAttributeDetail");
+        this.xmlStreamWriter.writeAttribute("Category", mad.getCategory().stringValue());
+        this.xmlStreamWriter.writeAttribute("AttributeId", mad.getAttributeId().stringValue());
+        this.xmlStreamWriter.writeAttribute("DataTypeId", mad.getDataTypeId().stringValue());
+        if (mad.getIssuer() != null) {
+            this.xmlStreamWriter.writeAttribute("Issuer", mad.getIssuer());
+        }
+        if (mad.getAttributeValues() != null) {
+            for (AttributeValue<?> value : mad.getAttributeValues()) {
+                this.newLine(5);
+                this.xmlStreamWriter.writeStartElement("AttributeValue");
+                this.writeNamespaces(value.getValue());
+                this.xmlStreamWriter.writeCharacters(outputValueValue(value.getValue()));
+                this.xmlStreamWriter.writeEndElement();
+            }
+        }
+        this.newLine(4);
+        this.xmlStreamWriter.writeEndElement();
+    }
+
+    private void writeAttributeAssignments(Collection<AttributeAssignment> attributeAssignments)
+        throws XMLStreamException, StAXStructureException {
+        for (AttributeAssignment aa : attributeAssignments) {
+            this.newLine(4);
+            this.xmlStreamWriter.writeStartElement("AttributeAssignment");
+            this.xmlStreamWriter.writeAttribute("AttributeId", aa.getAttributeId().stringValue());
+            this.xmlStreamWriter.writeAttribute("DataType", aa.getDataTypeId().stringValue());
+            this.writeNamespaces(aa.getAttributeValue().getValue());
+            this.xmlStreamWriter.writeCharacters(outputValueValue(aa.getAttributeValue().getValue()));
+            this.xmlStreamWriter.writeEndElement();
+        }
+    }
+
+    private void writeAttributeCategory(AttributeCategory category) throws XMLStreamException,
+        StAXStructureException {
+        this.newLine(2);
+        this.xmlStreamWriter.writeStartElement("Attributes");
+        this.xmlStreamWriter.writeAttribute("Category", category.getCategory().stringValue());
+
+        for (Attribute attr : category.getAttributes()) {
+            if (!attr.getIncludeInResults()) {
+                // skip this one - do not include in results
+                continue;
+            }
+            this.newLine(3);
+            this.xmlStreamWriter.writeStartElement("Attribute");
+            this.xmlStreamWriter.writeAttribute("IncludeInResult", "true");
+            this.xmlStreamWriter.writeAttribute("AttributeId", attr.getAttributeId().stringValue());
+            if (attr.getIssuer() != null) {
+                this.xmlStreamWriter.writeAttribute("Issuer", attr.getIssuer());
+            }
+            for (AttributeValue<?> value : attr.getValues()) {
+                this.newLine(4);
+                this.xmlStreamWriter.writeStartElement("AttributeValue");
+                this.xmlStreamWriter.writeAttribute("DataType", value.getDataTypeId().stringValue());
+                if (value.getXPathCategory() != null) {
+                    this.xmlStreamWriter.writeAttribute("XPathCategory",
+                                                        value.getXPathCategory().stringValue());
+                }
+                this.xmlStreamWriter.writeCharacters(outputValueValue(value.getValue()));
+                this.xmlStreamWriter.writeEndElement();
+            }
+            this.newLine(3);
+            this.xmlStreamWriter.writeEndElement();
+        }
+
+        this.newLine(2);
+        this.xmlStreamWriter.writeEndElement();
+    }
+
+    private void writeIdReferences(String elementName, Collection<IdReference> idReferences)
+        throws XMLStreamException {
+        if (idReferences == null) {
+            return;
+        }
+        for (IdReference idReference : idReferences) {
+            this.newLine(4);
+            this.xmlStreamWriter.writeStartElement(elementName);
+            if (idReference.getVersion() != null) {
+                this.xmlStreamWriter.writeAttribute("Version", idReference.getVersion().stringValue());
+            }
+            this.xmlStreamWriter.writeCharacters(idReference.getId().stringValue());
+            this.xmlStreamWriter.writeEndElement();
+        }
+    }
+
+    private void writeTextElement(String elementName, String text) throws XMLStreamException {
+        this.xmlStreamWriter.writeStartElement(elementName);
+        this.xmlStreamWriter.writeCharacters(text);
+        this.xmlStreamWriter.writeEndElement();
+    }
+
+    /*
+     * When pretty-printing, start a new line indented by the given number of tabs.
+     */
+    private void newLine(int depth) throws XMLStreamException {
+        if (this.prettyPrint) {
+            StringBuilder stringBuilder = new StringBuilder(depth + 1).append('\n');
+            for (int i = 0; i < depth; i++) {
+                stringBuilder.append('\t');
+            }
+            this.xmlStreamWriter.writeCharacters(stringBuilder.toString());
+        }
+    }
+
+    /*
+     * Declare the namespaces of an XPathExpression value on the element it is written in.
+     */
+    private void writeNamespaces(Object valueObject) throws XMLStreamException {
+        if (!(valueObject instanceof XPathExpressionWrapper)) {
+            return;
+        }
+        ExtendedNamespaceContext namespaceContext = ((XPathExpressionWrapper)valueObject)
+            .getNamespaceContext();
+        if (namespaceContext == null) {
+            return;
+        }
+        Iterator<String> prefixIt = namespaceContext.getAllPrefixes();
+        while (prefixIt.hasNext()) {
+            String prefix = prefixIt.next();
+            String namespaceURI = namespaceContext.getNamespaceURI(prefix);
+            if (prefix == null || prefix.equals(XMLConstants.DEFAULT_NS_PREFIX)) {
+                this.xmlStreamWriter.writeDefaultNamespace(namespaceURI);
+            } else {
+                this.xmlStreamWriter.writeNamespace(prefix, namespaceURI);
+            }
+        }
+    }
+
+    /*
+     * Whether <code>outputValueValue</code> can write the given value.
+     */
+    private static boolean isOutputValue(Object obj) {
+        return obj instanceof String || obj instanceof Boolean || obj instanceof Integer
+               || obj instanceof BigInteger || obj instanceof Double || obj instanceof SemanticString
+               || obj instanceof X500Principal || obj instanceof URI || obj instanceof XPathExpressionWrapper;
+    }
+
+    /*
+     * Get the value of an AttributeValue as the String written for it, the same way DOMResponse does.
+     */
+    private static String outputValueValue(Object obj) throws StAXStructureException {
+        if (obj instanceof String || obj instanceof Boolean || obj instanceof Integer
+            || obj instanceof BigInteger) {
+            return obj.toString();
+        } else if (obj instanceof Double) {
+            Double d = (Double)obj;
+            if (d.isNaN()) {
+                return "NaN";
+            } else if (d == Double.POSITIVE_INFINITY) {
+                return "INF";
+            } else if (d == Double.NEGATIVE_INFINITY) {
+                return "-INF";
+            }
+            return obj.toString();
+        } else if (obj instanceof SemanticString) {
+            return ((SemanticString)obj).stringValue();
+        } else if (obj instanceof X500Principal || obj instanceof URI) {
+            return obj.toString();
+        } else if (obj instanceof XPathExpressionWrapper) {
+            return ((XPathExpressionWrapper)obj).getPath();
+        } else {
+            throw new StAXStructureException("Unhandled data type='" + obj.getClass().getName() + "'");
+        }
+    }
+}
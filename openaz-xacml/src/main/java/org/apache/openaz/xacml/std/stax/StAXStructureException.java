@@ -0,0 +1,43 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.openaz.xacml.std.stax;
+
+/**
+ * Exception indicating that an XML structure read with a StAX <code>XMLStreamReader</code> is incorrect.
+ */
+public class StAXStructureException extends Exception {
+    private static final long serialVersionUID = -1728420943262375961L;
+
+    public StAXStructureException() {
+    }
+
+    public StAXStructureException(String message) {
+        super(message);
+    }
+
+    public StAXStructureException(Throwable cause) {
+        super(cause);
+    }
+
+    public StAXStructureException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -40,7 +40,6 @@ import java.util.List;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.parsers.DocumentBuilder;
 
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.AdviceExpressionType;
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.AdviceExpressionsType;
@@ -832,8 +831,7 @@ public class XACMLPolicyScanner {
             //
             // Parse the policy file
             //
-            DocumentBuilder db = DOMUtil.getDocumentBuilder();
-            Document doc = db.parse(is);
+            Document doc = DOMUtil.loadDocument(is);
             //
             // Because there is no root defined in xacml,
             // find the first element